@@ -0,0 +1,185 @@
+package com.algosome.eutils.align;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Scores targets with striped Smith-Waterman, using the Vector API. The query is split into as many
+ * segments as there are vector lanes, and lane l of the vector for position s holds query position
+ * l * segmentLength + s (Farrar's layout), so a column of the dynamic programming matrix is computed
+ * segmentLength vectors at a time with dependencies only between adjacent vectors.</p>
+ * <p>Gaps in the target (F) are the one dependency down a column. Rather than Farrar's lazy F loop, which
+ * carries a gap down the column one position at a time and so runs for most of the column when the target
+ * is similar to the query - as BLAST hits are - each column is computed in two passes. The first computes H
+ * without F, and F within each segment; F entering each segment is then a prefix maximum across the lanes,
+ * taking log2(lanes) shifts; the second pass completes F and H. The cost of a column is the same whatever
+ * the similarity of the sequences.</p>
+ * <p>This class lives in the src-vector source root, compiled with <code>--add-modules jdk.incubator.vector</code>
+ * into the same output as src, so the rest of the library builds without the incubator module. It is only
+ * loaded, reflectively, by StripedSmithWaterman when the module is present at run time.
+ * @author Greg Cope
+ * @see ScalarScoreKernel
+ */
+final class VectorScoreKernel extends ScoreKernel{
+
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+	private static final int LANES = SPECIES.length();
+
+	/*Score of the query positions padding the last segment*/
+	private static final int PADDING = Integer.MIN_VALUE / 4;
+
+	/*Move each lane up by 2^k lanes, the lanes below being filled by a blend with the mask*/
+	private static final VectorShuffle<Integer>[] SHIFTS;
+	private static final VectorMask<Integer>[] BELOW;
+
+	static{
+		int steps = Integer.numberOfTrailingZeros(LANES) + 1;
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		VectorShuffle<Integer>[] shifts = (VectorShuffle<Integer>[])new VectorShuffle[steps];
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		VectorMask<Integer>[] below = (VectorMask<Integer>[])new VectorMask[steps];
+		for ( int k = 0; k < steps; k++ ){
+			int distance = 1 << k;
+			int[] shift = new int[LANES];
+			boolean[] filled = new boolean[LANES];
+			for ( int l = 0; l < LANES; l++ ){
+				shift[l] = Math.max(0, l - distance);
+				filled[l] = l < distance;
+			}
+			shifts[k] = VectorShuffle.fromArray(SPECIES, shift, 0);
+			below[k] = VectorMask.fromArray(SPECIES, filled, 0);
+		}
+		SHIFTS = shifts;
+		BELOW = below;
+	}
+
+	private final int m;
+	private final int segmentLength;
+	private final int open;
+	private final int extend;
+
+	/*Score of each query position against each class, striped: class, then segment position, then lane*/
+	private final int[] profile;
+
+	/*H of the previous and current column, E of the next column, and H without F and F within each
+	segment of the current column, all striped*/
+	private int[] hLoad;
+	private int[] hStore;
+	private final int[] e;
+	private final int[] partialH;
+	private final int[] partialF;
+	private final int[] bestColumn;
+
+	VectorScoreKernel(ScoringMatrix matrix, String query){
+		this.m = query.length();
+		this.segmentLength = Math.max(1, (m + LANES - 1) / LANES);
+		this.open = matrix.getGapOpen() + matrix.getGapExtend();
+		this.extend = matrix.getGapExtend();
+		int[][] scores = createScores(matrix, query);
+		int stride = segmentLength * LANES;
+		profile = new int[scores.length * stride];
+		for ( int c = 0; c < scores.length; c++ ){
+			for ( int s = 0; s < segmentLength; s++ ){
+				for ( int l = 0; l < LANES; l++ ){
+					int i = l * segmentLength + s;
+					profile[c * stride + s * LANES + l] = i < m ? scores[c][i] : PADDING;
+				}
+			}
+		}
+		hLoad = new int[stride];
+		hStore = new int[stride];
+		e = new int[stride];
+		partialH = new int[stride];
+		partialF = new int[stride];
+		bestColumn = new int[stride];
+	}
+
+	/**
+	 * Retrieves the number of lanes of the preferred vector species, which is one where vectors are not
+	 * supported by the hardware.
+	 * @return
+	 */
+	static int getLanes(){
+		return LANES;
+	}
+
+	@Override
+	int score(byte[] target, int length, int[] end){
+		int stride = segmentLength * LANES;
+		//gaps scoring below zero cannot raise H above zero, so H, E and F are floored at zero
+		Arrays.fill(hStore, 0);
+		Arrays.fill(e, 0);
+		IntVector zero = IntVector.zero(SPECIES);
+		IntVector vOpen = IntVector.broadcast(SPECIES, open);
+		IntVector vExtend = IntVector.broadcast(SPECIES, extend);
+		IntVector vSegmentExtend = IntVector.broadcast(SPECIES, extend * segmentLength);
+		int best = 0;
+		end[0] = -1;
+		end[1] = -1;
+		for ( int j = 0; j < length; j++ ){
+			int base = target[j] * stride;
+			int[] swap = hLoad;
+			hLoad = hStore;
+			hStore = swap;
+			//first pass: H without F, and F from within each segment
+			IntVector vDiagonal = shift(IntVector.fromArray(SPECIES, hLoad, stride - LANES), 0);
+			IntVector vF = zero;
+			IntVector vPartialH = zero;
+			for ( int s = 0; s < segmentLength; s++ ){
+				int offset = s * LANES;
+				IntVector vLeft = IntVector.fromArray(SPECIES, hLoad, offset);
+				IntVector vE = IntVector.fromArray(SPECIES, e, offset).sub(vExtend).max(vLeft.sub(vOpen)).max(zero);
+				vE.intoArray(e, offset);
+				vF = vF.sub(vExtend).max(vPartialH.sub(vOpen));
+				vF.intoArray(partialF, offset);
+				vPartialH = vDiagonal.add(IntVector.fromArray(SPECIES, profile, base + offset)).max(vE);
+				vPartialH.intoArray(partialH, offset);
+				vDiagonal = vLeft;
+			}
+			//F leaving each segment, then the best F entering each segment from any segment above
+			IntVector vEntering = vF.sub(vExtend).max(vPartialH.sub(vOpen)).max(zero);
+			IntVector vDecay = vSegmentExtend;
+			for ( int k = 0; k < SHIFTS.length - 1; k++ ){
+				vEntering = vEntering.max(shift(vEntering, k).sub(vDecay));
+				vDecay = vDecay.add(vDecay);
+			}
+			vF = shift(vEntering, 0);
+			//second pass: complete F and H
+			IntVector vMax = zero;
+			for ( int s = 0; s < segmentLength; s++ ){
+				int offset = s * LANES;
+				IntVector vH = IntVector.fromArray(SPECIES, partialH, offset).max(IntVector.fromArray(SPECIES, partialF, offset)).max(vF).max(zero);
+				vH.intoArray(hStore, offset);
+				vMax = vMax.max(vH);
+				vF = vF.sub(vExtend);
+			}
+			int columnBest = vMax.reduceLanes(VectorOperators.MAX);
+			if ( columnBest > best ){
+				//keep the column, so the end in the query is found once rather than at each improvement
+				best = columnBest;
+				end[1] = j;
+				System.arraycopy(hStore, 0, bestColumn, 0, stride);
+			}
+		}
+		for ( int i = 0; i < m && best > 0; i++ ){
+			if ( bestColumn[(i % segmentLength) * LANES + i / segmentLength] == best ){
+				end[0] = i;
+				break;
+			}
+		}
+		return best;
+	}
+
+	/*
+	 * Moves each lane up 2^k lanes, filling the lanes below with zero.
+	 */
+	private static IntVector shift(IntVector v, int k){
+		return v.rearrange(SHIFTS[k]).blend(0, BELOW[k]);
+	}
+}
@@ -0,0 +1,28 @@
+package com.algosome.eutils;
+
+import java.io.IOException;
+
+/**
+ * Receives the chunks of an EntrezBatchFetch as they are retrieved. Chunks are retrieved concurrently,
+ * so these methods are called from several threads and not necessarily in chunk order.
+ * @author Greg Cope
+ * @see EntrezBatchFetch
+ */
+public interface BatchFetchListener {
+
+	/**
+	 * Called when a chunk has been retrieved.
+	 * @param index The index of the chunk, starting at 0.
+	 * @param retStart The index of the first record in the chunk.
+	 * @param output The eFetch output of the chunk.
+	 */
+	public void chunkFetched(int index, int retStart, String output);
+
+	/**
+	 * Called when a chunk could not be retrieved after all attempts.
+	 * @param index The index of the chunk, starting at 0.
+	 * @param retStart The index of the first record in the chunk.
+	 * @param e The exception of the last attempt.
+	 */
+	public void chunkFailed(int index, int retStart, IOException e);
+}
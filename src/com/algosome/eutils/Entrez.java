@@ -52,14 +52,18 @@ public abstract class Entrez extends URLConnect implements InputStreamParser{
 
 	protected Logger logger = Logger.getLogger(Entrez.class);
 	
-	/**Constant that specifies access cannot be performed faster than every 5 seconds*/
+	/**Constant that specifies access cannot be performed faster than every 5 seconds
+	 * @deprecated Request rates are enforced by {@link RateLimiter}*/
+	@Deprecated
 	public static final long NCBI_ACCESS_TIME = 5000L;
 
 	
 	/**Used to indicate the start time of a query, 
 	 * and prevent access to NCBI faster than every 5 seconds.
 	 * Declared static to prevent several windows from overlapping queries.
+	 * @deprecated Request rates are enforced by {@link RateLimiter}
 	 * */
+	@Deprecated
 	public static  long	 ACCESS_START_TIME = 0;
 	
 	/**
@@ -191,6 +195,9 @@ public abstract class Entrez extends URLConnect implements InputStreamParser{
 	public static final String FIELD_FLTR = "fltr";
 	public static final String FIELD_VOL = "vol";	
 	
+	/**The IDs set as an EntrezIdSet, or null if IDs have been set as a String or not at all*/
+	protected EntrezIdSet idSet = null;
+	
 	
 	/**
 	*Creates an empty Entrez object containing no parameters.  
@@ -205,6 +212,7 @@ public abstract class Entrez extends URLConnect implements InputStreamParser{
 	*/
 	public Entrez(Entrez e){
 		parameters = e.parameters;
+		idSet = e.idSet;
 	}
 	
 	/**
@@ -219,6 +227,7 @@ public abstract class Entrez extends URLConnect implements InputStreamParser{
 	*@param ids A String representation of ID's. Must be space delimited.  
 	*/
 	public void setIds( String ids ){
+		idSet = null;
 		setParameter("-id", ids);
 		if ( DEBUG ){
 			if( output == null ){
@@ -233,8 +242,51 @@ public abstract class Entrez extends URLConnect implements InputStreamParser{
 	*@return  A space delimited String of Genbank ID's, or null if none have been set. 
 	*/
 	public String getIds( ){
+		if ( idSet != null ){
+			return idSet.toString();
+		}
 		return getParameter("-id");
 	}
+	/**
+	*Sets the Genbank IDs. The IDs are kept as primitives and written directly into the query string. 
+	*@param ids The IDs.
+	*/
+	public void setIds( EntrezIdSet ids ){
+		parameters.remove("-id");
+		idSet = ids;
+		if ( DEBUG ){
+			if( output == null ){
+				System.out.println("Genbank IDs being set: " + ids.size());
+			}else{
+				output.notice( "Genbank IDs being set: " + ids.size() );
+			}
+		}
+	}
+	/**
+	*Retrieves the Genbank Ids found in an eSearch as an EntrezIdSet. 
+	*@return The IDs, or null if none have been set or the IDs set are not numeric.
+	*/
+	public EntrezIdSet getIdSet(){
+		if ( idSet != null ){
+			return idSet;
+		}
+		String ids = getParameter("-id");
+		if ( ids == null ){
+			return null;
+		}
+		try{
+			return EntrezIdSet.parse(ids);
+		}catch(NumberFormatException e){
+			return null;
+		}
+	}
+	/**
+	*Determines if any Genbank IDs have been set.
+	*@return true if IDs have been set, false otherwise.
+	*/
+	public boolean hasIds(){
+		return idSet != null || getParameter("-id") != null;
+	}
 	
 	/**
 	*Sets the file path to save eFetch output. 
@@ -338,6 +390,33 @@ public abstract class Entrez extends URLConnect implements InputStreamParser{
 		return getParameter("-email");
 	}	
 	/**
+	*Sets the NCBI API key. Queries made with an API key are allowed a higher request rate.
+	*@param key String representation of the API key, or null to remove it.
+	*@see RateLimiter#eutils(boolean)
+	*/
+	public void setApiKey( String key ){
+		setParameter("-api_key", key);
+	}
+	/**
+	*Gets the NCBI API key.
+	*@return String representation of the API key, or null if none have been set.
+	*/
+	public String getApiKey(){
+		return getParameter("-api_key");
+	}
+	/**
+	*Retrieves the rate limiter queries of this object pass through. Unless one has been set, this is the shared
+	*eutils bucket for queries with or without an API key.
+	*@return The rate limiter of this object.
+	*/
+	@Override public RateLimiter getRateLimiter(){
+		if ( rateLimiter != null ){
+			return rateLimiter;
+		}
+		String key = getApiKey();
+		return RateLimiter.eutils(key != null && key.length() != 0);
+	}
+	/**
 	*Sets the database to search. If a parameter is not set, the NCBI server defaults to Pubmed.
 	*@param db A String representation of the NCBI Database. All databases are stored in this class. 	
 	*
@@ -635,6 +714,46 @@ public abstract class Entrez extends URLConnect implements InputStreamParser{
 	 */
 	public void reset(){
 		parameters.clear();
+		idSet = null;
+	}
+
+	/**
+	 * Prints each line written to it to the OutputListener, or the command line if there is no listener.
+	 */
+	protected final class LineOutputStream extends OutputStream{
+		
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		
+		@Override
+		public void write(int b){
+			if ( b == '\n' ){
+				flushLine();
+			}else{
+				line.write(b);
+			}
+		}
+		
+		@Override
+		public void close(){
+			if ( line.size() != 0 ){
+				flushLine();
+			}
+		}
+		
+		private void flushLine(){
+			String s;
+			try{
+				s = line.toString(encoding);
+			}catch(UnsupportedEncodingException e){
+				s = line.toString();
+			}
+			line.reset();
+			if ( output == null ){
+				System.out.println(s);
+			}else{
+				output.data(s + "\n");
+			}
+		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,223 @@
+package com.algosome.eutils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+
+import com.algosome.eutils.net.RetryPolicy;
+
+/**
+ * Retrieves a large eFetch in chunks. The records to fetch - either an EntrezIdSet or a result on the
+ * history server - are split into chunks of at most chunkSize records, which are retrieved by a bounded
+ * number of concurrent workers. Each chunk is passed to a BatchFetchListener as soon as it has been
+ * retrieved. A chunk that fails is reported as failed.</p>
+ * <p>Every chunk is a separate eFetch request and passes through the rate limiter of the eFetch. A chunk
+ * which fails transiently - including part way through reading its records, which the eFetch alone does not
+ * retry - is fetched again from the start, as the retry policy of the eFetch allows.
+ * <pre>
+ * EntrezBatchFetch batch = new EntrezBatchFetch(search);
+ * batch.setChunkSize(500);
+ * batch.doQuery(listener);
+ * </pre>
+ * @author Greg Cope
+ * @see BatchFetchListener
+ */
+public class EntrezBatchFetch {
+
+	private static final Logger logger = Logger.getLogger(EntrezBatchFetch.class);
+
+	/**Default number of records per chunk*/
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	/**Default number of chunks retrieved at the same time*/
+	public static final int DEFAULT_WORKERS = 3;
+
+	/*Each chunk makes a single attempt, all retries being made by the retry policy of the template*/
+	private static final RetryPolicy SINGLE_ATTEMPT = new RetryPolicy(1, RetryPolicy.DEFAULT_BASE_DELAY, RetryPolicy.DEFAULT_MAX_DELAY);
+
+	/*The eFetch chunks are created from*/
+	private final EntrezFetch template;
+
+	/*The IDs to fetch, or null to fetch from the history server*/
+	private final EntrezIdSet ids;
+
+	/*The number of records to fetch*/
+	private final int count;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int workers = DEFAULT_WORKERS;
+
+	/**
+	 * Constructs a batch fetch of the results of an eSearch. If the eSearch used history, records are
+	 * fetched from the history server using its WebEnv and QueryKey, otherwise its IDs are fetched.
+	 * @param search A completed eSearch.
+	 * @throws IllegalArgumentException if the eSearch has no results to fetch.
+	 */
+	public EntrezBatchFetch(EntrezSearch search){
+		template = new EntrezFetch(search);
+		if ( "y".equals(search.getUseHistory()) && search.getWebEnv() != null && search.getQueryKey() != null
+				&& search.getResultCount() > 0 ){
+			ids = null;
+			count = search.getResultCount();
+		}else{
+			ids = search.getIdSet();
+			if ( ids == null ){
+				throw new IllegalArgumentException("No numeric IDs to perform a batch eFetch.");
+			}
+			count = ids.size();
+		}
+	}
+
+	/**
+	 * Constructs a batch fetch of the given IDs.
+	 * @param fetch An eFetch defining the database, retrieval type and settings of each chunk.
+	 * @param ids The IDs to fetch.
+	 */
+	public EntrezBatchFetch(EntrezFetch fetch, EntrezIdSet ids){
+		this.template = fetch;
+		this.ids = ids;
+		this.count = ids.size();
+	}
+
+	/**
+	 * Sets the maximum number of records in each chunk.
+	 * @param chunkSize
+	 */
+	public void setChunkSize(int chunkSize){
+		if ( chunkSize < 1 ){
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Retrieves the maximum number of records in each chunk.
+	 * @return
+	 */
+	public int getChunkSize(){
+		return chunkSize;
+	}
+
+	/**
+	 * Sets the number of chunks retrieved at the same time.
+	 * @param workers
+	 */
+	public void setWorkers(int workers){
+		if ( workers < 1 ){
+			throw new IllegalArgumentException("At least one worker is required: " + workers);
+		}
+		this.workers = workers;
+	}
+
+	/**
+	 * Retrieves the number of chunks retrieved at the same time.
+	 * @return
+	 */
+	public int getWorkers(){
+		return workers;
+	}
+
+	/**
+	 * Retrieves the number of records to fetch.
+	 * @return
+	 */
+	public int getCount(){
+		return count;
+	}
+
+	/**
+	 * Retrieves the number of chunks the records are split into.
+	 * @return
+	 */
+	public int getChunkCount(){
+		return (count + chunkSize - 1) / chunkSize;
+	}
+
+	/**
+	 * Retrieves all chunks, waiting until every chunk has been retrieved or has failed.
+	 * @param listener The listener to pass each chunk to.
+	 * @throws IOException if any chunk failed.
+	 */
+	public void doQuery(BatchFetchListener listener) throws IOException{
+		try{
+			doQueryAsync(listener).get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted retrieving eFetch chunks");
+		}catch(ExecutionException e){
+			if ( e.getCause() instanceof IOException ){
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Unable to retrieve eFetch chunks: " + e.getCause(), e.getCause());
+		}
+	}
+
+	/**
+	 * Retrieves all chunks on the executor of the eFetch, returning immediately.
+	 * @param listener The listener to pass each chunk to.
+	 * @return A future which completes when every chunk has been retrieved, or completes exceptionally
+	 * with the last failure once every chunk has been attempted.
+	 */
+	public CompletableFuture<Void> doQueryAsync(final BatchFetchListener listener){
+		final int chunks = getChunkCount();
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger failures = new AtomicInteger();
+		final AtomicReference<IOException> lastFailure = new AtomicReference<IOException>();
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[Math.min(workers, chunks)];
+		for ( int i = 0; i < futures.length; i++ ){
+			futures[i] = CompletableFuture.runAsync(new Runnable(){
+				public void run(){
+					int chunk;
+					while ( (chunk = next.getAndIncrement()) < chunks ){
+						int retStart = chunk * chunkSize;
+						try{
+							String output = fetchChunk(retStart, Math.min(chunkSize, count - retStart));
+							listener.chunkFetched(chunk, retStart, output);
+						}catch(IOException e){
+							failures.incrementAndGet();
+							lastFailure.set(e);
+							listener.chunkFailed(chunk, retStart, e);
+						}
+					}
+				}
+			}, template.getExecutor());
+		}
+		return CompletableFuture.allOf(futures).thenApply(new Function<Void, Void>(){
+			public Void apply(Void v){
+				if ( failures.get() != 0 ){
+					IOException e = lastFailure.get();
+					throw new CompletionException(new IOException(failures.get() + " of "
+							+ chunks + " eFetch chunks failed: " + e.getMessage(), e));
+				}
+				return null;
+			}
+		});
+	}
+
+	/*
+	 * Retrieves a single chunk, fetching it again from the start while the retry policy of the template allows.
+	 */
+	private String fetchChunk(final int retStart, final int retMax) throws IOException{
+		try{
+			return template.getRetryPolicy().execute("eFetch chunk at " + retStart, template.getDeadline(), true, new RetryPolicy.Attempt<String>(){
+				public String run() throws IOException{
+					EntrezFetch fetch = ids == null ? template.createChunk(retStart, retMax)
+							: template.createChunk(ids.subSet(retStart, retStart + retMax));
+					fetch.setRetryPolicy(SINGLE_ATTEMPT);
+					fetch.doQuery();
+					return fetch.getOutput();
+				}
+			});
+		}catch(IOException e){
+			logger.warn("eFetch chunk at " + retStart + " failed: " + e.getMessage());
+			throw e;
+		}
+	}
+}
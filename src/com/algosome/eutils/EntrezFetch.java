@@ -30,7 +30,8 @@ or visit
 import java.util.*;
 import java.io.*;
 import java.net.*;
-import java.lang.StringBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import com.algosome.eutils.io.*;
 import com.algosome.eutils.net.*;
@@ -53,6 +54,9 @@ public class EntrezFetch extends Entrez implements InputStreamParser{
 	/**The entire output from an eFetch */
 	protected String entrez_output = null;
 	
+	/**Flag to stream output directly to the output file*/
+	protected boolean streamOutput = false;
+	
 	
 	
 	/**
@@ -65,6 +69,16 @@ public class EntrezFetch extends Entrez implements InputStreamParser{
 		setURL( "http://eutils.ncbi.nlm.nih.gov/entrez/eutils/efetch.fcgi" );
 	}
 	
+	/**
+	*Creates a new eFetch for the given IDs. 
+	*@param ids The IDs to fetch.
+	*/
+	public EntrezFetch(EntrezIdSet ids){
+		this();
+		setUseHistory("n");
+		setIds(ids);
+	}
+	
 	/**
 	*Creates a new eFetch based upon a previous eSearch. It is expected that the eSearch contains valid QueryKey and WebEnv parameters or a list of valid Genbank Ids. 
 	*If this is not the case, an EntrezException will be thrown.
@@ -73,14 +87,15 @@ public class EntrezFetch extends Entrez implements InputStreamParser{
 	*/
 	public EntrezFetch(EntrezSearch search) throws IllegalArgumentException{
 		super(search);
+		copySettings(search);
 		setURL("http://eutils.ncbi.nlm.nih.gov/entrez/eutils/efetch.fcgi");
 		if ( search.getUseHistory().trim().equals("y") ){
 			if ( search.getWebEnv() == null || 
-					search.getQueryKey() == null && getIds() == null ){
+					search.getQueryKey() == null && !hasIds() ){
 					throw new IllegalArgumentException("Invalid QueryKey and/or WebEnv for an eFetch Object.");
 			}
 		}else{
-			if ( search.getIds() == null ){
+			if ( !search.hasIds() ){
 				throw new IllegalArgumentException("No Genbank Ids to perform an eFetch.");
 			}
 		}
@@ -89,6 +104,7 @@ public class EntrezFetch extends Entrez implements InputStreamParser{
 	/**
 	*Processes an eFetch Entrez Output based upon user specified parameters. Default is to print the output to the command line, howevers users can 
 	*turn that feature off and/or write the output to a file.  This function should not be called directly, but rather through doQuery. 
+	*If output is streamed to file (see setStreamOutput) the bytes are copied directly to the output file and not kept in memory.
 	*@param is An InputStream to read from.
 	*@throws IOException of the Input Stream could not be read, or the output was emtpy.
 	*@see com.algosome.eutils.io.InputStreamParser
@@ -101,38 +117,139 @@ public class EntrezFetch extends Entrez implements InputStreamParser{
 			logger.debug("Processing eFetch...");
 		}
 		if ( stopProcess ) return;
-		StringBuffer output = new StringBuffer();
+		entrez_output = null;
 		String output_file = getOutputFile();
-		BufferedReader rd = new BufferedReader(new InputStreamReader(is));
+		boolean print = "y".equals(getPrintEFetchOutput());
+		if ( streamOutput && output_file != null ){
+			InputStream in = print ? new TeeInputStream(is, new LineOutputStream()) : is;
+			FileChannelSink sink = new FileChannelSink(new File(output_file));
+			try{
+				sink.parseInput(in);
+			}finally{
+				in.close();
+			}
+			if ( sink.getBytesWritten() == 0 ){
+				throw new IOException("Empty output returned from NCBI.");
+			}
+			return;
+		}
+		StringBuilder buffer = new StringBuilder();
+		BufferedReader rd = new BufferedReader(new InputStreamReader(is, encoding));
 		String line = null;
-		while ( ( line = rd.readLine()) != null ){
-			if ( stopProcess ) return;
-			if ( getPrintEFetchOutput() != null ){
-				if ( getPrintEFetchOutput().equals("y")){
+		try{
+			while ( ( line = rd.readLine()) != null ){
+				if ( stopProcess ) return;
+				if ( print ){
 					if ( output == null ){
 						System.out.println(line);
 					}else{
-						this.output.data(line + "\n" );
+						output.data(line + "\n" );
 					}
 				}
+				buffer.append(line).append("\n");
 			}
-			if ( output_file != null ){
-				output.append(line).append("\n");
-			}
-			output.append(line).append("\n");
+		}finally{
+			rd.close();
 		}
 		if ( stopProcess ) return;
-		rd.close();		
-		entrez_output = output.toString();
+		entrez_output = buffer.toString();
 		if ( entrez_output.length() < 1 ){
 			throw new IOException("Empty output returned from NCBI.");
 		}
 		if ( output_file != null ){
-			BufferedWriter writer = new BufferedWriter(new FileWriter(output_file));
-			writer.write(entrez_output);
-			writer.close();
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output_file), encoding));
+			try{
+				writer.write(entrez_output);
+			}finally{
+				writer.close();
+			}
 		}
 	}
+	
+	/**
+	*Sets whether eFetch output is streamed straight to the output file rather than read into memory. When set and an 
+	*output file has been set, the response bytes are copied to the file without being decoded, so memory use does not 
+	*grow with the size of the output; getOutput then returns null. Has no effect if no output file has been set.
+	*@param stream true to stream output to the output file.
+	*@see #setOutputFile(String)
+	*/
+	public void setStreamOutput(boolean stream){
+		this.streamOutput = stream;
+	}
+	
+	/**
+	*Determines whether eFetch output is streamed straight to the output file.
+	*@return
+	*/
+	public boolean isStreamOutput(){
+		return streamOutput;
+	}
+	/**
+	*Creates an eFetch for a subset of the IDs of this eFetch. The chunk has the same database, retrieval type and 
+	*settings as this object, but does not print or save its output.
+	*@param ids The IDs of the chunk.
+	*@return A new eFetch for the chunk.
+	*/
+	public EntrezFetch createChunk(EntrezIdSet ids){
+		EntrezFetch chunk = createChunk();
+		chunk.setUseHistory("n");
+		chunk.parameters.remove("-retstart");
+		chunk.parameters.remove("-retmax");
+		chunk.setIds(ids);
+		return chunk;
+	}
+	
+	/**
+	*Creates an eFetch for a window of the results on the history server referred to by the WebEnv and QueryKey of this eFetch. 
+	*The chunk has the same database, retrieval type and settings as this object, but does not print or save its output.
+	*@param retStart The index of the first record of the chunk.
+	*@param retMax The number of records in the chunk.
+	*@return A new eFetch for the chunk.
+	*@throws IllegalStateException if this eFetch has no QueryKey and WebEnv.
+	*/
+	public EntrezFetch createChunk(int retStart, int retMax){
+		if ( getQueryKey() == null || getWebEnv() == null ){
+			throw new IllegalStateException("A chunk can only be created from an eFetch with a QueryKey and WebEnv.");
+		}
+		EntrezFetch chunk = createChunk();
+		chunk.setUseHistory("y");
+		chunk.setRetStart(retStart);
+		chunk.setMaxRetrieval(retMax);
+		return chunk;
+	}
+	
+	/*
+	 * Creates a copy of this eFetch with its own parameters.
+	 */
+	private EntrezFetch createChunk(){
+		EntrezFetch chunk = new EntrezFetch();
+		chunk.parameters.putAll(parameters);
+		chunk.copySettings(this);
+		chunk.parameters.remove("-id");
+		chunk.parameters.remove("-o");
+		chunk.setPrintEFetchOutput("n");
+		return chunk;
+	}
+	
+	/**
+	*Retrieves the entire output of the last eFetch.
+	*@return The output of the eFetch, or null if no eFetch has been performed.
+	*/
+	public String getOutput(){
+		return entrez_output;
+	}
+	/**
+	*Performs the eFetch on the executor of this object, returning immediately.
+	*@return A future which completes with the entire output of the eFetch.
+	*@see com.algosome.eutils.net.URLConnect#doQueryAsync(InputStreamParser)
+	*/
+	public CompletableFuture<String> doQueryAsync(){
+		return doQueryAsync(this).thenApply(new Function<Void, String>(){
+			public String apply(Void v){
+				return entrez_output;
+			}
+		});
+	}
 	/**
 	*Empty implementation of the InputStreamParser
 	*@param start The location to start from.
@@ -157,7 +274,7 @@ public class EntrezFetch extends Entrez implements InputStreamParser{
 				output.message( "eFetch: " +query );
 			}
 		}
-		StringBuffer appender = new StringBuffer();
+		StringBuilder appender = new StringBuilder();
 		String[] filter = query.split("&");
 		if ( getUseHistory().equals("y") ){
 			if ( getQueryKey() != null && getWebEnv() != null ){
@@ -177,6 +294,11 @@ public class EntrezFetch extends Entrez implements InputStreamParser{
 				appender.append(s);
 				appender.append("&");
 			}
+			if ( idSet != null ){
+				appender.append("id=");
+				idSet.appendTo(appender);
+				appender.append("&");
+			}
 		}		
 		if ( DEBUG ){
 			if ( output == null ){
@@ -195,15 +317,66 @@ public class EntrezFetch extends Entrez implements InputStreamParser{
 	*@throws UnsupportedEncodingException If the submission cannot be UTF-8 Encoded.
 	*/		
 	@Override public void doQuery(InputStreamParser is) throws IOException, UnsupportedEncodingException{
-		if ( getIds() == null ){
-			throw new IOException("No ID's to perform an eFetch.");
+		checkQuery();
+		super.doQuery(is);
+	}
+	
+	/**
+	*Performs the eFetch HTTP request to NCBI and returns the unread response.
+	*@return The response, which the caller must close.
+	*@throws IOException if there is nothing to fetch, or the connection cannot be established.
+	*@see #openRecords()
+	*/
+	@Override public HttpResponse openQuery() throws IOException{
+		checkQuery();
+		return super.openQuery();
+	}
+	
+	/**
+	*Performs the eFetch and returns an iterator over its records, split according to the rettype of this eFetch. Each record 
+	*is available as soon as it has been downloaded. The iterator must be closed to release the connection.
+	*@return An iterator over the records of the eFetch.
+	*@throws IOException if the connection cannot be established.
+	*@throws IllegalStateException if records of the rettype of this eFetch cannot be split.
+	*@see com.algosome.eutils.io.RecordIterator.Format#forRetType(String)
+	*/
+	public RecordIterator openRecords() throws IOException{
+		RecordIterator.Format format = RecordIterator.Format.forRetType(getRetType());
+		if ( format == null ){
+			throw new IllegalStateException("Cannot split records of rettype " + getRetType());
+		}
+		return openRecords(format);
+	}
+	
+	/**
+	*Performs the eFetch and returns an iterator over its records. Each record is available as soon as it has been downloaded. 
+	*The iterator must be closed to release the connection.
+	*@param format The format of the records.
+	*@return An iterator over the records of the eFetch.
+	*@throws IOException if the connection cannot be established.
+	*/
+	public RecordIterator openRecords(RecordIterator.Format format) throws IOException{
+		HttpResponse response = openQuery();
+		try{
+			return new RecordIterator(response.getBody(), encoding, format);
+		}catch(IOException e){
+			response.close();
+			throw e;
 		}
+	}
+	
+	/*
+	 * Validates that there is something to fetch.
+	 */
+	private void checkQuery() throws IOException{
 		if ( getUseHistory().equals("y") ){
+			//records are fetched from the history server, so IDs are not needed
 			if ( getQueryKey() == null || getWebEnv() == null ){
 				throw new IOException("Cannot to perform eFetch: no WebEnv or QueryKey provided, and no IDs to Search. A previous eSearch may have returned an empty set.");
 			}
+		}else if ( !hasIds() ){
+			throw new IOException("No ID's to perform an eFetch.");
 		}
-		super.doQuery(is);
 	}
 
 	
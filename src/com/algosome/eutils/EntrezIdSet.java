@@ -0,0 +1,384 @@
+package com.algosome.eutils;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of Entrez UIDs backed by a primitive long array. The IDs keep the order in which
+ * they were added - for example the order of an eSearch result - and duplicates are removed. A sorted
+ * copy is created on first use to allow fast lookups, unions, intersections and differences; sets
+ * returned by those operations are in ascending order. A set whose IDs were added in ascending order
+ * holds a single array, serving as both.</p>
+ * <p>An EntrezIdSet can be passed directly to an eSearch or eFetch (see {@link Entrez#setIds(EntrezIdSet)})
+ * and is written straight into the id parameter of the query, without first being joined into a String.
+ * @author Greg Cope
+ *
+ */
+public final class EntrezIdSet {
+
+	/**An empty set*/
+	public static final EntrezIdSet EMPTY = new EntrezIdSet(new long[0]);
+
+	/*The IDs in insertion order, without duplicates*/
+	private final long[] ids;
+
+	/*The IDs in ascending order, created on first use*/
+	private volatile long[] sorted = null;
+
+	/*
+	 * Constructs a set from an array which must not contain duplicates. The array is not copied.
+	 */
+	private EntrezIdSet(long[] ids){
+		this.ids = ids;
+	}
+
+	/*
+	 * Constructs a set from an ascending array without duplicates. The array is not copied.
+	 */
+	private static EntrezIdSet fromSorted(long[] sorted, int length){
+		long[] array = length == sorted.length ? sorted : Arrays.copyOf(sorted, length);
+		EntrezIdSet set = new EntrezIdSet(array);
+		set.sorted = array;
+		return set;
+	}
+
+	/**
+	 * Creates a set of the given IDs.
+	 * @param ids
+	 * @return
+	 */
+	public static EntrezIdSet of(long... ids){
+		Builder builder = new Builder(ids.length);
+		for ( long id : ids ){
+			builder.add(id);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Parses a comma, space or newline delimited list of IDs.
+	 * @param ids
+	 * @return
+	 * @throws NumberFormatException if any of the IDs is not a number.
+	 */
+	public static EntrezIdSet parse(String ids){
+		Builder builder = new Builder();
+		long value = 0;
+		boolean digits = false;
+		for ( int i = 0; i < ids.length(); i++ ){
+			char c = ids.charAt(i);
+			if ( c >= '0' && c <= '9' ){
+				value = value * 10 + (c - '0');
+				digits = true;
+			}else if ( c == ',' || Character.isWhitespace(c) ){
+				if ( digits ){
+					builder.add(value);
+				}
+				value = 0;
+				digits = false;
+			}else{
+				throw new NumberFormatException("Invalid Entrez ID in: " + ids);
+			}
+		}
+		if ( digits ){
+			builder.add(value);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Retrieves the number of IDs in this set.
+	 * @return
+	 */
+	public int size(){
+		return ids.length;
+	}
+
+	/**
+	 * Determines if this set contains no IDs.
+	 * @return
+	 */
+	public boolean isEmpty(){
+		return ids.length == 0;
+	}
+
+	/**
+	 * Retrieves the ID at the given position, in insertion order.
+	 * @param index
+	 * @return
+	 */
+	public long get(int index){
+		return ids[index];
+	}
+
+	/**
+	 * Determines if this set contains the given ID.
+	 * @param id
+	 * @return
+	 */
+	public boolean contains(long id){
+		return Arrays.binarySearch(getSorted(), id) >= 0;
+	}
+
+	/**
+	 * Retrieves a copy of the IDs of this set, in insertion order.
+	 * @return
+	 */
+	public long[] toArray(){
+		return ids.clone();
+	}
+
+	/**
+	 * Retrieves the IDs from index from (inclusive) to index to (exclusive), in insertion order.
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public EntrezIdSet subSet(int from, int to){
+		if ( from == 0 && to == ids.length ){
+			return this;
+		}
+		long[] range = Arrays.copyOfRange(ids, from, to);
+		return sorted == ids ? fromSorted(range, range.length) : new EntrezIdSet(range);
+	}
+
+	/**
+	 * Retrieves the IDs in this set or the other set.
+	 * @param other
+	 * @return A new set in ascending order.
+	 */
+	public EntrezIdSet union(EntrezIdSet other){
+		long[] a = getSorted();
+		long[] b = other.getSorted();
+		long[] result = new long[a.length + b.length];
+		int i = 0, j = 0, k = 0;
+		while ( i < a.length && j < b.length ){
+			if ( a[i] < b[j] ){
+				result[k++] = a[i++];
+			}else if ( a[i] > b[j] ){
+				result[k++] = b[j++];
+			}else{
+				result[k++] = a[i++];
+				j++;
+			}
+		}
+		while ( i < a.length ){
+			result[k++] = a[i++];
+		}
+		while ( j < b.length ){
+			result[k++] = b[j++];
+		}
+		return fromSorted(result, k);
+	}
+
+	/**
+	 * Retrieves the IDs in both this set and the other set.
+	 * @param other
+	 * @return A new set in ascending order.
+	 */
+	public EntrezIdSet intersection(EntrezIdSet other){
+		long[] a = getSorted();
+		long[] b = other.getSorted();
+		long[] result = new long[Math.min(a.length, b.length)];
+		int i = 0, j = 0, k = 0;
+		while ( i < a.length && j < b.length ){
+			if ( a[i] < b[j] ){
+				i++;
+			}else if ( a[i] > b[j] ){
+				j++;
+			}else{
+				result[k++] = a[i++];
+				j++;
+			}
+		}
+		return fromSorted(result, k);
+	}
+
+	/**
+	 * Retrieves the IDs in this set which are not in the other set.
+	 * @param other
+	 * @return A new set in ascending order.
+	 */
+	public EntrezIdSet difference(EntrezIdSet other){
+		long[] a = getSorted();
+		long[] b = other.getSorted();
+		long[] result = new long[a.length];
+		int i = 0, j = 0, k = 0;
+		while ( i < a.length ){
+			if ( j == b.length || a[i] < b[j] ){
+				result[k++] = a[i++];
+			}else if ( a[i] > b[j] ){
+				j++;
+			}else{
+				i++;
+				j++;
+			}
+		}
+		return fromSorted(result, k);
+	}
+
+	/**
+	 * Appends the IDs of this set to the StringBuilder, comma delimited, in the format of the id parameter.
+	 * @param sb
+	 * @return The StringBuilder.
+	 */
+	public StringBuilder appendTo(StringBuilder sb){
+		for ( int i = 0; i < ids.length; i++ ){
+			if ( i != 0 ){
+				sb.append(',');
+			}
+			sb.append(ids[i]);
+		}
+		return sb;
+	}
+
+	/**
+	 * Retrieves the IDs of this set as a comma delimited String.
+	 */
+	@Override
+	public String toString(){
+		return appendTo(new StringBuilder(ids.length * 9)).toString();
+	}
+
+	/**
+	 * Two sets are equal if they contain the same IDs, regardless of order.
+	 */
+	@Override
+	public boolean equals(Object o){
+		if ( o == this ){
+			return true;
+		}
+		if ( !(o instanceof EntrezIdSet) ){
+			return false;
+		}
+		return Arrays.equals(getSorted(), ((EntrezIdSet)o).getSorted());
+	}
+
+	@Override
+	public int hashCode(){
+		return Arrays.hashCode(getSorted());
+	}
+
+	/*
+	 * Retrieves the IDs in ascending order.
+	 */
+	private long[] getSorted(){
+		long[] s = sorted;
+		if ( s == null ){
+			s = ids.clone();
+			Arrays.sort(s);
+			sorted = s;
+		}
+		return s;
+	}
+
+	/**
+	 * Collects IDs into an EntrezIdSet, growing a primitive array as needed.
+	 */
+	public static final class Builder{
+
+		private long[] buffer;
+		private int size = 0;
+
+		/**
+		 * Constructs a new Builder.
+		 */
+		public Builder(){
+			this(64);
+		}
+
+		/**
+		 * Constructs a new Builder.
+		 * @param capacity The expected number of IDs.
+		 */
+		public Builder(int capacity){
+			buffer = new long[Math.max(capacity, 1)];
+		}
+
+		/**
+		 * Adds an ID. Duplicates are removed when the set is built.
+		 * @param id
+		 * @return This Builder.
+		 */
+		public Builder add(long id){
+			if ( size == buffer.length ){
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			buffer[size++] = id;
+			return this;
+		}
+
+		/**
+		 * Adds all the IDs of the set, in order.
+		 * @param set
+		 * @return This Builder.
+		 */
+		public Builder addAll(EntrezIdSet set){
+			if ( size + set.ids.length > buffer.length ){
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + set.ids.length));
+			}
+			System.arraycopy(set.ids, 0, buffer, size, set.ids.length);
+			size += set.ids.length;
+			return this;
+		}
+
+		/**
+		 * Retrieves the number of IDs added.
+		 * @return
+		 */
+		public int size(){
+			return size;
+		}
+
+		/**
+		 * Builds the set. The first occurrence of any duplicate ID is kept.
+		 * @return
+		 */
+		public EntrezIdSet build(){
+			if ( size == 0 ){
+				return EMPTY;
+			}
+			long[] ids = Arrays.copyOf(buffer, size);
+			if ( isAscending(ids) ){
+				//insertion order is the sorted order, so one array serves as both
+				return fromSorted(ids, ids.length);
+			}
+			return new EntrezIdSet(removeDuplicates(ids));
+		}
+
+		/*
+		 * Determines whether the IDs are in strictly ascending order, and so contain no duplicates.
+		 */
+		private static boolean isAscending(long[] ids){
+			for ( int i = 1; i < ids.length; i++ ){
+				if ( ids[i] <= ids[i - 1] ){
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/*
+		 * Removes duplicates in place, keeping insertion order, with an open addressing hash set rather
+		 * than a sorted copy, which is only created if the set is later searched.
+		 */
+		private static long[] removeDuplicates(long[] ids){
+			int capacity = Integer.highestOneBit(ids.length * 2 - 1) << 1;
+			int mask = capacity - 1;
+			long[] table = new long[capacity];
+			boolean[] used = new boolean[capacity];
+			int k = 0;
+			for ( long id : ids ){
+				int slot = (int)((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+				while ( used[slot] && table[slot] != id ){
+					slot = (slot + 1) & mask;
+				}
+				if ( !used[slot] ){
+					used[slot] = true;
+					table[slot] = id;
+					ids[k++] = id;
+				}
+			}
+			return k == ids.length ? ids : Arrays.copyOf(ids, k);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.algosome.eutils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Retrieves every ID matching an eSearch, not just the first retmax. The first page is retrieved with
+ * history enabled, and the Count it reports determines how many further pages are needed. The remaining
+ * pages are then read from the history server (using the WebEnv and QueryKey of the first page, without
+ * storing further queries there) concurrently, and merged in order into a single EntrezIdSet. The pages
+ * are retrieved by copies of the eSearch, so the eSearch itself - its parameters and results - is left as
+ * it was. A page with fewer IDs than the Count implies, as when the query has expired from the history
+ * server, fails the search rather than leaving a gap in the IDs.</p>
+ * <p>Each page is a separate eSearch request, so all pages pass through the rate limiter of the
+ * eSearch. Running more pages concurrently than the rate limit allows gains nothing.
+ * <pre>
+ * EntrezSearch search = new EntrezSearch();
+ * search.setTerm("cancer");
+ * EntrezIdSet ids = new EntrezPaginatedSearch(search).doQuery();
+ * </pre>
+ * @author Greg Cope
+ * @see EntrezSearch#createPage(int, int)
+ */
+public class EntrezPaginatedSearch {
+
+	/**Default number of IDs retrieved by each request*/
+	public static final int DEFAULT_PAGE_SIZE = 10000;
+
+	/**Default number of pages retrieved at the same time*/
+	public static final int DEFAULT_CONCURRENT_PAGES = 3;
+
+	private final EntrezSearch search;
+
+	private int pageSize = DEFAULT_PAGE_SIZE;
+
+	private int concurrentPages = DEFAULT_CONCURRENT_PAGES;
+
+	/**
+	 * Constructs a new paginated search.
+	 * @param search The eSearch to retrieve all IDs for. A copy of it, set to use history, retrieves the first page.
+	 */
+	public EntrezPaginatedSearch(EntrezSearch search){
+		this.search = search;
+	}
+
+	/**
+	 * Sets the number of IDs retrieved by each request.
+	 * @param pageSize
+	 */
+	public void setPageSize(int pageSize){
+		if ( pageSize < 1 ){
+			throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+		}
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Retrieves the number of IDs retrieved by each request.
+	 * @return
+	 */
+	public int getPageSize(){
+		return pageSize;
+	}
+
+	/**
+	 * Sets the maximum number of pages retrieved at the same time.
+	 * @param concurrentPages
+	 */
+	public void setConcurrentPages(int concurrentPages){
+		if ( concurrentPages < 1 ){
+			throw new IllegalArgumentException("At least one page must be retrieved at a time: " + concurrentPages);
+		}
+		this.concurrentPages = concurrentPages;
+	}
+
+	/**
+	 * Retrieves the maximum number of pages retrieved at the same time.
+	 * @return
+	 */
+	public int getConcurrentPages(){
+		return concurrentPages;
+	}
+
+	/**
+	 * Retrieves the eSearch all IDs are retrieved for.
+	 * @return
+	 */
+	public EntrezSearch getSearch(){
+		return search;
+	}
+
+	/**
+	 * Retrieves all pages, waiting until they have been retrieved.
+	 * @return All IDs matching the eSearch, in order.
+	 * @throws IOException if any page could not be retrieved, or held fewer IDs than expected.
+	 */
+	public EntrezIdSet doQuery() throws IOException{
+		try{
+			return doQueryAsync().get();
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted retrieving eSearch pages");
+		}catch(ExecutionException e){
+			if ( e.getCause() instanceof IOException ){
+				throw (IOException)e.getCause();
+			}
+			throw new IOException("Unable to retrieve eSearch pages: " + e.getCause(), e.getCause());
+		}
+	}
+
+	/**
+	 * Retrieves all pages on the executor of the eSearch, returning immediately.
+	 * @return A future which completes with all IDs matching the eSearch, in order.
+	 */
+	public CompletableFuture<EntrezIdSet> doQueryAsync(){
+		EntrezSearch first = search.copy();
+		first.setUseHistory("y");
+		first.setRetStart(0);
+		first.setMaxRetrieval(pageSize);
+		return first.doQueryAsync().thenCompose(new Function<EntrezSearch, CompletableFuture<EntrezIdSet>>(){
+			public CompletableFuture<EntrezIdSet> apply(EntrezSearch first){
+				return retrieveRemainingPages(first);
+			}
+		});
+	}
+
+	/*
+	 * Retrieves the pages following the first, once the Count is known.
+	 */
+	private CompletableFuture<EntrezIdSet> retrieveRemainingPages(final EntrezSearch first){
+		final EntrezIdSet firstPage = first.getIdSet();
+		if ( first.getResultCount() <= firstPage.size() ){
+			return CompletableFuture.completedFuture(firstPage);
+		}
+		final int count = first.getResultCount();
+		final int pages = (count - firstPage.size() + pageSize - 1) / pageSize;
+		final EntrezIdSet[] results = new EntrezIdSet[pages];
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		int workers = Math.min(concurrentPages, pages);
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[workers];
+		for ( int i = 0; i < workers; i++ ){
+			futures[i] = CompletableFuture.runAsync(new Runnable(){
+				public void run(){
+					int page;
+					while ( !failed.get() && (page = next.getAndIncrement()) < pages ){
+						int start = firstPage.size() + page * pageSize;
+						EntrezSearch search = first.createPage(start, pageSize);
+						try{
+							search.doQuery();
+							int expected = Math.min(pageSize, count - start);
+							if ( search.getIdSet().size() < expected ){
+								throw new IOException("eSearch page at " + start + " returned " + search.getIdSet().size() + " of " + expected
+										+ " IDs - the query may have expired from the history server");
+							}
+						}catch(IOException e){
+							failed.set(true);
+							throw new CompletionException(e);
+						}
+						results[page] = search.getIdSet();
+					}
+				}
+			}, first.getExecutor());
+		}
+		return CompletableFuture.allOf(futures).thenApply(new Function<Void, EntrezIdSet>(){
+			public EntrezIdSet apply(Void v){
+				EntrezIdSet.Builder builder = new EntrezIdSet.Builder(firstPage.size() + pages * pageSize);
+				builder.addAll(firstPage);
+				for ( EntrezIdSet page : results ){
+					builder.addAll(page);
+				}
+				return builder.build();
+			}
+		});
+	}
+}
@@ -30,6 +30,8 @@ import java.util.*;
 import java.lang.*;
 import java.io.*;
 import java.util.regex.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import com.algosome.eutils.io.*;
 import com.algosome.eutils.net.*;
@@ -51,6 +53,17 @@ import com.algosome.eutils.net.*;
 */
 public class EntrezSearch extends Entrez implements InputStreamParser{
 
+	/**The total number of records matching the last eSearch*/
+	private int resultCount = -1;
+	
+	/**The number of IDs returned by the last eSearch*/
+	private int resultRetMax = -1;
+	
+	/**The index of the first ID returned by the last eSearch*/
+	private int resultRetStart = -1;
+	
+	/**The TranslationSet of the last eSearch*/
+	private final Map<String, String> translationSet = new LinkedHashMap<String, String>();
 	
 	/**
 	*Creates a new eSearch Object, and sets the default parameters. The created eSearch object is deficient in search terms, which must be set prior 
@@ -206,10 +219,13 @@ public class EntrezSearch extends Entrez implements InputStreamParser{
 		setIds(sb.toString());
 	}
 	/**
-	*Processes an eSearch Entrez Output. This parses the XML output and retrieves all Entrez Id's and WebEnv/QueryKey if provided.
+	*Processes an eSearch Entrez Output. This parses the XML output and retrieves all Entrez Id's, WebEnv/QueryKey if provided, 
+	*the result Count, RetMax and RetStart, and the TranslationSet. The output is parsed as a stream: if the eSearch output is 
+	*to be printed or saved to a file, it is copied as it is read rather than held in memory.
 	*This function should not be called directly, but rather through doQuery. 
 	*@param is An InputStream to read from.
 	*@throws IOException If an error occurred while reading the input stream
+	*@see com.algosome.eutils.io.ESearchParser
 	*/
 	public void parseInput(InputStream is) throws IOException{
 		if ( DEBUG ){
@@ -220,91 +236,147 @@ public class EntrezSearch extends Entrez implements InputStreamParser{
 			}
 		}
 		if ( stopProcess ) return;
+		resultCount = -1;
+		resultRetMax = -1;
+		resultRetStart = -1;
+		translationSet.clear();
 		String output_file =  getESearchOutput();
-		ArrayList<String> entrez_ids = new ArrayList<String>();
-		BufferedReader line_reader = new BufferedReader(new InputStreamReader(is));
-		StringBuffer	output = new StringBuffer();
-		String line = null;
-		while ( (line = line_reader.readLine() ) != null ){
-			if ( stopProcess ) return;
-			if ( getPrintESearchOutput() != null ){
-				if ( getPrintESearchOutput().equals("y") ){
-					if ( output == null ){
-						System.out.println(line);
-					}else{
-						this.output.data(line);
-					}
+		InputStream in = is;
+		if ( output_file != null ){
+			in = new TeeInputStream(in, new BufferedOutputStream(new FileOutputStream(output_file)));
+		}
+		if ( "y".equals(getPrintESearchOutput()) ){
+			in = new TeeInputStream(in, new LineOutputStream());
+		}
+		final EntrezIdSet.Builder ids = new EntrezIdSet.Builder();
+		try{
+			new ESearchParser(new ESearchHandler(){
+				public void count(int count){
+					resultCount = count;
 				}
-			}
-			if ( output_file != null ){
-				output.append(line);
-				output.append("\n");
-			}
-			if ( line.indexOf("<Id>") != -1 ){
-				String id = parseID(line);
-				if ( id != null ){
-					entrez_ids.add(id);
+				public void retMax(int retMax){
+					resultRetMax = retMax;
 				}
-				if ( DEBUG ){
-					if ( this.output == null ){
-						System.out.println("Id: " + id);
-					}else{
-						this.output.message("Id: " + id);
-					}
+				public void retStart(int retStart){
+					resultRetStart = retStart;
 				}
-			}
-			if ( line.indexOf("<QueryKey>") != -1 ){
-				String id = parseQueryKey(line);
-				if ( id != null ){
-					setQueryKey(id);
-					if ( DEBUG ){
-						if ( this.output == null ){
-							System.out.println("QueryKey: " + id);
-						}else{
-							this.output.message("QueryKey: " + id);
-						}
-					}
+				public void queryKey(String queryKey){
+					setQueryKey(queryKey);
+					debug("QueryKey: " + queryKey);
 				}
-				
-			}
-			if ( line.indexOf("<WebEnv>") != -1 ){
-				String id = parseWebEnv(line);
-				if ( this.output == null ){
-					System.out.println(id);
-				}else{
-					this.output.message(id);
+				public void webEnv(String webEnv){
+					setWebEnv(webEnv);
+					debug("WebEnv: " + webEnv);
 				}
-				if ( id != null ){
-					setWebEnv(id);
-					if ( DEBUG ){
-						if ( this.output == null ){
-							System.out.println("WebEnv: " + id);
-						}else{
-							this.output.message("WebEnv: " + id);
-						}
-					}
+				public void id(long id){
+					ids.add(id);
 				}
-				
-			}
+				public void translation(String from, String to){
+					translationSet.put(from, to);
+				}
+			}).parseInput(in);
+		}finally{
+			in.close();
 		}
-		line_reader.close();
-		if (entrez_ids.size() == 0 ){
+		if ( stopProcess ) return;
+		if ( ids.size() == 0 ){
 			throw new IOException("No search ID's were found.");
 		}
-		if ( output_file != null ){
-			BufferedWriter bw = new BufferedWriter(new FileWriter(output_file));
-			bw.write(output.toString());
-			bw.close();
+		setIds(ids.build());
+	}
+	
+	/**
+	*Creates a copy of this eSearch, with the same parameters and connection settings. Changing the parameters of the copy 
+	*does not change those of this object.
+	*@return A new eSearch.
+	*/
+	public EntrezSearch copy(){
+		EntrezSearch copy = new EntrezSearch(parameters);
+		copy.copySettings(this);
+		return copy;
+	}
+	
+	/**
+	*Creates an eSearch for a single page of the results of this eSearch, read from the history server. This eSearch must 
+	*have been performed with usehistory set to y. The page has the same database and settings as this object, but does not print
+	*or save its output. The page refers to the query key and WebEnv of this eSearch with usehistory set to n, so retrieving 
+	*it does not add another query to the history server.
+	*@param retStart The index of the first ID of the page.
+	*@param retMax The number of IDs in the page.
+	*@return A new eSearch for the page.
+	*@throws IllegalStateException if this eSearch has no QueryKey and WebEnv.
+	*/
+	public EntrezSearch createPage(int retStart, int retMax){
+		if ( getQueryKey() == null || getWebEnv() == null ){
+			throw new IllegalStateException("A page can only be created from an eSearch with a QueryKey and WebEnv.");
 		}
-		StringBuffer sb = new StringBuffer();
-		for ( int i = 0; i < entrez_ids.size(); i++ ){
-			sb.append(entrez_ids.get(i));
-			if ( i < entrez_ids.size()-1){
-				sb.append(",");
+		EntrezSearch page = copy();
+		page.parameters.remove("-id");
+		page.parameters.remove("-os");
+		page.setPrintESearchOutput("n");
+		page.setUseHistory("n");
+		page.setTerm("#" + getQueryKey());
+		page.setRetStart(retStart);
+		page.setMaxRetrieval(retMax);
+		return page;
+	}
+	
+	/**
+	*Retrieves the total number of records matching the last eSearch.
+	*@return The Count of the last eSearch, or -1 if no eSearch has been parsed.
+	*/
+	public int getResultCount(){
+		return resultCount;
+	}
+	
+	/**
+	*Retrieves the number of IDs returned by the last eSearch.
+	*@return The RetMax of the last eSearch, or -1 if no eSearch has been parsed.
+	*/
+	public int getResultRetMax(){
+		return resultRetMax;
+	}
+	
+	/**
+	*Retrieves the index of the first ID returned by the last eSearch.
+	*@return The RetStart of the last eSearch, or -1 if no eSearch has been parsed.
+	*/
+	public int getResultRetStart(){
+		return resultRetStart;
+	}
+	
+	/**
+	*Retrieves the translations NCBI applied to the search term of the last eSearch.
+	*@return A Map of the submitted terms to their translation.
+	*/
+	public Map<String, String> getTranslationSet(){
+		return Collections.unmodifiableMap(translationSet);
+	}
+	
+	/*
+	 * Sends a debugging message to the output.
+	 */
+	private void debug(String message){
+		if ( DEBUG ){
+			if ( output == null ){
+				System.out.println(message);
+			}else{
+				output.message(message);
 			}
 		}
-		if ( stopProcess ) return;
-		setIds(sb.toString());
+	}
+	
+	/**
+	*Performs the eSearch on the executor of this object, returning immediately.
+	*@return A future which completes with this object once the eSearch results have been parsed.
+	*@see com.algosome.eutils.net.URLConnect#doQueryAsync(InputStreamParser)
+	*/
+	public CompletableFuture<EntrezSearch> doQueryAsync(){
+		return doQueryAsync(this).thenApply(new Function<Void, EntrezSearch>(){
+			public EntrezSearch apply(Void v){
+				return EntrezSearch.this;
+			}
+		});
 	}
 	/**
 	*Empty implementation of the InputStreamParser
@@ -122,6 +122,7 @@ public final class JeUtils extends NotificationThread implements OutputListener{
 			if ( stopProcess )return;
 			efetch = new EntrezFetch(esearch);			
 			efetch.setOutputListener(this);
+			efetch.setStreamOutput(true);
 			efetch.doQuery();
 			if ( stopProcess )return;
 		}catch( UnsupportedEncodingException uee){
@@ -0,0 +1,113 @@
+package com.algosome.eutils.align;
+
+/**
+ * A local alignment between a query and a target sequence. Positions are one based and inclusive, as
+ * in BLAST output.
+ * @author Greg Cope
+ * @see SmithWaterman
+ */
+public class Alignment {
+
+	private final int score;
+	private final int queryStart;
+	private final int queryEnd;
+	private final int targetStart;
+	private final int targetEnd;
+	private final String alignedQuery;
+	private final String alignedTarget;
+	private final String midline;
+	private final int identities;
+	private final int positives;
+	private final int gaps;
+
+	/**
+	 * Constructs a new alignment.
+	 * @param score
+	 * @param queryStart
+	 * @param queryEnd
+	 * @param targetStart
+	 * @param targetEnd
+	 * @param alignedQuery The aligned query, with - for gaps.
+	 * @param alignedTarget The aligned target, with - for gaps.
+	 * @param midline The midline: the letter for identities, + for other positive scores, otherwise a space.
+	 * @param identities
+	 * @param positives
+	 * @param gaps
+	 */
+	public Alignment(int score, int queryStart, int queryEnd, int targetStart, int targetEnd, String alignedQuery,
+			String alignedTarget, String midline, int identities, int positives, int gaps){
+		this.score = score;
+		this.queryStart = queryStart;
+		this.queryEnd = queryEnd;
+		this.targetStart = targetStart;
+		this.targetEnd = targetEnd;
+		this.alignedQuery = alignedQuery;
+		this.alignedTarget = alignedTarget;
+		this.midline = midline;
+		this.identities = identities;
+		this.positives = positives;
+		this.gaps = gaps;
+	}
+
+	/**
+	 * Retrieves the raw score of the alignment.
+	 * @return
+	 */
+	public int getScore(){
+		return score;
+	}
+
+	public int getQueryStart(){
+		return queryStart;
+	}
+
+	public int getQueryEnd(){
+		return queryEnd;
+	}
+
+	public int getTargetStart(){
+		return targetStart;
+	}
+
+	public int getTargetEnd(){
+		return targetEnd;
+	}
+
+	public String getAlignedQuery(){
+		return alignedQuery;
+	}
+
+	public String getAlignedTarget(){
+		return alignedTarget;
+	}
+
+	public String getMidline(){
+		return midline;
+	}
+
+	public int getIdentities(){
+		return identities;
+	}
+
+	public int getPositives(){
+		return positives;
+	}
+
+	public int getGaps(){
+		return gaps;
+	}
+
+	/**
+	 * Retrieves the length of the alignment, including gaps.
+	 * @return
+	 */
+	public int getLength(){
+		return alignedQuery.length();
+	}
+
+	@Override
+	public String toString(){
+		return "score=" + score + " query " + queryStart + "-" + queryEnd + " target " + targetStart + "-" + targetEnd
+				+ "\n" + alignedQuery + "\n" + midline + "\n" + alignedTarget;
+	}
+}
@@ -0,0 +1,177 @@
+package com.algosome.eutils.align;
+
+/**
+ * An index of every k-mer (word of k letters) in a SequenceDatabase, used to find seeds: positions where
+ * a query shares a word with a database sequence. The index is held as two arrays - the start of each
+ * bucket, and the positions in each bucket - so it is compact and fast to build for databases of a few
+ * thousand sequences. Words containing letters outside the alphabet of the scores are not indexed.</p>
+ * <p>Words are hashed into a fixed number of buckets when there are more possible words than buckets, so a
+ * bucket may hold positions of other words. Such false seeds cost only a little extension work, as the
+ * extension scores the actual letters.
+ * @author Greg Cope
+ * @see SmithWaterman
+ */
+public class KmerIndex {
+
+	/**Maximum number of buckets*/
+	private static final int MAX_BUCKETS = 1 << 22;
+
+	private final SequenceDatabase database;
+	private final ScoringMatrix matrix;
+	private final int k;
+	private final int alphabetSize;
+	private final int buckets;
+
+	/*Number of words of k - 1 letters, by which a word is reduced before a letter is appended*/
+	private final long span;
+
+	/*Start of each bucket in positions, with the number of positions last*/
+	private final int[] starts;
+
+	/*Positions of every indexed word: sequence index and position packed together*/
+	private final long[] positions;
+
+	/**
+	 * Builds an index.
+	 * @param database The sequences to index.
+	 * @param matrix The scores, whose alphabet defines the indexed letters.
+	 * @param k The length of each word.
+	 */
+	public KmerIndex(SequenceDatabase database, ScoringMatrix matrix, int k){
+		if ( k < 1 ){
+			throw new IllegalArgumentException("Word size must be at least 1: " + k);
+		}
+		this.database = database;
+		this.matrix = matrix;
+		this.k = k;
+		this.alphabetSize = matrix.getAlphabet().length();
+		double words = Math.pow(alphabetSize, k);
+		if ( words >= Long.MAX_VALUE / alphabetSize ){
+			throw new IllegalArgumentException("Word size too large: " + k);
+		}
+		this.buckets = words < MAX_BUCKETS ? (int)words : MAX_BUCKETS;
+		this.span = (long)Math.pow(alphabetSize, k - 1);
+		//count the words in each bucket, then place them
+		starts = new int[buckets + 1];
+		for ( int s = 0; s < database.size(); s++ ){
+			String sequence = database.getSequence(s);
+			long word = 0;
+			int valid = 0;
+			for ( int i = 0; i < sequence.length(); i++ ){
+				int code = matrix.code(sequence.charAt(i));
+				if ( code < 0 ){
+					valid = 0;
+					word = 0;
+					continue;
+				}
+				word = roll(word, code);
+				if ( ++valid >= k ){
+					starts[bucket(word) + 1]++;
+				}
+			}
+		}
+		for ( int b = 0; b < buckets; b++ ){
+			starts[b + 1] += starts[b];
+		}
+		positions = new long[starts[buckets]];
+		int[] next = new int[buckets];
+		System.arraycopy(starts, 0, next, 0, buckets);
+		for ( int s = 0; s < database.size(); s++ ){
+			String sequence = database.getSequence(s);
+			long word = 0;
+			int valid = 0;
+			for ( int i = 0; i < sequence.length(); i++ ){
+				int code = matrix.code(sequence.charAt(i));
+				if ( code < 0 ){
+					valid = 0;
+					word = 0;
+					continue;
+				}
+				word = roll(word, code);
+				if ( ++valid >= k ){
+					positions[next[bucket(word)]++] = pack(s, i - k + 1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the indexed sequences.
+	 * @return
+	 */
+	public SequenceDatabase getDatabase(){
+		return database;
+	}
+
+	/**
+	 * Retrieves the scores the index was built with.
+	 * @return
+	 */
+	public ScoringMatrix getMatrix(){
+		return matrix;
+	}
+
+	/**
+	 * Retrieves the length of each word.
+	 * @return
+	 */
+	public int getWordSize(){
+		return k;
+	}
+
+	/**
+	 * Finds the seeds of a query: every position in the database sharing a word with the query.
+	 * @param query
+	 * @param visitor Receives each seed.
+	 */
+	public void findSeeds(String query, SeedVisitor visitor){
+		long word = 0;
+		int valid = 0;
+		for ( int i = 0; i < query.length(); i++ ){
+			int code = matrix.code(query.charAt(i));
+			if ( code < 0 ){
+				valid = 0;
+				word = 0;
+				continue;
+			}
+			word = roll(word, code);
+			if ( ++valid >= k ){
+				int b = bucket(word);
+				int queryPosition = i - k + 1;
+				for ( int p = starts[b]; p < starts[b + 1]; p++ ){
+					long packed = positions[p];
+					visitor.seed(queryPosition, (int)(packed >>> 32), (int)packed);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Appends a letter to a word, dropping the first letter once the word has k letters.
+	 */
+	private long roll(long word, int code){
+		return (word % span) * alphabetSize + code;
+	}
+
+	private int bucket(long word){
+		return (int)(word % buckets);
+	}
+
+	private static long pack(int sequence, int position){
+		return ((long)sequence << 32) | (position & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Receives the seeds found for a query.
+	 */
+	public static interface SeedVisitor{
+
+		/**
+		 * Called for each seed.
+		 * @param queryPosition The zero based position of the word in the query.
+		 * @param sequence The index of the database sequence.
+		 * @param position The zero based position of the word in the database sequence.
+		 */
+		public void seed(int queryPosition, int sequence, int position);
+	}
+}
@@ -0,0 +1,62 @@
+package com.algosome.eutils.align;
+
+import java.util.Arrays;
+
+/**
+ * Scores targets one cell at a time, down each column of the dynamic programming matrix, in memory
+ * proportional to the query length. Used where the Vector API is not available.
+ * @author Greg Cope
+ */
+final class ScalarScoreKernel extends ScoreKernel{
+
+	private static final int NEGATIVE_INFINITY = Integer.MIN_VALUE / 2;
+
+	private final int[][] scores;
+	private final int m;
+	private final int open;
+	private final int extend;
+
+	/*H and E of the previous column, indexed by query position plus one*/
+	private final int[] h;
+	private final int[] e;
+
+	ScalarScoreKernel(ScoringMatrix matrix, String query){
+		this.scores = createScores(matrix, query);
+		this.m = query.length();
+		this.open = matrix.getGapOpen() + matrix.getGapExtend();
+		this.extend = matrix.getGapExtend();
+		this.h = new int[m + 1];
+		this.e = new int[m + 1];
+	}
+
+	@Override
+	int score(byte[] target, int length, int[] end){
+		Arrays.fill(h, 0);
+		Arrays.fill(e, NEGATIVE_INFINITY);
+		int best = 0;
+		end[0] = -1;
+		end[1] = -1;
+		for ( int j = 0; j < length; j++ ){
+			int[] column = scores[target[j]];
+			int diagonal = 0;
+			int above = 0;
+			int f = NEGATIVE_INFINITY;
+			for ( int i = 1; i <= m; i++ ){
+				int left = h[i];
+				int gapE = Math.max(e[i] - extend, left - open);
+				f = Math.max(f - extend, above - open);
+				int cell = Math.max(Math.max(diagonal + column[i - 1], 0), Math.max(gapE, f));
+				diagonal = left;
+				h[i] = cell;
+				e[i] = gapE;
+				above = cell;
+				if ( cell > best ){
+					best = cell;
+					end[0] = i - 1;
+					end[1] = j;
+				}
+			}
+		}
+		return best;
+	}
+}
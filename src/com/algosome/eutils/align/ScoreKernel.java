@@ -0,0 +1,62 @@
+package com.algosome.eutils.align;
+
+/**
+ * Computes the best local alignment score of a query, fixed when the kernel is created, against any
+ * number of targets, without the memory of a traceback. Targets are given as letter classes of the
+ * scoring matrix, so the query profile needs a column per class rather than per letter.
+ * @author Greg Cope
+ * @see StripedSmithWaterman
+ */
+abstract class ScoreKernel {
+
+	/**
+	 * Scores a target.
+	 * @param target The class of each target letter.
+	 * @param length The number of letters to score.
+	 * @param end Receives the zero based end of the best alignment in the query then the target, or -1
+	 * if the score is zero.
+	 * @return The best local alignment score.
+	 */
+	abstract int score(byte[] target, int length, int[] end);
+
+	/**
+	 * Encodes a sequence as letter classes.
+	 * @param matrix
+	 * @param sequence
+	 * @param start The first letter to encode.
+	 * @param end The position after the last letter to encode.
+	 * @param reverse Whether to encode the letters last first.
+	 * @param codes The array to encode into, or null to allocate one.
+	 * @return The codes, which may be longer than the number of letters.
+	 */
+	static byte[] encode(ScoringMatrix matrix, String sequence, int start, int end, boolean reverse, byte[] codes){
+		byte[] classes = matrix.getLetterClasses();
+		byte outside = (byte)(matrix.getClassLetters().length() - 1);
+		int length = end - start;
+		if ( codes == null || codes.length < length ){
+			codes = new byte[length];
+		}
+		for ( int i = 0; i < length; i++ ){
+			char c = sequence.charAt(reverse ? end - 1 - i : start + i);
+			codes[i] = c < 128 ? classes[c] : outside;
+		}
+		return codes;
+	}
+
+	/**
+	 * Creates the score of each query letter against each letter class.
+	 * @param matrix
+	 * @param query
+	 * @return Scores indexed by class then query position.
+	 */
+	static int[][] createScores(ScoringMatrix matrix, String query){
+		String letters = matrix.getClassLetters();
+		int[][] scores = new int[letters.length()][query.length()];
+		for ( int c = 0; c < letters.length(); c++ ){
+			for ( int i = 0; i < query.length(); i++ ){
+				scores[c][i] = matrix.score(query.charAt(i), letters.charAt(c));
+			}
+		}
+		return scores;
+	}
+}
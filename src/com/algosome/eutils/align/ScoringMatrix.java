@@ -0,0 +1,351 @@
+package com.algosome.eutils.align;
+
+import java.util.Arrays;
+
+/**
+ * Substitution scores for pairs of residues or bases, together with the gap costs and Karlin-Altschul
+ * parameters used to convert alignment scores to bit scores and E-values. Letters are compared case
+ * insensitively; letters outside the alphabet score as the worst mismatch.
+ * @author Greg Cope
+ * @see SmithWaterman
+ */
+public class ScoringMatrix {
+
+	private static final String BLOSUM62_ALPHABET = "ARNDCQEGHILKMFPSTWYVBZX*";
+
+	private static final int[][] BLOSUM62_SCORES = {
+		{ 4,-1,-2,-2, 0,-1,-1, 0,-2,-1,-1,-1,-1,-2,-1, 1, 0,-3,-2, 0,-2,-1, 0,-4},
+		{-1, 5, 0,-2,-3, 1, 0,-2, 0,-3,-2, 2,-1,-3,-2,-1,-1,-3,-2,-3,-1, 0,-1,-4},
+		{-2, 0, 6, 1,-3, 0, 0, 0, 1,-3,-3, 0,-2,-3,-2, 1, 0,-4,-2,-3, 3, 0,-1,-4},
+		{-2,-2, 1, 6,-3, 0, 2,-1,-1,-3,-4,-1,-3,-3,-1, 0,-1,-4,-3,-3, 4, 1,-1,-4},
+		{ 0,-3,-3,-3, 9,-3,-4,-3,-3,-1,-1,-3,-1,-2,-3,-1,-1,-2,-2,-1,-3,-3,-2,-4},
+		{-1, 1, 0, 0,-3, 5, 2,-2, 0,-3,-2, 1, 0,-3,-1, 0,-1,-2,-1,-2, 0, 3,-1,-4},
+		{-1, 0, 0, 2,-4, 2, 5,-2, 0,-3,-3, 1,-2,-3,-1, 0,-1,-3,-2,-2, 1, 4,-1,-4},
+		{ 0,-2, 0,-1,-3,-2,-2, 6,-2,-4,-4,-2,-3,-3,-2, 0,-2,-2,-3,-3,-1,-2,-1,-4},
+		{-2, 0, 1,-1,-3, 0, 0,-2, 8,-3,-3,-1,-2,-1,-2,-1,-2,-2, 2,-3, 0, 0,-1,-4},
+		{-1,-3,-3,-3,-1,-3,-3,-4,-3, 4, 2,-3, 1, 0,-3,-2,-1,-3,-1, 3,-3,-3,-1,-4},
+		{-1,-2,-3,-4,-1,-2,-3,-4,-3, 2, 4,-2, 2, 0,-3,-2,-1,-2,-1, 1,-4,-3,-1,-4},
+		{-1, 2, 0,-1,-3, 1, 1,-2,-1,-3,-2, 5,-1,-3,-1, 0,-1,-3,-2,-2, 0, 1,-1,-4},
+		{-1,-1,-2,-3,-1, 0,-2,-3,-2, 1, 2,-1, 5, 0,-2,-1,-1,-1,-1, 1,-3,-1,-1,-4},
+		{-2,-3,-3,-3,-2,-3,-3,-3,-1, 0, 0,-3, 0, 6,-4,-2,-2, 1, 3,-1,-3,-3,-1,-4},
+		{-1,-2,-2,-1,-3,-1,-1,-2,-2,-3,-3,-1,-2,-4, 7,-1,-1,-4,-3,-2,-2,-1,-2,-4},
+		{ 1,-1, 1, 0,-1, 0, 0, 0,-1,-2,-2, 0,-1,-2,-1, 4, 1,-3,-2,-2, 0, 0, 0,-4},
+		{ 0,-1, 0,-1,-1,-1,-1,-2,-2,-1,-1,-1,-1,-2,-1, 1, 5,-2,-2, 0,-1,-1, 0,-4},
+		{-3,-3,-4,-4,-2,-2,-3,-2,-2,-3,-2,-3,-1, 1,-4,-3,-2,11, 2,-3,-4,-3,-2,-4},
+		{-2,-2,-2,-3,-2,-1,-2,-3, 2,-1,-1,-2,-1, 3,-3,-2,-2, 2, 7,-1,-3,-2,-1,-4},
+		{ 0,-3,-3,-3,-1,-2,-2,-3,-3, 3, 1,-2, 1,-1,-2,-2, 0,-3,-1, 4,-3,-2,-1,-4},
+		{-2,-1, 3, 4,-3, 0, 1,-1, 0,-3,-4, 0,-3,-3,-2, 0,-1,-4,-3,-3, 4, 1,-1,-4},
+		{-1, 0, 0, 1,-3, 3, 4,-2, 0,-3,-3, 1,-1,-3,-1, 0,-1,-3,-2,-2, 1, 4,-1,-4},
+		{ 0,-1,-1,-1,-2,-1,-1,-1,-1,-1,-1,-1,-1,-1,-2, 0, 0,-2,-1,-1,-1,-1,-1,-4},
+		{-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4,-4, 1}
+	};
+
+	/**BLOSUM62 with gap open 11 and extend 1, the blastp defaults*/
+	public static final ScoringMatrix BLOSUM62 = createBlosum62();
+
+	/**Nucleotide scores with match 2, mismatch -3, gap open 5 and extend 2, the blastn defaults*/
+	public static final ScoringMatrix NUCLEOTIDE = nucleotide(2, -3, 5, 2, 0.625, 0.41);
+
+	private final String name;
+
+	private final String alphabet;
+
+	/*Score of each pair of letters, indexed by character*/
+	private final int[][] scores = new int[128][128];
+
+	/*Index of each letter in the alphabet, or -1*/
+	private final byte[] codes = new byte[128];
+
+	private final int gapOpen;
+	private final int gapExtend;
+	private final double lambda;
+	private final double k;
+	private final boolean nucleotide;
+	private int maxScore = Integer.MIN_VALUE;
+
+	/*Class of each letter, letters scoring the same against every letter sharing a class, and a letter of each class*/
+	private byte[] letterClasses = null;
+	private String classLetters = null;
+
+	private ScoringMatrix(String name, String alphabet, int gapOpen, int gapExtend, double lambda, double k, boolean nucleotide){
+		this.name = name;
+		this.alphabet = alphabet;
+		this.gapOpen = gapOpen;
+		this.gapExtend = gapExtend;
+		this.lambda = lambda;
+		this.k = k;
+		this.nucleotide = nucleotide;
+		Arrays.fill(codes, (byte)-1);
+		for ( int i = 0; i < alphabet.length(); i++ ){
+			char c = alphabet.charAt(i);
+			codes[c] = (byte)i;
+			codes[Character.toLowerCase(c)] = (byte)i;
+		}
+	}
+
+	/**
+	 * Creates nucleotide scores.
+	 * @param match The score of a matching base.
+	 * @param mismatch The score of a mismatch, usually negative.
+	 * @param gapOpen The cost of opening a gap, not including its first extension.
+	 * @param gapExtend The cost of each base in a gap.
+	 * @param lambda The Karlin-Altschul lambda of these scores.
+	 * @param k The Karlin-Altschul K of these scores.
+	 * @return
+	 */
+	public static ScoringMatrix nucleotide(int match, int mismatch, int gapOpen, int gapExtend, double lambda, double k){
+		ScoringMatrix matrix = new ScoringMatrix("NUCLEOTIDE", "ACGT", gapOpen, gapExtend, lambda, k, true);
+		for ( int a = 0; a < 128; a++ ){
+			for ( int b = 0; b < 128; b++ ){
+				matrix.scores[a][b] = mismatch;
+			}
+		}
+		String bases = "ACGTUacgtu";
+		for ( int i = 0; i < bases.length(); i++ ){
+			for ( int j = 0; j < bases.length(); j++ ){
+				char a = Character.toUpperCase(bases.charAt(i));
+				char b = Character.toUpperCase(bases.charAt(j));
+				if ( a == 'U' ){
+					a = 'T';
+				}
+				if ( b == 'U' ){
+					b = 'T';
+				}
+				matrix.scores[bases.charAt(i)][bases.charAt(j)] = a == b ? match : mismatch;
+			}
+		}
+		matrix.codes['U'] = matrix.codes['T'];
+		matrix.codes['u'] = matrix.codes['T'];
+		matrix.maxScore = match;
+		return matrix;
+	}
+
+	/**
+	 * Creates nucleotide scores, calculating lambda for the match and mismatch scores with equal base
+	 * frequencies. K is that of the blastn defaults, so E-values of other scores are approximate.
+	 * @param match The score of a matching base.
+	 * @param mismatch The score of a mismatch, which must be negative.
+	 * @param gapOpen The cost of opening a gap, not including its first extension.
+	 * @param gapExtend The cost of each base in a gap.
+	 * @return
+	 */
+	public static ScoringMatrix nucleotide(int match, int mismatch, int gapOpen, int gapExtend){
+		if ( match == 2 && mismatch == -3 ){
+			return nucleotide(match, mismatch, gapOpen, gapExtend, NUCLEOTIDE.lambda, NUCLEOTIDE.k);
+		}
+		if ( match <= 0 || mismatch >= 0 ){
+			throw new IllegalArgumentException("Match must be positive and mismatch negative: " + match + "/" + mismatch);
+		}
+		//solve 1/4 e^(lambda match) + 3/4 e^(lambda mismatch) = 1 by bisection
+		double lo = 0;
+		double hi = 1;
+		while ( 0.25 * Math.exp(hi * match) + 0.75 * Math.exp(hi * mismatch) < 1 ){
+			hi *= 2;
+		}
+		for ( int i = 0; i < 60; i++ ){
+			double mid = (lo + hi) / 2;
+			if ( 0.25 * Math.exp(mid * match) + 0.75 * Math.exp(mid * mismatch) < 1 ){
+				lo = mid;
+			}else{
+				hi = mid;
+			}
+		}
+		return nucleotide(match, mismatch, gapOpen, gapExtend, (lo + hi) / 2, NUCLEOTIDE.k);
+	}
+
+	/**
+	 * Retrieves protein scores by name, as given by the MATRIX_NAME parameter of a BLAST search.
+	 * @param name The name of the matrix. Only BLOSUM62 is available.
+	 * @return The scores, with the default gap costs of the matrix.
+	 * @throws IllegalArgumentException if the matrix is not available.
+	 */
+	public static ScoringMatrix forName(String name){
+		if ( BLOSUM62.name.equalsIgnoreCase(name.trim()) ){
+			return BLOSUM62;
+		}
+		throw new IllegalArgumentException("Unsupported scoring matrix: " + name);
+	}
+
+	/**
+	 * Creates a copy of these scores with different gap costs. Lambda and K are unchanged, so E-values
+	 * calculated with gap costs other than the defaults of the matrix are approximate.
+	 * @param gapOpen The cost of opening a gap, not including its first extension.
+	 * @param gapExtend The cost of each letter in a gap.
+	 * @return
+	 */
+	public ScoringMatrix withGapCosts(int gapOpen, int gapExtend){
+		if ( gapOpen == this.gapOpen && gapExtend == this.gapExtend ){
+			return this;
+		}
+		ScoringMatrix matrix = new ScoringMatrix(name, alphabet, gapOpen, gapExtend, lambda, k, nucleotide);
+		for ( int a = 0; a < 128; a++ ){
+			System.arraycopy(scores[a], 0, matrix.scores[a], 0, 128);
+		}
+		System.arraycopy(codes, 0, matrix.codes, 0, 128);
+		matrix.maxScore = maxScore;
+		return matrix;
+	}
+
+	private static ScoringMatrix createBlosum62(){
+		ScoringMatrix matrix = new ScoringMatrix("BLOSUM62", "ARNDCQEGHILKMFPSTWYV", 11, 1, 0.267, 0.041, false);
+		int worst = -4;
+		for ( int a = 0; a < 128; a++ ){
+			for ( int b = 0; b < 128; b++ ){
+				matrix.scores[a][b] = worst;
+			}
+		}
+		for ( int i = 0; i < BLOSUM62_ALPHABET.length(); i++ ){
+			for ( int j = 0; j < BLOSUM62_ALPHABET.length(); j++ ){
+				char a = BLOSUM62_ALPHABET.charAt(i);
+				char b = BLOSUM62_ALPHABET.charAt(j);
+				int score = BLOSUM62_SCORES[i][j];
+				matrix.scores[a][b] = score;
+				matrix.scores[Character.toLowerCase(a)][b] = score;
+				matrix.scores[a][Character.toLowerCase(b)] = score;
+				matrix.scores[Character.toLowerCase(a)][Character.toLowerCase(b)] = score;
+				matrix.maxScore = Math.max(matrix.maxScore, score);
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Retrieves the score of aligning two letters.
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public int score(char a, char b){
+		if ( a >= 128 || b >= 128 ){
+			return scores['*']['A'];
+		}
+		return scores[a][b];
+	}
+
+	/**
+	 * Retrieves the class of every letter. Letters scoring the same against every letter share a class,
+	 * so a query profile needs a column for each class rather than each letter. Letters outside ASCII
+	 * are in the class of the last letter in the class letters.
+	 * @return The class of each ASCII letter.
+	 * @see #getClassLetters()
+	 */
+	synchronized byte[] getLetterClasses(){
+		if ( letterClasses == null ){
+			byte[] classes = new byte[128];
+			StringBuilder letters = new StringBuilder();
+			for ( int a = 0; a < 128; a++ ){
+				int match = -1;
+				for ( int c = 0; c < letters.length() && match == -1; c++ ){
+					if ( Arrays.equals(scores[a], scores[letters.charAt(c)]) && sameColumn(a, letters.charAt(c)) ){
+						match = c;
+					}
+				}
+				if ( match == -1 ){
+					match = letters.length();
+					letters.append((char)a);
+				}
+				classes[a] = (byte)match;
+			}
+			letters.append((char)128);
+			letterClasses = classes;
+			classLetters = letters.toString();
+		}
+		return letterClasses;
+	}
+
+	/**
+	 * Retrieves a letter of each class.
+	 * @return
+	 * @see #getLetterClasses()
+	 */
+	synchronized String getClassLetters(){
+		getLetterClasses();
+		return classLetters;
+	}
+
+	private boolean sameColumn(int a, int b){
+		for ( int i = 0; i < 128; i++ ){
+			if ( scores[i][a] != scores[i][b] ){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Retrieves the index of a letter in the alphabet of these scores, used to index k-mers.
+	 * @param c
+	 * @return The index, or -1 if the letter is not in the alphabet (such as an ambiguity code).
+	 */
+	public int code(char c){
+		return c < 128 ? codes[c] : -1;
+	}
+
+	/**
+	 * Retrieves the letters of the alphabet, which are indexed by code.
+	 * @return
+	 */
+	public String getAlphabet(){
+		return alphabet;
+	}
+
+	/**
+	 * Retrieves the name of the matrix, for example BLOSUM62.
+	 * @return
+	 */
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * Retrieves the cost of opening a gap, not including its first extension.
+	 * @return
+	 */
+	public int getGapOpen(){
+		return gapOpen;
+	}
+
+	/**
+	 * Retrieves the cost of each letter in a gap.
+	 * @return
+	 */
+	public int getGapExtend(){
+		return gapExtend;
+	}
+
+	/**
+	 * Retrieves the highest score of any pair of letters.
+	 * @return
+	 */
+	public int getMaxScore(){
+		return maxScore;
+	}
+
+	/**
+	 * Determines if these are nucleotide scores.
+	 * @return
+	 */
+	public boolean isNucleotide(){
+		return nucleotide;
+	}
+
+	/**
+	 * Converts a raw score to a bit score.
+	 * @param score
+	 * @return
+	 */
+	public double bitScore(int score){
+		return (lambda * score - Math.log(k)) / Math.log(2);
+	}
+
+	/**
+	 * Calculates the expected number of alignments scoring at least the given score by chance.
+	 * @param score The raw score.
+	 * @param queryLength The length of the query.
+	 * @param databaseLength The total length of the database.
+	 * @return
+	 */
+	public double evalue(int score, long queryLength, long databaseLength){
+		return k * queryLength * (double)databaseLength * Math.exp(-lambda * score);
+	}
+}
@@ -0,0 +1,116 @@
+package com.algosome.eutils.align;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A set of sequences held in memory, read from a FASTA file. Each sequence has an ID (the first word of
+ * its definition line) and a definition (the rest of the line). Whitespace is removed from sequences and
+ * letters are upper cased.
+ * @author Greg Cope
+ * @see KmerIndex
+ */
+public class SequenceDatabase {
+
+	private final String name;
+	private final List<String> ids = new ArrayList<String>();
+	private final List<String> definitions = new ArrayList<String>();
+	private final List<String> sequences = new ArrayList<String>();
+	private long totalLength = 0;
+
+	/**
+	 * Reads a database from a FASTA file.
+	 * @param fasta
+	 * @throws IOException
+	 */
+	public SequenceDatabase(File fasta) throws IOException{
+		this(fasta.getName(), new InputStreamReader(new FileInputStream(fasta), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads a database from FASTA formatted text. The reader is closed once read.
+	 * @param name The name of the database, reported as the database searched.
+	 * @param fasta
+	 * @throws IOException
+	 */
+	public SequenceDatabase(String name, Reader fasta) throws IOException{
+		this.name = name;
+		BufferedReader reader = new BufferedReader(fasta);
+		try{
+			String line;
+			StringBuilder sequence = null;
+			while ( (line = reader.readLine()) != null ){
+				if ( line.startsWith(">") ){
+					if ( sequence != null ){
+						addSequence(sequence.toString());
+					}
+					String header = line.substring(1).trim();
+					int space = header.indexOf(' ');
+					ids.add(space == -1 ? header : header.substring(0, space));
+					definitions.add(space == -1 ? "" : header.substring(space + 1).trim());
+					sequence = new StringBuilder();
+				}else if ( sequence != null ){
+					for ( int i = 0; i < line.length(); i++ ){
+						char c = line.charAt(i);
+						if ( !Character.isWhitespace(c) ){
+							sequence.append(Character.toUpperCase(c));
+						}
+					}
+				}
+			}
+			if ( sequence != null ){
+				addSequence(sequence.toString());
+			}
+		}finally{
+			reader.close();
+		}
+	}
+
+	private void addSequence(String sequence){
+		sequences.add(sequence);
+		totalLength += sequence.length();
+	}
+
+	/**
+	 * Retrieves the name of the database.
+	 * @return
+	 */
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * Retrieves the number of sequences.
+	 * @return
+	 */
+	public int size(){
+		return sequences.size();
+	}
+
+	/**
+	 * Retrieves the total length of all sequences, used to calculate E-values.
+	 * @return
+	 */
+	public long getTotalLength(){
+		return totalLength;
+	}
+
+	public String getId(int index){
+		return ids.get(index);
+	}
+
+	public String getDefinition(int index){
+		return definitions.get(index);
+	}
+
+	public String getSequence(int index){
+		return sequences.get(index);
+	}
+}
@@ -0,0 +1,233 @@
+package com.algosome.eutils.align;
+
+import java.util.Arrays;
+
+/**
+ * Smith-Waterman local alignment with affine gap costs (Gotoh). The alignment can be restricted to a band
+ * of diagonals around a seed diagonal, so the work is proportional to the length of the query times the width
+ * of the band rather than the product of the sequence lengths - which is how a seed found by a KmerIndex is
+ * extended to a gapped alignment.
+ * <pre>
+ * SmithWaterman sw = new SmithWaterman(ScoringMatrix.BLOSUM62);
+ * Alignment full = sw.align(query, target);
+ * Alignment banded = sw.align(query, target, seedDiagonal, 16);
+ * </pre>
+ * @author Greg Cope
+ */
+public class SmithWaterman {
+
+	private static final int NEGATIVE_INFINITY = Integer.MIN_VALUE / 2;
+
+	/*Traceback: the source of each H cell, and whether E and F were extended rather than opened*/
+	private static final byte FROM_ZERO = 0;
+	private static final byte FROM_DIAGONAL = 1;
+	private static final byte FROM_E = 2;
+	private static final byte FROM_F = 3;
+	private static final byte SOURCE = 3;
+	private static final byte E_EXTENDED = 4;
+	private static final byte F_EXTENDED = 8;
+
+	private final ScoringMatrix matrix;
+
+	/**
+	 * Constructs a new aligner.
+	 * @param matrix The scores and gap costs.
+	 */
+	public SmithWaterman(ScoringMatrix matrix){
+		this.matrix = matrix;
+	}
+
+	/**
+	 * Retrieves the scores and gap costs.
+	 * @return
+	 */
+	public ScoringMatrix getMatrix(){
+		return matrix;
+	}
+
+	/**
+	 * Finds the best local alignment of the whole query and target.
+	 * @param query
+	 * @param target
+	 * @return The alignment, or null if no pair of letters scores above zero.
+	 */
+	public Alignment align(String query, String target){
+		return alignDiagonals(query, target, -query.length(), target.length());
+	}
+
+	/**
+	 * Finds the best local alignment within a band of diagonals. The diagonal of a pair of positions is the
+	 * target position minus the query position (zero based), so a seed at query position i and target position
+	 * j lies on diagonal j - i.
+	 * @param query
+	 * @param target
+	 * @param diagonal The diagonal the band is centred on.
+	 * @param bandWidth The number of diagonals either side of the centre included in the band.
+	 * @return The alignment, or null if no pair of letters in the band scores above zero.
+	 */
+	public Alignment align(String query, String target, int diagonal, int bandWidth){
+		return alignDiagonals(query, target, diagonal - bandWidth, diagonal + bandWidth);
+	}
+
+	/*
+	 * Aligns within the diagonals lo to hi inclusive.
+	 */
+	private Alignment alignDiagonals(String query, String target, int lo, int hi){
+		int m = query.length();
+		int n = target.length();
+		lo = Math.max(lo, -m);
+		hi = Math.min(hi, n);
+		if ( m == 0 || n == 0 || lo > hi ){
+			return null;
+		}
+		int width = hi - lo + 1;
+		int open = matrix.getGapOpen() + matrix.getGapExtend();
+		int extend = matrix.getGapExtend();
+		//index k of row i holds column j = i + lo + k; row 0 and column 0 are the zero boundary
+		int[] prevH = new int[width + 1];
+		int[] prevF = new int[width + 1];
+		int[] curH = new int[width + 1];
+		int[] curE = new int[width + 1];
+		int[] curF = new int[width + 1];
+		Arrays.fill(prevF, NEGATIVE_INFINITY);
+		byte[][] trace = new byte[m + 1][width];
+		int best = 0;
+		int bestI = 0;
+		int bestJ = 0;
+		for ( int i = 1; i <= m; i++ ){
+			Arrays.fill(curH, 0);
+			Arrays.fill(curE, NEGATIVE_INFINITY);
+			Arrays.fill(curF, NEGATIVE_INFINITY);
+			char q = query.charAt(i - 1);
+			int kStart = Math.max(0, 1 - i - lo);
+			int kEnd = Math.min(width - 1, n - i - lo);
+			byte[] row = trace[i];
+			for ( int k = kStart; k <= kEnd; k++ ){
+				int j = i + lo + k;
+				byte t = 0;
+				//gap in the query, from the left
+				int e;
+				if ( k > 0 ){
+					int extendE = curE[k - 1] - extend;
+					int openE = curH[k - 1] - open;
+					if ( extendE > openE ){
+						e = extendE;
+						t |= E_EXTENDED;
+					}else{
+						e = openE;
+					}
+				}else{
+					e = NEGATIVE_INFINITY;
+				}
+				//gap in the target, from above
+				int f;
+				int extendF = prevF[k + 1] - extend;
+				int openF = prevH[k + 1] - open;
+				if ( extendF > openF ){
+					f = extendF;
+					t |= F_EXTENDED;
+				}else{
+					f = openF;
+				}
+				int h = prevH[k] + matrix.score(q, target.charAt(j - 1));
+				byte source = FROM_DIAGONAL;
+				if ( e > h ){
+					h = e;
+					source = FROM_E;
+				}
+				if ( f > h ){
+					h = f;
+					source = FROM_F;
+				}
+				if ( h <= 0 ){
+					h = 0;
+					source = FROM_ZERO;
+				}
+				curH[k] = h;
+				curE[k] = e;
+				curF[k] = f;
+				row[k] = (byte)(t | source);
+				if ( h > best ){
+					best = h;
+					bestI = i;
+					bestJ = j;
+				}
+			}
+			int[] swap = prevH;
+			prevH = curH;
+			curH = swap;
+			swap = prevF;
+			prevF = curF;
+			curF = swap;
+		}
+		if ( best == 0 ){
+			return null;
+		}
+		return traceback(query, target, trace, lo, best, bestI, bestJ);
+	}
+
+	/*
+	 * Builds the alignment ending at the best cell by following the traceback.
+	 */
+	private Alignment traceback(String query, String target, byte[][] trace, int lo, int score, int endI, int endJ){
+		StringBuilder alignedQuery = new StringBuilder();
+		StringBuilder alignedTarget = new StringBuilder();
+		StringBuilder midline = new StringBuilder();
+		int identities = 0;
+		int positives = 0;
+		int gaps = 0;
+		int i = endI;
+		int j = endJ;
+		byte state = FROM_DIAGONAL;
+		boolean nucleotide = matrix.isNucleotide();
+		while ( i > 0 && j > 0 ){
+			byte cell = trace[i][j - i - lo];
+			if ( state == FROM_DIAGONAL ){
+				byte source = (byte)(cell & SOURCE);
+				if ( source == FROM_ZERO ){
+					break;
+				}
+				if ( source != FROM_DIAGONAL ){
+					state = source;
+					continue;
+				}
+				char q = query.charAt(i - 1);
+				char t = target.charAt(j - 1);
+				alignedQuery.append(q);
+				alignedTarget.append(t);
+				if ( Character.toUpperCase(q) == Character.toUpperCase(t) ){
+					identities++;
+					positives++;
+					midline.append(nucleotide ? '|' : Character.toUpperCase(q));
+				}else if ( matrix.score(q, t) > 0 ){
+					positives++;
+					midline.append('+');
+				}else{
+					midline.append(' ');
+				}
+				i--;
+				j--;
+			}else if ( state == FROM_E ){
+				alignedQuery.append('-');
+				alignedTarget.append(target.charAt(j - 1));
+				midline.append(' ');
+				gaps++;
+				if ( (cell & E_EXTENDED) == 0 ){
+					state = FROM_DIAGONAL;
+				}
+				j--;
+			}else{
+				alignedQuery.append(query.charAt(i - 1));
+				alignedTarget.append('-');
+				midline.append(' ');
+				gaps++;
+				if ( (cell & F_EXTENDED) == 0 ){
+					state = FROM_DIAGONAL;
+				}
+				i--;
+			}
+		}
+		return new Alignment(score, i + 1, endI, j + 1, endJ, alignedQuery.reverse().toString(), alignedTarget.reverse().toString(),
+				midline.reverse().toString(), identities, positives, gaps);
+	}
+}
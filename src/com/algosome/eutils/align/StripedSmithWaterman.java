@@ -0,0 +1,153 @@
+package com.algosome.eutils.align;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Aligns one query against many targets, as when rescoring the hits of a BLAST search with exact local
+ * alignments. The query profile is built once, and targets are scored with striped Smith-Waterman using
+ * the Vector API when the jdk.incubator.vector module is present, or one cell at a time otherwise. Scores
+ * are identical to those of SmithWaterman with the same ScoringMatrix.</p>
+ * <p>The vector kernel is compiled from the separate src-vector source root, with
+ * <code>--add-modules jdk.incubator.vector</code>, and is loaded reflectively, so the library compiles and
+ * runs without the module. Run with <code>--add-modules jdk.incubator.vector</code> to use vectors.</p>
+ * <p>Scoring needs memory proportional to the query length only. An alignment is built by scoring the
+ * target to find where the best alignment ends, scoring the reversed sequences up to that end to find
+ * where it starts, then aligning only that region with a traceback.</p>
+ * <p>Instances are not thread safe; use one per thread.
+ * <pre>
+ * StripedSmithWaterman sw = new StripedSmithWaterman(put.getScoringMatrix(), query);
+ * for ( String target : targets ){
+ * 	int score = sw.score(target);
+ * }
+ * </pre>
+ * Vectors can be disabled with the system property com.algosome.eutils.align.vector=false.
+ * @author Greg Cope
+ * @see SmithWaterman
+ */
+public class StripedSmithWaterman {
+
+	private static final Logger logger = Logger.getLogger(StripedSmithWaterman.class);
+
+	/*Name of the kernel compiled from src-vector*/
+	private static final String VECTOR_KERNEL = "com.algosome.eutils.align.VectorScoreKernel";
+
+	/*Constructs the vector kernel, or null if vectors are not used*/
+	private static final Constructor<? extends ScoreKernel> VECTOR_CONSTRUCTOR = findVectorKernel();
+
+	private final ScoringMatrix matrix;
+	private final String query;
+	private final ScoreKernel kernel;
+	private final int[] end = new int[2];
+	private byte[] codes = new byte[256];
+
+	/**
+	 * Constructs an aligner for a query, building its profile.
+	 * @param matrix The scores and gap costs.
+	 * @param query
+	 */
+	public StripedSmithWaterman(ScoringMatrix matrix, String query){
+		this.matrix = matrix;
+		this.query = query;
+		this.kernel = createKernel(matrix, query);
+	}
+
+	/**
+	 * Determines whether targets are scored with the Vector API.
+	 * @return
+	 */
+	public static boolean isVectorized(){
+		return VECTOR_CONSTRUCTOR != null;
+	}
+
+	public ScoringMatrix getMatrix(){
+		return matrix;
+	}
+
+	public String getQuery(){
+		return query;
+	}
+
+	/**
+	 * Scores the best local alignment of the query and a target.
+	 * @param target
+	 * @return The score, zero if no pair of letters scores above zero.
+	 */
+	public int score(String target){
+		codes = ScoreKernel.encode(matrix, target, 0, target.length(), false, codes);
+		return kernel.score(codes, target.length(), end);
+	}
+
+	/**
+	 * Finds the best local alignment of the query and a target.
+	 * @param target
+	 * @return The alignment, or null if no pair of letters scores above zero.
+	 */
+	public Alignment align(String target){
+		int score = score(target);
+		if ( score == 0 ){
+			return null;
+		}
+		int queryEnd = end[0];
+		int targetEnd = end[1];
+		//the start of the alignment is the end of the best alignment of the reversed sequences up to its end
+		ScoreKernel reverse = createKernel(matrix, new StringBuilder(query.substring(0, queryEnd + 1)).reverse().toString());
+		codes = ScoreKernel.encode(matrix, target, 0, targetEnd + 1, true, codes);
+		int reverseScore = reverse.score(codes, targetEnd + 1, end);
+		if ( reverseScore != score ){
+			throw new IllegalStateException("Reverse score " + reverseScore + " differs from score " + score);
+		}
+		int queryStart = queryEnd - end[0];
+		int targetStart = targetEnd - end[1];
+		Alignment region = new SmithWaterman(matrix).align(query.substring(queryStart, queryEnd + 1), target.substring(targetStart, targetEnd + 1));
+		return new Alignment(region.getScore(), region.getQueryStart() + queryStart, region.getQueryEnd() + queryStart,
+				region.getTargetStart() + targetStart, region.getTargetEnd() + targetStart, region.getAlignedQuery(), region.getAlignedTarget(),
+				region.getMidline(), region.getIdentities(), region.getPositives(), region.getGaps());
+	}
+
+	/*
+	 * Creates the vector kernel for a query if vectors are used, otherwise the scalar kernel.
+	 */
+	static ScoreKernel createKernel(ScoringMatrix matrix, String query){
+		if ( VECTOR_CONSTRUCTOR == null ){
+			return new ScalarScoreKernel(matrix, query);
+		}
+		try{
+			return VECTOR_CONSTRUCTOR.newInstance(matrix, query);
+		}catch(InvocationTargetException e){
+			if ( e.getCause() instanceof RuntimeException ){
+				throw (RuntimeException)e.getCause();
+			}
+			if ( e.getCause() instanceof Error ){
+				throw (Error)e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}catch(ReflectiveOperationException e){
+			throw new IllegalStateException("Unable to create " + VECTOR_KERNEL, e);
+		}
+	}
+
+	/*
+	 * Vectors are used if the vector kernel was compiled, the incubator module is present and the hardware has
+	 * at least four int lanes, below which the striped layout costs more than it saves.
+	 */
+	private static Constructor<? extends ScoreKernel> findVectorKernel(){
+		if ( "false".equalsIgnoreCase(System.getProperty("com.algosome.eutils.align.vector")) ){
+			return null;
+		}
+		try{
+			Class<? extends ScoreKernel> type = Class.forName(VECTOR_KERNEL).asSubclass(ScoreKernel.class);
+			int lanes = ((Integer)type.getDeclaredMethod("getLanes").invoke(null)).intValue();
+			logger.debug("Vector API available with " + lanes + " int lanes");
+			return lanes >= 4 ? type.getDeclaredConstructor(ScoringMatrix.class, String.class) : null;
+		}catch(ReflectiveOperationException e){
+			logger.debug("Vector kernel not available, scoring alignments without vectors: " + e);
+			return null;
+		}catch(LinkageError e){
+			logger.debug("Vector API not available, scoring alignments without vectors");
+			return null;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package com.algosome.eutils.blast;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -7,6 +8,8 @@ import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
+import com.algosome.eutils.net.Deadline;
+
 
 
 /**
@@ -62,6 +65,14 @@ public class Blast implements Runnable{
 	private final GetCommand getCommand;
 	
 	private volatile boolean keepGoing = true;
+	
+	private BlastPollingPolicy pollingPolicy = BlastPollingPolicy.getDefault();
+	
+	private BlastResultCache resultCache = null;
+
+	private BlastBackend backend = null;
+
+	private Deadline deadline = null;
 		
 	/**
 	 * Constructs a new Blast object based upon a get and put operation.
@@ -85,75 +96,136 @@ public class Blast implements Runnable{
     	return keepGoing;
     }
 
+    /**
+     * Sets the policy deciding how long to wait between polls. Defaults to the shared policy.
+     * @param pollingPolicy
+     * @see BlastPollingPolicy#getDefault()
+     */
+    public void setPollingPolicy(BlastPollingPolicy pollingPolicy){
+    	this.pollingPolicy = pollingPolicy;
+    }
+    
+    /**
+     * Retrieves the policy deciding how long to wait between polls.
+     * @return
+     */
+    public BlastPollingPolicy getPollingPolicy(){
+    	return pollingPolicy;
+    }
+    
+    /**
+     * Sets the cache the search is looked up in before it is put, and its result stored in.
+     * @param resultCache The cache, or null to not cache the result (the default).
+     */
+    public void setResultCache(BlastResultCache resultCache){
+    	this.resultCache = resultCache;
+    }
+
+    /**
+     * Sets the backend the search is run by in place of NCBI. The result cache is not used for searches run by a backend.
+     * @param backend The backend, or null to search at NCBI (the default).
+     * @see LocalBlastBackend
+     */
+    public void setBackend(BlastBackend backend){
+    	this.backend = backend;
+    }
+
+    /**
+     * Sets the deadline by which the search - the put, every poll and the retrieval of the result - must finish. 
+     * Once it passes the connection in use is closed and the search is abandoned.
+     * @param deadline The deadline, or null to poll until the search finishes (the default).
+     * @see Deadline#after(long)
+     */
+    public void setDeadline(Deadline deadline){
+    	this.deadline = deadline;
+    }
+
     public void run(){
     	long waitTime = 1000;
         try{
+            if ( backend != null ){
+            	backend.search(putCommand, getCommand);
+            	return;
+            }
+            if ( resultCache != null ){
+            	String key = BlastResultCache.createKey(putCommand, getCommand);
+            	try{
+            		if ( resultCache.load(key, getCommand) ){
+            			logger.info("Blast result read from cache");
+            			return;
+            		}
+            	}catch(IOException e){
+            		logger.warn("Unable to read cached blast result: " + e.getMessage());
+            		resultCache.remove(key);
+            	}
+            	getCommand.setKnownReady(false);
+            	getCommand.setRecorder(resultCache.record(key));
+            }
             try{
             	Thread.sleep(waitTime);
             }catch(Exception e){}
             logger.debug("Putting blast request");
-            QBlastRequest.runCommand(putCommand);
+            QBlastRequest.runCommand(putCommand, deadline);
             logger.info("Blast request ID = " + putCommand.getRequestID());
-            String wt = putCommand.getEstimatedWaitTime();
-            if (wt != null ){
-            	waitTime = Integer.parseInt(wt) * 1000;
-            }
+            BlastPollingPolicy.Schedule schedule = pollingPolicy.newSchedule(putCommand);
+            waitTime = schedule.getInitialDelay();
+            getCommand.setRequestID(putCommand.getRequestID());
+            //poll the status only, then retrieve the result once it is ready
+            GetCommand poll = getCommand.isSearchInfoPolling() ? getCommand.createSearchInfoCommand() : getCommand;
             do{
             	if ( !keepGoing ){
             		return;
             	}
-            	if ( wt == null ){
-            		waitTime = getWaitTime((int)waitTime);
+            	if ( deadline != null && waitTime >= deadline.getRemainingMillis() ){
+            		logger.error("Blast request " + putCommand.getRequestID() + " did not finish before its deadline");
+            		return;
             	}
-            	//logger.info("Wait time " + waitTime);
             	try{
             		if ( logger.isDebugEnabled() ){
-            			logger.debug("Waiting " + wt);
+            			logger.debug("Waiting " + waitTime);
             		}
             		
                 	Thread.sleep(waitTime);
                 }catch(Exception e){}
 
-                
-                getCommand.setRequestID(putCommand.getRequestID());
                 logger.debug("Checking NCBI for status");
                 try{
-                	QBlastRequest.runCommand(getCommand);
+                	QBlastRequest.runCommand(poll, deadline);
+                	if ( poll != getCommand && poll.getStatus().contains(GetCommand.STATUS_READY) ){
+                		logger.debug("Retrieving blast result");
+                		getCommand.setKnownReady(true);
+                		QBlastRequest.runCommand(getCommand, deadline);
+                	}
                 }
                 catch (Exception e){
-                	logger.error("An exception happened during connecting to ncbi site." + "Command is: " + getCommand  + "  Trying again...");
+                	//transient failures were already retried by runCommand; keep polling through them, but not through errors that will recur
+                	if ( e instanceof IOException && !QBlastRequest.getRetryPolicy().isRetryable((IOException)e) ){
+                		logger.error("Unable to check the status of blast request " + putCommand.getRequestID(), e);
+                		return;
+                	}
+                	logger.error("An exception happened during connecting to ncbi site." + "Command is: " + poll  + "  Trying again...");
                 	logger.error(e.getMessage(), e);
+                	waitTime = schedule.nextDelay(null);
                 	continue;
                 }
-                logger.info(getCommand.getStatus());
-                wt = getCommand.getEstimatedWaitTime();
-                if ( wt != null ){
-                	waitTime = Integer.parseInt(wt) * 1000;
+                String status = poll.getStatus();
+                logger.info(status);
+                if ( status.contains(GetCommand.STATUS_READY) ){
+                	schedule.completed();
+                	break;
                 }
-                
+                if ( status.contains(GetCommand.STATUS_FAILED) || status.contains(GetCommand.STATUS_UNKNOWN) ){
+                	logger.error("Blast request " + putCommand.getRequestID() + " finished with status " + status);
+                	return;
+                }
+                waitTime = schedule.nextDelay(poll);
             }
-            while (!getCommand.getStatus().contains(GetCommand.STATUS_READY)) ;
+            while (true) ;
         }
         catch (Exception e){
             e.printStackTrace();
         }
     }
-    
-    /**
-     * Retrieves a defined wait time. Simply starts at 1000, then goes to 3000, then 5000.
-     * @param waitTime
-     * @return
-     */
-    private long getWaitTime(int waitTime){
-    	switch(waitTime){
-	    	case 1000:
-	    		return 3000;
-	    	case 3000:
-	    		return 5000;
-	    	default:
-	    		return 1000;
-    	}
-    }
 
     
     public GetCommand getGetCommand(){
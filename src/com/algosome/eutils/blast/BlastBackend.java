@@ -0,0 +1,23 @@
+package com.algosome.eutils.blast;
+
+import java.io.IOException;
+
+/**
+ * Runs BLAST searches somewhere other than NCBI. A Blast or BlastJobManager given a backend passes each
+ * search to it instead of putting it to QBlast; the backend passes the result to the GetCommand as BLAST
+ * XML, so the same parsers - and the same typed results - are used wherever the search ran.
+ * @author Greg Cope
+ * @see LocalBlastBackend
+ * @see Blast#setBackend(BlastBackend)
+ * @see BlastJobManager#setBackend(BlastBackend)
+ */
+public interface BlastBackend {
+
+	/**
+	 * Runs a search, blocking until it completes.
+	 * @param put The search parameters, including the query.
+	 * @param get The command whose parser receives the result. Its status is READY once the result has been parsed.
+	 * @throws IOException if the search could not be run, or its result could not be parsed.
+	 */
+	public void search(PutCommand put, GetCommand get) throws IOException;
+}
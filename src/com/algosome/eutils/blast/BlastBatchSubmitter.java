@@ -0,0 +1,289 @@
+package com.algosome.eutils.blast;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Packs many short queries into multi-FASTA BLAST searches, so each batch of queries costs a single put,
+ * RID and polling loop rather than one per query. Queries are added to the current batch until it reaches
+ * the maximum number of queries or letters, at which point it is submitted to a BlastJobManager. The
+ * results of each batch are retrieved as XML and split back into the hits of each query, keyed by the
+ * ID given when the query was submitted.</p>
+ * <p>Each query is given a generated FASTA definition line within its batch, so query IDs need not be
+ * valid FASTA identifiers. The hits passed back report the query ID as both their query ID and definition.
+ * Queries with the same sequence in a batch are searched once, and each receives its own copy of the hits.
+ * If the BlastJobManager has a BlastResultCache, a batch identical to one already searched is read from it.
+ * <pre>
+ * PutCommand template = new PutCommand();
+ * template.setProgram("blastn");
+ * template.setDatabase("nt");
+ * BlastBatchSubmitter batches = new BlastBatchSubmitter(new BlastJobManager(), template);
+ * CompletableFuture&lt;List&lt;BlastHit&gt;&gt; hits = batches.submit("probe-17", "ACGTTGCA...");
+ * ...
+ * batches.flush();
+ * hits.get();
+ * </pre>
+ * @author Greg Cope
+ * @see BlastJobManager
+ */
+public class BlastBatchSubmitter {
+
+	private static final Logger logger = Logger.getLogger(BlastBatchSubmitter.class);
+
+	/**Default maximum number of queries in a batch*/
+	public static final int DEFAULT_MAX_QUERIES = 50;
+
+	/**Default maximum number of letters (residues or bases) in a batch*/
+	public static final int DEFAULT_MAX_LETTERS = 25000;
+
+	/*Prefix of the generated definition line of each query in a batch*/
+	private static final String QUERY_PREFIX = "q";
+
+	private final BlastJobManager manager;
+
+	private final PutCommand template;
+
+	private int maxQueries = DEFAULT_MAX_QUERIES;
+
+	private int maxLetters = DEFAULT_MAX_LETTERS;
+
+	private boolean includeAlignments = false;
+
+	/*The batch being filled. Guarded by this*/
+	private Batch batch = null;
+
+	private int batchCount = 0;
+
+	/**
+	 * Constructs a new submitter.
+	 * @param manager The manager each batch is submitted to.
+	 * @param template The search parameters of every batch. The query of the template is ignored.
+	 */
+	public BlastBatchSubmitter(BlastJobManager manager, PutCommand template){
+		this.manager = manager;
+		this.template = template;
+	}
+
+	/**
+	 * Sets the maximum number of queries in a batch.
+	 * @param maxQueries
+	 */
+	public synchronized void setMaxQueries(int maxQueries){
+		if ( maxQueries < 1 ){
+			throw new IllegalArgumentException("Maximum queries must be at least 1: " + maxQueries);
+		}
+		this.maxQueries = maxQueries;
+	}
+
+	/**
+	 * Sets the maximum number of letters in a batch. A query longer than this is submitted in a batch of its own.
+	 * @param maxLetters
+	 */
+	public synchronized void setMaxLetters(int maxLetters){
+		if ( maxLetters < 1 ){
+			throw new IllegalArgumentException("Maximum letters must be at least 1: " + maxLetters);
+		}
+		this.maxLetters = maxLetters;
+	}
+
+	/**
+	 * Sets whether the aligned sequences of each HSP are kept. Default is false.
+	 * @param include
+	 */
+	public synchronized void setIncludeAlignments(boolean include){
+		this.includeAlignments = include;
+	}
+
+	/**
+	 * Adds a query to the current batch, submitting the batch if it is full.
+	 * @param queryId The ID the hits of the query are returned under.
+	 * @param sequence The query sequence, with or without a FASTA definition line.
+	 * @return A future which completes with the hits of the query, in rank order, once its batch has completed.
+	 * The list is empty if the query has no hits.
+	 */
+	public synchronized CompletableFuture<List<BlastHit>> submit(String queryId, String sequence){
+		String residues = BlastResultCache.normalizeSequence(stripDefinition(sequence));
+		if ( batch != null && batch.contains(residues) ){
+			//the same sequence is already in the batch, share its results
+			return batch.add(queryId, residues);
+		}
+		int letters = residues.length();
+		if ( batch != null && (batch.size() >= maxQueries || batch.letters + letters > maxLetters) ){
+			flush();
+		}
+		if ( batch == null ){
+			batch = new Batch(includeAlignments);
+		}
+		CompletableFuture<List<BlastHit>> future = batch.add(queryId, residues);
+		if ( batch.size() >= maxQueries || batch.letters >= maxLetters ){
+			flush();
+		}
+		return future;
+	}
+
+	/**
+	 * Submits the current batch, if it contains any queries. Must be called after the last query has been
+	 * submitted.
+	 */
+	public synchronized void flush(){
+		if ( batch == null ){
+			return;
+		}
+		final Batch submitted = batch;
+		batch = null;
+		batchCount++;
+		PutCommand put = new PutCommand();
+		put.params.putAll(template.params);
+		put.setQuery(submitted.fasta.toString());
+		GetCommand get = new GetCommand();
+		get.params.put("FORMAT_TYPE", "XML");
+		get.setStreamingParser(submitted);
+		logger.debug("Submitting BLAST batch of " + submitted.size() + " queries, " + submitted.letters + " letters");
+		manager.submit(put, get).whenComplete(new BiConsumer<GetCommand, Throwable>(){
+			public void accept(GetCommand result, Throwable t){
+				submitted.complete(t);
+			}
+		});
+	}
+
+	/**
+	 * Retrieves the number of batches submitted.
+	 * @return
+	 */
+	public synchronized int getBatchCount(){
+		return batchCount;
+	}
+
+	/*
+	 * Removes the definition line of a FASTA formatted sequence.
+	 */
+	private static String stripDefinition(String sequence){
+		String s = sequence.trim();
+		if ( s.startsWith(">") ){
+			int end = s.indexOf('\n');
+			s = end == -1 ? "" : s.substring(end + 1);
+		}
+		return s;
+	}
+
+	/**
+	 * The queries of a single search, which splits the hits of the search between them. Queries with the same
+	 * sequence share a single entry in the search.
+	 */
+	private static final class Batch implements StreamingBlastParser, BlastHitHandler{
+
+		/*The IDs and futures of the queries of each sequence in the search*/
+		private final List<List<String>> ids = new ArrayList<List<String>>();
+		private final List<List<CompletableFuture<List<BlastHit>>>> futures = new ArrayList<List<CompletableFuture<List<BlastHit>>>>();
+		/*Index of each sequence in the search, by sequence and by generated definition line*/
+		private final Map<String, Integer> sequences = new HashMap<String, Integer>();
+		private final Map<String, Integer> index = new HashMap<String, Integer>();
+		private final StringBuilder fasta = new StringBuilder();
+		private final boolean includeAlignments;
+		private int letters = 0;
+
+		/*The hits of each sequence, rebuilt each time the output is parsed*/
+		private List<List<BlastHit>> hits;
+
+		Batch(boolean includeAlignments){
+			this.includeAlignments = includeAlignments;
+		}
+
+		int size(){
+			return ids.size();
+		}
+
+		boolean contains(String sequence){
+			return sequences.containsKey(sequence);
+		}
+
+		CompletableFuture<List<BlastHit>> add(String id, String sequence){
+			Integer i = sequences.get(sequence);
+			if ( i == null ){
+				i = Integer.valueOf(ids.size());
+				String key = QUERY_PREFIX + i;
+				sequences.put(sequence, i);
+				index.put(key, i);
+				ids.add(new ArrayList<String>(1));
+				futures.add(new ArrayList<CompletableFuture<List<BlastHit>>>(1));
+				fasta.append('>').append(key).append('\n').append(sequence).append('\n');
+				letters += sequence.length();
+			}
+			CompletableFuture<List<BlastHit>> future = new CompletableFuture<List<BlastHit>>();
+			ids.get(i.intValue()).add(id);
+			futures.get(i.intValue()).add(future);
+			return future;
+		}
+
+		public void parseBlastOutput(Reader reader) throws IOException{
+			hits = new ArrayList<List<BlastHit>>(ids.size());
+			for ( int i = 0; i < ids.size(); i++ ){
+				hits.add(new ArrayList<BlastHit>());
+			}
+			BlastXmlParser parser = new BlastXmlParser(this);
+			parser.setIncludeAlignments(includeAlignments);
+			parser.parseBlastOutput(reader);
+		}
+
+		public void hit(BlastHit hit){
+			Integer i = lookup(hit.getQueryDef());
+			if ( i == null ){
+				i = lookup(hit.getQueryId());
+			}
+			if ( i == null ){
+				logger.warn("BLAST hit " + hit.getId() + " for unknown query " + hit.getQueryId() + " " + hit.getQueryDef());
+				return;
+			}
+			String id = ids.get(i.intValue()).get(0);
+			hit.setQuery(id, id, hit.getQueryLength());
+			hits.get(i.intValue()).add(hit);
+		}
+
+		/*
+		 * Finds the query a definition line or ID refers to, allowing for a lcl| prefix.
+		 */
+		private Integer lookup(String key){
+			if ( key == null ){
+				return null;
+			}
+			key = key.trim();
+			int space = key.indexOf(' ');
+			if ( space != -1 ){
+				key = key.substring(0, space);
+			}
+			if ( key.startsWith("lcl|") ){
+				key = key.substring(4);
+			}
+			return index.get(key);
+		}
+
+		void complete(Throwable t){
+			for ( int i = 0; i < futures.size(); i++ ){
+				List<CompletableFuture<List<BlastHit>>> queries = futures.get(i);
+				List<BlastHit> found = hits == null ? new ArrayList<BlastHit>() : hits.get(i);
+				for ( int j = 0; j < queries.size(); j++ ){
+					if ( t != null ){
+						queries.get(j).completeExceptionally(t);
+					}else if ( j == 0 ){
+						queries.get(j).complete(found);
+					}else{
+						String id = ids.get(i).get(j);
+						List<BlastHit> copies = new ArrayList<BlastHit>(found.size());
+						for ( BlastHit hit : found ){
+							copies.add(hit.copyForQuery(id, id));
+						}
+						queries.get(j).complete(copies);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package com.algosome.eutils.blast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sequence in the searched database which BLAST aligned to a query, with its HSPs in rank order.
+ * Each hit also records the query it belongs to, so hits of a multiple query search can be told apart.
+ * @author Greg Cope
+ * @see BlastXmlParser
+ * @see BlastJsonParser
+ */
+public class BlastHit {
+
+	private String queryId = null;
+	private String queryDef = null;
+	private int queryLength;
+	private int num;
+	private String id = null;
+	private String accession = null;
+	private String definition = null;
+	private int length;
+	private final List<BlastHsp> hsps = new ArrayList<BlastHsp>(1);
+
+	/**
+	 * Retrieves the identifier BLAST assigned to the query, for example Query_1.
+	 * @return
+	 */
+	public String getQueryId(){
+		return queryId;
+	}
+
+	/**
+	 * Retrieves the definition line of the query.
+	 * @return
+	 */
+	public String getQueryDef(){
+		return queryDef;
+	}
+
+	/**
+	 * Retrieves the length of the query.
+	 * @return
+	 */
+	public int getQueryLength(){
+		return queryLength;
+	}
+
+	/**
+	 * Retrieves the rank of this hit for its query, starting at 1.
+	 * @return
+	 */
+	public int getNum(){
+		return num;
+	}
+
+	/**
+	 * Retrieves the identifier of the hit sequence, for example gi|12345|ref|NP_000001.1|.
+	 * @return
+	 */
+	public String getId(){
+		return id;
+	}
+
+	/**
+	 * Retrieves the accession of the hit sequence.
+	 * @return
+	 */
+	public String getAccession(){
+		return accession;
+	}
+
+	/**
+	 * Retrieves the definition line of the hit sequence.
+	 * @return
+	 */
+	public String getDefinition(){
+		return definition;
+	}
+
+	/**
+	 * Retrieves the length of the hit sequence.
+	 * @return
+	 */
+	public int getLength(){
+		return length;
+	}
+
+	/**
+	 * Retrieves the HSPs of this hit, in rank order.
+	 * @return An unmodifiable list.
+	 */
+	public List<BlastHsp> getHsps(){
+		return Collections.unmodifiableList(hsps);
+	}
+
+	/**
+	 * Retrieves the lowest expect value of the HSPs of this hit.
+	 * @return The expect value, or Double.MAX_VALUE if the hit has no HSPs.
+	 */
+	public double getBestEvalue(){
+		double best = Double.MAX_VALUE;
+		for ( BlastHsp hsp : hsps ){
+			best = Math.min(best, hsp.getEvalue());
+		}
+		return best;
+	}
+
+	/**
+	 * Retrieves the highest bit score of the HSPs of this hit.
+	 * @return The bit score, or 0 if the hit has no HSPs.
+	 */
+	public double getBestBitScore(){
+		double best = 0;
+		for ( BlastHsp hsp : hsps ){
+			best = Math.max(best, hsp.getBitScore());
+		}
+		return best;
+	}
+
+	@Override
+	public String toString(){
+		return (accession == null ? id : accession) + " " + definition + " (bits=" + getBestBitScore() + " e=" + getBestEvalue() + ")";
+	}
+
+	void setQuery(String queryId, String queryDef, int queryLength){
+		this.queryId = queryId;
+		this.queryDef = queryDef;
+		this.queryLength = queryLength;
+	}
+
+	void setNum(int num){
+		this.num = num;
+	}
+
+	void setId(String id){
+		this.id = id;
+	}
+
+	void setAccession(String accession){
+		this.accession = accession;
+	}
+
+	void setDefinition(String definition){
+		this.definition = definition;
+	}
+
+	void setLength(int length){
+		this.length = length;
+	}
+
+	void addHsp(BlastHsp hsp){
+		hsps.add(hsp);
+	}
+
+	/*
+	 * Copies this hit for another query with the same sequence. The HSPs are shared.
+	 */
+	BlastHit copyForQuery(String queryId, String queryDef){
+		BlastHit copy = new BlastHit();
+		copy.setQuery(queryId, queryDef, queryLength);
+		copy.num = num;
+		copy.id = id;
+		copy.accession = accession;
+		copy.definition = definition;
+		copy.length = length;
+		copy.hsps.addAll(hsps);
+		return copy;
+	}
+}
@@ -0,0 +1,16 @@
+package com.algosome.eutils.blast;
+
+/**
+ * Receives each hit parsed by a BlastXmlParser or BlastJsonParser, as soon as the hit and all of its
+ * HSPs have been read.
+ * @author Greg Cope
+ * @see TopHitsCollector
+ */
+public interface BlastHitHandler {
+
+	/**
+	 * Called for each hit, in the order they appear in the output.
+	 * @param hit
+	 */
+	public void hit(BlastHit hit);
+}
@@ -0,0 +1,246 @@
+package com.algosome.eutils.blast;
+
+/**
+ * A high-scoring segment pair (HSP): a single local alignment between the query and a hit. Coordinates
+ * are one based and inclusive, as reported by BLAST.
+ * @author Greg Cope
+ * @see BlastHit
+ */
+public class BlastHsp {
+
+	private int num;
+	private double bitScore;
+	private double score;
+	private double evalue;
+	private int queryFrom;
+	private int queryTo;
+	private int hitFrom;
+	private int hitTo;
+	private int queryFrame;
+	private int hitFrame;
+	private int identities;
+	private int positives;
+	private int gaps;
+	private int alignLength;
+	private String querySequence = null;
+	private String hitSequence = null;
+	private String midline = null;
+
+	/**
+	 * Retrieves the rank of this HSP within its hit, starting at 1.
+	 * @return
+	 */
+	public int getNum(){
+		return num;
+	}
+
+	/**
+	 * Retrieves the bit score.
+	 * @return
+	 */
+	public double getBitScore(){
+		return bitScore;
+	}
+
+	/**
+	 * Retrieves the raw score.
+	 * @return
+	 */
+	public double getScore(){
+		return score;
+	}
+
+	/**
+	 * Retrieves the expect value.
+	 * @return
+	 */
+	public double getEvalue(){
+		return evalue;
+	}
+
+	/**
+	 * Retrieves the start of the alignment in the query.
+	 * @return
+	 */
+	public int getQueryFrom(){
+		return queryFrom;
+	}
+
+	/**
+	 * Retrieves the end of the alignment in the query.
+	 * @return
+	 */
+	public int getQueryTo(){
+		return queryTo;
+	}
+
+	/**
+	 * Retrieves the start of the alignment in the hit.
+	 * @return
+	 */
+	public int getHitFrom(){
+		return hitFrom;
+	}
+
+	/**
+	 * Retrieves the end of the alignment in the hit.
+	 * @return
+	 */
+	public int getHitTo(){
+		return hitTo;
+	}
+
+	/**
+	 * Retrieves the reading frame or strand of the query, or 0 if not applicable.
+	 * @return
+	 */
+	public int getQueryFrame(){
+		return queryFrame;
+	}
+
+	/**
+	 * Retrieves the reading frame or strand of the hit, or 0 if not applicable.
+	 * @return
+	 */
+	public int getHitFrame(){
+		return hitFrame;
+	}
+
+	/**
+	 * Retrieves the number of identical positions in the alignment.
+	 * @return
+	 */
+	public int getIdentities(){
+		return identities;
+	}
+
+	/**
+	 * Retrieves the number of positive scoring positions in the alignment.
+	 * @return
+	 */
+	public int getPositives(){
+		return positives;
+	}
+
+	/**
+	 * Retrieves the number of gaps in the alignment.
+	 * @return
+	 */
+	public int getGaps(){
+		return gaps;
+	}
+
+	/**
+	 * Retrieves the length of the alignment, including gaps.
+	 * @return
+	 */
+	public int getAlignLength(){
+		return alignLength;
+	}
+
+	/**
+	 * Retrieves the percentage of identical positions in the alignment.
+	 * @return
+	 */
+	public double getPercentIdentity(){
+		return alignLength == 0 ? 0 : 100.0 * identities / alignLength;
+	}
+
+	/**
+	 * Retrieves the aligned query sequence, or null if alignments were not parsed.
+	 * @return
+	 */
+	public String getQuerySequence(){
+		return querySequence;
+	}
+
+	/**
+	 * Retrieves the aligned hit sequence, or null if alignments were not parsed.
+	 * @return
+	 */
+	public String getHitSequence(){
+		return hitSequence;
+	}
+
+	/**
+	 * Retrieves the line between the aligned sequences marking matches, or null if alignments were not parsed.
+	 * @return
+	 */
+	public String getMidline(){
+		return midline;
+	}
+
+	@Override
+	public String toString(){
+		return "HSP " + num + " bits=" + bitScore + " e=" + evalue + " q=" + queryFrom + "-" + queryTo
+				+ " h=" + hitFrom + "-" + hitTo + " id=" + identities + "/" + alignLength;
+	}
+
+	void setNum(int num){
+		this.num = num;
+	}
+
+	void setBitScore(double bitScore){
+		this.bitScore = bitScore;
+	}
+
+	void setScore(double score){
+		this.score = score;
+	}
+
+	void setEvalue(double evalue){
+		this.evalue = evalue;
+	}
+
+	void setQueryFrom(int from){
+		this.queryFrom = from;
+	}
+
+	void setQueryTo(int to){
+		this.queryTo = to;
+	}
+
+	void setHitFrom(int from){
+		this.hitFrom = from;
+	}
+
+	void setHitTo(int to){
+		this.hitTo = to;
+	}
+
+	void setQueryFrame(int frame){
+		this.queryFrame = frame;
+	}
+
+	void setHitFrame(int frame){
+		this.hitFrame = frame;
+	}
+
+	void setIdentities(int identities){
+		this.identities = identities;
+	}
+
+	void setPositives(int positives){
+		this.positives = positives;
+	}
+
+	void setGaps(int gaps){
+		this.gaps = gaps;
+	}
+
+	void setAlignLength(int alignLength){
+		this.alignLength = alignLength;
+	}
+
+	void setQuerySequence(String querySequence){
+		this.querySequence = querySequence;
+	}
+
+	void setHitSequence(String hitSequence){
+		this.hitSequence = hitSequence;
+	}
+
+	void setMidline(String midline){
+		this.midline = midline;
+	}
+}
@@ -0,0 +1,590 @@
+package com.algosome.eutils.blast;
+
+import java.io.IOException;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.Logger;
+
+import com.algosome.eutils.net.CircuitBreakerOpenException;
+import com.algosome.eutils.net.QueryExecutors;
+import com.algosome.eutils.net.RateLimiter;
+import com.algosome.eutils.net.URLConnect;
+
+/**
+ * Runs many BLAST searches at once without a thread per search. Each submitted job is put to NCBI, and
+ * its RID is then polled until the results are ready (with a SearchInfoCommand, unless SearchInfo polling
+ * has been turned off on the GetCommand), after which the results are retrieved. Rather than each job sleeping its own thread
+ * between polls (as a Blast does), every pending put and poll is held in a single queue ordered by the
+ * time it is next due, and a single scheduler thread dispatches them.</p>
+ * <p>If a BlastResultCache is set, each search is first looked up in it and only submitted if its result is
+ * not cached; identical searches submitted while one is running wait for it rather than being submitted again.</p>
+ * <p>If a BlastJournal is set, each search is recorded in it once it has been put, so after a restart the
+ * search can be resumed by its RID rather than put again.</p>
+ * <p>Before a request is dispatched a permit is reserved from the rate limiter (by default the shared
+ * BLAST bucket); if the permit is not yet available the request is dispatched when it is, so all jobs
+ * together stay within the BLAST rate limit. The requests themselves run on an executor (by default the
+ * URLConnect default executor), so a slow download never holds up the scheduler.
+ * <pre>
+ * BlastJobManager manager = new BlastJobManager();
+ * CompletableFuture&lt;GetCommand&gt; job = manager.submit(put, new GetCommand(parser));
+ * ...
+ * job.get();
+ * </pre>
+ * @author Greg Cope
+ * @see Blast
+ */
+public class BlastJobManager {
+
+	private static final Logger logger = Logger.getLogger(BlastJobManager.class);
+
+	/**Default number of consecutive failed requests after which a job fails*/
+	public static final int DEFAULT_MAX_ERRORS = 3;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final Executor executor;
+
+	private final RateLimiter rateLimiter;
+
+	/*Jobs waiting to be dispatched, ordered by the time they are due. Guarded by this*/
+	private final PriorityQueue<Job> queue = new PriorityQueue<Job>();
+
+	/*The pending wake up of the dispatcher, and the time it is due. Guarded by this*/
+	private ScheduledFuture<?> wakeup = null;
+	private long wakeupAt = 0;
+
+	/*The time the last reserved permit becomes available. Guarded by this*/
+	private long permitAt = 0;
+
+	private volatile BlastPollingPolicy pollingPolicy = BlastPollingPolicy.getDefault();
+
+	private volatile int maxErrors = DEFAULT_MAX_ERRORS;
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicLong requestCount = new AtomicLong();
+
+	private final AtomicInteger pending = new AtomicInteger();
+
+	private volatile BlastResultCache resultCache = null;
+
+	private volatile BlastJournal journal = null;
+
+	private volatile BlastBackend backend = null;
+
+	/*Searches being run for the cache, keyed by cache key, so duplicates wait for the first*/
+	private final ConcurrentMap<String, CompletableFuture<GetCommand>> inflight = new ConcurrentHashMap<String, CompletableFuture<GetCommand>>();
+
+	/**
+	 * Constructs a new manager using the shared BLAST rate limiter and the URLConnect default executor.
+	 */
+	public BlastJobManager(){
+		this(RateLimiter.blast(), URLConnect.getDefaultExecutor());
+	}
+
+	/**
+	 * Constructs a new manager.
+	 * @param rateLimiter The rate limiter every put and poll takes a permit from.
+	 * @param executor The executor the requests run on.
+	 */
+	public BlastJobManager(RateLimiter rateLimiter, Executor executor){
+		this.rateLimiter = rateLimiter;
+		this.executor = executor;
+		this.scheduler = QueryExecutors.newScheduler("jeutils-blast-poller");
+	}
+
+	/**
+	 * Sets the policy deciding how long to wait between polls of each job. Defaults to the shared policy.
+	 * @param pollingPolicy
+	 * @see BlastPollingPolicy#getDefault()
+	 */
+	public void setPollingPolicy(BlastPollingPolicy pollingPolicy){
+		this.pollingPolicy = pollingPolicy;
+	}
+
+	/**
+	 * Retrieves the policy deciding how long to wait between polls of each job.
+	 * @return
+	 */
+	public BlastPollingPolicy getPollingPolicy(){
+		return pollingPolicy;
+	}
+
+	/**
+	 * Sets the number of consecutive failed requests after which a job fails.
+	 * @param maxErrors
+	 */
+	public void setMaxErrors(int maxErrors){
+		this.maxErrors = maxErrors;
+	}
+
+	/**
+	 * Sets the cache searches are looked up in before they are submitted, and their results stored in.
+	 * While a search is running, identical searches submitted wait for it and are then answered from the cache.
+	 * @param resultCache The cache, or null to not cache results (the default).
+	 */
+	public void setResultCache(BlastResultCache resultCache){
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * Retrieves the cache searches are looked up in, or null if none has been set.
+	 * @return
+	 */
+	public BlastResultCache getResultCache(){
+		return resultCache;
+	}
+
+	/**
+	 * Sets the journal every search is recorded in once it has been put. A search submitted with the same query
+	 * and parameters as a search outstanding in the journal resumes polling its RID rather than being put again.
+	 * @param journal The journal, or null to not record searches (the default).
+	 */
+	public void setJournal(BlastJournal journal){
+		this.journal = journal;
+	}
+
+	/**
+	 * Retrieves the journal searches are recorded in, or null if none has been set.
+	 * @return
+	 */
+	public BlastJournal getJournal(){
+		return journal;
+	}
+
+	/**
+	 * Sets the backend searches are run by in place of NCBI. Searches run by a backend are run directly on the
+	 * executor, without taking a permit, and are neither cached nor journaled.
+	 * @param backend The backend, or null to search at NCBI (the default).
+	 * @see LocalBlastBackend
+	 */
+	public void setBackend(BlastBackend backend){
+		this.backend = backend;
+	}
+
+	/**
+	 * Retrieves the backend searches are run by, or null if searches are run at NCBI.
+	 * @return
+	 */
+	public BlastBackend getBackend(){
+		return backend;
+	}
+
+	/**
+	 * Resumes polling a search put before a restart, without putting it again.
+	 * @param entry The outstanding search, from the journal.
+	 * @param get The command used to poll and retrieve the results, usually created by the entry.
+	 * @return A future which completes with the GetCommand once the results have been retrieved, or completes
+	 * exceptionally if the search failed (for example if NCBI no longer holds it).
+	 * @see BlastJournal#getOutstanding()
+	 */
+	public CompletableFuture<GetCommand> resume(BlastJournal.Entry entry, GetCommand get){
+		Job job = new Job(entry.createPutCommand(), get);
+		job.resume(entry);
+		return start(job);
+	}
+
+	/**
+	 * Submits a BLAST search. The search is put to NCBI once a permit is available, then polled until ready.
+	 * If a result cache has been set and holds the result of an identical search, the result is read from
+	 * the cache instead. If a backend has been set the search is run by the backend.
+	 * @param put The search to put.
+	 * @param get The command used to poll and retrieve the results. When the results are ready they are
+	 * passed to the BlastParser of this command.
+	 * @return A future which completes with the GetCommand once the results have been retrieved, or completes
+	 * exceptionally if the search failed. Cancelling the future stops polling the job.
+	 */
+	public CompletableFuture<GetCommand> submit(final PutCommand put, final GetCommand get){
+		BlastBackend b = backend;
+		if ( b != null ){
+			return search(b, put, get);
+		}
+		final BlastResultCache cache = resultCache;
+		if ( cache == null ){
+			return start(put, get);
+		}
+		final String key = BlastResultCache.createKey(put, get);
+		final CompletableFuture<GetCommand> future = new CompletableFuture<GetCommand>();
+		CompletableFuture<GetCommand> first = inflight.putIfAbsent(key, future);
+		if ( first == null ){
+			future.whenComplete(new BiConsumer<GetCommand, Throwable>(){
+				public void accept(GetCommand result, Throwable t){
+					inflight.remove(key, future);
+				}
+			});
+			lookup(cache, key, put, get, future);
+		}else{
+			//an identical search is running, read its result from the cache once it completes
+			first.whenComplete(new BiConsumer<GetCommand, Throwable>(){
+				public void accept(GetCommand result, Throwable t){
+					lookup(cache, key, put, get, future);
+				}
+			});
+		}
+		return future;
+	}
+
+	/**
+	 * Retrieves the number of jobs which have not yet completed.
+	 * @return
+	 */
+	public int getPendingCount(){
+		return pending.get();
+	}
+
+	/**
+	 * Retrieves the number of puts and polls sent to NCBI.
+	 * @return
+	 */
+	public long getRequestCount(){
+		return requestCount.get();
+	}
+
+	/**
+	 * Stops the scheduler. Jobs which have not completed are cancelled.
+	 */
+	public void shutdown(){
+		synchronized(this){
+			for ( Job job : queue ){
+				job.future.cancel(false);
+			}
+			queue.clear();
+		}
+		scheduler.shutdownNow();
+	}
+
+	/*
+	 * Runs a search with a backend on the executor.
+	 */
+	private CompletableFuture<GetCommand> search(final BlastBackend b, final PutCommand put, final GetCommand get){
+		final CompletableFuture<GetCommand> future = new CompletableFuture<GetCommand>();
+		pending.incrementAndGet();
+		try{
+			executor.execute(new Runnable(){
+				public void run(){
+					try{
+						if ( !future.isDone() ){
+							b.search(put, get);
+							future.complete(get);
+						}
+					}catch(Throwable t){
+						future.completeExceptionally(t);
+					}finally{
+						pending.decrementAndGet();
+					}
+				}
+			});
+		}catch(RuntimeException e){
+			pending.decrementAndGet();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/*
+	 * Starts a job, putting the search once a permit is available, or resuming the RID of an identical
+	 * search outstanding in the journal.
+	 */
+	private CompletableFuture<GetCommand> start(PutCommand put, GetCommand get){
+		Job job = new Job(put, get);
+		BlastJournal j = journal;
+		if ( j != null ){
+			BlastJournal.Entry entry = j.findOutstanding(BlastResultCache.createKey(put, get));
+			if ( entry != null ){
+				logger.info("Resuming BLAST search " + entry.getRequestID() + " from the journal");
+				job.resume(entry);
+			}
+		}
+		return start(job);
+	}
+
+	private CompletableFuture<GetCommand> start(final Job job){
+		pending.incrementAndGet();
+		final BlastJournal j = journal;
+		job.future.whenComplete(new BiConsumer<GetCommand, Throwable>(){
+			public void accept(GetCommand result, Throwable t){
+				pending.decrementAndGet();
+				if ( j != null && job.rid != null && !job.future.isCancelled() ){
+					try{
+						if ( t == null ){
+							j.completed(job.rid);
+						}else if ( t instanceof BlastException ){
+							j.failed(job.rid);
+						}//otherwise leave outstanding, so the RID can be resumed
+					}catch(IOException e){
+						logger.warn("Unable to record BLAST search " + job.rid + " in the journal: " + e.getMessage());
+					}
+				}
+			}
+		});
+		enqueue(job, 0);
+		return job.future;
+	}
+
+	/*
+	 * Completes the future from the cache on the executor, or starts a job recording its result to the cache
+	 * if the search is not cached.
+	 */
+	private void lookup(final BlastResultCache cache, final String key, final PutCommand put, final GetCommand get, final CompletableFuture<GetCommand> future){
+		try{
+			executor.execute(new Runnable(){
+				public void run(){
+					if ( future.isDone() ){
+						return;
+					}
+					try{
+						if ( cache.load(key, get) ){
+							logger.debug("BLAST result read from cache " + key);
+							future.complete(get);
+							return;
+						}
+					}catch(IOException e){
+						logger.warn("Unable to read cached BLAST result " + key + ": " + e.getMessage());
+						cache.remove(key);
+					}
+					get.setKnownReady(false);
+					get.setRecorder(cache.record(key));
+					final CompletableFuture<GetCommand> job = start(put, get);
+					job.whenComplete(new BiConsumer<GetCommand, Throwable>(){
+						public void accept(GetCommand result, Throwable t){
+							if ( t == null ){
+								future.complete(result);
+							}else{
+								future.completeExceptionally(t);
+							}
+						}
+					});
+					future.whenComplete(new BiConsumer<GetCommand, Throwable>(){
+						public void accept(GetCommand result, Throwable t){
+							if ( future.isCancelled() ){
+								job.cancel(false);
+							}
+						}
+					});
+				}
+			});
+		}catch(RejectedExecutionException e){
+			future.completeExceptionally(e);
+		}
+	}
+
+	/*
+	 * Adds a job to the queue, due after the given delay.
+	 */
+	private void enqueue(Job job, long delayMillis){
+		long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		synchronized(this){
+			job.due = due;
+			job.order = sequence.incrementAndGet();
+			queue.add(job);
+			wakeAt(due);
+		}
+	}
+
+	/*
+	 * Ensures the dispatcher runs no later than the given time. Must hold the lock.
+	 */
+	private void wakeAt(long time){
+		if ( wakeup != null && wakeupAt <= time ){
+			return;
+		}
+		if ( wakeup != null ){
+			wakeup.cancel(false);
+		}
+		wakeupAt = time;
+		try{
+			wakeup = scheduler.schedule(new Runnable(){
+				public void run(){
+					dispatch();
+				}
+			}, Math.max(0, time - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}catch(RejectedExecutionException e){
+			wakeup = null;//shut down
+		}
+	}
+
+	/*
+	 * Runs on the scheduler thread: dispatches every job that is due, while permits are available.
+	 */
+	private void dispatch(){
+		synchronized(this){
+			wakeup = null;
+			while ( !queue.isEmpty() ){
+				Job job = queue.peek();
+				if ( job.future.isDone() ){
+					queue.poll();//cancelled
+					continue;
+				}
+				long now = System.nanoTime();
+				if ( job.due > now ){
+					wakeAt(job.due);
+					return;
+				}
+				if ( permitAt - now > 0 ){
+					//a reserved permit is still pending, don't reserve another until it is used
+					wakeAt(permitAt);
+					return;
+				}
+				queue.poll();
+				long wait = rateLimiter.reserve();
+				if ( wait > 0 ){
+					permitAt = now + wait;
+					final Job reserved = job;
+					scheduler.schedule(new Runnable(){
+						public void run(){
+							execute(reserved);
+						}
+					}, wait, TimeUnit.NANOSECONDS);
+					wakeAt(now + wait);
+					return;
+				}
+				execute(job);
+			}
+		}
+	}
+
+	/*
+	 * Hands a job to the executor to send its next request.
+	 */
+	private void execute(final Job job){
+		try{
+			executor.execute(new Runnable(){
+				public void run(){
+					job.step();
+				}
+			});
+		}catch(RejectedExecutionException e){
+			job.future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * A submitted search and its state.
+	 */
+	private final class Job implements Comparable<Job>{
+
+		private final PutCommand put;
+		private final GetCommand get;
+		private final CompletableFuture<GetCommand> future = new CompletableFuture<GetCommand>();
+
+		private volatile String rid = null;
+		private int errors = 0;
+		private BlastPollingPolicy.Schedule schedule = null;
+		private boolean ready = false;
+
+		/*Guarded by the manager*/
+		private long due;
+		private long order;
+
+		Job(PutCommand put, GetCommand get){
+			this.put = put;
+			this.get = get;
+		}
+
+		/*
+		 * Sets the job to poll the RID of a search already put.
+		 */
+		void resume(BlastJournal.Entry entry){
+			rid = entry.getRequestID();
+			put.setResponseID(rid);
+			get.setRequestID(rid);
+			schedule = pollingPolicy.newSchedule(entry.createPutCommand());
+		}
+
+		public int compareTo(Job o){
+			if ( due != o.due ){
+				return due < o.due ? -1 : 1;
+			}
+			return order < o.order ? -1 : (order == o.order ? 0 : 1);
+		}
+
+		/*
+		 * Sends the put, or a poll once the put has returned a RID.
+		 */
+		void step(){
+			if ( future.isDone() ){
+				return;
+			}
+			requestCount.incrementAndGet();
+			long delay;
+			try{
+				if ( rid == null ){
+					QBlastRequest.send(put);
+					rid = put.getRequestID();
+					if ( rid == null ){
+						throw new BlastException("No RID returned for the BLAST search.");
+					}
+					logger.info("Blast request ID = " + rid);
+					get.setRequestID(rid);
+					BlastJournal j = journal;
+					if ( j != null ){
+						try{
+							j.submitted(put, get);
+						}catch(IOException e){
+							logger.warn("Unable to record BLAST search " + rid + " in the journal: " + e.getMessage());
+						}
+					}
+					schedule = pollingPolicy.newSchedule(put);
+					delay = schedule.getInitialDelay();
+				}else if ( ready ){
+					QBlastRequest.send(get);
+					future.complete(get);
+					return;
+				}else{
+					GetCommand poll = get.isSearchInfoPolling() ? get.createSearchInfoCommand() : get;
+					QBlastRequest.send(poll);
+					String status = poll.getStatus();
+					if ( status != null && (status.contains(GetCommand.STATUS_FAILED) || status.contains(GetCommand.STATUS_UNKNOWN)) ){
+						future.completeExceptionally(new BlastException("BLAST search " + rid + " finished with status " + status));
+						return;
+					}
+					if ( status != null && status.contains(GetCommand.STATUS_READY) ){
+						schedule.completed();
+						if ( poll == get ){
+							future.complete(get);
+							return;
+						}
+						//retrieve the full result as soon as the next permit is available
+						ready = true;
+						get.setKnownReady(true);
+						delay = 0;
+					}else{
+						delay = schedule.nextDelay(poll);
+					}
+				}
+				errors = 0;
+			}catch(BlastException e){
+				future.completeExceptionally(e);
+				return;
+			}catch(CircuitBreakerOpenException e){
+				//nothing was sent, so wait for the breaker rather than counting an error against the job
+				logger.debug(e.getMessage());
+				delay = Math.max(e.getRemainingMillis(), BlastPollingPolicy.DEFAULT_MIN_DELAY);
+			}catch(Exception e){
+				logger.warn("BLAST request for " + (rid == null ? "new search" : rid) + " failed: " + e.getMessage());
+				if ( rid == null && !(e instanceof IOException && QBlastRequest.getRetryPolicy().isRetryable((IOException)e, false)) ){
+					//the put may have reached NCBI, and sending it again could submit the search twice
+					future.completeExceptionally(e);
+					return;
+				}
+				if ( ++errors >= maxErrors ){
+					future.completeExceptionally(e);
+					return;
+				}
+				delay = schedule == null ? BlastPollingPolicy.DEFAULT_MIN_DELAY : schedule.nextDelay(null);
+			}
+			enqueue(this, delay);
+		}
+	}
+}
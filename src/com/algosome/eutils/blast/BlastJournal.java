@@ -0,0 +1,337 @@
+package com.algosome.eutils.blast;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An append-only journal of BLAST searches which have been put to NCBI, so searches can be resumed by their
+ * RID after a restart rather than put again. A record is appended, and by default synced to disk, when a
+ * search is given its RID, and again when it completes or fails. On opening, the journal is read back and
+ * the searches which have neither completed nor failed are outstanding.</p>
+ * <p>A BlastJobManager with a journal records every search it puts. A search submitted with the same query
+ * and parameters as an outstanding search is not put again but resumes polling the RID of the outstanding
+ * search. Outstanding searches can also be resumed explicitly:
+ * <pre>
+ * BlastJournal journal = new BlastJournal(new File("blast.journal"));
+ * manager.setJournal(journal);
+ * for ( BlastJournal.Entry entry : journal.getOutstanding() ){
+ *     GetCommand get = entry.createGetCommand();
+ *     get.setStreamingParser(parser);
+ *     manager.resume(entry, get);
+ * }
+ * </pre>
+ * The journal is compacted when it is opened, so it only grows with the searches of a single run.
+ * @author Greg Cope
+ * @see BlastJobManager#setJournal(BlastJournal)
+ */
+public class BlastJournal {
+
+	private static final Logger logger = Logger.getLogger(BlastJournal.class);
+
+	private static final String SUBMITTED = "S";
+	private static final String COMPLETED = "C";
+	private static final String FAILED = "F";
+
+	private final File file;
+
+	/*Outstanding searches by RID, in the order they were submitted. Guarded by this*/
+	private final Map<String, Entry> outstanding = new LinkedHashMap<String, Entry>();
+
+	private Writer writer;
+
+	private FileOutputStream out;
+
+	private volatile boolean sync = true;
+
+	/**
+	 * Opens a journal, reading the searches already recorded in it.
+	 * @param file The journal file. It is created if it does not exist.
+	 * @throws IOException if the journal could not be read or written.
+	 */
+	public BlastJournal(File file) throws IOException{
+		this.file = file;
+		if ( file.exists() ){
+			read();
+		}
+		compact();
+	}
+
+	/**
+	 * Sets whether each record is synced to disk before the journal returns. Default is true.
+	 * @param sync
+	 */
+	public void setSync(boolean sync){
+		this.sync = sync;
+	}
+
+	/**
+	 * Retrieves the searches which have been put but have neither completed nor failed, in the order they were put.
+	 * @return
+	 */
+	public synchronized List<Entry> getOutstanding(){
+		return Collections.unmodifiableList(new ArrayList<Entry>(outstanding.values()));
+	}
+
+	/**
+	 * Finds an outstanding search with the given cache key.
+	 * @param key
+	 * @return The search, or null if none is outstanding.
+	 * @see BlastResultCache#createKey(PutCommand, GetCommand)
+	 */
+	public synchronized Entry findOutstanding(String key){
+		for ( Entry entry : outstanding.values() ){
+			if ( entry.key.equals(key) ){
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Records that a search has been put and given a RID.
+	 * @param put The put, after it has been sent.
+	 * @param get The command which retrieves the result.
+	 * @throws IOException if the record could not be written.
+	 */
+	public synchronized void submitted(PutCommand put, GetCommand get) throws IOException{
+		Map<String, String> getParams = new HashMap<String, String>(get.params);
+		getParams.remove("RID");
+		Entry entry = new Entry(put.getRequestID(), System.currentTimeMillis(), BlastResultCache.createKey(put, get),
+				put.getWaitingTime(), new HashMap<String, String>(put.params), getParams);
+		append(entry.toRecord());
+		outstanding.put(entry.rid, entry);
+	}
+
+	/**
+	 * Records that the result of a search has been retrieved.
+	 * @param rid
+	 * @throws IOException if the record could not be written.
+	 */
+	public synchronized void completed(String rid) throws IOException{
+		if ( outstanding.remove(rid) != null ){
+			append(COMPLETED + "\t" + rid);
+		}
+	}
+
+	/**
+	 * Records that a search failed, so it is not resumed.
+	 * @param rid
+	 * @throws IOException if the record could not be written.
+	 */
+	public synchronized void failed(String rid) throws IOException{
+		if ( outstanding.remove(rid) != null ){
+			append(FAILED + "\t" + rid);
+		}
+	}
+
+	/**
+	 * Rewrites the journal so it holds only the outstanding searches.
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException{
+		close();
+		File temp = new File(file.getPath() + ".tmp");
+		Writer w = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8);
+		try{
+			for ( Entry entry : outstanding.values() ){
+				w.write(entry.toRecord());
+				w.write('\n');
+			}
+		}finally{
+			w.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		out = new FileOutputStream(file, true);
+		writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Closes the journal file. Further records reopen it.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException{
+		if ( writer != null ){
+			writer.close();
+			writer = null;
+			out = null;
+		}
+	}
+
+	private void append(String record) throws IOException{
+		if ( writer == null ){
+			out = new FileOutputStream(file, true);
+			writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+		}
+		writer.write(record);
+		writer.write('\n');
+		writer.flush();
+		if ( sync ){
+			out.getFD().sync();
+		}
+	}
+
+	/*
+	 * Replays the journal. A record which cannot be read, such as one only partly written before a crash, is skipped.
+	 */
+	private void read() throws IOException{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try{
+			String line;
+			int number = 0;
+			while ( (line = reader.readLine()) != null ){
+				number++;
+				String[] fields = line.split("\t", -1);
+				try{
+					if ( SUBMITTED.equals(fields[0]) && fields.length == 7 ){
+						Entry entry = new Entry(fields[1], Long.parseLong(fields[2]), fields[3], Integer.parseInt(fields[4]),
+								decode(fields[5]), decode(fields[6]));
+						outstanding.put(entry.rid, entry);
+					}else if ( (COMPLETED.equals(fields[0]) || FAILED.equals(fields[0])) && fields.length == 2 ){
+						outstanding.remove(fields[1]);
+					}else if ( line.length() > 0 ){
+						logger.warn("Skipping invalid record on line " + number + " of BLAST journal " + file);
+					}
+				}catch(IllegalArgumentException e){
+					logger.warn("Skipping invalid record on line " + number + " of BLAST journal " + file + ": " + e.getMessage());
+				}
+			}
+		}finally{
+			reader.close();
+		}
+	}
+
+	private static String encode(Map<String, String> params){
+		StringBuilder sb = new StringBuilder();
+		try{
+			for ( Map.Entry<String, String> param : params.entrySet() ){
+				if ( param.getValue() == null ){
+					continue;
+				}
+				if ( sb.length() > 0 ){
+					sb.append('&');
+				}
+				sb.append(URLEncoder.encode(param.getKey(), "UTF-8")).append('=').append(URLEncoder.encode(param.getValue(), "UTF-8"));
+			}
+		}catch(UnsupportedEncodingException e){
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+
+	private static Map<String, String> decode(String text){
+		Map<String, String> params = new HashMap<String, String>();
+		if ( text.length() == 0 ){
+			return params;
+		}
+		try{
+			for ( String param : text.split("&") ){
+				int equals = param.indexOf('=');
+				if ( equals == -1 ){
+					throw new IllegalArgumentException("Invalid parameter " + param);
+				}
+				params.put(URLDecoder.decode(param.substring(0, equals), "UTF-8"), URLDecoder.decode(param.substring(equals + 1), "UTF-8"));
+			}
+		}catch(UnsupportedEncodingException e){
+			throw new IllegalStateException(e);
+		}
+		return params;
+	}
+
+	/**
+	 * A search recorded in the journal.
+	 */
+	public static final class Entry{
+
+		private final String rid;
+		private final long submitted;
+		private final String key;
+		private final int waitingTime;
+		private final Map<String, String> putParams;
+		private final Map<String, String> getParams;
+
+		private Entry(String rid, long submitted, String key, int waitingTime, Map<String, String> putParams, Map<String, String> getParams){
+			this.rid = rid;
+			this.submitted = submitted;
+			this.key = key;
+			this.waitingTime = waitingTime;
+			this.putParams = putParams;
+			this.getParams = getParams;
+		}
+
+		/**
+		 * Retrieves the RID of the search.
+		 * @return
+		 */
+		public String getRequestID(){
+			return rid;
+		}
+
+		/**
+		 * Retrieves the time the search was put, in milliseconds since the epoch.
+		 * @return
+		 */
+		public long getSubmitted(){
+			return submitted;
+		}
+
+		/**
+		 * Retrieves the cache key of the search.
+		 * @return
+		 * @see BlastResultCache#createKey(PutCommand, GetCommand)
+		 */
+		public String getKey(){
+			return key;
+		}
+
+		/**
+		 * Creates a PutCommand with the parameters and RID of the search. Its RTOE is what remains of the RTOE
+		 * returned when the search was put.
+		 * @return
+		 */
+		public PutCommand createPutCommand(){
+			PutCommand put = new PutCommand();
+			put.params.clear();
+			put.params.putAll(putParams);
+			put.setResponseID(rid);
+			long elapsed = (System.currentTimeMillis() - submitted) / 1000;
+			put.setWaitingTime((int)Math.max(0, waitingTime - elapsed));
+			return put;
+		}
+
+		/**
+		 * Creates a GetCommand with the parameters and RID of the search. A parser must be set to receive the result.
+		 * @return
+		 */
+		public GetCommand createGetCommand(){
+			GetCommand get = new GetCommand();
+			get.params.clear();
+			get.params.putAll(getParams);
+			get.setRequestID(rid);
+			return get;
+		}
+
+		private String toRecord(){
+			return SUBMITTED + "\t" + rid + "\t" + submitted + "\t" + key + "\t" + waitingTime + "\t" + encode(putParams) + "\t" + encode(getParams);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package com.algosome.eutils.blast;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.algosome.eutils.io.JsonTokenizer;
+import com.algosome.eutils.io.JsonTokenizer.Token;
+
+/**
+ * Streaming parser for BLAST single file JSON output (FORMAT_TYPE=JSON2_S). The output is read one token
+ * at a time, and each element of a search's hits array is converted to a BlastHit and passed to a
+ * BlastHitHandler as soon as it has been read, so only one hit is held in memory.</p>
+ * <p>The aligned sequences of each HSP are skipped unless requested, as they make up most of the output.
+ * The zipped multi-file JSON2 format is not supported.
+ * @author Greg Cope
+ * @see BlastXmlParser
+ */
+public class BlastJsonParser implements StreamingBlastParser{
+
+	private final BlastHitHandler handler;
+
+	private boolean includeAlignments = false;
+
+	/*The query of the hits being parsed*/
+	private String queryId;
+	private String queryDef;
+	private int queryLength;
+
+	/**
+	 * Constructs a new parser.
+	 * @param handler The handler to pass each hit to.
+	 */
+	public BlastJsonParser(BlastHitHandler handler){
+		this.handler = handler;
+	}
+
+	/**
+	 * Sets whether the aligned query and hit sequences and midline of each HSP are kept. Default is false.
+	 * @param include
+	 */
+	public void setIncludeAlignments(boolean include){
+		this.includeAlignments = include;
+	}
+
+	/**
+	 * Parses the BLAST JSON, passing each hit of every search to the handler.
+	 * @param reader The BLAST JSON2_S output.
+	 * @throws IOException if the output could not be read or is not valid JSON.
+	 */
+	public void parseBlastOutput(Reader reader) throws IOException{
+		JsonTokenizer json = new JsonTokenizer(reader);
+		try{
+			Token token;
+			while ( (token = json.next()) != Token.END_DOCUMENT ){
+				if ( token == Token.NAME && json.textEquals("search") ){
+					if ( json.next() == Token.BEGIN_OBJECT ){
+						parseSearch(json);
+					}
+				}
+			}
+		}catch(NumberFormatException e){
+			throw new IOException("Invalid number in BLAST JSON: " + e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * Parses a search object. Positioned after its opening brace.
+	 */
+	private void parseSearch(JsonTokenizer json) throws IOException{
+		queryId = null;
+		queryDef = null;
+		queryLength = 0;
+		while ( json.next() == Token.NAME ){
+			if ( json.textEquals("query_id") ){
+				queryId = nextString(json);
+			}else if ( json.textEquals("query_title") ){
+				queryDef = nextString(json);
+			}else if ( json.textEquals("query_len") ){
+				queryLength = nextInt(json);
+			}else if ( json.textEquals("hits") ){
+				expect(json, Token.BEGIN_ARRAY);
+				while ( json.next() == Token.BEGIN_OBJECT ){
+					handler.hit(parseHit(json));
+				}
+			}else{
+				json.skipValue();
+			}
+		}
+	}
+
+	/*
+	 * Parses a hit object. Positioned after its opening brace.
+	 */
+	private BlastHit parseHit(JsonTokenizer json) throws IOException{
+		BlastHit hit = new BlastHit();
+		hit.setQuery(queryId, queryDef, queryLength);
+		while ( json.next() == Token.NAME ){
+			if ( json.textEquals("num") ){
+				hit.setNum(nextInt(json));
+			}else if ( json.textEquals("len") ){
+				hit.setLength(nextInt(json));
+			}else if ( json.textEquals("description") ){
+				expect(json, Token.BEGIN_ARRAY);
+				boolean first = true;
+				while ( json.next() == Token.BEGIN_OBJECT ){
+					if ( first ){
+						parseDescription(json, hit);
+						first = false;
+					}else{
+						while ( json.next() == Token.NAME ){
+							json.skipValue();
+						}
+					}
+				}
+			}else if ( json.textEquals("hsps") ){
+				expect(json, Token.BEGIN_ARRAY);
+				while ( json.next() == Token.BEGIN_OBJECT ){
+					hit.addHsp(parseHsp(json));
+				}
+			}else{
+				json.skipValue();
+			}
+		}
+		return hit;
+	}
+
+	/*
+	 * Parses the first description of a hit. Positioned after its opening brace.
+	 */
+	private void parseDescription(JsonTokenizer json, BlastHit hit) throws IOException{
+		while ( json.next() == Token.NAME ){
+			if ( json.textEquals("id") ){
+				hit.setId(nextString(json));
+			}else if ( json.textEquals("accession") ){
+				hit.setAccession(nextString(json));
+			}else if ( json.textEquals("title") ){
+				hit.setDefinition(nextString(json));
+			}else{
+				json.skipValue();
+			}
+		}
+	}
+
+	/*
+	 * Parses an hsp object. Positioned after its opening brace.
+	 */
+	private BlastHsp parseHsp(JsonTokenizer json) throws IOException{
+		BlastHsp hsp = new BlastHsp();
+		while ( json.next() == Token.NAME ){
+			if ( json.textEquals("num") ){
+				hsp.setNum(nextInt(json));
+			}else if ( json.textEquals("bit_score") ){
+				hsp.setBitScore(nextNumber(json));
+			}else if ( json.textEquals("score") ){
+				hsp.setScore(nextNumber(json));
+			}else if ( json.textEquals("evalue") ){
+				hsp.setEvalue(nextNumber(json));
+			}else if ( json.textEquals("identity") ){
+				hsp.setIdentities(nextInt(json));
+			}else if ( json.textEquals("positive") ){
+				hsp.setPositives(nextInt(json));
+			}else if ( json.textEquals("gaps") ){
+				hsp.setGaps(nextInt(json));
+			}else if ( json.textEquals("align_len") ){
+				hsp.setAlignLength(nextInt(json));
+			}else if ( json.textEquals("query_from") ){
+				hsp.setQueryFrom(nextInt(json));
+			}else if ( json.textEquals("query_to") ){
+				hsp.setQueryTo(nextInt(json));
+			}else if ( json.textEquals("hit_from") ){
+				hsp.setHitFrom(nextInt(json));
+			}else if ( json.textEquals("hit_to") ){
+				hsp.setHitTo(nextInt(json));
+			}else if ( json.textEquals("query_frame") ){
+				hsp.setQueryFrame(nextInt(json));
+			}else if ( json.textEquals("hit_frame") ){
+				hsp.setHitFrame(nextInt(json));
+			}else if ( json.textEquals("query_strand") ){
+				hsp.setQueryFrame(strand(nextString(json)));
+			}else if ( json.textEquals("hit_strand") ){
+				hsp.setHitFrame(strand(nextString(json)));
+			}else if ( includeAlignments && json.textEquals("qseq") ){
+				hsp.setQuerySequence(nextString(json));
+			}else if ( includeAlignments && json.textEquals("hseq") ){
+				hsp.setHitSequence(nextString(json));
+			}else if ( includeAlignments && json.textEquals("midline") ){
+				hsp.setMidline(nextString(json));
+			}else{
+				json.skipValue();
+			}
+		}
+		return hsp;
+	}
+
+	/*
+	 * Converts a nucleotide strand to the frame used in BLAST XML output.
+	 */
+	private static int strand(String strand){
+		return "Minus".equalsIgnoreCase(strand) ? -1 : 1;
+	}
+
+	private static void expect(JsonTokenizer json, Token expected) throws IOException{
+		Token token = json.next();
+		if ( token != expected ){
+			throw new IOException("Expected " + expected + " in BLAST JSON but found " + token);
+		}
+	}
+
+	private static String nextString(JsonTokenizer json) throws IOException{
+		Token token = json.next();
+		if ( token == Token.NULL ){
+			return null;
+		}
+		if ( token != Token.STRING && token != Token.NUMBER ){
+			throw new IOException("Expected a string in BLAST JSON but found " + token);
+		}
+		return json.getString();
+	}
+
+	private static double nextNumber(JsonTokenizer json) throws IOException{
+		expect(json, Token.NUMBER);
+		return json.getNumber();
+	}
+
+	private static int nextInt(JsonTokenizer json) throws IOException{
+		return (int)nextNumber(json);
+	}
+}
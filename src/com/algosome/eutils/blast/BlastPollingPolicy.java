@@ -0,0 +1,238 @@
+package com.algosome.eutils.blast;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how long to wait between polls of a BLAST search. The first poll is made once the search is
+ * expected to have completed: the RTOE (Request Time Of Execution) returned by the put, combined with
+ * the typical completion time of earlier searches with the same program and database. If the search is
+ * not ready by then, polls back off exponentially (with random jitter, so many searches submitted at once
+ * do not poll in lock step) up to a maximum delay. A wait time reported by a WAITING page is used in
+ * place of the backoff when present.</p>
+ * <p>Completion times are learnt as an exponentially weighted moving average per program and database,
+ * so a policy shared by many searches polls less often for slow searches and sooner for quick ones.
+ * @author Greg Cope
+ * @see Blast#setPollingPolicy(BlastPollingPolicy)
+ * @see BlastJobManager#setPollingPolicy(BlastPollingPolicy)
+ */
+public class BlastPollingPolicy {
+
+	/**Default delay in milliseconds before the first poll when nothing is known about the search*/
+	public static final long DEFAULT_INITIAL_DELAY = 10000L;
+
+	/**Default minimum delay in milliseconds between polls*/
+	public static final long DEFAULT_MIN_DELAY = 3000L;
+
+	/**Default maximum delay in milliseconds between polls*/
+	public static final long DEFAULT_MAX_DELAY = 60000L;
+
+	/**Default factor the delay grows by after each poll that is not ready*/
+	public static final double DEFAULT_MULTIPLIER = 1.5;
+
+	/**Default fraction of each delay that is randomized*/
+	public static final double DEFAULT_JITTER = 0.2;
+
+	/**Default weight of the latest completion time in the moving average*/
+	public static final double DEFAULT_SMOOTHING = 0.3;
+
+	private static final BlastPollingPolicy DEFAULT = new BlastPollingPolicy();
+
+	private volatile long initialDelay = DEFAULT_INITIAL_DELAY;
+	private volatile long minDelay = DEFAULT_MIN_DELAY;
+	private volatile long maxDelay = DEFAULT_MAX_DELAY;
+	private volatile double multiplier = DEFAULT_MULTIPLIER;
+	private volatile double jitter = DEFAULT_JITTER;
+	private volatile double smoothing = DEFAULT_SMOOTHING;
+
+	/*Average completion time in milliseconds, keyed by program and database*/
+	private final ConcurrentMap<String, Double> completionTimes = new ConcurrentHashMap<String, Double>();
+
+	/**
+	 * Retrieves the policy shared by Blast and BlastJobManager instances which have not been given their own.
+	 * @return
+	 */
+	public static BlastPollingPolicy getDefault(){
+		return DEFAULT;
+	}
+
+	/**
+	 * Sets the delay before the first poll when neither an RTOE nor a learnt completion time is available.
+	 * @param millis
+	 */
+	public void setInitialDelay(long millis){
+		this.initialDelay = millis;
+	}
+
+	/**
+	 * Sets the minimum and maximum delay between polls.
+	 * @param minMillis
+	 * @param maxMillis
+	 */
+	public void setDelayRange(long minMillis, long maxMillis){
+		if ( minMillis < 0 || maxMillis < minMillis ){
+			throw new IllegalArgumentException("Invalid delay range " + minMillis + " - " + maxMillis);
+		}
+		this.minDelay = minMillis;
+		this.maxDelay = maxMillis;
+	}
+
+	/**
+	 * Sets the factor the delay grows by after each poll that is not ready.
+	 * @param multiplier
+	 */
+	public void setMultiplier(double multiplier){
+		if ( multiplier < 1 ){
+			throw new IllegalArgumentException("Multiplier must be at least 1: " + multiplier);
+		}
+		this.multiplier = multiplier;
+	}
+
+	/**
+	 * Sets the fraction of each delay that is randomized, between 0 (no jitter) and 1.
+	 * @param jitter
+	 */
+	public void setJitter(double jitter){
+		if ( jitter < 0 || jitter > 1 ){
+			throw new IllegalArgumentException("Jitter must be between 0 and 1: " + jitter);
+		}
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Sets the weight given to the latest completion time in the moving average, between 0 and 1.
+	 * @param smoothing
+	 */
+	public void setSmoothing(double smoothing){
+		if ( smoothing <= 0 || smoothing > 1 ){
+			throw new IllegalArgumentException("Smoothing must be in (0, 1]: " + smoothing);
+		}
+		this.smoothing = smoothing;
+	}
+
+	/**
+	 * Retrieves the learnt average completion time of searches with the given program and database.
+	 * @param program
+	 * @param database
+	 * @return The average in milliseconds, or -1 if no search has completed.
+	 */
+	public long getAverageCompletionTime(String program, String database){
+		Double average = completionTimes.get(key(program, database));
+		return average == null ? -1 : Math.round(average);
+	}
+
+	/**
+	 * Starts the polling schedule for a search that has just been put.
+	 * @param put The put, after it has been sent.
+	 * @return
+	 */
+	public Schedule newSchedule(PutCommand put){
+		return new Schedule(put);
+	}
+
+	/*
+	 * Records the completion time of a search.
+	 */
+	private void recordCompletion(String key, long millis){
+		while ( true ){
+			Double average = completionTimes.get(key);
+			if ( average == null ){
+				if ( completionTimes.putIfAbsent(key, Double.valueOf(millis)) == null ){
+					return;
+				}
+			}else{
+				Double updated = Double.valueOf(average + smoothing * (millis - average));
+				if ( completionTimes.replace(key, average, updated) ){
+					return;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Applies jitter and the delay range to a delay.
+	 */
+	private long bound(double delay){
+		double j = jitter;
+		if ( j > 0 ){
+			delay *= 1 + j * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+		}
+		return Math.max(minDelay, Math.min(maxDelay, Math.round(delay)));
+	}
+
+	private static String key(String program, String database){
+		return program + "/" + database;
+	}
+
+	/**
+	 * The polling schedule of a single search.
+	 */
+	public final class Schedule{
+
+		private final String key;
+		private final long start = System.currentTimeMillis();
+		private final long first;
+		private double backoff;
+		private int polls = 0;
+
+		private Schedule(PutCommand put){
+			key = key(put.getProgram(), put.getDatabase());
+			long rtoe = put.getWaitingTime() * 1000L;
+			Double learnt = completionTimes.get(key);
+			long estimate;
+			if ( rtoe > 0 && learnt != null ){
+				estimate = (rtoe + Math.round(learnt)) / 2;
+			}else if ( rtoe > 0 ){
+				estimate = rtoe;
+			}else if ( learnt != null ){
+				estimate = Math.round(learnt);
+			}else{
+				estimate = initialDelay;
+			}
+			first = estimate;
+			backoff = Math.max(minDelay, estimate / 4.0);
+		}
+
+		/**
+		 * Retrieves the delay before the first poll.
+		 * @return The delay in milliseconds.
+		 */
+		public long getInitialDelay(){
+			return bound(first);
+		}
+
+		/**
+		 * Retrieves the delay before the next poll, after a poll found the search was not ready.
+		 * @param get The GetCommand of the poll, or null if the poll failed.
+		 * @return The delay in milliseconds.
+		 */
+		public long nextDelay(GetCommand get){
+			polls++;
+			String wt = get == null ? null : get.getEstimatedWaitTime();
+			if ( wt != null ){
+				try{
+					return bound(Long.parseLong(wt) * 1000.0);
+				}catch(NumberFormatException e){}
+			}
+			double delay = backoff;
+			backoff = Math.min(maxDelay, backoff * multiplier);
+			return bound(delay);
+		}
+
+		/**
+		 * Retrieves the number of polls which found the search was not ready.
+		 * @return
+		 */
+		public int getPollCount(){
+			return polls;
+		}
+
+		/**
+		 * Records that the search has completed, updating the learnt completion time of its program and database.
+		 */
+		public void completed(){
+			recordCompletion(key, System.currentTimeMillis() - start);
+		}
+	}
+}
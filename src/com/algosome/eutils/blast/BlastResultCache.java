@@ -0,0 +1,421 @@
+package com.algosome.eutils.blast;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+
+import com.algosome.eutils.io.TeeInputStream;
+
+/**
+ * A persistent cache of BLAST results, held as one file per search in a directory. Each result is keyed
+ * by the SHA-256 hash of the normalized query sequence together with every other parameter of the
+ * PutCommand and GetCommand, so a search repeated with the same sequence and parameters - in this run
+ * or a later one - is answered from disk without contacting NCBI.</p>
+ * <p>Results are written while they are parsed, and only kept once the whole result has been read.
+ * Entries expire a fixed time after they were written, and once the total size of the cache exceeds its
+ * maximum the least recently used entries are removed.
+ * <pre>
+ * BlastJobManager manager = new BlastJobManager();
+ * manager.setResultCache(new BlastResultCache(new File("blast-cache")));
+ * </pre>
+ * @author Greg Cope
+ * @see BlastJobManager#setResultCache(BlastResultCache)
+ * @see Blast#setResultCache(BlastResultCache)
+ */
+public class BlastResultCache {
+
+	private static final Logger logger = Logger.getLogger(BlastResultCache.class);
+
+	/**Default time in milliseconds an entry is kept: 30 days*/
+	public static final long DEFAULT_TTL = 30L * 24 * 60 * 60 * 1000;
+
+	/**Default maximum total size of the cache in bytes: 1GB*/
+	public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 1024;
+
+	private static final String SUFFIX = ".blast";
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final File directory;
+
+	private final long ttl;
+
+	private final long maxSize;
+
+	/*Size of each entry, least recently used first. Guarded by this*/
+	private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long size = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Constructs a new cache with the default time to live and maximum size.
+	 * @param directory The directory the results are kept in. It is created if it does not exist.
+	 * @throws IOException if the directory could not be created.
+	 */
+	public BlastResultCache(File directory) throws IOException{
+		this(directory, DEFAULT_TTL, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Constructs a new cache.
+	 * @param directory The directory the results are kept in. It is created if it does not exist.
+	 * @param ttl The time in milliseconds an entry is kept after it was written.
+	 * @param maxSize The maximum total size of the entries in bytes.
+	 * @throws IOException if the directory could not be created.
+	 */
+	public BlastResultCache(File directory, long ttl, long maxSize) throws IOException{
+		this.directory = directory;
+		this.ttl = ttl;
+		this.maxSize = maxSize;
+		if ( !directory.isDirectory() && !directory.mkdirs() ){
+			throw new IOException("Unable to create cache directory " + directory);
+		}
+		load();
+	}
+
+	/**
+	 * Creates the key of a search: the hash of its normalized query and the parameters of the put and get.
+	 * The RID of the get is not part of the key.
+	 * @param put
+	 * @param get
+	 * @return The key as a hexadecimal String.
+	 */
+	public static String createKey(PutCommand put, GetCommand get){
+		MessageDigest digest;
+		try{
+			digest = MessageDigest.getInstance("SHA-256");
+		}catch(NoSuchAlgorithmException e){
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		Map<String, String> putParams = new TreeMap<String, String>(put.params);
+		String query = putParams.remove("QUERY");
+		update(digest, put.getCommandName(), putParams);
+		digest.update(("QUERY=" + (query == null ? "" : normalizeQuery(query)) + "\n").getBytes(StandardCharsets.UTF_8));
+		Map<String, String> getParams = new TreeMap<String, String>(get.params);
+		getParams.remove("RID");
+		update(digest, get.getCommandName(), getParams);
+		byte[] hash = digest.digest();
+		StringBuilder key = new StringBuilder(hash.length * 2);
+		for ( byte b : hash ){
+			key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Retrieves a result from the cache, passing it to the parser of the get as though it had been retrieved
+	 * from NCBI.
+	 * @param key
+	 * @param get The command to receive the result. Its status is READY if the result was found.
+	 * @return true if the result was found, false if it is not in the cache or has expired.
+	 * @throws IOException if the result could not be read or parsed.
+	 */
+	public boolean load(String key, GetCommand get) throws IOException{
+		File file = getFile(key);
+		synchronized(this){
+			if ( entries.get(key) == null ){
+				misses++;
+				return false;
+			}
+			if ( System.currentTimeMillis() - file.lastModified() > ttl ){
+				logger.debug("Cached BLAST result " + key + " has expired");
+				remove(key);
+				misses++;
+				return false;
+			}
+			hits++;
+		}
+		InputStream in;
+		try{
+			in = new BufferedInputStream(new FileInputStream(file));
+		}catch(FileNotFoundException e){
+			remove(key);
+			return false;//removed since
+		}
+		get.setKnownReady(true);
+		try{
+			get.processResult(in);
+		}catch(IOException e){
+			throw e;
+		}catch(Exception e){
+			throw new IOException("Unable to parse cached BLAST result " + key + ": " + e.getMessage(), e);
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if a result is in the cache and has not expired.
+	 * @param key
+	 * @return
+	 */
+	public synchronized boolean contains(String key){
+		return entries.containsKey(key) && System.currentTimeMillis() - getFile(key).lastModified() <= ttl;
+	}
+
+	/**
+	 * Removes a result from the cache.
+	 * @param key
+	 */
+	public synchronized void remove(String key){
+		Long length = entries.remove(key);
+		if ( length != null ){
+			size -= length.longValue();
+		}
+		getFile(key).delete();
+	}
+
+	/**
+	 * Removes every result from the cache.
+	 */
+	public synchronized void clear(){
+		Iterator<String> keys = entries.keySet().iterator();
+		while ( keys.hasNext() ){
+			getFile(keys.next()).delete();
+			keys.remove();
+		}
+		size = 0;
+	}
+
+	/**
+	 * Retrieves the total size of the cached results in bytes.
+	 * @return
+	 */
+	public synchronized long getSize(){
+		return size;
+	}
+
+	/**
+	 * Retrieves the number of lookups which found a result.
+	 * @return
+	 */
+	public synchronized long getHitCount(){
+		return hits;
+	}
+
+	/**
+	 * Retrieves the number of lookups which did not find a result.
+	 * @return
+	 */
+	public synchronized long getMissCount(){
+		return misses;
+	}
+
+	/**
+	 * Starts recording the result of a search, to be stored under the given key once it has been read.
+	 * @param key
+	 * @return
+	 */
+	Recorder record(String key){
+		return new Recorder(key);
+	}
+
+	/*
+	 * Normalizes a query so the same sequences give the same key: whitespace is removed and sequences are
+	 * upper cased. The definition line of a single sequence is dropped, those of multiple sequences are kept
+	 * as they distinguish the results of each.
+	 */
+	static String normalizeQuery(String query){
+		String[] lines = query.trim().split("\r?\n");
+		int records = 0;
+		for ( String line : lines ){
+			if ( line.startsWith(">") ){
+				records++;
+			}
+		}
+		StringBuilder normalized = new StringBuilder(query.length());
+		for ( String line : lines ){
+			if ( line.startsWith(">") ){
+				if ( records > 1 ){
+					normalized.append(line.trim()).append('\n');
+				}
+			}else{
+				normalized.append(normalizeSequence(line));
+				if ( records > 1 ){
+					normalized.append('\n');
+				}
+			}
+		}
+		return normalized.toString();
+	}
+
+	/*
+	 * Removes whitespace from and upper cases a sequence.
+	 */
+	static String normalizeSequence(String sequence){
+		StringBuilder normalized = new StringBuilder(sequence.length());
+		for ( int i = 0; i < sequence.length(); i++ ){
+			char c = sequence.charAt(i);
+			if ( !Character.isWhitespace(c) ){
+				normalized.append(Character.toUpperCase(c));
+			}
+		}
+		return normalized.toString();
+	}
+
+	private static void update(MessageDigest digest, String command, Map<String, String> params){
+		StringBuilder text = new StringBuilder("CMD=").append(command).append('\n');
+		for ( Map.Entry<String, String> entry : params.entrySet() ){
+			if ( entry.getValue() == null || entry.getValue().length() == 0 ){
+				continue;
+			}
+			text.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+		}
+		digest.update(text.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private File getFile(String key){
+		return new File(directory, key + SUFFIX);
+	}
+
+	/*
+	 * Indexes the entries already in the directory, least recently written first, removing expired entries
+	 * and partly written results.
+	 */
+	private synchronized void load(){
+		File[] files = directory.listFiles();
+		if ( files == null ){
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>(){
+			public int compare(File a, File b){
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		long now = System.currentTimeMillis();
+		for ( File file : files ){
+			String name = file.getName();
+			if ( name.endsWith(TEMP_SUFFIX) ){
+				file.delete();
+			}else if ( name.endsWith(SUFFIX) ){
+				if ( now - file.lastModified() > ttl ){
+					file.delete();
+					continue;
+				}
+				long length = file.length();
+				entries.put(name.substring(0, name.length() - SUFFIX.length()), Long.valueOf(length));
+				size += length;
+			}
+		}
+		evict();
+	}
+
+	/*
+	 * Adds a written entry to the index.
+	 */
+	private synchronized void add(String key, long length){
+		Long previous = entries.put(key, Long.valueOf(length));
+		if ( previous != null ){
+			size -= previous.longValue();
+		}
+		size += length;
+		evict();
+	}
+
+	/*
+	 * Removes the least recently used entries until the cache is within its maximum size. Must hold the lock.
+	 */
+	private void evict(){
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		while ( size > maxSize && it.hasNext() ){
+			Map.Entry<String, Long> entry = it.next();
+			getFile(entry.getKey()).delete();
+			size -= entry.getValue().longValue();
+			it.remove();
+			logger.debug("Evicted cached BLAST result " + entry.getKey());
+		}
+	}
+
+	/**
+	 * Copies a result to a temporary file as it is read, and moves it into the cache once it has been
+	 * read completely.
+	 */
+	final class Recorder{
+
+		private final String key;
+		private File temp = null;
+		private OutputStream out = null;
+
+		private Recorder(String key){
+			this.key = key;
+		}
+
+		/*
+		 * Wraps the stream the result is read from. If the temporary file cannot be created the stream
+		 * is returned unchanged and nothing is recorded. Closing the returned stream does not close the
+		 * recording, which is closed by commit or discard.
+		 */
+		InputStream wrap(InputStream in){
+			try{
+				temp = File.createTempFile(key.substring(0, 16) + "-", TEMP_SUFFIX, directory);
+				out = new BufferedOutputStream(new FileOutputStream(temp));
+				return new TeeInputStream(in, out){
+					@Override
+					public void close() throws IOException{
+						this.in.close();
+					}
+				};
+			}catch(IOException e){
+				logger.warn("Unable to cache BLAST result: " + e.getMessage());
+				temp = null;
+				return in;
+			}
+		}
+
+		/*
+		 * Closes the recording and stores it, unless it could not be written completely - as when the disk is full.
+		 */
+		void commit(){
+			if ( temp == null ){
+				return;
+			}
+			try{
+				out.close();
+			}catch(IOException e){
+				logger.warn("Unable to cache BLAST result: " + e.getMessage());
+				discard();
+				return;
+			}
+			File file = getFile(key);
+			try{
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				add(key, file.length());
+			}catch(IOException e){
+				logger.warn("Unable to cache BLAST result: " + e.getMessage());
+				temp.delete();
+			}
+			temp = null;
+		}
+
+		/*
+		 * Discards the recorded output, which was not a complete result.
+		 */
+		void discard(){
+			if ( temp != null ){
+				try{out.close();}catch(IOException e){}
+				temp.delete();
+				temp = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.algosome.eutils.blast;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming (StAX) parser for BLAST XML output (FORMAT_TYPE=XML). Each Hit element is converted to a
+ * BlastHit and passed to a BlastHitHandler as soon as it has been read, so only one hit is held in
+ * memory. Combined with a TopHitsCollector, only the best hits are ever kept.</p>
+ * <p>The aligned sequences of each HSP are skipped unless requested, as they make up most of the output.
+ * <pre>
+ * GetCommand get = new GetCommand();
+ * get.setFormatType("XML");
+ * TopHitsCollector top = new TopHitsCollector(10, TopHitsCollector.Ranking.EVALUE);
+ * get.setStreamingParser(new BlastXmlParser(top));
+ * </pre>
+ * @author Greg Cope
+ * @see BlastJsonParser
+ */
+public class BlastXmlParser implements StreamingBlastParser{
+
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+	static{
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+	}
+
+	private final BlastHitHandler handler;
+
+	private boolean includeAlignments = false;
+
+	/*The query of the hits being parsed*/
+	private String queryId;
+	private String queryDef;
+	private int queryLength;
+
+	/**
+	 * Constructs a new parser.
+	 * @param handler The handler to pass each hit to.
+	 */
+	public BlastXmlParser(BlastHitHandler handler){
+		this.handler = handler;
+	}
+
+	/**
+	 * Sets whether the aligned query and hit sequences and midline of each HSP are kept. Default is false.
+	 * @param include
+	 */
+	public void setIncludeAlignments(boolean include){
+		this.includeAlignments = include;
+	}
+
+	/**
+	 * Parses the BLAST XML, passing each hit to the handler.
+	 * @param reader The BLAST XML output.
+	 * @throws IOException if the output could not be read or is not valid XML.
+	 */
+	public void parseBlastOutput(Reader reader) throws IOException{
+		queryId = null;
+		queryDef = null;
+		queryLength = 0;
+		XMLStreamReader xml = null;
+		try{
+			xml = FACTORY.createXMLStreamReader(reader);
+			while ( xml.hasNext() ){
+				if ( xml.next() != XMLStreamConstants.START_ELEMENT ){
+					continue;
+				}
+				String name = xml.getLocalName();
+				if ( "Hit".equals(name) ){
+					handler.hit(parseHit(xml));
+				}else if ( "BlastOutput_query-ID".equals(name) || "Iteration_query-ID".equals(name) ){
+					queryId = xml.getElementText().trim();
+				}else if ( "BlastOutput_query-def".equals(name) || "Iteration_query-def".equals(name) ){
+					queryDef = xml.getElementText().trim();
+				}else if ( "BlastOutput_query-len".equals(name) || "Iteration_query-len".equals(name) ){
+					queryLength = parseInt(xml.getElementText());
+				}else if ( "BlastOutput_param".equals(name) || "Iteration_stat".equals(name) ){
+					skipElement(xml);
+				}
+			}
+		}catch(XMLStreamException e){
+			throw new IOException("Unable to parse BLAST XML: " + e.getMessage(), e);
+		}catch(NumberFormatException e){
+			throw new IOException("Invalid number in BLAST XML: " + e.getMessage(), e);
+		}finally{
+			if ( xml != null ){
+				try{xml.close();}catch(XMLStreamException e){}
+			}
+		}
+	}
+
+	/*
+	 * Parses a Hit element. Positioned on its start element.
+	 */
+	private BlastHit parseHit(XMLStreamReader xml) throws XMLStreamException{
+		BlastHit hit = new BlastHit();
+		hit.setQuery(queryId, queryDef, queryLength);
+		String name;
+		while ( (name = nextChild(xml)) != null ){
+			if ( "Hit_num".equals(name) ){
+				hit.setNum(parseInt(xml.getElementText()));
+			}else if ( "Hit_id".equals(name) ){
+				hit.setId(xml.getElementText().trim());
+			}else if ( "Hit_def".equals(name) ){
+				hit.setDefinition(xml.getElementText().trim());
+			}else if ( "Hit_accession".equals(name) ){
+				hit.setAccession(xml.getElementText().trim());
+			}else if ( "Hit_len".equals(name) ){
+				hit.setLength(parseInt(xml.getElementText()));
+			}else if ( "Hit_hsps".equals(name) ){
+				while ( nextChild(xml) != null ){
+					hit.addHsp(parseHsp(xml));
+				}
+			}else{
+				skipElement(xml);
+			}
+		}
+		return hit;
+	}
+
+	/*
+	 * Parses an Hsp element. Positioned on its start element.
+	 */
+	private BlastHsp parseHsp(XMLStreamReader xml) throws XMLStreamException{
+		BlastHsp hsp = new BlastHsp();
+		String name;
+		while ( (name = nextChild(xml)) != null ){
+			if ( "Hsp_num".equals(name) ){
+				hsp.setNum(parseInt(xml.getElementText()));
+			}else if ( "Hsp_bit-score".equals(name) ){
+				hsp.setBitScore(Double.parseDouble(xml.getElementText().trim()));
+			}else if ( "Hsp_score".equals(name) ){
+				hsp.setScore(Double.parseDouble(xml.getElementText().trim()));
+			}else if ( "Hsp_evalue".equals(name) ){
+				hsp.setEvalue(Double.parseDouble(xml.getElementText().trim()));
+			}else if ( "Hsp_query-from".equals(name) ){
+				hsp.setQueryFrom(parseInt(xml.getElementText()));
+			}else if ( "Hsp_query-to".equals(name) ){
+				hsp.setQueryTo(parseInt(xml.getElementText()));
+			}else if ( "Hsp_hit-from".equals(name) ){
+				hsp.setHitFrom(parseInt(xml.getElementText()));
+			}else if ( "Hsp_hit-to".equals(name) ){
+				hsp.setHitTo(parseInt(xml.getElementText()));
+			}else if ( "Hsp_query-frame".equals(name) ){
+				hsp.setQueryFrame(parseInt(xml.getElementText()));
+			}else if ( "Hsp_hit-frame".equals(name) ){
+				hsp.setHitFrame(parseInt(xml.getElementText()));
+			}else if ( "Hsp_identity".equals(name) ){
+				hsp.setIdentities(parseInt(xml.getElementText()));
+			}else if ( "Hsp_positive".equals(name) ){
+				hsp.setPositives(parseInt(xml.getElementText()));
+			}else if ( "Hsp_gaps".equals(name) ){
+				hsp.setGaps(parseInt(xml.getElementText()));
+			}else if ( "Hsp_align-len".equals(name) ){
+				hsp.setAlignLength(parseInt(xml.getElementText()));
+			}else if ( includeAlignments && "Hsp_qseq".equals(name) ){
+				hsp.setQuerySequence(xml.getElementText().trim());
+			}else if ( includeAlignments && "Hsp_hseq".equals(name) ){
+				hsp.setHitSequence(xml.getElementText().trim());
+			}else if ( includeAlignments && "Hsp_midline".equals(name) ){
+				hsp.setMidline(xml.getElementText());
+			}else{
+				skipElement(xml);
+			}
+		}
+		return hsp;
+	}
+
+	private static int parseInt(String s){
+		return Integer.parseInt(s.trim());
+	}
+
+	/*
+	 * Moves to the next child of the current element. Returns the name of the child, positioned on its start
+	 * element, or null once the end element of the current element has been reached.
+	 */
+	private static String nextChild(XMLStreamReader xml) throws XMLStreamException{
+		while ( xml.hasNext() ){
+			int event = xml.next();
+			if ( event == XMLStreamConstants.START_ELEMENT ){
+				return xml.getLocalName();
+			}else if ( event == XMLStreamConstants.END_ELEMENT ){
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Skips the current element and all of its children. Positioned on the start element,
+	 * finishes on the matching end element.
+	 */
+	private static void skipElement(XMLStreamReader xml) throws XMLStreamException{
+		int depth = 1;
+		while ( depth > 0 && xml.hasNext() ){
+			int event = xml.next();
+			if ( event == XMLStreamConstants.START_ELEMENT ){
+				depth++;
+			}else if ( event == XMLStreamConstants.END_ELEMENT ){
+				depth--;
+			}
+		}
+	}
+}
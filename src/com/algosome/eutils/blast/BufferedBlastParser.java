@@ -0,0 +1,41 @@
+package com.algosome.eutils.blast;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Adapts a BlastParser to the StreamingBlastParser interface, by reading the whole output into a String
+ * and passing it to the BlastParser.
+ * @author Greg Cope
+ *
+ */
+public class BufferedBlastParser implements StreamingBlastParser{
+
+	private final BlastParser parser;
+
+	/**
+	 * Constructs a new BufferedBlastParser.
+	 * @param parser The parser to pass the output to.
+	 */
+	public BufferedBlastParser(BlastParser parser){
+		this.parser = parser;
+	}
+
+	/**
+	 * Retrieves the parser the output is passed to.
+	 * @return
+	 */
+	public BlastParser getParser(){
+		return parser;
+	}
+
+	public void parseBlastOutput(Reader reader) throws IOException{
+		StringBuilder sb = new StringBuilder();
+		char[] buffer = new char[8192];
+		int read;
+		while ( (read = reader.read(buffer)) != -1 ){
+			sb.append(buffer, 0, read);
+		}
+		parser.parseBlastOutput(sb.toString());
+	}
+}
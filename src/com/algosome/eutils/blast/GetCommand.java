@@ -14,20 +14,52 @@ public class GetCommand extends QBlastCommand{
 	 public static final String STATUS_READY = "READY";
 	 public static final String STATUS_WAITING = "WAITING";
 	 public static final String STATUS_NONE = "NONE"; 
+	 public static final String STATUS_FAILED = "FAILED";
+	 public static final String STATUS_UNKNOWN = "UNKNOWN";
 	
 	protected String status = STATUS_NONE;
 	
-	private final BlastParser blastParser;
+	protected String estimatedWaitTime = null;
+	
+	/*Set once a SearchInfo poll has found the search is ready*/
+	private boolean knownReady = false;
+	
+	private boolean searchInfoPolling = true;
+	
+	private StreamingBlastParser blastParser;
+	
+	/*Records the result to a cache, if set*/
+	private BlastResultCache.Recorder recorder = null;
+	
+	/*Number of characters read ahead to find the status of the search*/
+	private static final int STATUS_LOOKAHEAD = 64 * 1024;
 	
 	
 	/**
-	 * Constructs a new GetCommand with a parser to parse the blast output. 
+	 * Constructs a new GetCommand with a parser to parse the blast output. The whole output is read 
+	 * into a String before it is passed to the parser.
 	 * @param parser
+	 * @see BufferedBlastParser
 	 */
 	public GetCommand(BlastParser parser){
-		this.blastParser = parser;
+		this.blastParser = parser == null ? null : new BufferedBlastParser(parser);
 	}
 	
+	/**
+	 * Constructs a new GetCommand without a parser. Use setStreamingParser to read the output directly from the connection.
+	 * @see #setStreamingParser(StreamingBlastParser)
+	 */
+	public GetCommand(){
+		this.blastParser = null;
+	}
+	
+	/**
+	 * Sets a parser which reads the blast output directly from the connection, replacing any parser set on construction.
+	 * @param parser
+	 */
+	public void setStreamingParser(StreamingBlastParser parser){
+		this.blastParser = parser;
+	}
 	
 	
     /**
@@ -210,11 +242,11 @@ public class GetCommand extends QBlastCommand{
 
     
     /**
-     * 
+     * Retrieves the estimated wait time in seconds found in the last response, or null if none was found.
      * @return
      */
     public String getEstimatedWaitTime(){
-    	return params.get("EST_WAIT_TIME");
+    	return estimatedWaitTime;
     }
     
     private static final Pattern WAIT_TIME_PATTERN = Pattern.compile("([0-9]+) seconds", Pattern.DOTALL);
@@ -222,47 +254,110 @@ public class GetCommand extends QBlastCommand{
     
     /**
      * Processes the result. Should the status signify the result is ready, 
-     * the output will be passed to the BlastParser defined in the constructor.
+     * the output will be passed to the parser defined in the constructor, directly from the stream. The 
+     * status is looked for in the first part of the output only: output without a status is the result 
+     * if it is XML, if the search is already known to be ready, or if it is too long to be a status page.
      */
     @Override
     protected void processResult(InputStream in) throws Exception{
-    	StringBuilder sb = new StringBuilder();
-     
-    	BufferedReader br = null;
+    	Reader reader = null;
+    	BlastResultCache.Recorder recording = recorder;
+    	boolean complete = false;
     	try{
-    		br = new BufferedReader(new InputStreamReader(in));
-    	
-	        String line;
-	        status = "";
-	
-	        while ((line = br.readLine()) != null){
-	        	sb.append(line);
-	        	sb.append("\n");
-	            if (line.indexOf("Status=") != -1){
-	                status = getValue(line).toUpperCase();
-	            }
-	        }
-	        
-	        if (params.get("FORMAT_TYPE").equals("XML") && status==null){
+    		status = "";
+    		estimatedWaitTime = null;
+    		if ( knownReady ){
+    			if ( recording != null ){
+    				in = recording.wrap(in);
+    			}
+    			reader = new BufferedReader(new InputStreamReader(in));
+    			status = STATUS_READY;
+    			if ( blastParser != null ){
+    				blastParser.parseBlastOutput(recording == null ? reader : unclosable(reader));
+    			}
+    			if ( recording != null ){
+    				drain(reader);
+    			}
+    			complete = true;
+    			return;
+    		}
+    		//read ahead for the status, and push it back in case this is the result
+    		PushbackInputStream pin = new PushbackInputStream(in, STATUS_LOOKAHEAD);
+    		in = pin;
+    		byte[] head = new byte[STATUS_LOOKAHEAD];
+    		int length = 0;
+    		int read;
+    		while ( length < head.length && (read = pin.read(head, length, head.length - length)) != -1 ){
+    			length += read;
+    		}
+    		boolean truncated = length == head.length;
+    		String text = new String(head, 0, length);
+    		int index = text.indexOf("Status=");
+    		if ( index != -1 ){
+    			int end = text.indexOf('\n', index);
+    			status = getValue(text.substring(index, end == -1 ? text.length() : end)).toUpperCase();
+    		}
+	        //a completed result has no status, unless it was requested before it was ready
+	        if (status.length() == 0 && (truncated || "XML".equals(params.get("FORMAT_TYPE")))){
 	            status = STATUS_READY;
 	        }
 	      
-	        if (status != null && status.equals(STATUS_READY)){
+	        if (status.equals(STATUS_READY)){
+	        	pin.unread(head, 0, length);
+	        	//only a result is recorded, not the status pages before it
+	        	if ( recording != null ){
+	        		in = recording.wrap(pin);
+	        	}
+	        	reader = new BufferedReader(new InputStreamReader(in));
 	        	if ( blastParser != null ){
-	        		blastParser.parseBlastOutput(sb.toString());
+	        		blastParser.parseBlastOutput(recording == null ? reader : unclosable(reader));
+	        	}
+	        	if ( recording != null ){
+	        		drain(reader);
 	        	}
+	        	complete = true;
 	        }else{
-	        	Matcher matcher = WAIT_TIME_PATTERN.matcher(sb.toString());
+	        	Matcher matcher = WAIT_TIME_PATTERN.matcher(text);
 	        	if ( matcher.find() ){
-	        		params.put("EST_WAIT_TIME", matcher.group(1));
+	        		estimatedWaitTime = matcher.group(1);
 	        	}
 	        }
-    	}catch(Exception e){
-    		throw e;
     	}finally{
-    		if ( br != null ){
-    			try{br.close();}catch(Exception e){}
+    		if ( reader != null ){
+    			try{reader.close();}catch(Exception e){}
+    		}else{
+    			try{in.close();}catch(Exception e){}
+    		}
+    		//the recording is closed by commit, which stores it only if it was written completely
+    		if ( recording != null ){
+    			if ( complete ){
+    				recording.commit();
+    			}else{
+    				recording.discard();
+    			}
+    		}
+    	}
+    }
+    
+    /*
+     * Wraps a reader so a parser closing it does not stop the rest of the result from being recorded.
+     */
+    private static Reader unclosable(Reader reader){
+    	return new FilterReader(reader){
+    		@Override
+    		public void close(){
+    			//closed once the result has been recorded
     		}
+    	};
+    }
+    
+    /*
+     * Reads whatever the parser left unread, so the whole result is recorded.
+     */
+    private static void drain(Reader reader) throws IOException{
+    	char[] buffer = new char[8192];
+    	while ( reader.read(buffer) != -1 ){
+    		//discard
     	}
     }
 
@@ -272,6 +367,50 @@ public class GetCommand extends QBlastCommand{
         return line.substring(line.indexOf("=") + 1).trim();
     }
 
+    /**
+     * Sets whether the search is polled with a SearchInfoCommand until it is ready, so the full result is 
+     * only retrieved once. If false, every poll retrieves the full result in the format of this command. 
+     * Default is true.
+     * @param value
+     */
+    public void setSearchInfoPolling(boolean value){
+    	this.searchInfoPolling = value;
+    }
+    
+    /**
+     * Determines whether the search is polled with a SearchInfoCommand until it is ready.
+     * @return
+     */
+    public boolean isSearchInfoPolling(){
+    	return searchInfoPolling;
+    }
+    
+    /**
+     * Creates a command to check the status of the search referred to by the RID of this command.
+     * @return
+     */
+    public SearchInfoCommand createSearchInfoCommand(){
+    	SearchInfoCommand info = new SearchInfoCommand();
+    	info.setRequestID(params.get("RID"));
+    	return info;
+    }
+    
+    /**
+     * Marks that the search is known to be ready, so a response without a status is treated as the result.
+     * @param ready
+     */
+    void setKnownReady(boolean ready){
+    	this.knownReady = ready;
+    }
+    
+    /**
+     * Sets the recorder which stores the result in a cache once it has been read completely.
+     * @param recorder
+     */
+    void setRecorder(BlastResultCache.Recorder recorder){
+    	this.recorder = recorder;
+    }
+    
     /**
      * Retrieves the current status.
      * @return
@@ -0,0 +1,485 @@
+package com.algosome.eutils.blast;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+import com.algosome.eutils.align.Alignment;
+import com.algosome.eutils.align.KmerIndex;
+import com.algosome.eutils.align.ScoringMatrix;
+import com.algosome.eutils.align.SequenceDatabase;
+import com.algosome.eutils.align.SmithWaterman;
+
+/**
+ * A BlastBackend which searches a small FASTA database in process, so searches of private reference sets
+ * take milliseconds and need no network. The database is indexed by k-mer; each database sequence sharing
+ * words with the query is scored without gaps along the diagonal with the most shared words and, if that
+ * scores high enough, aligned with banded Smith-Waterman around the diagonal. Alignments are scored with
+ * the Karlin-Altschul statistics of the scoring matrix.</p>
+ * <p>blastn (both strands) and blastp are supported, reading the query, WORD_SIZE, EXPECT, HITLIST_SIZE
+ * and scoring parameters of the put. Unlike BLAST, protein seeds are exact word
+ * matches rather than neighbourhood words, and each hit has a single HSP. The result is BLAST XML, so it
+ * is read with a BlastXmlParser whatever the format requested of the get.
+ * <pre>
+ * Blast blast = new Blast(put, get);
+ * blast.setBackend(new LocalBlastBackend(new File("references.fasta")));
+ * blast.run();
+ * </pre>
+ * @author Greg Cope
+ */
+public class LocalBlastBackend implements BlastBackend{
+
+	private static final Logger logger = Logger.getLogger(LocalBlastBackend.class);
+
+	/**Default number of diagonals either side of the seed diagonal searched for gapped alignments*/
+	public static final int DEFAULT_BAND_WIDTH = 24;
+
+	/**Default maximum number of database sequences aligned per query and strand*/
+	public static final int DEFAULT_MAX_CANDIDATES = 500;
+
+	private static final int DEFAULT_HITLIST_SIZE = 100;
+
+	/*Bit score an ungapped alignment along the seed diagonal must reach before a gapped alignment is attempted*/
+	private static final double GAP_TRIGGER_BITS = 22;
+
+	private final SequenceDatabase database;
+
+	/*Indices by matrix and word size, built on first use*/
+	private final ConcurrentMap<String, KmerIndex> indices = new ConcurrentHashMap<String, KmerIndex>();
+
+	private volatile int bandWidth = DEFAULT_BAND_WIDTH;
+
+	private volatile int maxCandidates = DEFAULT_MAX_CANDIDATES;
+
+	/**
+	 * Constructs a backend searching the sequences of a FASTA file.
+	 * @param fasta
+	 * @throws IOException if the file could not be read.
+	 */
+	public LocalBlastBackend(File fasta) throws IOException{
+		this(new SequenceDatabase(fasta));
+	}
+
+	/**
+	 * Constructs a backend searching a database.
+	 * @param database
+	 */
+	public LocalBlastBackend(SequenceDatabase database){
+		this.database = database;
+	}
+
+	/**
+	 * Sets the number of diagonals either side of the seed diagonal searched, which bounds the length of gaps found.
+	 * @param bandWidth
+	 */
+	public void setBandWidth(int bandWidth){
+		this.bandWidth = bandWidth;
+	}
+
+	/**
+	 * Sets the maximum number of database sequences aligned for each query and strand, those sharing the most
+	 * words with the query being aligned first.
+	 * @param maxCandidates
+	 */
+	public void setMaxCandidates(int maxCandidates){
+		this.maxCandidates = maxCandidates;
+	}
+
+	@Override
+	public void search(PutCommand put, GetCommand get) throws IOException{
+		String program = put.getProgram() == null ? "blastn" : put.getProgram().toLowerCase();
+		int wordSize = intParam(put, "WORD_SIZE", 0);
+		if ( "blastn".equals(program) || "megablast".equals(program) ){
+			wordSize = wordSize <= 0 ? 11 : Math.max(4, Math.min(wordSize, 16));
+		}else if ( "blastp".equals(program) ){
+			wordSize = wordSize <= 0 ? 3 : Math.max(2, Math.min(wordSize, 3));
+		}else{
+			throw new IOException("Program " + program + " is not supported by the local backend");
+		}
+		ScoringMatrix matrix;
+		try{
+			matrix = put.getScoringMatrix();
+		}catch(IllegalArgumentException e){
+			throw new IOException(e.getMessage(), e);
+		}
+		double expect = doubleParam(put, "EXPECT", 10);
+		int hitListSize = intParam(put, "HITLIST_SIZE", intParam(put, "DESCRIPTIONS", DEFAULT_HITLIST_SIZE));
+		KmerIndex index = getIndex(matrix, wordSize);
+		List<String[]> queries = parseQueries(put.params.get("QUERY"));
+		if ( queries.isEmpty() ){
+			throw new IOException("No query to search");
+		}
+		long start = System.nanoTime();
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\"?>\n<BlastOutput>\n");
+		element(xml, "BlastOutput_program", program);
+		element(xml, "BlastOutput_db", database.getName());
+		element(xml, "BlastOutput_query-ID", "Query_1");
+		element(xml, "BlastOutput_query-def", queries.get(0)[0]);
+		element(xml, "BlastOutput_query-len", Integer.toString(queries.get(0)[1].length()));
+		xml.append("<BlastOutput_iterations>\n");
+		for ( int q = 0; q < queries.size(); q++ ){
+			String definition = queries.get(q)[0];
+			String query = queries.get(q)[1];
+			List<LocalHit> hits = search(index, matrix, query, expect);
+			if ( hits.size() > hitListSize ){
+				hits = hits.subList(0, hitListSize);
+			}
+			xml.append("<Iteration>\n");
+			element(xml, "Iteration_iter-num", Integer.toString(q + 1));
+			element(xml, "Iteration_query-ID", "Query_" + (q + 1));
+			element(xml, "Iteration_query-def", definition);
+			element(xml, "Iteration_query-len", Integer.toString(query.length()));
+			xml.append("<Iteration_hits>\n");
+			for ( int h = 0; h < hits.size(); h++ ){
+				writeHit(xml, h + 1, hits.get(h), query.length(), matrix);
+			}
+			xml.append("</Iteration_hits>\n</Iteration>\n");
+		}
+		xml.append("</BlastOutput_iterations>\n</BlastOutput>\n");
+		if ( logger.isDebugEnabled() ){
+			logger.debug("Local " + program + " of " + queries.size() + " queries against " + database.size() + " sequences took "
+					+ (System.nanoTime() - start) / 1000000 + "ms");
+		}
+		get.setKnownReady(true);
+		try{
+			get.processResult(new ByteArrayInputStream(xml.toString().getBytes(StandardCharsets.UTF_8)));
+		}catch(IOException e){
+			throw e;
+		}catch(Exception e){
+			throw new IOException("Unable to parse local BLAST result: " + e.getMessage(), e);
+		}
+	}
+
+	/*
+	 * Searches a single query, on both strands if it is nucleotide, returning the hits ordered best first.
+	 */
+	private List<LocalHit> search(KmerIndex index, ScoringMatrix matrix, String query, double expect){
+		List<LocalHit> hits = new ArrayList<LocalHit>();
+		Map<Integer, LocalHit> best = new HashMap<Integer, LocalHit>();
+		searchStrand(index, matrix, query, expect, false, best);
+		if ( matrix.isNucleotide() ){
+			searchStrand(index, matrix, reverseComplement(query), expect, true, best);
+		}
+		hits.addAll(best.values());
+		Collections.sort(hits, new Comparator<LocalHit>(){
+			public int compare(LocalHit a, LocalHit b){
+				int c = Double.compare(a.evalue, b.evalue);
+				return c != 0 ? c : Integer.compare(b.alignment.getScore(), a.alignment.getScore());
+			}
+		});
+		return hits;
+	}
+
+	/*
+	 * Seeds and extends one strand of a query, keeping the best alignment with each database sequence.
+	 */
+	private void searchStrand(KmerIndex index, ScoringMatrix matrix, final String query, double expect, boolean minus, Map<Integer, LocalHit> best){
+		//count the seeds on each diagonal of each sequence
+		final DiagonalCounter diagonals = new DiagonalCounter();
+		index.findSeeds(query, new KmerIndex.SeedVisitor(){
+			public void seed(int queryPosition, int sequence, int position){
+				diagonals.increment(((long)sequence << 32) | ((position - queryPosition) & 0xFFFFFFFFL));
+			}
+		});
+		//the diagonal with the most seeds in each sequence
+		Map<Integer, int[]> candidates = new HashMap<Integer, int[]>();
+		for ( int slot = 0; slot < diagonals.keys.length; slot++ ){
+			int count = diagonals.counts[slot];
+			if ( count == 0 ){
+				continue;
+			}
+			long key = diagonals.keys[slot];
+			Integer sequence = Integer.valueOf((int)(key >>> 32));
+			int diagonal = (int)key;
+			int[] candidate = candidates.get(sequence);
+			if ( candidate == null ){
+				candidates.put(sequence, new int[]{sequence.intValue(), diagonal, count});
+			}else if ( count > candidate[2] ){
+				candidate[1] = diagonal;
+				candidate[2] = count;
+			}
+		}
+		List<int[]> ordered = new ArrayList<int[]>(candidates.values());
+		Collections.sort(ordered, new Comparator<int[]>(){
+			public int compare(int[] a, int[] b){
+				return Integer.compare(b[2], a[2]);
+			}
+		});
+		SmithWaterman aligner = new SmithWaterman(matrix);
+		int limit = Math.min(ordered.size(), maxCandidates);
+		for ( int c = 0; c < limit; c++ ){
+			int[] candidate = ordered.get(c);
+			if ( matrix.bitScore(ungappedScore(matrix, query, database.getSequence(candidate[0]), candidate[1])) < GAP_TRIGGER_BITS ){
+				continue;
+			}
+			Alignment alignment = aligner.align(query, database.getSequence(candidate[0]), candidate[1], bandWidth);
+			if ( alignment == null ){
+				continue;
+			}
+			double evalue = matrix.evalue(alignment.getScore(), query.length(), database.getTotalLength());
+			if ( evalue > expect ){
+				continue;
+			}
+			Integer key = Integer.valueOf(candidate[0]);
+			LocalHit previous = best.get(key);
+			if ( previous == null || alignment.getScore() > previous.alignment.getScore() ){
+				best.put(key, new LocalHit(candidate[0], alignment, evalue, minus));
+			}
+		}
+	}
+
+	/*
+	 * Scores the best ungapped alignment along a diagonal, so candidates whose seeds are chance matches are
+	 * dropped without the cost of a gapped alignment.
+	 */
+	private static int ungappedScore(ScoringMatrix matrix, String query, String target, int diagonal){
+		int best = 0;
+		int run = 0;
+		int end = Math.min(query.length(), target.length() - diagonal);
+		for ( int i = Math.max(0, -diagonal); i < end; i++ ){
+			run = Math.max(0, run + matrix.score(query.charAt(i), target.charAt(i + diagonal)));
+			if ( run > best ){
+				best = run;
+			}
+		}
+		return best;
+	}
+
+	/*
+	 * Writes a hit in the form of BLAST XML. Alignments with the reverse complement of the query are written
+	 * with the query on the plus strand and the hit on the minus strand, as BLAST does.
+	 */
+	private void writeHit(StringBuilder xml, int num, LocalHit hit, int queryLength, ScoringMatrix matrix){
+		Alignment a = hit.alignment;
+		String id = database.getId(hit.sequence);
+		xml.append("<Hit>\n");
+		element(xml, "Hit_num", Integer.toString(num));
+		element(xml, "Hit_id", id);
+		element(xml, "Hit_def", database.getDefinition(hit.sequence));
+		element(xml, "Hit_accession", id);
+		element(xml, "Hit_len", Integer.toString(database.getSequence(hit.sequence).length()));
+		xml.append("<Hit_hsps>\n<Hsp>\n");
+		element(xml, "Hsp_num", "1");
+		element(xml, "Hsp_bit-score", Double.toString(matrix.bitScore(a.getScore())));
+		element(xml, "Hsp_score", Integer.toString(a.getScore()));
+		element(xml, "Hsp_evalue", Double.toString(hit.evalue));
+		String qseq = a.getAlignedQuery();
+		String hseq = a.getAlignedTarget();
+		String midline = a.getMidline();
+		if ( hit.minus ){
+			element(xml, "Hsp_query-from", Integer.toString(queryLength - a.getQueryEnd() + 1));
+			element(xml, "Hsp_query-to", Integer.toString(queryLength - a.getQueryStart() + 1));
+			element(xml, "Hsp_hit-from", Integer.toString(a.getTargetEnd()));
+			element(xml, "Hsp_hit-to", Integer.toString(a.getTargetStart()));
+			element(xml, "Hsp_query-frame", "1");
+			element(xml, "Hsp_hit-frame", "-1");
+			qseq = reverseComplement(qseq);
+			hseq = reverseComplement(hseq);
+			midline = new StringBuilder(midline).reverse().toString();
+		}else{
+			element(xml, "Hsp_query-from", Integer.toString(a.getQueryStart()));
+			element(xml, "Hsp_query-to", Integer.toString(a.getQueryEnd()));
+			element(xml, "Hsp_hit-from", Integer.toString(a.getTargetStart()));
+			element(xml, "Hsp_hit-to", Integer.toString(a.getTargetEnd()));
+			element(xml, "Hsp_query-frame", "1");
+			element(xml, "Hsp_hit-frame", "1");
+		}
+		element(xml, "Hsp_identity", Integer.toString(a.getIdentities()));
+		element(xml, "Hsp_positive", Integer.toString(a.getPositives()));
+		element(xml, "Hsp_gaps", Integer.toString(a.getGaps()));
+		element(xml, "Hsp_align-len", Integer.toString(a.getLength()));
+		element(xml, "Hsp_qseq", qseq);
+		element(xml, "Hsp_hseq", hseq);
+		element(xml, "Hsp_midline", midline);
+		xml.append("</Hsp>\n</Hit_hsps>\n</Hit>\n");
+	}
+
+	private KmerIndex getIndex(ScoringMatrix matrix, int wordSize){
+		String key = matrix.getName() + "/" + wordSize;
+		KmerIndex index = indices.get(key);
+		if ( index == null ){
+			synchronized(indices){
+				index = indices.get(key);
+				if ( index == null ){
+					long start = System.nanoTime();
+					index = new KmerIndex(database, matrix, wordSize);
+					indices.put(key, index);
+					logger.debug("Indexed " + database.size() + " sequences with word size " + wordSize + " in "
+							+ (System.nanoTime() - start) / 1000000 + "ms");
+				}
+			}
+		}
+		return index;
+	}
+
+	/*
+	 * Splits the query into definition and sequence pairs. A query without a definition line is a single sequence.
+	 */
+	private static List<String[]> parseQueries(String query){
+		List<String[]> queries = new ArrayList<String[]>();
+		if ( query == null ){
+			return queries;
+		}
+		String definition = null;
+		StringBuilder sequence = new StringBuilder();
+		for ( String line : query.split("\r?\n") ){
+			if ( line.startsWith(">") ){
+				if ( definition != null || sequence.length() > 0 ){
+					queries.add(new String[]{definition == null ? "No definition line" : definition, sequence.toString()});
+				}
+				definition = line.substring(1).trim();
+				sequence.setLength(0);
+			}else{
+				for ( int i = 0; i < line.length(); i++ ){
+					char c = line.charAt(i);
+					if ( !Character.isWhitespace(c) ){
+						sequence.append(Character.toUpperCase(c));
+					}
+				}
+			}
+		}
+		if ( definition != null || sequence.length() > 0 ){
+			queries.add(new String[]{definition == null ? "No definition line" : definition, sequence.toString()});
+		}
+		return queries;
+	}
+
+	private static String reverseComplement(String sequence){
+		StringBuilder rc = new StringBuilder(sequence.length());
+		for ( int i = sequence.length() - 1; i >= 0; i-- ){
+			char c = sequence.charAt(i);
+			switch(c){
+				case 'A': rc.append('T'); break;
+				case 'T': case 'U': rc.append('A'); break;
+				case 'C': rc.append('G'); break;
+				case 'G': rc.append('C'); break;
+				default: rc.append(c);
+			}
+		}
+		return rc.toString();
+	}
+
+	private static int intParam(PutCommand put, String name, int defaultValue){
+		String value = put.params.get(name);
+		if ( value == null || value.length() == 0 ){
+			return defaultValue;
+		}
+		try{
+			return (int)Double.parseDouble(value);
+		}catch(NumberFormatException e){
+			return defaultValue;
+		}
+	}
+
+	private static double doubleParam(PutCommand put, String name, double defaultValue){
+		String value = put.params.get(name);
+		if ( value == null || value.length() == 0 ){
+			return defaultValue;
+		}
+		try{
+			return Double.parseDouble(value);
+		}catch(NumberFormatException e){
+			return defaultValue;
+		}
+	}
+
+	private static void element(StringBuilder xml, String name, String value){
+		xml.append('<').append(name).append('>');
+		for ( int i = 0; i < value.length(); i++ ){
+			char c = value.charAt(i);
+			switch(c){
+				case '<': xml.append("&lt;"); break;
+				case '>': xml.append("&gt;"); break;
+				case '&': xml.append("&amp;"); break;
+				default:
+					if ( c > 127 ){
+						xml.append("&#").append((int)c).append(';');
+					}else{
+						xml.append(c);
+					}
+			}
+		}
+		xml.append("</").append(name).append(">\n");
+	}
+
+	/**
+	 * Counts seeds by sequence and diagonal in an open addressed table, as a query may have hundreds of
+	 * thousands of seeds when the word size is small.
+	 */
+	private static final class DiagonalCounter{
+
+		private long[] keys = new long[1024];
+		private int[] counts = new int[1024];
+		private int size = 0;
+
+		void increment(long key){
+			int mask = keys.length - 1;
+			int slot = hash(key) & mask;
+			while ( counts[slot] != 0 ){
+				if ( keys[slot] == key ){
+					counts[slot]++;
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			counts[slot] = 1;
+			if ( ++size * 2 > keys.length ){
+				grow();
+			}
+		}
+
+		private void grow(){
+			long[] oldKeys = keys;
+			int[] oldCounts = counts;
+			keys = new long[oldKeys.length * 2];
+			counts = new int[oldCounts.length * 2];
+			int mask = keys.length - 1;
+			for ( int i = 0; i < oldKeys.length; i++ ){
+				if ( oldCounts[i] != 0 ){
+					int slot = hash(oldKeys[i]) & mask;
+					while ( counts[slot] != 0 ){
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[i];
+					counts[slot] = oldCounts[i];
+				}
+			}
+		}
+
+		private static int hash(long key){
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int)(h ^ (h >>> 32));
+		}
+	}
+
+	/**
+	 * The best alignment of a query with a database sequence.
+	 */
+	private static final class LocalHit{
+
+		private final int sequence;
+		private final Alignment alignment;
+		private final double evalue;
+		private final boolean minus;
+
+		LocalHit(int sequence, Alignment alignment, double evalue, boolean minus){
+			this.sequence = sequence;
+			this.alignment = alignment;
+			this.evalue = evalue;
+			this.minus = minus;
+		}
+	}
+}
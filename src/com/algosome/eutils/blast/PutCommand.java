@@ -9,6 +9,8 @@ import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 
+import com.algosome.eutils.align.ScoringMatrix;
+
 /**
  * Adapted from http://users.encs.concordia.ca/~f_kohant/ncbiblast/
  * 
@@ -51,6 +53,15 @@ public class PutCommand extends QBlastCommand{
         params.put("DATABASE", value);
     }
 
+    /**
+     * Retrieves the database name
+     * @return
+     */
+    public String getDatabase()
+    {
+        return params.get("DATABASE");
+    }
+
     /**
      * Database genetic code (PROGRAM=tblast[nx] only)
      *
@@ -268,6 +279,47 @@ public class PutCommand extends QBlastCommand{
         params.put("PROGRAM", value);
     }
 
+    /**
+     * Retrieves the Blast program name
+     * @return
+     */
+    public String getProgram()
+    {
+        return params.get("PROGRAM");
+    }
+
+    /**
+     * Retrieves the scores of this search: nucleotide scores from NUCL_REWARD and NUCL_PENALTY for blastn,
+     * otherwise the protein matrix named by MATRIX_NAME, each with the gap costs of GAPCOSTS. Parameters
+     * which have not been set take the NCBI defaults.
+     * @return
+     * @throws IllegalArgumentException if the matrix is not available, or a parameter is not a number.
+     */
+    public ScoringMatrix getScoringMatrix()
+    {
+        String program = getProgram();
+        ScoringMatrix matrix;
+        if ( program == null || "blastn".equalsIgnoreCase(program) || "megablast".equalsIgnoreCase(program) ){
+            String reward = params.get("NUCL_REWARD");
+            String penalty = params.get("NUCL_PENALTY");
+            matrix = reward == null && penalty == null ? ScoringMatrix.NUCLEOTIDE 
+            		: ScoringMatrix.nucleotide(reward == null ? 2 : Integer.parseInt(reward.trim()), penalty == null ? -3 : Integer.parseInt(penalty.trim()), 
+            				ScoringMatrix.NUCLEOTIDE.getGapOpen(), ScoringMatrix.NUCLEOTIDE.getGapExtend());
+        }else{
+            String name = params.get("MATRIX_NAME");
+            matrix = name == null ? ScoringMatrix.BLOSUM62 : ScoringMatrix.forName(name);
+        }
+        String gapCosts = params.get("GAPCOSTS");
+        if ( gapCosts != null && gapCosts.trim().length() > 0 ){
+            String[] costs = gapCosts.trim().split("[\\s+]+");
+            if ( costs.length != 2 ){
+            	throw new IllegalArgumentException("GAPCOSTS must be an open and an extend cost: " + gapCosts);
+            }
+            matrix = matrix.withGapCosts(Integer.parseInt(costs[0]), Integer.parseInt(costs[1]));
+        }
+        return matrix;
+    }
+
     /**
      * Sequence query (queries if MegaBlast page)
      *
@@ -398,11 +450,11 @@ public class PutCommand extends QBlastCommand{
     }
 
     /**
-     * 
+     * Retrieves the estimated wait time in seconds found in the last response, or null if none was found.
      * @return
      */
     public String getEstimatedWaitTime(){
-    	return params.get("EST_WAIT_TIME");
+    	return estimatedWaitTime;
     }
     
     private static final Pattern WAIT_TIME_PATTERN = Pattern.compile("([0-9]+) seconds", Pattern.DOTALL);
@@ -413,6 +465,8 @@ public class PutCommand extends QBlastCommand{
     protected void processResult(InputStream in) throws IOException
     {
         BufferedReader response = null;
+        estimatedWaitTime = null;
+        waitingTime = 0;
         try{
         	response = new BufferedReader(new InputStreamReader(in));
 	        String line = null;	
@@ -422,12 +476,17 @@ public class PutCommand extends QBlastCommand{
 	        	sb.append(line);
 	            if (line.indexOf("RID =") > -1)
 	                responseID = getValue(line);
-	           // else if (line.indexOf("RTOE =") > -1)
-	           //     waitingTime = Integer.parseInt(getValue(line));
+	            else if (line.indexOf("RTOE =") > -1){
+	            	try{
+	            		waitingTime = Integer.parseInt(getValue(line));
+	            	}catch(NumberFormatException e){
+	            		logger.debug("Invalid RTOE: " + line);
+	            	}
+	            }
 	        }
 	        Matcher matcher = WAIT_TIME_PATTERN.matcher(sb.toString());
 	        if ( matcher.find() ){
-	        	params.put("EST_WAIT_TIME", matcher.group(1));
+	        	estimatedWaitTime = matcher.group(1);
 	        }
 	        //response.close();
         }catch(IOException e){
@@ -463,6 +522,11 @@ public class PutCommand extends QBlastCommand{
         this.waitingTime = waitingTime;
     }
 
+    /**
+     * Retrieves the Request Time Of Execution (RTOE) returned by the put, the estimated number of seconds 
+     * until the search completes, or 0 if none was returned.
+     * @return
+     */
     public int getWaitingTime()
     {
         return waitingTime;
@@ -470,4 +534,5 @@ public class PutCommand extends QBlastCommand{
 
     protected String responseID;
     protected int waitingTime;
+    protected String estimatedWaitTime;
 }
\ No newline at end of file
@@ -1,8 +1,15 @@
 package com.algosome.eutils.blast;
 
-import java.io.OutputStreamWriter;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.IOException;
+
+import com.algosome.eutils.net.CircuitBreaker;
+import com.algosome.eutils.net.Deadline;
+import com.algosome.eutils.net.DeadlineExceededException;
+import com.algosome.eutils.net.HttpRequest;
+import com.algosome.eutils.net.HttpResponse;
+import com.algosome.eutils.net.RateLimiter;
+import com.algosome.eutils.net.RetryPolicy;
+import com.algosome.eutils.net.URLConnect;
 
 /**
  * Adapted from http://users.encs.concordia.ca/~f_kohant/ncbiblast/
@@ -12,26 +19,122 @@ import java.net.URLConnection;
 public class QBlastRequest
 {
 
+    /**Connect timeout of QBlast requests, in milliseconds*/
+    public static final int CONNECT_TIMEOUT = 30000;
+
+    /**Read timeout of QBlast requests - the longest wait for data once connected - in milliseconds*/
+    public static final int READ_TIMEOUT = 120000;
+
+    /**
+     * Posts the command to the QBlast URL and passes the response to the command. Requests are sent
+     * through the transport shared with URLConnect, and are limited by the shared BLAST rate limiter.
+     * Transient failures are retried according to the retry policy, each retry taking a new permit; a put is
+     * only retried if it was not sent, so a search is never submitted twice. Requests fail fast while the
+     * circuit breaker of the QBlast URL is open.
+     * @param command
+     * @throws Exception
+     * @see URLConnect#getDefaultTransport()
+     * @see RateLimiter#blast()
+     * @see #setRetryPolicy(RetryPolicy)
+     * @see CircuitBreaker#forEndpoint(String)
+     */
     public static void runCommand(QBlastCommand command) throws Exception
     {
-        URL url = new URL(QBlastURL);
+        runCommand(command, null);
+    }
+
+    /**
+     * Posts the command as for runCommand(QBlastCommand), within a deadline: waits to retry do not pass the deadline,
+     * and the connection is closed if the deadline passes before the response has been read.
+     * @param command
+     * @param deadline The deadline, or null for none.
+     * @throws DeadlineExceededException if the deadline passes.
+     * @throws Exception
+     */
+    public static void runCommand(QBlastCommand command, Deadline deadline) throws Exception
+    {
+        final HttpRequest request = createRequest(command, deadline);
+        boolean idempotent = !(command instanceof PutCommand);
+        HttpResponse response = getRetryPolicy().execute(request.getEndpoint(), deadline, idempotent, new RetryPolicy.Attempt<HttpResponse>(){
+        	public HttpResponse run() throws IOException{
+        		return CircuitBreaker.forEndpoint(request.getEndpoint()).send(URLConnect.getDefaultTransport(), request, RateLimiter.blast());
+        	}
+        });
+        process(command, response, deadline);
+    }
+
+    /**
+     * Posts the command to the QBlast URL and passes the response to the command, without taking a
+     * permit from the BLAST rate limiter. Callers must have already reserved a permit.
+     * @param command
+     * @throws Exception
+     * @see RateLimiter#reserve()
+     */
+    public static void send(QBlastCommand command) throws Exception
+    {
+        HttpRequest request = createRequest(command, null);
+        process(command, CircuitBreaker.forEndpoint(request.getEndpoint()).send(URLConnect.getDefaultTransport(), request, null), null);
+    }
+
+    /**
+     * Sets the policy deciding whether commands sent with runCommand are retried.
+     * @param policy The policy, or null to use the default policy.
+     * @see RetryPolicy#setDefault(RetryPolicy)
+     */
+    public static void setRetryPolicy(RetryPolicy policy){
+    	retryPolicy = policy;
+    }
+
+    /**
+     * Retrieves the policy deciding whether commands sent with runCommand are retried.
+     * @return The policy set, or the default policy if none has been set.
+     */
+    public static RetryPolicy getRetryPolicy(){
+    	RetryPolicy policy = retryPolicy;
+    	return policy == null ? RetryPolicy.getDefault() : policy;
+    }
 
-        URLConnection conn = url.openConnection();
-        conn.setDoOutput(true);
-        conn.setRequestProperty("user-agent", "Mozilla/5.0");
-        OutputStreamWriter out = new OutputStreamWriter(conn.getOutputStream());
+    private static HttpRequest createRequest(QBlastCommand command, Deadline deadline){
+        HttpRequest request = new HttpRequest(QBlastURL);
+        request.setMethod(HttpRequest.POST);
+        request.setConnectTimeout(CONNECT_TIMEOUT);
+        request.setReadTimeout(READ_TIMEOUT);
+        request.setDeadline(deadline);
+        request.setHeader("user-agent", "Mozilla/5.0");
         //System.out.println("command = " + command);
-        out.write(command.toString());
-        out.flush();
+        request.setBody(command.toString());
+        return request;
+    }
 
-        command.processResult(conn.getInputStream());
-        
-        out.close();
+    private static void process(QBlastCommand command, HttpResponse response, Deadline deadline) throws Exception
+    {
+        if ( deadline != null ){
+            response = deadline.bind(response, QBlastURL);
+        }
+        boolean read = false;
+        try{
+            command.processResult(response.getBody());
+            read = true;
+        }catch(Exception e){
+            if ( deadline != null && deadline.isExpired() && !(e instanceof DeadlineExceededException) ){
+                DeadlineExceededException de = new DeadlineExceededException("Deadline exceeded reading " + QBlastURL);
+                de.initCause(e);
+                throw de;
+            }
+            throw e;
+        }finally{
+            if ( read ){
+                response.close();
+            }else{
+                response.abort();
+            }
+        }
     }
 
     public static void setBlastURL(String url){
     	QBlastURL = url;
     }
+
+    private static volatile RetryPolicy retryPolicy = null;
     protected static String QBlastURL = "http://www.ncbi.nlm.nih.gov/blast/Blast.cgi";
 }
-
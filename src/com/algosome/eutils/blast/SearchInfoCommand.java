@@ -0,0 +1,62 @@
+package com.algosome.eutils.blast;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * A Get command which retrieves only the status of a search (FORMAT_OBJECT=SearchInfo), rather than its
+ * results. The response is a few lines long, so polling with this command until the search is ready and
+ * then retrieving the results once with a GetCommand avoids downloading the full result on every poll.
+ * The response is read line by line and is not kept.
+ * @author Greg Cope
+ * @see GetCommand#setSearchInfoPolling(boolean)
+ */
+public class SearchInfoCommand extends GetCommand{
+
+	private boolean hits = false;
+
+	/**
+	 * Constructs a new SearchInfoCommand. The RID must be set before it is sent.
+	 */
+	public SearchInfoCommand(){
+		super();
+	}
+
+	@Override
+	protected void setDefaultParamters(){
+		setObject("SearchInfo");
+	}
+
+	/**
+	 * Reads the Status and ThereAreHits values of the search.
+	 */
+	@Override
+	protected void processResult(InputStream in) throws IOException{
+		BufferedReader br = new BufferedReader(new InputStreamReader(in));
+		try{
+			String line;
+			status = "";
+			estimatedWaitTime = null;
+			hits = false;
+			while ( (line = br.readLine()) != null ){
+				if ( line.indexOf("Status=") != -1 ){
+					status = getValue(line).toUpperCase();
+				}else if ( line.indexOf("ThereAreHits=") != -1 ){
+					hits = getValue(line).equalsIgnoreCase("yes");
+				}
+			}
+		}finally{
+			br.close();
+		}
+	}
+
+	/**
+	 * Determines if the search found any hits. Only valid once the status is READY.
+	 * @return
+	 */
+	public boolean hasHits(){
+		return hits;
+	}
+}
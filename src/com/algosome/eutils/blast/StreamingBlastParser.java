@@ -0,0 +1,21 @@
+package com.algosome.eutils.blast;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Defines a parser which reads blast output directly from the connection, rather than receiving it as
+ * a String. The output is never held in memory as a whole, unless the parser chooses to.
+ * @author Greg Cope
+ * @see GetCommand#setStreamingParser(StreamingBlastParser)
+ * @see BufferedBlastParser
+ */
+public interface StreamingBlastParser {
+
+	/**
+	 * Parses the blast output. The reader is closed once this method returns.
+	 * @param reader The blast output.
+	 * @throws IOException if the output could not be read or parsed.
+	 */
+	public void parseBlastOutput(Reader reader) throws IOException;
+}
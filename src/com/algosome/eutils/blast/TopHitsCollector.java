@@ -0,0 +1,110 @@
+package com.algosome.eutils.blast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A BlastHitHandler which keeps only the best K hits, ranked by their best HSP. The hits are held in a
+ * bounded heap with the worst kept hit at its head, so each hit is compared against that hit and either
+ * replaces it or is dropped - memory is bounded by K regardless of the size of the output.
+ * <pre>
+ * TopHitsCollector top = new TopHitsCollector(10, TopHitsCollector.Ranking.BIT_SCORE);
+ * new BlastXmlParser(top).parseBlastOutput(reader);
+ * for ( BlastHit hit : top.getHits() ){
+ *     ...
+ * }
+ * </pre>
+ * @author Greg Cope
+ */
+public class TopHitsCollector implements BlastHitHandler{
+
+	/**
+	 * How hits are ranked.
+	 */
+	public static enum Ranking{
+		/**Lowest E-value first*/
+		EVALUE,
+		/**Highest bit score first*/
+		BIT_SCORE
+	}
+
+	private final int size;
+
+	/*Orders hits best first*/
+	private final Comparator<BlastHit> order;
+
+	/*Worst kept hit at the head*/
+	private final PriorityQueue<BlastHit> heap;
+
+	private int count = 0;
+
+	/**
+	 * Constructs a new collector.
+	 * @param size The maximum number of hits to keep.
+	 * @param ranking How hits are ranked.
+	 */
+	public TopHitsCollector(int size, Ranking ranking){
+		if ( size < 1 ){
+			throw new IllegalArgumentException("Size must be at least 1: " + size);
+		}
+		this.size = size;
+		if ( ranking == Ranking.EVALUE ){
+			order = new Comparator<BlastHit>(){
+				@Override
+				public int compare(BlastHit a, BlastHit b){
+					int c = Double.compare(a.getBestEvalue(), b.getBestEvalue());
+					return c != 0 ? c : Double.compare(b.getBestBitScore(), a.getBestBitScore());
+				}
+			};
+		}else{
+			order = new Comparator<BlastHit>(){
+				@Override
+				public int compare(BlastHit a, BlastHit b){
+					int c = Double.compare(b.getBestBitScore(), a.getBestBitScore());
+					return c != 0 ? c : Double.compare(a.getBestEvalue(), b.getBestEvalue());
+				}
+			};
+		}
+		heap = new PriorityQueue<BlastHit>(size + 1, Collections.reverseOrder(order));
+	}
+
+	@Override
+	public synchronized void hit(BlastHit hit){
+		count++;
+		if ( heap.size() < size ){
+			heap.add(hit);
+		}else if ( order.compare(hit, heap.peek()) < 0 ){
+			heap.poll();
+			heap.add(hit);
+		}
+	}
+
+	/**
+	 * Retrieves the kept hits, best first.
+	 * @return
+	 */
+	public synchronized List<BlastHit> getHits(){
+		List<BlastHit> hits = new ArrayList<BlastHit>(heap);
+		Collections.sort(hits, order);
+		return hits;
+	}
+
+	/**
+	 * Retrieves the number of hits seen, including those which were not kept.
+	 * @return
+	 */
+	public synchronized int getCount(){
+		return count;
+	}
+
+	/**
+	 * Removes all kept hits so the collector can be reused.
+	 */
+	public synchronized void clear(){
+		heap.clear();
+		count = 0;
+	}
+}
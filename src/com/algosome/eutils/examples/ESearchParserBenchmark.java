@@ -0,0 +1,124 @@
+package com.algosome.eutils.examples;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.algosome.eutils.io.ESearchHandler;
+import com.algosome.eutils.io.ESearchParser;
+
+/**
+ * Compares the streaming ESearchParser against the previous line by line regular expression parse of
+ * eSearch output. A synthetic eSearch result is generated with the number of IDs given as the first
+ * argument (default 200000), and each parser is timed over several iterations.
+ * @author Greg Cope
+ *
+ */
+public class ESearchParserBenchmark {
+
+	private static final int WARMUP = 5;
+	private static final int ITERATIONS = 10;
+
+	public static void main(String[] args) throws Exception{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		byte[] xml = createESearchOutput(count);
+		System.out.println("eSearch output with " + count + " IDs (" + xml.length / 1024 + " KB)");
+		for ( int i = 0; i < WARMUP; i++ ){
+			parseLines(xml);
+			parseStream(xml);
+		}
+		long lines = 0;
+		long stream = 0;
+		for ( int i = 0; i < ITERATIONS; i++ ){
+			long start = System.nanoTime();
+			int found = parseLines(xml);
+			lines += System.nanoTime() - start;
+			check(found, count);
+			start = System.nanoTime();
+			found = parseStream(xml);
+			stream += System.nanoTime() - start;
+			check(found, count);
+		}
+		System.out.println("Line/regex parse:   " + lines / ITERATIONS / 1000000.0 + " ms");
+		System.out.println("Streaming parse:    " + stream / ITERATIONS / 1000000.0 + " ms");
+	}
+
+	/*
+	 * Generates eSearch output in the format returned by NCBI.
+	 */
+	private static byte[] createESearchOutput(int count){
+		StringBuilder sb = new StringBuilder();
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n");
+		sb.append("<!DOCTYPE eSearchResult PUBLIC \"-//NLM//DTD esearch 20060628//EN\" \"https://eutils.ncbi.nlm.nih.gov/eutils/dtd/20060628/esearch.dtd\">\n");
+		sb.append("<eSearchResult><Count>").append(count).append("</Count><RetMax>").append(count);
+		sb.append("</RetMax><RetStart>0</RetStart><QueryKey>1</QueryKey><WebEnv>MCID_0123456789abcdef</WebEnv><IdList>\n");
+		for ( int i = 0; i < count; i++ ){
+			sb.append("<Id>").append(30000000 + i).append("</Id>\n");
+		}
+		sb.append("</IdList><TranslationSet/><TranslationStack><TermSet><Term>cancer[All Fields]</Term>");
+		sb.append("<Field>All Fields</Field><Count>").append(count).append("</Count><Explode>N</Explode></TermSet>");
+		sb.append("<OP>GROUP</OP></TranslationStack><QueryTranslation>cancer[All Fields]</QueryTranslation></eSearchResult>\n");
+		return sb.toString().getBytes();
+	}
+
+	/*
+	 * The previous implementation: reads each line and extracts the ID with a regular expression.
+	 */
+	private static int parseLines(byte[] xml) throws IOException{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(xml)));
+		List<String> ids = new ArrayList<String>();
+		String line;
+		while ( (line = reader.readLine()) != null ){
+			if ( line.indexOf("<Id>") != -1 ){
+				Pattern pattern = Pattern.compile("Id>(.+)</Id");
+				Matcher matcher = pattern.matcher(line);
+				matcher.find();
+				ids.add(matcher.group(1));
+			}
+		}
+		StringBuffer sb = new StringBuffer();
+		for ( int i = 0; i < ids.size(); i++ ){
+			sb.append(ids.get(i));
+			if ( i < ids.size() - 1 ){
+				sb.append(",");
+			}
+		}
+		return ids.size();
+	}
+
+	/*
+	 * The streaming parser.
+	 */
+	private static int parseStream(byte[] xml) throws IOException{
+		final StringBuilder sb = new StringBuilder();
+		final int[] found = new int[1];
+		InputStream in = new ByteArrayInputStream(xml);
+		new ESearchParser(new ESearchHandler(){
+			public void count(int count){}
+			public void retMax(int retMax){}
+			public void retStart(int retStart){}
+			public void queryKey(String queryKey){}
+			public void webEnv(String webEnv){}
+			public void translation(String from, String to){}
+			public void id(long id){
+				if ( found[0]++ != 0 ){
+					sb.append(',');
+				}
+				sb.append(id);
+			}
+		}).parseInput(in);
+		return found[0];
+	}
+
+	private static void check(int found, int expected){
+		if ( found != expected ){
+			throw new IllegalStateException("Expected " + expected + " IDs but found " + found);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.algosome.eutils.examples;
+
+import org.apache.log4j.BasicConfigurator;
+
+import com.algosome.eutils.EntrezFetch;
+import com.algosome.eutils.EntrezSearch;
+import com.algosome.eutils.pubmed.PubmedArticle;
+import com.algosome.eutils.pubmed.PubmedArticleHandler;
+import com.algosome.eutils.pubmed.PubmedArticleParser;
+import com.algosome.eutils.pubmed.PubmedField;
+
+/**
+ * Searches pubmed and prints the PMID, title and MeSH headings of each article as it is parsed.
+ * @author Greg Cope
+ *
+ */
+public class ParsePubmed {
+
+	public static void main(String[] args) throws Exception{
+		//configure log4j
+		BasicConfigurator.configure();
+		EntrezSearch search = new EntrezSearch();
+		search.setDatabase(EntrezSearch.DB_PUBMED);
+		search.setTerm("rri1");
+		search.setMaxRetrieval(20);
+		search.doQuery();
+		//fetch the articles as XML, extracting only the fields needed
+		EntrezFetch fetch = new EntrezFetch(search);
+		fetch.setRetMode("xml");
+		fetch.doQuery(new PubmedArticleParser(new PubmedArticleHandler(){
+
+			@Override
+			public void article(PubmedArticle article) {
+				System.out.println(article.getPmid() + "\t" + article.getTitle() + "\t" + article.getMeshHeadings());
+			}
+		}, PubmedField.PMID, PubmedField.TITLE, PubmedField.MESH_HEADINGS));
+	}
+}
@@ -0,0 +1,125 @@
+package com.algosome.eutils.examples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.algosome.eutils.align.Alignment;
+import com.algosome.eutils.align.ScoringMatrix;
+import com.algosome.eutils.align.SmithWaterman;
+import com.algosome.eutils.align.StripedSmithWaterman;
+
+/**
+ * Compares rescoring a query against a set of BLAST hit sequences with SmithWaterman, which builds a full
+ * traceback, against StripedSmithWaterman scoring and aligning. Half of the synthetic targets are mutated
+ * copies of the query and half are unrelated. Arguments are the program (blastp or blastn, default blastp),
+ * the query length (default 300) and the number of targets (default 2000). Run with src-vector compiled and
+ * <code>--add-modules jdk.incubator.vector</code> to use vectors, and again with
+ * <code>-Dcom.algosome.eutils.align.vector=false</code> to compare the scalar fallback.
+ * @author Greg Cope
+ *
+ */
+public class SmithWatermanBenchmark {
+
+	private static final int WARMUP = 5;
+	private static final int ITERATIONS = 10;
+
+	public static void main(String[] args) throws Exception{
+		boolean protein = args.length == 0 || !"blastn".equalsIgnoreCase(args[0]);
+		int length = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+		int count = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+		ScoringMatrix matrix = protein ? ScoringMatrix.BLOSUM62 : ScoringMatrix.NUCLEOTIDE;
+		String alphabet = protein ? "ACDEFGHIKLMNPQRSTVWY" : "ACGT";
+		Random random = new Random(42);
+		String query = randomSequence(alphabet, length, random);
+		List<String> targets = new ArrayList<String>();
+		for ( int i = 0; i < count; i++ ){
+			targets.add(i % 2 == 0 ? mutate(query, alphabet, random) : randomSequence(alphabet, length, random));
+		}
+		System.out.println(matrix.getName() + ": query of " + length + " against " + count + " targets, vectorized=" + StripedSmithWaterman.isVectorized());
+		SmithWaterman scalar = new SmithWaterman(matrix);
+		StripedSmithWaterman striped = new StripedSmithWaterman(matrix, query);
+		for ( String target : targets ){
+			Alignment alignment = scalar.align(query, target);
+			int expected = alignment == null ? 0 : alignment.getScore();
+			Alignment stripedAlignment = striped.align(target);
+			if ( striped.score(target) != expected || (stripedAlignment == null ? 0 : stripedAlignment.getScore()) != expected ){
+				throw new IllegalStateException("Scores differ for " + target);
+			}
+		}
+		long full = 0;
+		long score = 0;
+		long align = 0;
+		for ( int i = 0; i < WARMUP + ITERATIONS; i++ ){
+			long start = System.nanoTime();
+			long total = 0;
+			for ( String target : targets ){
+				total += scalar.align(query, target).getScore();
+			}
+			long fullTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			for ( String target : targets ){
+				total -= striped.score(target);
+			}
+			long scoreTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			for ( String target : targets ){
+				total += striped.align(target).getScore();
+			}
+			long alignTime = System.nanoTime() - start;
+			if ( total != sum(striped, targets) ){
+				throw new IllegalStateException("Scores differ");
+			}
+			if ( i >= WARMUP ){
+				full += fullTime;
+				score += scoreTime;
+				align += alignTime;
+			}
+		}
+		double cells = (double)length * length * count * ITERATIONS;
+		report("SmithWaterman align:        ", full, cells);
+		report("StripedSmithWaterman score: ", score, cells);
+		report("StripedSmithWaterman align: ", align, cells);
+	}
+
+	private static long sum(StripedSmithWaterman striped, List<String> targets){
+		long total = 0;
+		for ( String target : targets ){
+			total += striped.score(target);
+		}
+		return total;
+	}
+
+	private static void report(String name, long nanos, double cells){
+		System.out.println(name + String.format("%8.2f ms  %6.2f GCUPS", nanos / 1000000.0 / ITERATIONS, cells / nanos));
+	}
+
+	private static String randomSequence(String alphabet, int length, Random random){
+		StringBuilder sb = new StringBuilder(length);
+		for ( int i = 0; i < length; i++ ){
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Substitutes a fifth of the letters and deletes or inserts a few short runs.
+	 */
+	private static String mutate(String sequence, String alphabet, Random random){
+		StringBuilder sb = new StringBuilder(sequence);
+		for ( int i = 0; i < sb.length(); i++ ){
+			if ( random.nextInt(5) == 0 ){
+				sb.setCharAt(i, alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+		}
+		for ( int i = 0; i < 3; i++ ){
+			int at = random.nextInt(sb.length() - 10);
+			if ( random.nextBoolean() ){
+				sb.delete(at, at + 1 + random.nextInt(5));
+			}else{
+				sb.insert(at, randomSequence(alphabet, 1 + random.nextInt(5), random));
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,53 @@
+package com.algosome.eutils.io;
+
+/**
+ * Receives the values of an eSearch result as they are parsed by an ESearchParser. Each method is
+ * called in the order the value appears in the eSearch output.
+ * @author Greg Cope
+ * @see ESearchParser
+ */
+public interface ESearchHandler {
+
+	/**
+	 * Called with the total number of records matching the search.
+	 * @param count
+	 */
+	public void count(int count);
+
+	/**
+	 * Called with the number of IDs returned in this result.
+	 * @param retMax
+	 */
+	public void retMax(int retMax);
+
+	/**
+	 * Called with the index of the first ID returned in this result.
+	 * @param retStart
+	 */
+	public void retStart(int retStart);
+
+	/**
+	 * Called with the query key of the result on the history server.
+	 * @param queryKey
+	 */
+	public void queryKey(String queryKey);
+
+	/**
+	 * Called with the web environment of the result on the history server.
+	 * @param webEnv
+	 */
+	public void webEnv(String webEnv);
+
+	/**
+	 * Called for each ID in the result.
+	 * @param id
+	 */
+	public void id(long id);
+
+	/**
+	 * Called for each translation NCBI applied to the search term.
+	 * @param from The term as submitted.
+	 * @param to The term it was translated to.
+	 */
+	public void translation(String from, String to);
+}
@@ -0,0 +1,208 @@
+package com.algosome.eutils.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming (StAX) parser for eSearch XML output. Values are passed to an ESearchHandler as they are
+ * read, so the output is never held in memory. IDs are parsed directly from the character buffer of
+ * the XML reader without creating a String for each.</p>
+ * <p>Only the direct children of eSearchResult are reported - the Count elements within the
+ * TranslationStack are skipped. The DTD referenced by the output is never loaded.
+ * @author Greg Cope
+ * @see ESearchHandler
+ */
+public class ESearchParser implements InputStreamParser{
+
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+	static{
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+	}
+
+	private final ESearchHandler handler;
+
+	/**
+	 * Constructs a new parser reporting to the given handler.
+	 * @param handler
+	 */
+	public ESearchParser(ESearchHandler handler){
+		this.handler = handler;
+	}
+
+	/**
+	 * Parses the eSearch output, reporting each value to the handler.
+	 * @param is The eSearch output.
+	 * @throws IOException if the stream could not be read or is not valid eSearch XML.
+	 */
+	public void parseInput(InputStream is) throws IOException{
+		XMLStreamReader reader = null;
+		try{
+			reader = FACTORY.createXMLStreamReader(is);
+			int depth = 0;
+			while ( reader.hasNext() ){
+				int event = reader.next();
+				if ( event == XMLStreamConstants.END_ELEMENT ){
+					if ( --depth == 0 ){
+						break;//end of eSearchResult
+					}
+					continue;
+				}
+				if ( event != XMLStreamConstants.START_ELEMENT ){
+					continue;
+				}
+				depth++;
+				if ( depth != 2 ){
+					continue;
+				}
+				String name = reader.getLocalName();
+				if ( "IdList".equals(name) ){
+					parseIdList(reader);
+				}else if ( "TranslationSet".equals(name) ){
+					parseTranslationSet(reader);
+				}else if ( "Count".equals(name) ){
+					handler.count((int)parseNumber(reader));
+				}else if ( "RetMax".equals(name) ){
+					handler.retMax((int)parseNumber(reader));
+				}else if ( "RetStart".equals(name) ){
+					handler.retStart((int)parseNumber(reader));
+				}else if ( "QueryKey".equals(name) ){
+					handler.queryKey(reader.getElementText().trim());
+				}else if ( "WebEnv".equals(name) ){
+					handler.webEnv(reader.getElementText().trim());
+				}else{
+					skipElement(reader);
+				}
+				//each branch above consumes the END_ELEMENT
+				depth--;
+			}
+		}catch(XMLStreamException e){
+			throw new IOException("Unable to parse eSearch output: " + e.getMessage(), e);
+		}finally{
+			if ( reader != null ){
+				try{reader.close();}catch(XMLStreamException e){}
+			}
+		}
+	}
+
+	/*
+	 * Reports each Id within an IdList. Positioned on the IdList start element.
+	 */
+	private void parseIdList(XMLStreamReader reader) throws XMLStreamException{
+		while ( reader.hasNext() ){
+			int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT ){
+				if ( "Id".equals(reader.getLocalName()) ){
+					handler.id(parseNumber(reader));
+				}else{
+					skipElement(reader);
+				}
+			}else if ( event == XMLStreamConstants.END_ELEMENT ){
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Reports each Translation within a TranslationSet. Positioned on the TranslationSet start element.
+	 */
+	private void parseTranslationSet(XMLStreamReader reader) throws XMLStreamException{
+		while ( reader.hasNext() ){
+			int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT ){
+				if ( "Translation".equals(reader.getLocalName()) ){
+					String from = null;
+					String to = null;
+					while ( reader.hasNext() ){
+						event = reader.next();
+						if ( event == XMLStreamConstants.START_ELEMENT ){
+							if ( "From".equals(reader.getLocalName()) ){
+								from = reader.getElementText();
+							}else if ( "To".equals(reader.getLocalName()) ){
+								to = reader.getElementText();
+							}else{
+								skipElement(reader);
+							}
+						}else if ( event == XMLStreamConstants.END_ELEMENT ){
+							break;
+						}
+					}
+					handler.translation(from, to);
+				}else{
+					skipElement(reader);
+				}
+			}else if ( event == XMLStreamConstants.END_ELEMENT ){
+				return;
+			}
+		}
+	}
+
+	/*
+	 * Parses the text content of the current element as a non-negative number, reading the characters
+	 * directly from the reader. Positioned on the start element, finishes on the end element.
+	 */
+	private static long parseNumber(XMLStreamReader reader) throws XMLStreamException{
+		long value = 0;
+		boolean digits = false;
+		while ( reader.hasNext() ){
+			int event = reader.next();
+			if ( event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+					|| event == XMLStreamConstants.SPACE ){
+				char[] text = reader.getTextCharacters();
+				int end = reader.getTextStart() + reader.getTextLength();
+				for ( int i = reader.getTextStart(); i < end; i++ ){
+					char c = text[i];
+					if ( c >= '0' && c <= '9' ){
+						value = value * 10 + (c - '0');
+						digits = true;
+					}else if ( !Character.isWhitespace(c) ){
+						throw new XMLStreamException("Invalid number in " + reader.getLocalName(), reader.getLocation());
+					}
+				}
+			}else if ( event == XMLStreamConstants.END_ELEMENT ){
+				break;
+			}else if ( event == XMLStreamConstants.START_ELEMENT ){
+				throw new XMLStreamException("Unexpected element " + reader.getLocalName(), reader.getLocation());
+			}
+		}
+		if ( !digits ){
+			throw new XMLStreamException("Empty number element", reader.getLocation());
+		}
+		return value;
+	}
+
+	/*
+	 * Skips the current element and all of its children. Positioned on the start element,
+	 * finishes on the matching end element.
+	 */
+	static void skipElement(XMLStreamReader reader) throws XMLStreamException{
+		int depth = 1;
+		while ( depth > 0 && reader.hasNext() ){
+			int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT ){
+				depth++;
+			}else if ( event == XMLStreamConstants.END_ELEMENT ){
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Empty implementation of the InputStreamParser.
+	 * @param start
+	 */
+	public void parseFrom(int start){}
+
+	/**
+	 * Empty implementation of the InputStreamParser.
+	 * @param end
+	 */
+	public void parseTo(int end){}
+}
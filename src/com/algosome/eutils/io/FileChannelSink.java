@@ -0,0 +1,83 @@
+package com.algosome.eutils.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An InputStreamParser which copies the raw bytes of the InputStream to a file using
+ * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}. The bytes are not decoded or
+ * buffered beyond the fixed size transfer buffer of the channel, so memory use does not depend on the
+ * size of the output.
+ * @author Greg Cope
+ *
+ */
+public class FileChannelSink implements InputStreamParser{
+
+	/**Maximum number of bytes requested from each transferFrom call*/
+	public static final long TRANSFER_SIZE = 1 << 20;
+
+	private final File file;
+
+	private volatile long bytesWritten = 0;
+
+	/**
+	 * Constructs a new FileChannelSink.
+	 * @param file The file to write to. An existing file is overwritten.
+	 */
+	public FileChannelSink(File file){
+		this.file = file;
+	}
+
+	/**
+	 * Copies the InputStream to the file. The InputStream is read to its end but not closed.
+	 * @param is The stream to copy.
+	 * @throws IOException if the stream could not be read or the file written.
+	 */
+	public void parseInput(InputStream is) throws IOException{
+		bytesWritten = 0;
+		ReadableByteChannel source = Channels.newChannel(is);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try{
+			long position = 0;
+			long transferred;
+			while ( (transferred = channel.transferFrom(source, position, TRANSFER_SIZE)) > 0 ){
+				position += transferred;
+				bytesWritten = position;
+			}
+		}finally{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Retrieves the number of bytes written by the last call to parseInput.
+	 * @return
+	 */
+	public long getBytesWritten(){
+		return bytesWritten;
+	}
+
+	/**
+	 * Retrieves the file written to.
+	 * @return
+	 */
+	public File getFile(){
+		return file;
+	}
+
+	/**
+	 * Empty implementation of the InputStreamParser.
+	 */
+	public void parseFrom(int start){}
+
+	/**
+	 * Empty implementation of the InputStreamParser.
+	 */
+	public void parseTo(int end){}
+}
@@ -0,0 +1,278 @@
+package com.algosome.eutils.io;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A minimal pull tokenizer for JSON, reading one token at a time from a Reader so documents of any size
+ * can be processed without building a tree. Values are skipped with skipValue without their text being
+ * kept.
+ * <pre>
+ * JsonTokenizer json = new JsonTokenizer(reader);
+ * json.next();//BEGIN_OBJECT
+ * while ( json.next() == JsonTokenizer.Token.NAME ){
+ *     if ( "count".equals(json.getString()) ){
+ *         json.next();
+ *         count = (int)json.getNumber();
+ *     }else{
+ *         json.skipValue();
+ *     }
+ * }
+ * </pre>
+ * @author Greg Cope
+ *
+ */
+public class JsonTokenizer {
+
+	/**
+	 * The tokens of a JSON document.
+	 */
+	public static enum Token{
+		BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+	}
+
+	private final Reader reader;
+
+	private final char[] buffer = new char[8192];
+	private int position = 0;
+	private int limit = 0;
+
+	/*Whether the next string in an object is a name*/
+	private boolean expectName = false;
+
+	/*Whether each enclosing container is an object, innermost last*/
+	private boolean[] objects = new boolean[32];
+	private int depth = 0;
+
+	private final StringBuilder text = new StringBuilder();
+	private boolean booleanValue;
+
+	/**
+	 * Constructs a new tokenizer.
+	 * @param reader The JSON to read.
+	 */
+	public JsonTokenizer(Reader reader){
+		this.reader = reader;
+	}
+
+	/**
+	 * Reads the next token.
+	 * @return
+	 * @throws IOException if the JSON could not be read or is malformed.
+	 */
+	public Token next() throws IOException{
+		int c = nextNonWhitespace();
+		while ( c == ',' || c == ':' ){
+			if ( c == ',' && depth > 0 && objects[depth - 1] ){
+				expectName = true;
+			}
+			c = nextNonWhitespace();
+		}
+		switch(c){
+			case -1:
+				return Token.END_DOCUMENT;
+			case '{':
+				push(true);
+				expectName = true;
+				return Token.BEGIN_OBJECT;
+			case '}':
+				pop();
+				return Token.END_OBJECT;
+			case '[':
+				push(false);
+				expectName = false;
+				return Token.BEGIN_ARRAY;
+			case ']':
+				pop();
+				return Token.END_ARRAY;
+			case '"':
+				readString();
+				if ( expectName ){
+					expectName = false;
+					return Token.NAME;
+				}
+				return Token.STRING;
+			case 't':
+			case 'f':
+			case 'n':
+				readLiteral(c);
+				if ( c == 'n' ){
+					return Token.NULL;
+				}
+				booleanValue = c == 't';
+				return Token.BOOLEAN;
+			default:
+				if ( c == '-' || (c >= '0' && c <= '9') ){
+					readNumber(c);
+					return Token.NUMBER;
+				}
+				throw new IOException("Unexpected character '" + (char)c + "' in JSON");
+		}
+	}
+
+	/**
+	 * Retrieves the text of the last NAME, STRING or NUMBER token.
+	 * @return
+	 */
+	public String getString(){
+		return text.toString();
+	}
+
+	/**
+	 * Determines if the text of the last token equals the given String, without creating a String.
+	 * @param s
+	 * @return
+	 */
+	public boolean textEquals(String s){
+		if ( text.length() != s.length() ){
+			return false;
+		}
+		for ( int i = 0; i < s.length(); i++ ){
+			if ( text.charAt(i) != s.charAt(i) ){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Retrieves the value of the last NUMBER token.
+	 * @return
+	 * @throws NumberFormatException if the last token was not a number.
+	 */
+	public double getNumber(){
+		return Double.parseDouble(text.toString());
+	}
+
+	/**
+	 * Retrieves the value of the last BOOLEAN token.
+	 * @return
+	 */
+	public boolean getBoolean(){
+		return booleanValue;
+	}
+
+	/**
+	 * Retrieves the number of objects and arrays the tokenizer is within.
+	 * @return
+	 */
+	public int getDepth(){
+		return depth;
+	}
+
+	/**
+	 * Skips the next value, including every value within it if it is an object or array.
+	 * @throws IOException
+	 */
+	public void skipValue() throws IOException{
+		int start = depth;
+		do{
+			Token token = next();
+			if ( token == Token.END_DOCUMENT ){
+				throw new IOException("Unexpected end of JSON");
+			}
+		}while ( depth > start );
+	}
+
+	private void push(boolean object){
+		if ( depth == objects.length ){
+			boolean[] grown = new boolean[depth * 2];
+			System.arraycopy(objects, 0, grown, 0, depth);
+			objects = grown;
+		}
+		objects[depth++] = object;
+	}
+
+	private void pop() throws IOException{
+		if ( depth == 0 ){
+			throw new IOException("Unbalanced JSON");
+		}
+		depth--;
+		expectName = false;
+	}
+
+	private int read() throws IOException{
+		if ( position == limit ){
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if ( limit <= 0 ){
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position++];
+	}
+
+	private int nextNonWhitespace() throws IOException{
+		int c;
+		do{
+			c = read();
+		}while ( c == ' ' || c == '\n' || c == '\r' || c == '\t' );
+		return c;
+	}
+
+	private void readString() throws IOException{
+		text.setLength(0);
+		while ( true ){
+			int c = read();
+			if ( c == -1 ){
+				throw new IOException("Unterminated JSON string");
+			}
+			if ( c == '"' ){
+				return;
+			}
+			if ( c == '\\' ){
+				c = read();
+				switch(c){
+					case 'n': text.append('\n'); break;
+					case 't': text.append('\t'); break;
+					case 'r': text.append('\r'); break;
+					case 'b': text.append('\b'); break;
+					case 'f': text.append('\f'); break;
+					case 'u':
+						int value = 0;
+						for ( int i = 0; i < 4; i++ ){
+							int digit = Character.digit(read(), 16);
+							if ( digit < 0 ){
+								throw new IOException("Invalid unicode escape in JSON string");
+							}
+							value = value * 16 + digit;
+						}
+						text.append((char)value);
+						break;
+					case -1:
+						throw new IOException("Unterminated JSON string");
+					default:
+						text.append((char)c);
+				}
+			}else{
+				text.append((char)c);
+			}
+		}
+	}
+
+	private void readNumber(int first) throws IOException{
+		text.setLength(0);
+		text.append((char)first);
+		while ( true ){
+			int c = read();
+			if ( (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' ){
+				text.append((char)c);
+			}else{
+				if ( c != -1 ){
+					position--;//not part of the number
+				}
+				return;
+			}
+		}
+	}
+
+	private void readLiteral(int first) throws IOException{
+		String literal = first == 't' ? "true" : (first == 'f' ? "false" : "null");
+		for ( int i = 1; i < literal.length(); i++ ){
+			if ( read() != literal.charAt(i) ){
+				throw new IOException("Invalid literal in JSON");
+			}
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package com.algosome.eutils.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Splits a flat file of sequence records into individual records as they are read. FASTA records
+ * begin with a '&gt;' header line, GenBank and GenPept records end with a '//' line. Only the record
+ * being assembled is held in memory, so records can be processed while the rest of the stream is still
+ * being downloaded.</p>
+ * <p>Read errors are thrown from hasNext and next as an UncheckedIOException. Closing the iterator
+ * closes the underlying stream.
+ * <pre>
+ * RecordIterator records = fetch.openRecords();
+ * try{
+ *     while ( records.hasNext() ){
+ *         process(records.next());
+ *     }
+ * }finally{
+ *     records.close();
+ * }
+ * </pre>
+ * @author Greg Cope
+ *
+ */
+public class RecordIterator implements Iterator<String>, Closeable{
+
+	/**
+	 * The record formats a RecordIterator can split.
+	 */
+	public static enum Format{
+		/**Records begin with a '&gt;' header line*/
+		FASTA,
+		/**Records end with a '//' line, as in GenBank and GenPept flat files*/
+		GENBANK;
+
+		/**
+		 * Retrieves the format of an eFetch rettype.
+		 * @param rettype The rettype, for example fasta or gbwithparts.
+		 * @return The format, or null if records of the rettype cannot be split.
+		 */
+		public static Format forRetType(String rettype){
+			if ( rettype == null ){
+				return null;
+			}
+			rettype = rettype.trim().toLowerCase();
+			if ( rettype.startsWith("fasta") ){
+				return FASTA;
+			}
+			if ( rettype.equals("gb") || rettype.equals("gp") || rettype.equals("gbwithparts") || rettype.equals("gpc") ){
+				return GENBANK;
+			}
+			return null;
+		}
+	}
+
+	private final BufferedReader reader;
+
+	private final Format format;
+
+	/*The next record, or null if it has not been read*/
+	private String next = null;
+
+	/*A FASTA header line read ahead of the record it begins*/
+	private String pendingHeader = null;
+
+	private boolean finished = false;
+
+	/**
+	 * Constructs a new RecordIterator.
+	 * @param is The stream to read records from.
+	 * @param encoding The character encoding of the stream.
+	 * @param format The record format.
+	 * @throws IOException if the encoding is not supported.
+	 */
+	public RecordIterator(InputStream is, String encoding, Format format) throws IOException{
+		this(new InputStreamReader(is, encoding), format);
+	}
+
+	/**
+	 * Constructs a new RecordIterator.
+	 * @param reader The reader to read records from.
+	 * @param format The record format.
+	 */
+	public RecordIterator(Reader reader, Format format){
+		this.reader = reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader);
+		this.format = format;
+	}
+
+	/**
+	 * Retrieves the record format of this iterator.
+	 * @return
+	 */
+	public Format getFormat(){
+		return format;
+	}
+
+	@Override
+	public boolean hasNext(){
+		if ( next == null && !finished ){
+			try{
+				next = format == Format.FASTA ? readFasta() : readGenBank();
+			}catch(IOException e){
+				throw new UncheckedIOException(e);
+			}
+			if ( next == null ){
+				finished = true;
+			}
+		}
+		return next != null;
+	}
+
+	@Override
+	public String next(){
+		if ( !hasNext() ){
+			throw new NoSuchElementException();
+		}
+		String record = next;
+		next = null;
+		return record;
+	}
+
+	/**
+	 * Retrieves a Spliterator over the remaining records. The Spliterator does not split, as records
+	 * can only be found by reading the stream in order.
+	 * @return
+	 */
+	public Spliterator<String> spliterator(){
+		return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	/**
+	 * Retrieves a sequential Stream over the remaining records. Closing the Stream closes this iterator.
+	 * @return
+	 */
+	public Stream<String> stream(){
+		return StreamSupport.stream(spliterator(), false).onClose(new Runnable(){
+			public void run(){
+				try{
+					close();
+				}catch(IOException e){
+					throw new UncheckedIOException(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException{
+		finished = true;
+		next = null;
+		reader.close();
+	}
+
+	/*
+	 * Reads a FASTA record: a header line and every line up to the next header.
+	 */
+	private String readFasta() throws IOException{
+		String line = pendingHeader;
+		pendingHeader = null;
+		while ( line == null ){
+			line = reader.readLine();
+			if ( line == null ){
+				return null;
+			}
+			if ( !line.startsWith(">") ){
+				line = null;//skip anything before the first header
+			}
+		}
+		StringBuilder record = new StringBuilder();
+		record.append(line).append('\n');
+		while ( (line = reader.readLine()) != null ){
+			if ( line.startsWith(">") ){
+				pendingHeader = line;
+				break;
+			}
+			if ( line.length() != 0 ){
+				record.append(line).append('\n');
+			}
+		}
+		return record.toString();
+	}
+
+	/*
+	 * Reads a GenBank record: every line up to and including the next '//' line.
+	 */
+	private String readGenBank() throws IOException{
+		StringBuilder record = new StringBuilder();
+		String line;
+		while ( (line = reader.readLine()) != null ){
+			if ( record.length() == 0 && line.trim().length() == 0 ){
+				continue;//blank lines between records
+			}
+			record.append(line).append('\n');
+			if ( line.startsWith("//") ){
+				return record.toString();
+			}
+		}
+		return record.length() == 0 ? null : record.toString();
+	}
+}
@@ -0,0 +1,74 @@
+package com.algosome.eutils.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An InputStream which copies every byte read from it to an OutputStream. This allows output to be
+ * saved or printed while it is parsed, without holding the whole output in memory. Closing this stream
+ * closes both the InputStream and the OutputStream.
+ * @author Greg Cope
+ *
+ */
+public class TeeInputStream extends FilterInputStream{
+
+	private final OutputStream copy;
+
+	/**
+	 * Constructs a new TeeInputStream.
+	 * @param in The stream to read from.
+	 * @param copy The stream every byte read is written to.
+	 */
+	public TeeInputStream(InputStream in, OutputStream copy){
+		super(in);
+		this.copy = copy;
+	}
+
+	@Override
+	public int read() throws IOException{
+		int b = super.read();
+		if ( b != -1 ){
+			copy.write(b);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException{
+		int read = super.read(b, off, len);
+		if ( read > 0 ){
+			copy.write(b, off, read);
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException{
+		byte[] buffer = new byte[(int)Math.min(n, 4096)];
+		long skipped = 0;
+		while ( skipped < n ){
+			int read = read(buffer, 0, (int)Math.min(buffer.length, n - skipped));
+			if ( read == -1 ){
+				break;
+			}
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported(){
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException{
+		try{
+			super.close();
+		}finally{
+			copy.close();
+		}
+	}
+}
@@ -0,0 +1,385 @@
+package com.algosome.eutils.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Stops requests being sent to an endpoint that is failing or slow, so callers fail at once rather than
+ * each holding a thread until its timeout runs out.</p>
+ * <p>The outcome of the last windowSize requests is recorded. Once at least minimumRequests have been
+ * made, the breaker opens if the fraction which failed reaches the failure rate threshold, or the fraction
+ * which took longer than the slow request duration to respond reaches the slow rate threshold. Failures are
+ * server errors (500 and above), 408 and 429 responses, timeouts and connection failures; other client
+ * errors show the endpoint is responding, and are counted as successes.</p>
+ * <p>While open, requests throw CircuitBreakerOpenException without being sent. Once the open duration has
+ * passed the breaker is half open: a single request is let through as a probe, every other request still
+ * failing fast. The breaker closes if the probe succeeds, and opens again if it does not; requests sent
+ * before the breaker opened which complete while it is open or half open are ignored.</p>
+ * <p>The time to respond is measured from when the transport marks the request sent, so time spent waiting
+ * for a connection slot of PooledHttpTransport does not make the endpoint look slow.</p>
+ * <p>URLConnect and QBlastRequest share one breaker per endpoint - such as esearch.fcgi, efetch.fcgi or
+ * Blast.cgi - unless given their own. A breaker is only checked when a request is about to be sent, so
+ * requests failed fast do not take a permit from the rate limiter.
+ * <pre>
+ * CircuitBreaker breaker = CircuitBreaker.forEndpoint("https://eutils.ncbi.nlm.nih.gov/entrez/eutils/efetch.fcgi");
+ * breaker.setOpenDuration(60000);
+ * </pre>
+ * @author Greg Cope
+ * @see CircuitBreakerOpenException
+ * @see URLConnect#setCircuitBreaker(CircuitBreaker)
+ */
+public class CircuitBreaker {
+
+	private static final Logger logger = Logger.getLogger(CircuitBreaker.class);
+
+	/**The states of a breaker*/
+	public enum State{
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	/**Default number of requests whose outcome is recorded*/
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+
+	/**Default number of recorded requests needed before the breaker can open*/
+	public static final int DEFAULT_MINIMUM_REQUESTS = 10;
+
+	/**Default fraction of failed requests which opens the breaker*/
+	public static final double DEFAULT_FAILURE_RATE = 0.5;
+
+	/**Default fraction of slow requests which opens the breaker*/
+	public static final double DEFAULT_SLOW_RATE = 0.5;
+
+	/**Default time in milliseconds after which a request is slow*/
+	public static final long DEFAULT_SLOW_DURATION = 10000L;
+
+	/**Default time in milliseconds the breaker stays open before letting a probe through*/
+	public static final long DEFAULT_OPEN_DURATION = 30000L;
+
+	/**Shared breakers keyed by endpoint*/
+	private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<String, CircuitBreaker>();
+
+	private final String name;
+
+	private volatile boolean enabled = true;
+	private volatile int minimumRequests = DEFAULT_MINIMUM_REQUESTS;
+	private volatile double failureRate = DEFAULT_FAILURE_RATE;
+	private volatile double slowRate = DEFAULT_SLOW_RATE;
+	private volatile long slowDuration = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_DURATION);
+	private volatile long openDuration = TimeUnit.MILLISECONDS.toNanos(DEFAULT_OPEN_DURATION);
+
+	/*The window of outcomes, and the state. Guarded by this*/
+	private boolean[] failed;
+	private boolean[] slow;
+	private int next = 0;
+	private int recorded = 0;
+	private int failures = 0;
+	private int slowRequests = 0;
+	private State state = State.CLOSED;
+	private long openedAt = 0;
+	private boolean probing = false;
+
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong opened = new AtomicLong();
+
+	/**
+	 * Constructs a closed breaker with the default thresholds.
+	 * @param name Describes the endpoint in log messages and exceptions.
+	 */
+	public CircuitBreaker(String name){
+		this(name, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructs a closed breaker.
+	 * @param name Describes the endpoint in log messages and exceptions.
+	 * @param windowSize The number of requests whose outcome is recorded.
+	 */
+	public CircuitBreaker(String name, int windowSize){
+		if ( windowSize < 1 ){
+			throw new IllegalArgumentException("The window must hold at least one request: " + windowSize);
+		}
+		this.name = name;
+		this.failed = new boolean[windowSize];
+		this.slow = new boolean[windowSize];
+	}
+
+	/**
+	 * Retrieves the breaker shared by all requests to an endpoint, creating it if necessary.
+	 * @param endpoint The URL of the endpoint, without a query string.
+	 * @return
+	 * @see HttpRequest#getEndpoint()
+	 */
+	public static CircuitBreaker forEndpoint(String endpoint){
+		CircuitBreaker breaker = BREAKERS.get(endpoint);
+		if ( breaker == null ){
+			CircuitBreaker created = new CircuitBreaker(endpoint);
+			breaker = BREAKERS.putIfAbsent(endpoint, created);
+			if ( breaker == null ){
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	/**
+	 * Sends a request through this breaker: the request fails fast if the breaker is open, otherwise a permit is taken
+	 * from the rate limiter and the request is sent, the outcome and time to respond being recorded.
+	 * @param transport
+	 * @param request
+	 * @param limiter The rate limiter to take a permit from, or null if the caller has already taken one.
+	 * @return The response.
+	 * @throws CircuitBreakerOpenException if the breaker is open.
+	 * @throws IOException if the request failed.
+	 */
+	public HttpResponse send(HttpTransport transport, HttpRequest request, RateLimiter limiter) throws IOException{
+		boolean probe = acquire();
+		boolean done = false;
+		try{
+			if ( limiter != null ){
+				limiter.acquire();
+			}
+			long start = System.nanoTime();
+			try{
+				HttpResponse response = transport.send(request);
+				record(false, elapsed(request, start), probe);
+				done = true;
+				return response;
+			}catch(IOException e){
+				if ( isFailure(e) ){
+					record(true, elapsed(request, start), probe);
+				}else if ( !(e instanceof InterruptedIOException) ){
+					record(false, elapsed(request, start), probe);
+				}else{
+					release(probe);
+				}
+				done = true;
+				throw e;
+			}
+		}finally{
+			if ( !done ){
+				release(probe);
+			}
+		}
+	}
+
+	/*
+	 * The time to respond of a request, from when the transport marked it sent if it did so after start.
+	 */
+	private static long elapsed(HttpRequest request, long start){
+		long sent = request.getSentTime();
+		return System.nanoTime() - (sent != 0 && sent - start > 0 ? sent : start);
+	}
+
+	/**
+	 * Determines whether a failed request counts against the endpoint.
+	 * @param e
+	 * @return
+	 */
+	public boolean isFailure(IOException e){
+		if ( e instanceof HttpStatusException ){
+			int status = ((HttpStatusException)e).getStatus();
+			return status >= 500 || status == 408 || status == 429;
+		}
+		return e instanceof SocketTimeoutException || !(e instanceof InterruptedIOException);
+	}
+
+	/*
+	 * Lets a request through, or throws if the breaker is open or a probe is already in flight. Returns true if
+	 * the request is the probe.
+	 */
+	private synchronized boolean acquire() throws CircuitBreakerOpenException{
+		if ( !enabled || state == State.CLOSED ){
+			return false;
+		}
+		if ( state == State.OPEN ){
+			long remaining = openedAt + openDuration - System.nanoTime();
+			if ( remaining > 0 ){
+				rejected.incrementAndGet();
+				throw new CircuitBreakerOpenException("Circuit breaker for " + name + " is open", TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+			}
+			state = State.HALF_OPEN;
+			probing = false;
+		}
+		if ( probing ){
+			rejected.incrementAndGet();
+			throw new CircuitBreakerOpenException("Circuit breaker for " + name + " is half open and probing", 0);
+		}
+		probing = true;
+		logger.info("Probing " + name);
+		return true;
+	}
+
+	/*
+	 * Releases the probe of a request whose outcome says nothing about the endpoint.
+	 */
+	private synchronized void release(boolean probe){
+		if ( probe && state == State.HALF_OPEN ){
+			probing = false;
+		}
+	}
+
+	/*
+	 * Records the outcome of a request. Only the probe decides a half open breaker; requests let through before
+	 * the breaker opened are ignored until it closes.
+	 */
+	private synchronized void record(boolean failure, long nanos, boolean probe){
+		boolean isSlow = nanos > slowDuration;
+		if ( state != State.CLOSED && !probe ){
+			return;
+		}
+		if ( state == State.HALF_OPEN ){
+			probing = false;
+			if ( failure || isSlow ){
+				open();
+			}else{
+				logger.info("Closing circuit breaker for " + name);
+				state = State.CLOSED;
+				reset();
+			}
+			return;
+		}
+		if ( recorded == failed.length ){
+			if ( failed[next] ) failures--;
+			if ( slow[next] ) slowRequests--;
+		}else{
+			recorded++;
+		}
+		failed[next] = failure;
+		slow[next] = isSlow;
+		if ( failure ) failures++;
+		if ( isSlow ) slowRequests++;
+		next = (next + 1) % failed.length;
+		if ( state == State.CLOSED && enabled && recorded >= minimumRequests
+				&& (failures >= failureRate * recorded || slowRequests >= slowRate * recorded) ){
+			open();
+		}
+	}
+
+	private void open(){
+		logger.warn("Opening circuit breaker for " + name + ": " + failures + " failed and " + slowRequests + " slow of the last " + recorded + " requests");
+		state = State.OPEN;
+		openedAt = System.nanoTime();
+		opened.incrementAndGet();
+		reset();
+	}
+
+	private void reset(){
+		next = 0;
+		recorded = 0;
+		failures = 0;
+		slowRequests = 0;
+		Arrays.fill(failed, false);
+		Arrays.fill(slow, false);
+	}
+
+	/**
+	 * Retrieves the state of this breaker. An open breaker whose open duration has passed is reported as half open.
+	 * @return
+	 */
+	public synchronized State getState(){
+		if ( state == State.OPEN && System.nanoTime() - openedAt >= openDuration ){
+			return State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	/**
+	 * Closes this breaker, forgetting the recorded outcomes.
+	 */
+	public synchronized void close(){
+		state = State.CLOSED;
+		probing = false;
+		reset();
+	}
+
+	/**
+	 * Enables or disables this breaker. A disabled breaker lets every request through, but still records outcomes.
+	 * @param enabled
+	 */
+	public void setEnabled(boolean enabled){
+		this.enabled = enabled;
+		if ( !enabled ){
+			close();
+		}
+	}
+
+	public boolean isEnabled(){
+		return enabled;
+	}
+
+	/**
+	 * Sets the number of recorded requests needed before the breaker can open.
+	 * @param minimumRequests
+	 */
+	public void setMinimumRequests(int minimumRequests){
+		if ( minimumRequests < 1 ){
+			throw new IllegalArgumentException("At least one request is required: " + minimumRequests);
+		}
+		this.minimumRequests = minimumRequests;
+	}
+
+	/**
+	 * Sets the fraction of failed requests which opens the breaker.
+	 * @param rate Greater than 0, and at most 1.
+	 */
+	public void setFailureRateThreshold(double rate){
+		if ( rate <= 0 || rate > 1 ){
+			throw new IllegalArgumentException("Invalid failure rate: " + rate);
+		}
+		failureRate = rate;
+	}
+
+	/**
+	 * Sets the time to respond after which a request is slow, and the fraction of slow requests which opens the breaker.
+	 * @param duration In milliseconds.
+	 * @param rate Greater than 0, and at most 1.
+	 */
+	public void setSlowThreshold(long duration, double rate){
+		if ( duration < 1 || rate <= 0 || rate > 1 ){
+			throw new IllegalArgumentException("Invalid slow threshold: " + duration + ", " + rate);
+		}
+		slowDuration = TimeUnit.MILLISECONDS.toNanos(duration);
+		slowRate = rate;
+	}
+
+	/**
+	 * Sets the time the breaker stays open before letting a probe through.
+	 * @param duration In milliseconds.
+	 */
+	public void setOpenDuration(long duration){
+		if ( duration < 0 ){
+			throw new IllegalArgumentException("Invalid open duration: " + duration);
+		}
+		openDuration = TimeUnit.MILLISECONDS.toNanos(duration);
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * Retrieves the number of requests failed fast.
+	 * @return
+	 */
+	public long getRejectedCount(){
+		return rejected.get();
+	}
+
+	/**
+	 * Retrieves the number of times the breaker has opened.
+	 * @return
+	 */
+	public long getOpenedCount(){
+		return opened.get();
+	}
+}
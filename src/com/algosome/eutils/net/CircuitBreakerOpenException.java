@@ -0,0 +1,34 @@
+package com.algosome.eutils.net;
+
+import java.io.IOException;
+
+/**
+ * Thrown in place of sending a request while the circuit breaker of its endpoint is open.
+ * @author Greg Cope
+ * @see CircuitBreaker
+ */
+public class CircuitBreakerOpenException extends IOException{
+
+	static final long serialVersionUID = -3301846719938125714L;
+
+	/**Time in milliseconds until the breaker lets a request through*/
+	private final long remaining;
+
+	/**
+	 *
+	 * @param message
+	 * @param remaining Time in milliseconds until the breaker lets a request through.
+	 */
+	public CircuitBreakerOpenException(String message, long remaining){
+		super(message);
+		this.remaining = remaining;
+	}
+
+	/**
+	 * Retrieves the time until the breaker lets a request through to probe the endpoint.
+	 * @return In milliseconds, 0 if a probe is already in flight.
+	 */
+	public long getRemainingMillis(){
+		return remaining;
+	}
+}
@@ -0,0 +1,202 @@
+package com.algosome.eutils.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a request - or a chain of requests, such as an eSearch and the eFetch of its
+ * results, or the put, polls and get of a BLAST search - must finish. A deadline is shared by every request
+ * of the chain: URLConnect passes its deadline on through copySettings, and Blast through each QBlast command.</p>
+ * <p>The connect and read timeouts of a request with a deadline are shortened to the time remaining, and a
+ * request is not sent once the deadline has passed. A response bound to the deadline is aborted by a watchdog
+ * when the deadline passes, so a caller stalled reading the body is freed and throws DeadlineExceededException.
+ * <pre>
+ * EntrezSearch search = new EntrezSearch();
+ * search.setDeadline(Deadline.after(60000));
+ * search.doQuery();
+ * EntrezFetch fetch = new EntrezFetch(search);//shares the deadline
+ * </pre>
+ * @author Greg Cope
+ * @see URLConnect#setDeadline(Deadline)
+ * @see DeadlineExceededException
+ */
+public class Deadline {
+
+	/*Aborts responses whose deadline has passed*/
+	private static volatile ScheduledExecutorService watchdog = null;
+
+	/*The deadline as a System.nanoTime*/
+	private final long at;
+
+	private Deadline(long at){
+		this.at = at;
+	}
+
+	/**
+	 * Creates a deadline the given time from now.
+	 * @param millis
+	 * @return
+	 */
+	public static Deadline after(long millis){
+		return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	/**
+	 * Retrieves the time remaining before the deadline.
+	 * @return In milliseconds, 0 or less once the deadline has passed.
+	 */
+	public long getRemainingMillis(){
+		return TimeUnit.NANOSECONDS.toMillis(at - System.nanoTime());
+	}
+
+	/**
+	 * Determines whether the deadline has passed.
+	 * @return
+	 */
+	public boolean isExpired(){
+		return at - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Throws if the deadline has passed.
+	 * @param name Describes the request in the exception message.
+	 * @throws DeadlineExceededException if the deadline has passed.
+	 */
+	public void check(String name) throws DeadlineExceededException{
+		if ( isExpired() ){
+			throw new DeadlineExceededException("Deadline exceeded for " + name);
+		}
+	}
+
+	/**
+	 * Shortens a timeout to the time remaining before the deadline.
+	 * @param timeout In milliseconds, 0 for none.
+	 * @return The shorter of the timeout and the time remaining, and at least 1.
+	 */
+	public int clamp(int timeout){
+		long remaining = Math.max(1, getRemainingMillis());
+		if ( timeout > 0 && timeout < remaining ){
+			return timeout;
+		}
+		return (int)Math.min(Integer.MAX_VALUE, remaining);
+	}
+
+	/**
+	 * Binds a response to this deadline: it is aborted if still open when the deadline passes, after which reading
+	 * it throws DeadlineExceededException. Closing the returned response closes the response given.
+	 * @param response
+	 * @param name Describes the request in the exception message.
+	 * @return
+	 */
+	public HttpResponse bind(HttpResponse response, String name){
+		return new BoundResponse(response, name);
+	}
+
+	private static ScheduledExecutorService getWatchdog(){
+		ScheduledExecutorService w = watchdog;
+		if ( w == null ){
+			synchronized(Deadline.class){
+				if ( watchdog == null ){
+					//responses are usually closed well before their deadline, so drop their aborts from the queue
+					ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new QueryExecutors.DaemonThreadFactory("jeutils-deadline-"));
+					executor.setRemoveOnCancelPolicy(true);
+					watchdog = executor;
+				}
+				w = watchdog;
+			}
+		}
+		return w;
+	}
+
+	/**
+	 * A response aborted by the watchdog when the deadline passes.
+	 */
+	private final class BoundResponse implements HttpResponse{
+
+		private final HttpResponse response;
+		private final String name;
+		private final ScheduledFuture<?> abort;
+		private InputStream body = null;
+
+		BoundResponse(final HttpResponse response, String name){
+			this.response = response;
+			this.name = name;
+			this.abort = getWatchdog().schedule(new Runnable(){
+				public void run(){
+					response.abort();
+				}
+			}, Math.max(0, at - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+
+		public int getStatus(){
+			return response.getStatus();
+		}
+
+		public String getHeader(String name){
+			return response.getHeader(name);
+		}
+
+		public synchronized InputStream getBody() throws IOException{
+			check(name);
+			if ( body == null ){
+				final InputStream in = response.getBody();
+				body = new InputStream(){
+					@Override
+					public int read() throws IOException{
+						try{
+							return in.read();
+						}catch(IOException e){
+							throw translate(e);
+						}
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException{
+						try{
+							return in.read(b, off, len);
+						}catch(IOException e){
+							throw translate(e);
+						}
+					}
+
+					@Override
+					public int available() throws IOException{
+						return in.available();
+					}
+
+					@Override
+					public void close(){
+						BoundResponse.this.close();
+					}
+				};
+			}
+			return body;
+		}
+
+		/*
+		 * Reports a read failed by the watchdog closing the connection as the deadline passing.
+		 */
+		private IOException translate(IOException e){
+			if ( !isExpired() ){
+				return e;
+			}
+			DeadlineExceededException d = new DeadlineExceededException("Deadline exceeded reading " + name);
+			d.initCause(e);
+			return d;
+		}
+
+		public void close(){
+			abort.cancel(false);
+			response.close();
+		}
+
+		public void abort(){
+			abort.cancel(false);
+			response.abort();
+		}
+	}
+}
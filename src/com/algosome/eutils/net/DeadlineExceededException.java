@@ -0,0 +1,22 @@
+package com.algosome.eutils.net;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a request, or the chain of requests it belongs to, runs past its deadline. Any connection
+ * still open for the request has been closed.
+ * @author Greg Cope
+ * @see Deadline
+ */
+public class DeadlineExceededException extends InterruptedIOException{
+
+	static final long serialVersionUID = 5120938472610393871L;
+
+	/**
+	 *
+	 * @param message
+	 */
+	public DeadlineExceededException(String message){
+		super(message);
+	}
+}
@@ -0,0 +1,349 @@
+package com.algosome.eutils.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Cuts the tail latency of requests by hedging: if a request has not been answered within a percentile of
+ * the time recent requests took to respond, a duplicate is sent and whichever responds first is used. The
+ * other is cancelled - its connection disconnected - as soon as the race is decided. Only requests that are
+ * safe to send twice, such as eFetch, should be hedged.</p>
+ * <p>The time to respond - from sending the request to receiving the status and headers - of the last
+ * windowSize requests is recorded, and no request is hedged until minimumSamples have been recorded. A
+ * duplicate takes a permit from the rate limiter, and is only sent if one is available at once, so hedging
+ * never takes the client over the allowed rate; hedges skipped for want of a permit are counted.</p>
+ * <p>Hedging is off by default. The original request is sent on the calling thread, and the duplicate on the
+ * executor of the URLConnect sending it. A duplicate still queued when the original fails is dropped rather than
+ * waited for, so a bounded executor whose threads are all sending hedged requests cannot deadlock.
+ * <pre>
+ * EntrezFetch fetch = new EntrezFetch(search);
+ * fetch.setHedgingPolicy(new HedgingPolicy(0.95));
+ * </pre>
+ * @author Greg Cope
+ * @see URLConnect#setHedgingPolicy(HedgingPolicy)
+ */
+public class HedgingPolicy {
+
+	private static final Logger logger = Logger.getLogger(HedgingPolicy.class);
+
+	/*Launches duplicates once their hedge delay has passed*/
+	private static volatile ScheduledExecutorService timer = null;
+
+	/**Default percentile of the recent times to respond after which a request is hedged*/
+	public static final double DEFAULT_PERCENTILE = 0.95;
+
+	/**Default number of times to respond recorded*/
+	public static final int DEFAULT_WINDOW_SIZE = 100;
+
+	/**Default number of times to respond needed before requests are hedged*/
+	public static final int DEFAULT_MINIMUM_SAMPLES = 20;
+
+	/**Default least time in milliseconds before a request is hedged*/
+	public static final long DEFAULT_MINIMUM_DELAY = 100L;
+
+	private final double percentile;
+
+	private volatile int minimumSamples = DEFAULT_MINIMUM_SAMPLES;
+	private volatile long minimumDelay = DEFAULT_MINIMUM_DELAY;
+
+	/*Recent times to respond in milliseconds. Guarded by this*/
+	private final long[] samples;
+	private int next = 0;
+	private int recorded = 0;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong hedged = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+	private final AtomicLong noPermit = new AtomicLong();
+
+	/**
+	 * Constructs a policy hedging after the default percentile.
+	 */
+	public HedgingPolicy(){
+		this(DEFAULT_PERCENTILE);
+	}
+
+	/**
+	 * Constructs a policy.
+	 * @param percentile The percentile of recent times to respond after which a request is hedged, between 0 and 1.
+	 */
+	public HedgingPolicy(double percentile){
+		this(percentile, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructs a policy.
+	 * @param percentile The percentile of recent times to respond after which a request is hedged, between 0 and 1.
+	 * @param windowSize The number of times to respond recorded.
+	 */
+	public HedgingPolicy(double percentile, int windowSize){
+		if ( percentile <= 0 || percentile >= 1 ){
+			throw new IllegalArgumentException("Percentile must be between 0 and 1: " + percentile);
+		}
+		if ( windowSize < 1 ){
+			throw new IllegalArgumentException("The window must hold at least one sample: " + windowSize);
+		}
+		this.percentile = percentile;
+		this.samples = new long[windowSize];
+	}
+
+	/**
+	 * Sets the number of times to respond needed before requests are hedged.
+	 * @param minimumSamples
+	 */
+	public void setMinimumSamples(int minimumSamples){
+		if ( minimumSamples < 1 ){
+			throw new IllegalArgumentException("At least one sample is required: " + minimumSamples);
+		}
+		this.minimumSamples = minimumSamples;
+	}
+
+	/**
+	 * Sets the least time before a request is hedged, however quickly recent requests were answered.
+	 * @param millis
+	 */
+	public void setMinimumDelay(long millis){
+		if ( millis < 0 ){
+			throw new IllegalArgumentException("Invalid delay: " + millis);
+		}
+		this.minimumDelay = millis;
+	}
+
+	/**
+	 * Retrieves the time after which a request is hedged.
+	 * @return In milliseconds, or -1 if too few requests have been recorded to hedge.
+	 */
+	public synchronized long getHedgeDelay(){
+		if ( recorded < minimumSamples ){
+			return -1;
+		}
+		long[] sorted = Arrays.copyOf(samples, recorded);
+		Arrays.sort(sorted);
+		int index = Math.min(recorded - 1, (int)Math.ceil(percentile * recorded) - 1);
+		return Math.max(minimumDelay, sorted[Math.max(0, index)]);
+	}
+
+	/**
+	 * Sends a request on the calling thread, sending a duplicate on the executor if it is not answered within the hedge delay.
+	 * @param transport
+	 * @param request
+	 * @param limiter The rate limiter a duplicate takes its permit from, or null to send duplicates without one.
+	 * @param executor The executor the duplicate is sent on.
+	 * @return The first response.
+	 * @throws IOException the exception of the original request, if neither request was answered.
+	 */
+	public HttpResponse send(final HttpTransport transport, HttpRequest request, final RateLimiter limiter, final Executor executor) throws IOException{
+		requests.incrementAndGet();
+		final long delay = getHedgeDelay();
+		if ( delay < 0 ){
+			return timed(transport, request);
+		}
+		final HttpRequest duplicate = request.copy();
+		final Race race = new Race(request, duplicate);
+		ScheduledFuture<?> hedge = getTimer().schedule(new Runnable(){
+			public void run(){
+				hedge(race, transport, duplicate, limiter, executor, delay);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+		try{
+			race.respond(timed(transport, request), false);
+		}catch(IOException e){
+			race.fail(e, false);
+		}catch(RuntimeException e){
+			race.fail(new IOException(e), false);
+		}finally{
+			hedge.cancel(false);
+		}
+		return race.get();
+	}
+
+	/*
+	 * Sends the duplicate on the executor, if the race is still undecided and a permit is available.
+	 */
+	private void hedge(final Race race, final HttpTransport transport, final HttpRequest duplicate, RateLimiter limiter, Executor executor, long delay){
+		if ( race.isFinished() ){
+			return;
+		}
+		if ( limiter != null && !limiter.tryAcquire() ){
+			noPermit.incrementAndGet();
+			return;
+		}
+		hedged.incrementAndGet();
+		if ( logger.isDebugEnabled() ){
+			logger.debug("Hedging " + duplicate.getEndpoint() + " after " + delay + "ms");
+		}
+		try{
+			executor.execute(new Runnable(){
+				public void run(){
+					if ( !race.start() ){
+						return;
+					}
+					try{
+						race.respond(timed(transport, duplicate), true);
+					}catch(IOException e){
+						race.fail(e, true);
+					}catch(RuntimeException e){
+						race.fail(new IOException(e), true);
+					}
+				}
+			});
+		}catch(RejectedExecutionException e){
+			logger.debug("Unable to send hedge of " + duplicate.getEndpoint() + ": " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Sends the request, recording the time to respond if it succeeds.
+	 */
+	private HttpResponse timed(HttpTransport transport, HttpRequest request) throws IOException{
+		long start = System.nanoTime();
+		HttpResponse response = transport.send(request);
+		record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return response;
+	}
+
+	private synchronized void record(long millis){
+		samples[next] = millis;
+		next = (next + 1) % samples.length;
+		if ( recorded < samples.length ){
+			recorded++;
+		}
+	}
+
+	/**
+	 * Retrieves the number of requests sent through this policy.
+	 * @return
+	 */
+	public long getRequestCount(){
+		return requests.get();
+	}
+
+	/**
+	 * Retrieves the number of duplicate requests sent.
+	 * @return
+	 */
+	public long getHedgeCount(){
+		return hedged.get();
+	}
+
+	/**
+	 * Retrieves the number of requests answered first by the duplicate.
+	 * @return
+	 */
+	public long getHedgeWinCount(){
+		return hedgeWins.get();
+	}
+
+	/**
+	 * Retrieves the number of duplicates not sent because no permit was available from the rate limiter.
+	 * @return
+	 */
+	public long getNoPermitCount(){
+		return noPermit.get();
+	}
+
+	private static ScheduledExecutorService getTimer(){
+		ScheduledExecutorService t = timer;
+		if ( t == null ){
+			synchronized(HedgingPolicy.class){
+				if ( timer == null ){
+					//most requests are answered before their hedge is due, so drop cancelled hedges from the queue
+					ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new QueryExecutors.DaemonThreadFactory("jeutils-hedge-"));
+					executor.setRemoveOnCancelPolicy(true);
+					timer = executor;
+				}
+				t = timer;
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * The original request and its duplicate, sent for a single call to send. The first response wins and the other request
+	 * is cancelled; responses arriving after the winner, or after the caller has given up waiting, are aborted. The race is
+	 * decided once a request has responded, or every request started has failed - a duplicate still queued on the executor
+	 * is not waited for.
+	 */
+	private final class Race{
+
+		private final HttpRequest original;
+		private final HttpRequest duplicate;
+		private int running = 1;
+		private HttpResponse winner = null;
+		private IOException failure = null;
+		private boolean abandoned = false;
+
+		Race(HttpRequest original, HttpRequest duplicate){
+			this.original = original;
+			this.duplicate = duplicate;
+		}
+
+		/*
+		 * Starts the duplicate, returning false if the race has already been decided.
+		 */
+		synchronized boolean start(){
+			if ( isFinished() ){
+				return false;
+			}
+			running++;
+			return true;
+		}
+
+		void respond(HttpResponse response, boolean hedge){
+			synchronized(this){
+				running--;
+				if ( winner != null || abandoned ){
+					response.abort();
+					return;
+				}
+				winner = response;
+				if ( hedge ){
+					hedgeWins.incrementAndGet();
+				}
+				notifyAll();
+			}
+			(hedge ? original : duplicate).cancel();
+		}
+
+		synchronized void fail(IOException e, boolean hedge){
+			running--;
+			if ( failure == null || !hedge ){
+				failure = e;
+			}
+			notifyAll();
+		}
+
+		synchronized HttpResponse get() throws IOException{
+			while ( !isFinished() ){
+				try{
+					wait();
+				}catch(InterruptedException e){
+					abandoned = true;
+					duplicate.cancel();
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for a response");
+				}
+			}
+			if ( winner != null ){
+				return winner;
+			}
+			//the duplicate may still be queued
+			duplicate.cancel();
+			throw failure;
+		}
+
+		synchronized boolean isFinished(){
+			return winner != null || running == 0;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package com.algosome.eutils.net;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Describes a single HTTP request to be sent through an HttpTransport. A request
+ * consists of a URL, a method (GET or POST), an optional body and any additional
+ * request headers.
+ * @author Greg Cope
+ * @see HttpTransport
+ */
+public class HttpRequest {
+
+	/**HTTP GET method*/
+	public static final String GET = "GET";
+	/**HTTP POST method*/
+	public static final String POST = "POST";
+
+	/**The full URL, including any query string*/
+	private final String url;
+
+	/**The HTTP method*/
+	private String method = GET;
+
+	/**The body of a POST request, or null*/
+	private String body = null;
+
+	/**The encoding used to write the body*/
+	private String encoding = "UTF-8";
+
+	/**Connect timeout in milliseconds. 0 indicates no timeout*/
+	private int connectTimeout = 0;
+
+	/**Read timeout in milliseconds. 0 indicates no timeout*/
+	private int readTimeout = 0;
+
+	/**The deadline of the request, or null*/
+	private Deadline deadline = null;
+
+	/**Additional request headers*/
+	private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+	/**Disconnects the connection sending the request while it is in flight, or null. Guarded by this*/
+	private Runnable cancelAction = null;
+
+	/**Whether the request has been cancelled. Guarded by this*/
+	private boolean cancelled = false;
+
+	/**The System.nanoTime at which the transport last sent the request, or 0*/
+	private volatile long sentTime = 0;
+
+	/**
+	 * Constructs a new GET request for the given URL.
+	 * @param url The full URL to request.
+	 */
+	public HttpRequest(String url){
+		this.url = url;
+	}
+
+	/**
+	 * Retrieves the URL of this request.
+	 * @return
+	 */
+	public String getURL(){
+		return url;
+	}
+
+	/**
+	 * Sets the HTTP method.
+	 * @param method One of GET or POST
+	 */
+	public void setMethod(String method){
+		this.method = method;
+	}
+
+	/**
+	 * Retrieves the HTTP method.
+	 * @return
+	 */
+	public String getMethod(){
+		return method;
+	}
+
+	/**
+	 * Sets the body of the request. Only used for POST requests.
+	 * @param body
+	 */
+	public void setBody(String body){
+		this.body = body;
+	}
+
+	/**
+	 * Retrieves the body of this request, or null if none has been set.
+	 * @return
+	 */
+	public String getBody(){
+		return body;
+	}
+
+	/**
+	 * Sets the encoding used to write the body.
+	 * @param encoding
+	 */
+	public void setEncoding(String encoding){
+		this.encoding = encoding;
+	}
+
+	/**
+	 * Retrieves the encoding used to write the body.
+	 * @return
+	 */
+	public String getEncoding(){
+		return encoding;
+	}
+
+	/**
+	 * Sets the connect timeout.
+	 * @param millis Timeout in milliseconds, 0 for none.
+	 */
+	public void setConnectTimeout(int millis){
+		this.connectTimeout = millis;
+	}
+
+	/**
+	 * Retrieves the connect timeout in milliseconds, shortened to the time remaining if the request has a deadline.
+	 * @return
+	 */
+	public int getConnectTimeout(){
+		return deadline == null ? connectTimeout : deadline.clamp(connectTimeout);
+	}
+
+	/**
+	 * Sets the read timeout - the maximum time to wait for data on an open connection.
+	 * @param millis Timeout in milliseconds, 0 for none.
+	 */
+	public void setReadTimeout(int millis){
+		this.readTimeout = millis;
+	}
+
+	/**
+	 * Retrieves the read timeout in milliseconds, shortened to the time remaining if the request has a deadline.
+	 * @return
+	 */
+	public int getReadTimeout(){
+		return deadline == null ? readTimeout : deadline.clamp(readTimeout);
+	}
+
+	/**
+	 * Sets the deadline by which the request must have been answered.
+	 * @param deadline The deadline, or null for none.
+	 */
+	public void setDeadline(Deadline deadline){
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Retrieves the deadline of this request.
+	 * @return The deadline, or null if none has been set.
+	 */
+	public Deadline getDeadline(){
+		return deadline;
+	}
+
+	/**
+	 * Sets a request header.
+	 * @param name
+	 * @param value
+	 */
+	public void setHeader(String name, String value){
+		headers.put(name, value);
+	}
+
+	/**
+	 * Retrieves the request headers.
+	 * @return
+	 */
+	public Map<String, String> getHeaders(){
+		return headers;
+	}
+
+	/**
+	 * Retrieves the host and path of this request, without the query string.
+	 * @return
+	 */
+	public String getEndpoint(){
+		int index = url.indexOf('?');
+		return index == -1 ? url : url.substring(0, index);
+	}
+
+	/**
+	 * Marks the request as sent now. Called by transports once a connection is available, so the time to respond
+	 * measured from it excludes time spent waiting for a connection.
+	 */
+	public void markSent(){
+		sentTime = System.nanoTime();
+	}
+
+	/**
+	 * Retrieves the time the request was last marked sent.
+	 * @return The System.nanoTime when marked, or 0 if it has not been marked.
+	 */
+	public long getSentTime(){
+		return sentTime;
+	}
+
+	/**
+	 * Creates a copy of this request, which can be sent and cancelled independently of this request.
+	 * @return
+	 */
+	public HttpRequest copy(){
+		HttpRequest copy = new HttpRequest(url);
+		copy.method = method;
+		copy.body = body;
+		copy.encoding = encoding;
+		copy.connectTimeout = connectTimeout;
+		copy.readTimeout = readTimeout;
+		copy.deadline = deadline;
+		copy.headers.putAll(headers);
+		return copy;
+	}
+
+	/**
+	 * Cancels this request: the connection sending it is disconnected, so the transport sending it fails at once.
+	 * A cancelled request is not sent again.
+	 */
+	public void cancel(){
+		Runnable action;
+		synchronized(this){
+			cancelled = true;
+			action = cancelAction;
+			cancelAction = null;
+		}
+		if ( action != null ){
+			action.run();
+		}
+	}
+
+	/**
+	 * Determines whether this request has been cancelled.
+	 * @return
+	 */
+	public synchronized boolean isCancelled(){
+		return cancelled;
+	}
+
+	/**
+	 * Sets the action run if this request is cancelled while in flight. Called by transports once they have opened
+	 * a connection for the request, and again with null once the response has been closed.
+	 * @param action Disconnects the connection sending the request, or null.
+	 * @return false if the request has already been cancelled, in which case the action is not kept.
+	 */
+	public synchronized boolean setCancelAction(Runnable action){
+		if ( cancelled && action != null ){
+			return false;
+		}
+		cancelAction = action;
+		return true;
+	}
+
+	@Override
+	public String toString(){
+		return method + " " + url;
+	}
+}
@@ -0,0 +1,47 @@
+package com.algosome.eutils.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The response to an HttpRequest. The body of the response must be closed - either by
+ * closing the stream returned from getBody or calling close on this object - so the
+ * underlying connection can be returned to the transport.
+ * @author Greg Cope
+ * @see HttpTransport
+ */
+public interface HttpResponse extends Closeable{
+
+	/**
+	 * Retrieves the HTTP status code of the response.
+	 * @return
+	 */
+	public int getStatus();
+
+	/**
+	 * Retrieves the value of a response header, or null if the header was not sent.
+	 * @param name
+	 * @return
+	 */
+	public String getHeader(String name);
+
+	/**
+	 * Retrieves the body of the response.
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream getBody() throws IOException;
+
+	/**
+	 * Releases the response, returning the underlying connection to the transport
+	 * for reuse where possible. Calling this more than once has no effect.
+	 */
+	public void close();
+
+	/**
+	 * Forcibly closes the underlying connection without returning it for reuse. This
+	 * can be called from another thread to cancel a response being read.
+	 */
+	public void abort();
+}
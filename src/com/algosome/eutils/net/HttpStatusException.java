@@ -0,0 +1,57 @@
+package com.algosome.eutils.net;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a server responds to a request with an error status code (400 or above).
+ * @author Greg Cope
+ *
+ */
+public class HttpStatusException extends IOException{
+
+	static final long serialVersionUID = -7712093475120347L;
+
+	/**The HTTP status code*/
+	private final int status;
+
+	/**The value of the Retry-After header, or null*/
+	private final String retryAfter;
+
+	/**
+	 *
+	 * @param status The HTTP status code.
+	 * @param message
+	 */
+	public HttpStatusException(int status, String message){
+		this(status, message, null);
+	}
+
+	/**
+	 *
+	 * @param status The HTTP status code.
+	 * @param message
+	 * @param retryAfter The value of the Retry-After header of the response, or null if none was sent.
+	 */
+	public HttpStatusException(int status, String message, String retryAfter){
+		super(message);
+		this.status = status;
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * Retrieves the HTTP status code returned by the server.
+	 * @return
+	 */
+	public int getStatus(){
+		return status;
+	}
+
+	/**
+	 * Retrieves the Retry-After header sent with the error, either a number of seconds or an HTTP date.
+	 * @return The header value, or null if the server did not send one.
+	 * @see RetryPolicy
+	 */
+	public String getRetryAfter(){
+		return retryAfter;
+	}
+}
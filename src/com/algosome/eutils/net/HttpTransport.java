@@ -0,0 +1,24 @@
+package com.algosome.eutils.net;
+
+import java.io.IOException;
+
+/**
+ * Defines how HTTP requests are sent to a server. Implementations are shared between many
+ * URLConnect objects and must be thread safe.
+ * @author Greg Cope
+ * @see PooledHttpTransport
+ * @see URLConnect#setDefaultTransport(HttpTransport)
+ */
+public interface HttpTransport {
+
+	/**
+	 * Sends the request and returns the response once the status and headers have been
+	 * received. The caller is responsible for closing the returned response.
+	 * @param request The request to send.
+	 * @return The response.
+	 * @throws HttpStatusException if the server responds with an error status.
+	 * @throws IOException if the request could not be sent or the response could not be read.
+	 */
+	public HttpResponse send(HttpRequest request) throws IOException;
+
+}
@@ -0,0 +1,990 @@
+package com.algosome.eutils.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * An HttpTransport that keeps a bounded pool of persistent HTTP/1.1 connections to each host.</p>
+ * <p>A host - protocol, host name and port - has at most a fixed number of connections, in use or idle, and
+ * a request to a host whose connections are all in use waits for one to be released. Closing a response drains
+ * the rest of its body - up to a limit, beyond which the connection is dropped - and returns its connection to
+ * the pool, unless the server asked for it to be closed. Idle connections are reused most recently used first,
+ * once checked the server has not closed them, and are evicted once idle for longer than the idle timeout, or
+ * the timeout the server sent in its Keep-Alive header. Eviction happens as the transport is used, or on
+ * calling evictIdleConnections.</p>
+ * <p>The sockets are owned by this transport rather than the keep-alive cache of HttpURLConnection, so the
+ * number of requests answered on a pooled connection (hits), on a new connection (misses) and the number of
+ * idle connections evicted can be counted. The default per host limit is the http.maxConnections system
+ * property, the limit HttpURLConnection uses for its own cache, or 5 if it is not set. Proxies of the default
+ * ProxySelector are used, https connections use the default SSLSocketFactory of HttpsURLConnection, and
+ * redirects of GET requests are followed.
+ * @author Greg Cope
+ *
+ */
+public class PooledHttpTransport implements HttpTransport{
+
+	/**Default number of connections per host, if the http.maxConnections system property is not set*/
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+
+	/**Default time in milliseconds a connection may be idle before it is evicted*/
+	public static final long DEFAULT_IDLE_TIMEOUT = 5000;
+
+	/**The maximum number of bytes read to drain a response before the connection is dropped instead*/
+	private static final int MAX_DRAIN = 64 * 1024;
+
+	/**The maximum number of redirects followed*/
+	private static final int MAX_REDIRECTS = 5;
+
+	/**The maximum length of a status or header line*/
+	private static final int MAX_LINE = 16 * 1024;
+
+	/*Connections allowed per host*/
+	private final int maxConnectionsPerHost;
+
+	/*Idle timeout in milliseconds*/
+	private final long idleTimeout;
+
+	/*Pools keyed by protocol, host, port and proxy*/
+	private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+
+	/*Requests answered on a pooled connection*/
+	private final AtomicLong hits = new AtomicLong();
+
+	/*Requests sent on a new connection*/
+	private final AtomicLong misses = new AtomicLong();
+
+	/*Idle connections closed because they timed out or the server had closed them*/
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Constructs a new transport allowing http.maxConnections connections per host, or 5 if the property is not set,
+	 * and the default idle timeout.
+	 */
+	public PooledHttpTransport(){
+		this(getDefaultMaxConnections());
+	}
+
+	/**
+	 * Constructs a new transport with the default idle timeout.
+	 * @param maxConnectionsPerHost The maximum number of connections to a single host, in use or idle.
+	 */
+	public PooledHttpTransport(int maxConnectionsPerHost){
+		this(maxConnectionsPerHost, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Constructs a new transport.
+	 * @param maxConnectionsPerHost The maximum number of connections to a single host, in use or idle.
+	 * @param idleTimeout The time in milliseconds a connection may be idle before it is evicted.
+	 */
+	public PooledHttpTransport(int maxConnectionsPerHost, long idleTimeout){
+		if ( maxConnectionsPerHost < 1 ){
+			throw new IllegalArgumentException("At least one connection per host is required.");
+		}
+		if ( idleTimeout < 0 ){
+			throw new IllegalArgumentException("The idle timeout cannot be negative.");
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Sends the request once a connection to its host is free, reusing an idle connection if there is one.
+	 */
+	public HttpResponse send(HttpRequest request) throws IOException{
+		Deadline deadline = request.getDeadline();
+		if ( deadline != null ){
+			deadline.check(request.getEndpoint());
+		}
+		URL url = new URL(request.getURL());
+		String method = request.getMethod();
+		byte[] body = null;
+		if ( HttpRequest.POST.equals(method) ){
+			body = request.getBody() == null ? new byte[0] : request.getBody().getBytes(request.getEncoding());
+		}
+		for ( int redirects = 0; ; redirects++ ){
+			PooledResponse response = exchange(request, url, method, body);
+			int status = response.getStatus();
+			String location = response.getHeader("Location");
+			if ( location != null && redirects < MAX_REDIRECTS && isRedirect(status, method) ){
+				response.close();
+				url = new URL(url, location);
+				continue;
+			}
+			if ( status >= 400 ){
+				String retryAfter = response.getHeader("Retry-After");
+				response.close();
+				throw new HttpStatusException(status, "Server returned HTTP response code " + status + " for " + request.getEndpoint(), retryAfter);
+			}
+			return response;
+		}
+	}
+
+	/**
+	 * Retrieves the maximum number of connections per host.
+	 * @return
+	 */
+	public int getMaxConnectionsPerHost(){
+		return maxConnectionsPerHost;
+	}
+
+	/**
+	 * Retrieves the time in milliseconds a connection may be idle before it is evicted.
+	 * @return
+	 */
+	public long getIdleTimeout(){
+		return idleTimeout;
+	}
+
+	/**
+	 * Retrieves the number of requests answered on a pooled connection.
+	 * @return
+	 */
+	public long getHits(){
+		return hits.get();
+	}
+
+	/**
+	 * Retrieves the number of requests for which a new connection was opened.
+	 * @return
+	 */
+	public long getMisses(){
+		return misses.get();
+	}
+
+	/**
+	 * Retrieves the number of idle connections closed because they had timed out, or had been closed by the server.
+	 * @return
+	 */
+	public long getEvictions(){
+		return evictions.get();
+	}
+
+	/**
+	 * Retrieves the number of idle connections in the pools of all hosts.
+	 * @return
+	 */
+	public int getIdleConnections(){
+		int idle = 0;
+		for ( HostPool pool : pools.values() ){
+			idle += pool.getIdleCount();
+		}
+		return idle;
+	}
+
+	/**
+	 * Closes the idle connections of all hosts which have been idle for longer than their timeout.
+	 * @return The number of connections closed.
+	 */
+	public int evictIdleConnections(){
+		int evicted = 0;
+		long now = System.nanoTime();
+		for ( HostPool pool : pools.values() ){
+			evicted += pool.evict(now);
+		}
+		return evicted;
+	}
+
+	@Override
+	public String toString(){
+		return "PooledHttpTransport[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", idle=" + getIdleConnections() + "]";
+	}
+
+	/*
+	 * Sends the request to the url on a pooled or new connection, and reads the status and headers of the response.
+	 */
+	private PooledResponse exchange(HttpRequest request, URL url, String method, byte[] body) throws IOException{
+		HostPool pool = getPool(url);
+		pool.acquire(request.getConnectTimeout());
+		request.markSent();
+		Connection conn = null;
+		try{
+			conn = pool.poll();
+			if ( conn != null ){
+				setCancelAction(request, conn.raw);
+				conn.socket.setSoTimeout(request.getReadTimeout());
+				try{
+					PooledResponse response = exchange(conn, pool, request, url, method, body);
+					hits.incrementAndGet();
+					return response;
+				}catch(UnansweredException e){
+					if ( !HttpRequest.GET.equals(method) || request.isCancelled() ){
+						throw e;
+					}
+					//the server closed the pooled connection without reading the request, so send it on a new one
+					conn.close();
+					conn = null;
+				}
+			}
+			misses.incrementAndGet();
+			conn = open(pool, request);
+			return exchange(conn, pool, request, url, method, body);
+		}catch(IOException e){
+			if ( conn != null ){
+				conn.close();
+			}
+			request.setCancelAction(null);
+			pool.release(null);
+			if ( request.isCancelled() && !(e instanceof InterruptedIOException) ){
+				//the connection was closed by cancel, so the failure says nothing about the server
+				InterruptedIOException c = new InterruptedIOException("Request to " + request.getEndpoint() + " was cancelled");
+				c.initCause(e);
+				throw c;
+			}
+			Deadline deadline = request.getDeadline();
+			if ( deadline != null && deadline.isExpired() && !(e instanceof DeadlineExceededException) ){
+				//the timeouts were shortened to the deadline
+				DeadlineExceededException d = new DeadlineExceededException("Deadline exceeded for " + request.getEndpoint());
+				d.initCause(e);
+				throw d;
+			}
+			throw e;
+		}catch(RuntimeException e){
+			if ( conn != null ){
+				conn.close();
+			}
+			request.setCancelAction(null);
+			pool.release(null);
+			throw e;
+		}
+	}
+
+	/*
+	 * Writes the request to the connection and reads the status and headers of the response.
+	 */
+	private PooledResponse exchange(Connection conn, HostPool pool, HttpRequest request, URL url, String method, byte[] body) throws IOException{
+		StringBuilder head = new StringBuilder(256);
+		head.append(method).append(' ');
+		if ( pool.proxy.type() == Proxy.Type.HTTP && !pool.secure ){
+			head.append(pool.protocol).append("://").append(url.getAuthority());
+		}
+		String path = url.getPath();
+		head.append(path.length() == 0 ? "/" : path);
+		if ( url.getQuery() != null ){
+			head.append('?').append(url.getQuery());
+		}
+		head.append(" HTTP/1.1\r\n");
+		Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+		headers.put("Host", url.getPort() == -1 || url.getPort() == url.getDefaultPort() ? url.getHost() : url.getHost() + ":" + url.getPort());
+		headers.put("User-Agent", "Java/" + System.getProperty("java.version"));
+		headers.put("Accept", "*/*");
+		headers.putAll(request.getHeaders());
+		headers.put("Connection", "keep-alive");
+		if ( body != null ){
+			headers.put("Content-Length", Integer.toString(body.length));
+		}
+		for ( Map.Entry<String, String> header : headers.entrySet() ){
+			head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		head.append("\r\n");
+		try{
+			conn.out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+			if ( body != null ){
+				conn.out.write(body);
+			}
+			conn.out.flush();
+		}catch(IOException e){
+			throw new UnansweredException(pool.host, e);
+		}
+		//only a failure before the first byte of the response means the request went unanswered
+		int first;
+		try{
+			first = conn.in.read();
+		}catch(SocketTimeoutException e){
+			throw e;
+		}catch(IOException e){
+			throw new UnansweredException(pool.host, e);
+		}
+		if ( first == -1 ){
+			throw new UnansweredException(pool.host, null);
+		}
+		String line = (char)first + readLine(conn.in, true);
+		String version = parseVersion(line);
+		int status = parseStatus(line);
+		Map<String, String> fields = readHeaders(conn.in);
+		while ( status >= 100 && status < 200 ){
+			//an interim response, followed by the real one
+			line = readLine(conn.in, true);
+			version = parseVersion(line);
+			status = parseStatus(line);
+			fields = readHeaders(conn.in);
+		}
+		String connection = fields.get("connection");
+		boolean keepAlive = "HTTP/1.0".equals(version) ? hasToken(connection, "keep-alive") : !hasToken(connection, "close");
+		conn.keepAliveTimeout = parseKeepAliveTimeout(fields.get("keep-alive"));
+		Body content;
+		String length = fields.get("content-length");
+		if ( status == 204 || status == 304 ){
+			content = new FixedBody(conn.in, 0);
+		}else if ( hasToken(fields.get("transfer-encoding"), "chunked") ){
+			content = new ChunkedBody(conn.in);
+		}else if ( length != null ){
+			try{
+				content = new FixedBody(conn.in, Long.parseLong(length.trim()));
+			}catch(NumberFormatException e){
+				throw new IOException("Invalid Content-Length " + length + " from " + pool.host);
+			}
+		}else{
+			content = new CloseDelimitedBody(conn.in);
+			keepAlive = false;
+		}
+		return new PooledResponse(conn, request, pool, status, fields, content, keepAlive);
+	}
+
+	/*
+	 * Opens a new connection to the host of the pool, through its proxy if it has one.
+	 */
+	private static Connection open(HostPool pool, HttpRequest request) throws IOException{
+		Socket raw = pool.proxy.type() == Proxy.Type.SOCKS ? new Socket(pool.proxy) : new Socket();
+		setCancelAction(request, raw);
+		try{
+			InetSocketAddress address;
+			if ( pool.proxy.type() == Proxy.Type.HTTP ){
+				InetSocketAddress proxy = (InetSocketAddress)pool.proxy.address();
+				address = new InetSocketAddress(proxy.getHostString(), proxy.getPort());
+			}else{
+				address = new InetSocketAddress(pool.host, pool.port);
+			}
+			raw.connect(address, request.getConnectTimeout());
+			raw.setTcpNoDelay(true);
+			raw.setSoTimeout(request.getReadTimeout());
+			Socket socket = raw;
+			if ( pool.secure ){
+				if ( pool.proxy.type() == Proxy.Type.HTTP ){
+					tunnel(raw, pool);
+				}
+				SSLSocket ssl = (SSLSocket)HttpsURLConnection.getDefaultSSLSocketFactory().createSocket(raw, pool.host, pool.port, true);
+				SSLParameters parameters = ssl.getSSLParameters();
+				parameters.setEndpointIdentificationAlgorithm("HTTPS");
+				ssl.setSSLParameters(parameters);
+				ssl.startHandshake();
+				socket = ssl;
+			}
+			return new Connection(raw, socket);
+		}catch(IOException e){
+			closeQuietly(raw);
+			throw e;
+		}catch(RuntimeException e){
+			closeQuietly(raw);
+			throw e;
+		}
+	}
+
+	/*
+	 * Asks an HTTP proxy to open a tunnel to the host of the pool.
+	 */
+	private static void tunnel(Socket raw, HostPool pool) throws IOException{
+		String authority = pool.host + ":" + pool.port;
+		OutputStream out = raw.getOutputStream();
+		out.write(("CONNECT " + authority + " HTTP/1.1\r\nHost: " + authority + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+		//read unbuffered, so nothing the host sends through the tunnel is consumed
+		InputStream in = raw.getInputStream();
+		int status = parseStatus(readLine(in, true));
+		readHeaders(in);
+		if ( status != 200 ){
+			throw new IOException("Proxy " + pool.proxy + " refused to tunnel to " + authority + " with HTTP response code " + status);
+		}
+	}
+
+	/*
+	 * Determines whether a response is a redirect to be followed for the method. POST requests are only
+	 * redirected by 307 and 308, which keep the method and body.
+	 */
+	private static boolean isRedirect(int status, String method){
+		if ( status == 307 || status == 308 ){
+			return true;
+		}
+		return HttpRequest.GET.equals(method) && (status == 301 || status == 302 || status == 303);
+	}
+
+	/*
+	 * Sets the action to close the socket if the request is cancelled.
+	 */
+	private static void setCancelAction(HttpRequest request, final Socket socket) throws IOException{
+		if ( !request.setCancelAction(new Runnable(){
+			public void run(){
+				closeQuietly(socket);
+			}
+		}) ){
+			throw new InterruptedIOException("Request to " + request.getEndpoint() + " was cancelled");
+		}
+	}
+
+	/*
+	 * Retrieves the pool for the given URL, creating one if necessary.
+	 */
+	private HostPool getPool(URL url) throws IOException{
+		String protocol = url.getProtocol().toLowerCase(Locale.ROOT);
+		if ( !"http".equals(protocol) && !"https".equals(protocol) ){
+			throw new MalformedURLException("Unsupported protocol " + protocol + " in " + url);
+		}
+		int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+		Proxy proxy = selectProxy(url);
+		String key = protocol + "://" + url.getHost() + ":" + port + (proxy.type() == Proxy.Type.DIRECT ? "" : " via " + proxy);
+		HostPool pool = pools.get(key);
+		if ( pool == null ){
+			HostPool created = new HostPool(protocol, url.getHost(), port, proxy);
+			pool = pools.putIfAbsent(key, created);
+			if ( pool == null ){
+				pool = created;
+			}
+		}
+		return pool;
+	}
+
+	/*
+	 * Retrieves the proxy the default ProxySelector chooses for the URL.
+	 */
+	private static Proxy selectProxy(URL url){
+		ProxySelector selector = ProxySelector.getDefault();
+		if ( selector == null ){
+			return Proxy.NO_PROXY;
+		}
+		try{
+			List<Proxy> proxies = selector.select(url.toURI());
+			if ( proxies != null && !proxies.isEmpty() && proxies.get(0).type() != Proxy.Type.DIRECT ){
+				return proxies.get(0);
+			}
+		}catch(URISyntaxException e){
+		}
+		return Proxy.NO_PROXY;
+	}
+
+	/*
+	 * Retrieves the per host limit from http.maxConnections.
+	 */
+	private static int getDefaultMaxConnections(){
+		int max = Integer.getInteger("http.maxConnections", DEFAULT_MAX_CONNECTIONS_PER_HOST).intValue();
+		return max < 1 ? DEFAULT_MAX_CONNECTIONS_PER_HOST : max;
+	}
+
+	/*
+	 * Reads a line ending in LF, without the line ending. Returns null if the stream ends before the line unless required,
+	 * in which case an EOFException is thrown.
+	 */
+	private static String readLine(InputStream in, boolean required) throws IOException{
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ( (c = in.read()) != '\n' ){
+			if ( c == -1 ){
+				if ( required || line.length() > 0 ){
+					throw new EOFException("Connection closed part way through the response headers");
+				}
+				return null;
+			}
+			if ( line.length() == MAX_LINE ){
+				throw new IOException("Response header line longer than " + MAX_LINE + " characters");
+			}
+			line.append((char)c);
+		}
+		int end = line.length();
+		if ( end > 0 && line.charAt(end - 1) == '\r' ){
+			line.setLength(end - 1);
+		}
+		return line.toString();
+	}
+
+	/*
+	 * Reads header lines up to the blank line ending them. Names are lower case, and the last of repeated headers is kept.
+	 */
+	private static Map<String, String> readHeaders(InputStream in) throws IOException{
+		Map<String, String> headers = new HashMap<String, String>();
+		String line;
+		while ( (line = readLine(in, true)).length() > 0 ){
+			int colon = line.indexOf(':');
+			if ( colon > 0 ){
+				headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+			}
+		}
+		return headers;
+	}
+
+	private static String parseVersion(String statusLine) throws IOException{
+		int space = statusLine.indexOf(' ');
+		if ( !statusLine.startsWith("HTTP/") || space == -1 ){
+			throw new IOException("Invalid HTTP status line: " + statusLine);
+		}
+		return statusLine.substring(0, space);
+	}
+
+	private static int parseStatus(String statusLine) throws IOException{
+		int space = statusLine.indexOf(' ');
+		if ( !statusLine.startsWith("HTTP/") || space == -1 || statusLine.length() < space + 4 ){
+			throw new IOException("Invalid HTTP status line: " + statusLine);
+		}
+		try{
+			return Integer.parseInt(statusLine.substring(space + 1, space + 4));
+		}catch(NumberFormatException e){
+			throw new IOException("Invalid HTTP status line: " + statusLine);
+		}
+	}
+
+	/*
+	 * Parses the timeout, in milliseconds, of a Keep-Alive header such as timeout=5, max=100. Returns 0 if there is none.
+	 */
+	private static long parseKeepAliveTimeout(String keepAlive){
+		if ( keepAlive == null ){
+			return 0;
+		}
+		for ( String parameter : keepAlive.split(",") ){
+			String[] pair = parameter.trim().split("=");
+			if ( pair.length == 2 && pair[0].trim().equalsIgnoreCase("timeout") ){
+				try{
+					return Math.max(0, Long.parseLong(pair[1].trim())) * 1000;
+				}catch(NumberFormatException e){
+					return 0;
+				}
+			}
+		}
+		return 0;
+	}
+
+	/*
+	 * Determines whether a comma separated header value contains the token.
+	 */
+	private static boolean hasToken(String value, String token){
+		if ( value == null ){
+			return false;
+		}
+		for ( String part : value.split(",") ){
+			if ( part.trim().equalsIgnoreCase(token) ){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Reads the body to the end so its connection can be reused.
+	 * Returns false if the body was too long to drain, or could not be read.
+	 */
+	private static boolean drain(Body body){
+		byte[] buffer = new byte[4096];
+		int total = 0;
+		try{
+			int read;
+			while ( (read = body.read(buffer, 0, buffer.length)) != -1 ){
+				total += read;
+				if ( total > MAX_DRAIN ){
+					return false;
+				}
+			}
+			return body.complete;
+		}catch(IOException e){
+			return false;
+		}
+	}
+
+	private static void closeQuietly(Socket socket){
+		try{
+			socket.close();
+		}catch(IOException e){
+		}
+	}
+
+	/**
+	 * Thrown when a connection fails before any of the response is received, so a pooled connection the server had
+	 * closed can be replaced.
+	 */
+	private static final class UnansweredException extends SocketException{
+
+		static final long serialVersionUID = 4470372551839004781L;
+
+		UnansweredException(String host, IOException cause){
+			super("Connection to " + host + " closed before a response was received");
+			if ( cause != null ){
+				initCause(cause);
+			}
+		}
+	}
+
+	/**
+	 * An open connection to a host.
+	 */
+	private static final class Connection{
+
+		/*The plain socket, closed to close the connection*/
+		final Socket raw;
+
+		/*The socket read and written - the TLS socket layered over raw for https*/
+		final Socket socket;
+
+		final InputStream in;
+		final OutputStream out;
+
+		/*The System.nanoTime the connection was returned to its pool*/
+		long idleSince;
+
+		/*The timeout the server sent in its Keep-Alive header, in milliseconds, or 0*/
+		long keepAliveTimeout = 0;
+
+		Connection(Socket raw, Socket socket) throws IOException{
+			this.raw = raw;
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+		}
+
+		/*
+		 * Determines whether the idle connection is still open - the server has neither closed it nor sent anything.
+		 */
+		boolean isOpen(){
+			if ( raw.isClosed() ){
+				return false;
+			}
+			try{
+				if ( in.available() > 0 ){
+					return false;
+				}
+				socket.setSoTimeout(1);
+				in.read();
+				return false;
+			}catch(SocketTimeoutException e){
+				return true;
+			}catch(IOException e){
+				return false;
+			}
+		}
+
+		void close(){
+			closeQuietly(raw);
+		}
+	}
+
+	/**
+	 * The connections of a single host.
+	 */
+	private final class HostPool{
+
+		final String protocol;
+		final String host;
+		final int port;
+		final boolean secure;
+		final Proxy proxy;
+
+		/*A permit for each connection in use*/
+		private final Semaphore permits = new Semaphore(maxConnectionsPerHost, true);
+
+		/*Idle connections, most recently used first. Guarded by this*/
+		private final ArrayDeque<Connection> idle = new ArrayDeque<Connection>();
+
+		HostPool(String protocol, String host, int port, Proxy proxy){
+			this.protocol = protocol;
+			this.host = host;
+			this.port = port;
+			this.secure = "https".equals(protocol);
+			this.proxy = proxy;
+		}
+
+		/*
+		 * Waits for a connection to be free, waiting at most timeout milliseconds (0 to wait indefinitely).
+		 */
+		void acquire(int timeout) throws IOException{
+			try{
+				if ( timeout > 0 ){
+					if ( !permits.tryAcquire(timeout, TimeUnit.MILLISECONDS) ){
+						throw new SocketTimeoutException("Timed out waiting for a connection to " + host);
+					}
+				}else{
+					permits.acquire();
+				}
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for a connection to " + host);
+			}
+		}
+
+		/*
+		 * Takes the most recently used idle connection still open, or returns null if there is none.
+		 */
+		Connection poll(){
+			evictIdleConnections();
+			while ( true ){
+				Connection conn;
+				synchronized(this){
+					conn = idle.pollFirst();
+				}
+				if ( conn == null || conn.isOpen() ){
+					return conn;
+				}
+				conn.close();
+				evictions.incrementAndGet();
+			}
+		}
+
+		/*
+		 * Returns a connection to the pool if it is not null, and frees its permit.
+		 */
+		void release(Connection conn){
+			if ( conn != null ){
+				conn.idleSince = System.nanoTime();
+				synchronized(this){
+					idle.addFirst(conn);
+				}
+			}
+			permits.release();
+			evictIdleConnections();
+		}
+
+		synchronized int getIdleCount(){
+			return idle.size();
+		}
+
+		/*
+		 * Closes the connections idle for longer than their timeout.
+		 */
+		int evict(long now){
+			int evicted = 0;
+			synchronized(this){
+				for ( Iterator<Connection> it = idle.iterator(); it.hasNext(); ){
+					Connection conn = it.next();
+					long timeout = conn.keepAliveTimeout > 0 ? Math.min(idleTimeout, conn.keepAliveTimeout) : idleTimeout;
+					if ( now - conn.idleSince >= TimeUnit.MILLISECONDS.toNanos(timeout) ){
+						it.remove();
+						conn.close();
+						evicted++;
+					}
+				}
+			}
+			evictions.addAndGet(evicted);
+			return evicted;
+		}
+	}
+
+	/**
+	 * A response holding a connection. Closing drains the body, and returns the connection to its pool if it can be reused.
+	 */
+	private static final class PooledResponse implements HttpResponse{
+
+		private final Connection conn;
+		private final HttpRequest request;
+		private final HostPool pool;
+		private final int status;
+		private final Map<String, String> headers;
+		private final Body content;
+		private final boolean keepAlive;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+		private volatile InputStream body = null;
+
+		PooledResponse(Connection conn, HttpRequest request, HostPool pool, int status, Map<String, String> headers, Body content, boolean keepAlive){
+			this.conn = conn;
+			this.request = request;
+			this.pool = pool;
+			this.status = status;
+			this.headers = headers;
+			this.content = content;
+			this.keepAlive = keepAlive;
+		}
+
+		public int getStatus(){
+			return status;
+		}
+
+		public String getHeader(String name){
+			return headers.get(name.toLowerCase(Locale.ROOT));
+		}
+
+		public synchronized InputStream getBody(){
+			if ( body == null ){
+				body = new FilterInputStream(content){
+					@Override
+					public void close(){
+						PooledResponse.this.close();
+					}
+				};
+			}
+			return body;
+		}
+
+		public void close(){
+			if ( !released.compareAndSet(false, true) ){
+				return;
+			}
+			boolean reusable = keepAlive && drain(content);
+			//the connection may go back to the pool, so cancelling must no longer close it
+			request.setCancelAction(null);
+			if ( reusable && !request.isCancelled() ){
+				pool.release(conn);
+			}else{
+				conn.close();
+				pool.release(null);
+			}
+		}
+
+		public void abort(){
+			if ( released.compareAndSet(false, true) ){
+				conn.close();
+				request.setCancelAction(null);
+				pool.release(null);
+			}
+		}
+	}
+
+	/**
+	 * The body of a response, read from its connection.
+	 */
+	private static abstract class Body extends InputStream{
+
+		protected final InputStream in;
+
+		/*Whether the body has been read to its end, leaving the connection at the start of the next response*/
+		protected boolean complete = false;
+
+		Body(InputStream in){
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException{
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+	}
+
+	/**
+	 * A body of a known length.
+	 */
+	private static final class FixedBody extends Body{
+
+		private long remaining;
+
+		FixedBody(InputStream in, long length){
+			super(in);
+			remaining = length;
+			complete = length == 0;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException{
+			if ( remaining == 0 ){
+				return -1;
+			}
+			if ( len == 0 ){
+				return 0;
+			}
+			int read = in.read(b, off, (int)Math.min(len, remaining));
+			if ( read == -1 ){
+				throw new EOFException("Connection closed " + remaining + " bytes before the end of the response body");
+			}
+			remaining -= read;
+			complete = remaining == 0;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException{
+			return (int)Math.min(in.available(), remaining);
+		}
+	}
+
+	/**
+	 * A body sent with chunked transfer encoding.
+	 */
+	private static final class ChunkedBody extends Body{
+
+		/*Bytes left in the current chunk*/
+		private long remaining = 0;
+
+		/*Whether the line ending after a chunk is still to be read*/
+		private boolean chunkEnd = false;
+
+		ChunkedBody(InputStream in){
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException{
+			if ( complete ){
+				return -1;
+			}
+			if ( len == 0 ){
+				return 0;
+			}
+			if ( remaining == 0 ){
+				if ( chunkEnd ){
+					if ( readLine(in, true).length() != 0 ){
+						throw new IOException("Malformed chunked response body");
+					}
+					chunkEnd = false;
+				}
+				String line = readLine(in, true);
+				int extension = line.indexOf(';');
+				try{
+					remaining = Long.parseLong((extension == -1 ? line : line.substring(0, extension)).trim(), 16);
+				}catch(NumberFormatException e){
+					throw new IOException("Malformed chunk size " + line);
+				}
+				if ( remaining == 0 ){
+					readHeaders(in);
+					complete = true;
+					return -1;
+				}
+			}
+			int read = in.read(b, off, (int)Math.min(len, remaining));
+			if ( read == -1 ){
+				throw new EOFException("Connection closed part way through a chunk of the response body");
+			}
+			remaining -= read;
+			chunkEnd = remaining == 0;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException{
+			return (int)Math.min(in.available(), remaining);
+		}
+	}
+
+	/**
+	 * A body ending when the server closes the connection.
+	 */
+	private static final class CloseDelimitedBody extends Body{
+
+		CloseDelimitedBody(InputStream in){
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException{
+			int read = in.read(b, off, len);
+			if ( read == -1 ){
+				complete = true;
+			}
+			return read;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.algosome.eutils.net;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Factory methods for the executors used to run asynchronous queries. Virtual threads are used where
+ * the running JVM supports them (Java 21 or later), so many queries can wait on the network at once
+ * without holding a platform thread each.
+ * @author Greg Cope
+ * @see URLConnect#doQueryAsync(com.algosome.eutils.io.InputStreamParser)
+ */
+public final class QueryExecutors {
+
+	private static final Logger logger = Logger.getLogger(QueryExecutors.class);
+
+	private QueryExecutors(){}
+
+	/**
+	 * Determines if the running JVM supports virtual threads.
+	 * @return
+	 */
+	public static boolean isVirtualThreadSupported(){
+		return getVirtualThreadFactoryMethod() != null;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task.
+	 * @return
+	 * @throws UnsupportedOperationException if the running JVM does not support virtual threads.
+	 */
+	public static ExecutorService newVirtualThreadExecutor(){
+		Method method = getVirtualThreadFactoryMethod();
+		if ( method == null ){
+			throw new UnsupportedOperationException("Virtual threads are not supported by this JVM.");
+		}
+		try{
+			return (ExecutorService)method.invoke(null);
+		}catch(Exception e){
+			throw new UnsupportedOperationException("Unable to create a virtual thread executor.", e);
+		}
+	}
+
+	/**
+	 * Creates an executor of daemon platform threads, which are created as needed and reused when idle.
+	 * @return
+	 */
+	public static ExecutorService newPlatformThreadExecutor(){
+		return Executors.newCachedThreadPool(new DaemonThreadFactory("jeutils-query-"));
+	}
+
+	/**
+	 * Creates the default executor for asynchronous queries: a virtual thread executor if supported,
+	 * otherwise a platform thread executor.
+	 * @return
+	 */
+	public static ExecutorService newDefaultExecutor(){
+		if ( isVirtualThreadSupported() ){
+			return newVirtualThreadExecutor();
+		}
+		logger.debug("Virtual threads not supported, using platform threads for asynchronous queries");
+		return newPlatformThreadExecutor();
+	}
+
+	/**
+	 * Creates a single threaded scheduler running on a daemon thread, for timers and pollers which only
+	 * dispatch work and never block.
+	 * @param name The name of the scheduler thread.
+	 * @return
+	 */
+	public static ScheduledExecutorService newScheduler(String name){
+		return Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory(name + "-"));
+	}
+
+	/*
+	 * Looks up Executors.newVirtualThreadPerTaskExecutor, which is not available before Java 21.
+	 */
+	private static Method getVirtualThreadFactoryMethod(){
+		try{
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		}catch(NoSuchMethodException e){
+			return null;
+		}
+	}
+
+	/**
+	 * Creates named daemon threads, so queries in progress do not prevent the JVM from exiting.
+	 */
+	static final class DaemonThreadFactory implements ThreadFactory{
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		DaemonThreadFactory(String prefix){
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable r){
+			Thread thread = new Thread(r, prefix + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
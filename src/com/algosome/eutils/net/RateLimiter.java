@@ -0,0 +1,220 @@
+package com.algosome.eutils.net;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free token bucket used to keep requests to NCBI within the allowed rate. Each call to acquire
+ * reserves the next free slot in the bucket with a single compare and set, then waits until that slot
+ * becomes available. Up to burst requests may be made back to back after the bucket has been idle.</p>
+ * <p>Shared buckets are provided for eutils and BLAST, as NCBI enforces separate limits for each:
+ * <ul><li>eutils: 3 requests per second, or 10 per second when an API key is provided</li>
+ * <li>BLAST: no more than one request every 10 seconds</li></ul>
+ * The total and maximum time spent waiting are recorded so callers can verify they are running at,
+ * but not over, the allowed rate.
+ * @author Greg Cope
+ * @see http://www.ncbi.nlm.nih.gov/books/NBK25497/
+ */
+public class RateLimiter {
+
+	/**Requests per second allowed by eutils without an API key*/
+	public static final double EUTILS_RATE = 3;
+
+	/**Requests per second allowed by eutils with an API key*/
+	public static final double EUTILS_API_KEY_RATE = 10;
+
+	/**Requests per second allowed by BLAST*/
+	public static final double BLAST_RATE = 0.1;
+
+	/**Shared bucket for eutils requests made without an API key*/
+	private static final RateLimiter EUTILS = new RateLimiter(EUTILS_RATE, 1);
+
+	/**Shared bucket for eutils requests made with an API key*/
+	private static final RateLimiter EUTILS_API_KEY = new RateLimiter(EUTILS_API_KEY_RATE, 1);
+
+	/**Shared bucket for BLAST requests*/
+	private static final RateLimiter BLAST = new RateLimiter(BLAST_RATE, 1);
+
+	/*The time (System.nanoTime) at which the bucket will next be empty*/
+	private final AtomicLong nextFree = new AtomicLong(System.nanoTime());
+
+	/*Nanoseconds between permits*/
+	private volatile long interval;
+
+	/*Number of permits that may be taken back to back*/
+	private volatile int burst;
+
+	private final AtomicLong acquired = new AtomicLong();
+	private final AtomicLong waited = new AtomicLong();
+	private final AtomicLong totalWait = new AtomicLong();
+	private final AtomicLong maxWait = new AtomicLong();
+
+	/**
+	 * Constructs a new RateLimiter.
+	 * @param permitsPerSecond The sustained rate.
+	 * @param burst The number of permits that may be taken at once after the bucket has been idle.
+	 */
+	public RateLimiter(double permitsPerSecond, int burst){
+		setRate(permitsPerSecond);
+		setBurst(burst);
+	}
+
+	/**
+	 * Retrieves the shared bucket for eutils requests.
+	 * @param hasApiKey true if requests are made with an NCBI API key.
+	 * @return
+	 */
+	public static RateLimiter eutils(boolean hasApiKey){
+		return hasApiKey ? EUTILS_API_KEY : EUTILS;
+	}
+
+	/**
+	 * Retrieves the shared bucket for BLAST requests.
+	 * @return
+	 */
+	public static RateLimiter blast(){
+		return BLAST;
+	}
+
+	/**
+	 * Sets the sustained rate of this bucket.
+	 * @param permitsPerSecond
+	 */
+	public void setRate(double permitsPerSecond){
+		if ( permitsPerSecond <= 0 ){
+			throw new IllegalArgumentException("Rate must be positive: " + permitsPerSecond);
+		}
+		interval = (long)(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+	}
+
+	/**
+	 * Retrieves the sustained rate of this bucket.
+	 * @return
+	 */
+	public double getRate(){
+		return (double)TimeUnit.SECONDS.toNanos(1) / interval;
+	}
+
+	/**
+	 * Sets the number of permits that can be taken back to back.
+	 * @param burst
+	 */
+	public void setBurst(int burst){
+		if ( burst < 1 ){
+			throw new IllegalArgumentException("Burst must be at least 1: " + burst);
+		}
+		this.burst = burst;
+	}
+
+	/**
+	 * Reserves a permit without waiting.
+	 * @return The number of nanoseconds the caller must wait before using the reserved permit, or 0
+	 * if it can be used immediately.
+	 */
+	public long reserve(){
+		long wait;
+		while ( true ){
+			long now = System.nanoTime();
+			long free = nextFree.get();
+			long start = Math.max(free, now - (burst - 1) * interval);
+			if ( nextFree.compareAndSet(free, start + interval) ){
+				wait = Math.max(0, start - now);
+				break;
+			}
+		}
+		record(wait);
+		return wait;
+	}
+
+	/**
+	 * Takes a permit if one is available immediately.
+	 * @return true if a permit was taken, false otherwise.
+	 */
+	public boolean tryAcquire(){
+		while ( true ){
+			long now = System.nanoTime();
+			long free = nextFree.get();
+			long start = Math.max(free, now - (burst - 1) * interval);
+			if ( start > now ){
+				return false;
+			}
+			if ( nextFree.compareAndSet(free, start + interval) ){
+				record(0);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Takes a permit, waiting until one is available.
+	 * @throws InterruptedIOException if interrupted while waiting.
+	 */
+	public void acquire() throws InterruptedIOException{
+		long wait = reserve();
+		if ( wait > 0 ){
+			try{
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for rate limit");
+			}
+		}
+	}
+
+	/*
+	 * Records the wait time metrics.
+	 */
+	private void record(long wait){
+		acquired.incrementAndGet();
+		if ( wait <= 0 ){
+			return;
+		}
+		waited.incrementAndGet();
+		totalWait.addAndGet(wait);
+		long max;
+		while ( wait > (max = maxWait.get()) && !maxWait.compareAndSet(max, wait) );
+	}
+
+	/**
+	 * Retrieves the number of permits taken.
+	 * @return
+	 */
+	public long getAcquiredCount(){
+		return acquired.get();
+	}
+
+	/**
+	 * Retrieves the number of permits which had to wait.
+	 * @return
+	 */
+	public long getWaitedCount(){
+		return waited.get();
+	}
+
+	/**
+	 * Retrieves the total time spent waiting for permits, in milliseconds.
+	 * @return
+	 */
+	public long getTotalWaitMillis(){
+		return TimeUnit.NANOSECONDS.toMillis(totalWait.get());
+	}
+
+	/**
+	 * Retrieves the longest time spent waiting for a single permit, in milliseconds.
+	 * @return
+	 */
+	public long getMaxWaitMillis(){
+		return TimeUnit.NANOSECONDS.toMillis(maxWait.get());
+	}
+
+	/**
+	 * Resets the wait time metrics.
+	 */
+	public void resetMetrics(){
+		acquired.set(0);
+		waited.set(0);
+		totalWait.set(0);
+		maxWait.set(0);
+	}
+}
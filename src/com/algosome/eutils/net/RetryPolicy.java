@@ -0,0 +1,448 @@
+package com.algosome.eutils.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decides whether and when a failed request to NCBI is sent again. Only failures that are likely to
+ * be transient are retried: HTTP status 408, 429, 500, 502, 503 and 504, connection failures and timeouts.
+ * Other client errors, and interruption, are thrown at once.</p>
+ * <p>The wait before each retry follows decorrelated jitter - a random time between the base delay and
+ * three times the previous wait, capped at the maximum delay - so clients which failed together do not
+ * retry together. A Retry-After header sent by the server is honored as the least time to wait; if it asks
+ * for longer than the maximum delay the request is given up instead.</p>
+ * <p>Retries are limited by a budget shared by every request made with the policy: each request adds
+ * budgetRatio of a token, up to a maximum, and each retry spends a whole token. While NCBI is failing
+ * most requests, the retries made are then a fixed fraction of the requests rather than a multiple of them.</p>
+ * <p>URLConnect and QBlastRequest use the default policy unless given their own. The counts of attempts,
+ * retries and requests given up are recorded so callers can see how often NCBI is failing.
+ * <pre>
+ * RetryPolicy policy = new RetryPolicy();
+ * policy.setMaxAttempts(6);
+ * connect.setRetryPolicy(policy);
+ * </pre>
+ * @author Greg Cope
+ * @see URLConnect#setRetryPolicy(RetryPolicy)
+ */
+public class RetryPolicy {
+
+	private static final Logger logger = Logger.getLogger(RetryPolicy.class);
+
+	/**Default number of attempts made at each request, including the first*/
+	public static final int DEFAULT_MAX_ATTEMPTS = 4;
+
+	/**Default least wait before a retry, in milliseconds*/
+	public static final long DEFAULT_BASE_DELAY = 1000L;
+
+	/**Default greatest wait before a retry, in milliseconds*/
+	public static final long DEFAULT_MAX_DELAY = 60000L;
+
+	/**Default fraction of a retry each request adds to the budget*/
+	public static final double DEFAULT_BUDGET_RATIO = 0.2;
+
+	/**Default number of retries the budget can hold*/
+	public static final int DEFAULT_MAX_BUDGET = 10;
+
+	/*Budget tokens are counted in thousandths*/
+	private static final long TOKEN = 1000L;
+
+	/**Shared policy for requests which have not set their own*/
+	private static volatile RetryPolicy defaultPolicy = new RetryPolicy();
+
+	private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private volatile long baseDelay = DEFAULT_BASE_DELAY;
+	private volatile long maxDelay = DEFAULT_MAX_DELAY;
+	private volatile long budgetDeposit = (long)(DEFAULT_BUDGET_RATIO * TOKEN);
+	private volatile long maxBudget = DEFAULT_MAX_BUDGET * TOKEN;
+
+	/*Retries available, in thousandths*/
+	private final AtomicLong budget = new AtomicLong(DEFAULT_MAX_BUDGET * TOKEN);
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong attempts = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong recovered = new AtomicLong();
+	private final AtomicLong givenUp = new AtomicLong();
+	private final AtomicLong budgetExhausted = new AtomicLong();
+	private final AtomicLong retryAfterHonored = new AtomicLong();
+	private final AtomicLong totalDelay = new AtomicLong();
+
+	/**
+	 * A single attempt at a request.
+	 * @param <T> The result of the request.
+	 */
+	public interface Attempt<T>{
+
+		/**
+		 * Makes the attempt.
+		 * @return
+		 * @throws IOException if the attempt failed.
+		 */
+		public T run() throws IOException;
+	}
+
+	/**
+	 * Constructs a policy with the default limits.
+	 */
+	public RetryPolicy(){
+
+	}
+
+	/**
+	 * Constructs a policy.
+	 * @param maxAttempts The number of attempts made at each request, including the first. 1 disables retries.
+	 * @param baseDelay The least wait before a retry, in milliseconds.
+	 * @param maxDelay The greatest wait before a retry, in milliseconds.
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay){
+		setMaxAttempts(maxAttempts);
+		setDelays(baseDelay, maxDelay);
+	}
+
+	/**
+	 * Retrieves the policy used by requests which have not set their own.
+	 * @return
+	 */
+	public static RetryPolicy getDefault(){
+		return defaultPolicy;
+	}
+
+	/**
+	 * Sets the policy used by requests which have not set their own.
+	 * @param policy
+	 */
+	public static void setDefault(RetryPolicy policy){
+		if ( policy == null ){
+			throw new IllegalArgumentException("The default retry policy cannot be null.");
+		}
+		defaultPolicy = policy;
+	}
+
+	/**
+	 * Sets the number of attempts made at each request, including the first.
+	 * @param maxAttempts
+	 */
+	public void setMaxAttempts(int maxAttempts){
+		if ( maxAttempts < 1 ){
+			throw new IllegalArgumentException("At least one attempt is required: " + maxAttempts);
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	public int getMaxAttempts(){
+		return maxAttempts;
+	}
+
+	/**
+	 * Sets the least and greatest wait before a retry.
+	 * @param baseDelay In milliseconds.
+	 * @param maxDelay In milliseconds, no less than the base delay.
+	 */
+	public void setDelays(long baseDelay, long maxDelay){
+		if ( baseDelay < 1 || maxDelay < baseDelay ){
+			throw new IllegalArgumentException("Invalid delays: " + baseDelay + ", " + maxDelay);
+		}
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	public long getBaseDelay(){
+		return baseDelay;
+	}
+
+	public long getMaxDelay(){
+		return maxDelay;
+	}
+
+	/**
+	 * Sets the retry budget.
+	 * @param ratio The fraction of a retry each request adds to the budget.
+	 * @param max The number of retries the budget can hold, and so the most retries that can be made at once
+	 * after a period without failures.
+	 */
+	public void setBudget(double ratio, int max){
+		if ( ratio < 0 || max < 0 ){
+			throw new IllegalArgumentException("Invalid retry budget: " + ratio + ", " + max);
+		}
+		budgetDeposit = (long)(ratio * TOKEN);
+		maxBudget = max * TOKEN;
+		budget.set(maxBudget);
+	}
+
+	/**
+	 * Runs an attempt, running it again after a wait each time it fails with a retryable exception until it succeeds,
+	 * the attempts are used up or the budget is exhausted.
+	 * @param name Describes the request in log messages.
+	 * @param attempt
+	 * @return The result of the first successful attempt.
+	 * @throws InterruptedIOException if interrupted while waiting to retry.
+	 * @throws IOException the exception of the last attempt, if no attempt succeeded.
+	 */
+	public <T> T execute(String name, Attempt<T> attempt) throws IOException{
+		return execute(name, null, attempt);
+	}
+
+	/**
+	 * Runs an attempt as for execute(String, Attempt), but does not wait to retry past a deadline.
+	 * @param name Describes the request in log messages.
+	 * @param deadline The deadline of the request, or null for none.
+	 * @param attempt
+	 * @return The result of the first successful attempt.
+	 * @throws DeadlineExceededException if the wait to retry would pass the deadline.
+	 * @throws InterruptedIOException if interrupted while waiting to retry.
+	 * @throws IOException the exception of the last attempt, if no attempt succeeded.
+	 */
+	public <T> T execute(String name, Deadline deadline, Attempt<T> attempt) throws IOException{
+		return execute(name, deadline, true, attempt);
+	}
+
+	/**
+	 * Runs an attempt as for execute(String, Deadline, Attempt). A request which is not idempotent, such as a BLAST
+	 * put, is only retried if it failed before it could have been processed.
+	 * @param name Describes the request in log messages.
+	 * @param deadline The deadline of the request, or null for none.
+	 * @param idempotent Whether the request is safe to send more than once.
+	 * @param attempt
+	 * @return The result of the first successful attempt.
+	 * @throws DeadlineExceededException if the wait to retry would pass the deadline.
+	 * @throws InterruptedIOException if interrupted while waiting to retry.
+	 * @throws IOException the exception of the last attempt, if no attempt succeeded.
+	 * @see #isRetryable(IOException, boolean)
+	 */
+	public <T> T execute(String name, Deadline deadline, boolean idempotent, Attempt<T> attempt) throws IOException{
+		requests.incrementAndGet();
+		deposit();
+		long previous = baseDelay;
+		for ( int i = 1; ; i++ ){
+			attempts.incrementAndGet();
+			try{
+				T result = attempt.run();
+				if ( i > 1 ){
+					recovered.incrementAndGet();
+				}
+				return result;
+			}catch(IOException e){
+				if ( !isRetryable(e, idempotent) ){
+					throw e;
+				}
+				if ( i >= maxAttempts ){
+					givenUp.incrementAndGet();
+					logger.warn("Giving up on " + name + " after " + i + " attempts: " + e.getMessage());
+					throw e;
+				}
+				long retryAfter = getRetryAfter(e);
+				if ( retryAfter > maxDelay ){
+					givenUp.incrementAndGet();
+					logger.warn("Giving up on " + name + ": server asked to wait " + retryAfter + "ms");
+					throw e;
+				}
+				if ( !withdraw() ){
+					budgetExhausted.incrementAndGet();
+					logger.warn("Retry budget exhausted, giving up on " + name + ": " + e.getMessage());
+					throw e;
+				}
+				previous = nextDelay(previous);
+				long delay = previous;
+				if ( retryAfter > delay ){
+					retryAfterHonored.incrementAndGet();
+					delay = retryAfter;
+				}
+				if ( deadline != null && delay >= deadline.getRemainingMillis() ){
+					givenUp.incrementAndGet();
+					DeadlineExceededException d = new DeadlineExceededException("Deadline exceeded waiting to retry " + name);
+					d.initCause(e);
+					throw d;
+				}
+				retries.incrementAndGet();
+				totalDelay.addAndGet(delay);
+				logger.info("Attempt " + i + " at " + name + " failed (" + e.getMessage() + "), retrying in " + delay + "ms");
+				try{
+					Thread.sleep(delay);
+				}catch(InterruptedException ie){
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting to retry " + name);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determines whether a failed attempt is worth retrying.
+	 * @param e
+	 * @return
+	 */
+	public boolean isRetryable(IOException e){
+		if ( e instanceof HttpStatusException ){
+			int status = ((HttpStatusException)e).getStatus();
+			return status == 408 || status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+		}
+		if ( e instanceof SocketTimeoutException ){
+			return true;
+		}
+		if ( e instanceof InterruptedIOException ){
+			return false;
+		}
+		return e instanceof ConnectException || e instanceof SocketException;
+	}
+
+	/**
+	 * Determines whether a failed attempt is worth retrying. A request which is not idempotent is only retried if it
+	 * was never sent - the connection was refused - or the server turned it away with a 429 or 503 and a Retry-After
+	 * header; a timeout or a dropped connection may come after the server has acted on the request.
+	 * @param e
+	 * @param idempotent Whether the request is safe to send more than once.
+	 * @return
+	 */
+	public boolean isRetryable(IOException e, boolean idempotent){
+		if ( idempotent ){
+			return isRetryable(e);
+		}
+		if ( e instanceof HttpStatusException ){
+			HttpStatusException status = (HttpStatusException)e;
+			return (status.getStatus() == 429 || status.getStatus() == 503) && status.getRetryAfter() != null;
+		}
+		return e instanceof ConnectException;
+	}
+
+	/*
+	 * Decorrelated jitter: a random wait between the base delay and three times the previous wait.
+	 */
+	private long nextDelay(long previous){
+		long upper = Math.min(maxDelay, previous * 3);
+		if ( upper <= baseDelay ){
+			return upper;
+		}
+		return ThreadLocalRandom.current().nextLong(baseDelay, upper + 1);
+	}
+
+	/*
+	 * The wait in milliseconds asked for by the Retry-After header of a failure, or 0 if none was sent.
+	 */
+	private static long getRetryAfter(IOException e){
+		if ( !(e instanceof HttpStatusException) ){
+			return 0;
+		}
+		String value = ((HttpStatusException)e).getRetryAfter();
+		if ( value == null ){
+			return 0;
+		}
+		value = value.trim();
+		try{
+			return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+		}catch(NumberFormatException nfe){
+			//not a number of seconds, so an HTTP date
+		}
+		try{
+			long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+			return Math.max(0, at - System.currentTimeMillis());
+		}catch(DateTimeParseException dtpe){
+			logger.debug("Ignoring invalid Retry-After header: " + value);
+			return 0;
+		}
+	}
+
+	private void deposit(){
+		long current;
+		while ( (current = budget.get()) < maxBudget && !budget.compareAndSet(current, Math.min(maxBudget, current + budgetDeposit)) );
+	}
+
+	private boolean withdraw(){
+		long current;
+		while ( (current = budget.get()) >= TOKEN ){
+			if ( budget.compareAndSet(current, current - TOKEN) ){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Retrieves the number of requests made with this policy.
+	 * @return
+	 */
+	public long getRequestCount(){
+		return requests.get();
+	}
+
+	/**
+	 * Retrieves the number of attempts made, including the first attempt at each request.
+	 * @return
+	 */
+	public long getAttemptCount(){
+		return attempts.get();
+	}
+
+	/**
+	 * Retrieves the number of retries made.
+	 * @return
+	 */
+	public long getRetryCount(){
+		return retries.get();
+	}
+
+	/**
+	 * Retrieves the number of requests which succeeded after at least one retry.
+	 * @return
+	 */
+	public long getRecoveredCount(){
+		return recovered.get();
+	}
+
+	/**
+	 * Retrieves the number of requests given up after a retryable failure because the attempts were used up, or the
+	 * server asked to wait for longer than the maximum delay.
+	 * @return
+	 */
+	public long getGivenUpCount(){
+		return givenUp.get();
+	}
+
+	/**
+	 * Retrieves the number of requests given up after a retryable failure because the retry budget was exhausted.
+	 * @return
+	 */
+	public long getBudgetExhaustedCount(){
+		return budgetExhausted.get();
+	}
+
+	/**
+	 * Retrieves the number of retries whose wait was lengthened to honor a Retry-After header.
+	 * @return
+	 */
+	public long getRetryAfterCount(){
+		return retryAfterHonored.get();
+	}
+
+	/**
+	 * Retrieves the total time spent waiting to retry, in milliseconds.
+	 * @return
+	 */
+	public long getTotalDelayMillis(){
+		return totalDelay.get();
+	}
+
+	/**
+	 * Resets the metrics.
+	 */
+	public void resetMetrics(){
+		requests.set(0);
+		attempts.set(0);
+		retries.set(0);
+		recovered.set(0);
+		givenUp.set(0);
+		budgetExhausted.set(0);
+		retryAfterHonored.set(0);
+		totalDelay.set(0);
+	}
+}
@@ -31,6 +31,9 @@ import java.util.*;
 import java.lang.*;
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.log4j.Logger;
 
@@ -59,6 +62,16 @@ public class URLConnect{
 	 * Timeout in seconds
 	 */
 	protected int timeOutInSeconds = 30;
+	
+	/*
+	 * Read timeout in seconds: the longest wait for data once connected
+	 */
+	protected int readTimeOutInSeconds = 120;
+	
+	/**
+	 * The deadline by which queries of this object must finish, shared with objects copying its settings. If null, there is no deadline.
+	 */
+	protected Deadline deadline = null;
 
 	/**
 	*HashMap defining parameters and values for a GET or PUT query string.
@@ -80,6 +93,17 @@ public class URLConnect{
 	*/
 	protected boolean query_method = true;
 	
+	/**
+	 * The longest URL, including the query string, sent as a GET. Longer queries are sent as a POST.
+	 */
+	protected int maxGetLength = DEFAULT_MAX_GET_LENGTH;
+	
+	/**
+	 * Default longest URL sent as a GET. Servers and proxies commonly reject longer URLs, and NCBI asks for large
+	 * lists of IDs to be posted.
+	 */
+	public static final int DEFAULT_MAX_GET_LENGTH = 2048;
+	
 	 /**
 	 *The type of encoding to use for the URL submission. Default is UTF-8
 	 */
@@ -95,6 +119,46 @@ public class URLConnect{
 	 **/
 	protected boolean stopProcess = false;
 	
+	/**
+	 * The transport used to send requests. If null, the default transport is used.
+	 */
+	protected HttpTransport transport = null;
+	
+	/**
+	 * The transport shared by all URLConnect objects which have not set their own, as well as by BLAST requests.
+	 */
+	private static volatile HttpTransport defaultTransport = new PooledHttpTransport();
+	
+	/**
+	 * The rate limiter every query of this object must pass through. If null, the shared eutils bucket is used.
+	 */
+	protected RateLimiter rateLimiter = null;
+	
+	/**
+	 * The executor asynchronous queries of this object run on. If null, the default executor is used.
+	 */
+	protected Executor executor = null;
+	
+	/**
+	 * The executor shared by all URLConnect objects which have not set their own.
+	 */
+	private static volatile Executor defaultExecutor = null;
+	
+	/**
+	 * The policy deciding whether failed queries of this object are retried. If null, the default policy is used.
+	 */
+	protected RetryPolicy retryPolicy = null;
+	
+	/**
+	 * The circuit breaker queries of this object pass through. If null, the breaker shared by the endpoint is used.
+	 */
+	protected CircuitBreaker circuitBreaker = null;
+	
+	/**
+	 * The policy under which slow queries of this object are hedged. If null, queries are not hedged.
+	 */
+	protected HedgingPolicy hedgingPolicy = null;
+	
 	/**
 	*Creates an empty URLConnect object containing no parameters.  
 	*/
@@ -118,14 +182,70 @@ public class URLConnect{
 	*/
 	public URLConnect(URLConnect e){
 		this(e.getURL());
-		query_method = e.getQueryMethod();
-		encoding = e.getEncoding();
 		parameters = e.parameters;
+		copySettings(e);
 		
 	}
 	
 	/**
-	 * 
+	 * Copies the connection settings - but not the parameters - of another URLConnect object to this object.
+	 * @param e The object to copy settings from.
+	 */
+	protected void copySettings(URLConnect e){
+		url = e.url;
+		query_method = e.query_method;
+		maxGetLength = e.maxGetLength;
+		encoding = e.encoding;
+		timeOutInSeconds = e.timeOutInSeconds;
+		readTimeOutInSeconds = e.readTimeOutInSeconds;
+		deadline = e.deadline;
+		output = e.output;
+		DEBUG = e.DEBUG;
+		transport = e.transport;
+		rateLimiter = e.rateLimiter;
+		executor = e.executor;
+		retryPolicy = e.retryPolicy;
+		circuitBreaker = e.circuitBreaker;
+		hedgingPolicy = e.hedgingPolicy;
+	}
+	
+	/**
+	 * Sets the transport shared by all URLConnect objects which have not set their own transport.
+	 * @param t The transport to use.
+	 */
+	public static void setDefaultTransport(HttpTransport t){
+		if ( t == null ){
+			throw new IllegalArgumentException("The default transport cannot be null.");
+		}
+		defaultTransport = t;
+	}
+	
+	/**
+	 * Retrieves the transport shared by all URLConnect objects which have not set their own transport.
+	 * @return The default transport.
+	 */
+	public static HttpTransport getDefaultTransport(){
+		return defaultTransport;
+	}
+	
+	/**
+	 * Sets the transport used by this object to send requests. 
+	 * @param t The transport to use, or null to use the default transport.
+	 */
+	public void setTransport(HttpTransport t){
+		transport = t;
+	}
+	
+	/**
+	 * Retrieves the transport used by this object to send requests.
+	 * @return The transport of this object, or the default transport if none has been set.
+	 */
+	public HttpTransport getTransport(){
+		return transport == null ? defaultTransport : transport;
+	}
+	
+	/**
+	 * Sets the connect timeout.
 	 * @param seconds
 	 */
 	public void setTimeout(int seconds){
@@ -139,6 +259,158 @@ public class URLConnect{
 	public int getTimeout(){
 		return timeOutInSeconds;
 	}
+	
+	/**
+	 * Sets the read timeout: the longest time to wait for data from the server once connected, 
+	 * whether for the response to start or between reads of its body.
+	 * @param seconds The timeout, or 0 to wait indefinitely.
+	 */
+	public void setReadTimeout(int seconds){
+		this.readTimeOutInSeconds = seconds;
+	}
+	
+	/**
+	 * Retrieves the read timeout.
+	 * @return The timeout in seconds, 0 if there is none.
+	 */
+	public int getReadTimeout(){
+		return readTimeOutInSeconds;
+	}
+	
+	/**
+	 * Sets the deadline by which queries of this object must finish. Objects copying the settings of this object - such as 
+	 * an EntrezFetch created from an EntrezSearch - share the deadline, so it bounds the whole chain of queries. A query 
+	 * running when the deadline passes has its connection closed, and throws DeadlineExceededException.
+	 * @param deadline The deadline, or null for none.
+	 * @see Deadline#after(long)
+	 */
+	public void setDeadline(Deadline deadline){
+		this.deadline = deadline;
+	}
+	
+	/**
+	 * Retrieves the deadline by which queries of this object must finish.
+	 * @return The deadline, or null if there is none.
+	 */
+	public Deadline getDeadline(){
+		return deadline;
+	}
+
+	/**
+	 * Sets the rate limiter every query of this object must pass through. 
+	 * @param limiter The rate limiter, or null to use the shared eutils bucket.
+	 */
+	public void setRateLimiter(RateLimiter limiter){
+		rateLimiter = limiter;
+	}
+	
+	/**
+	 * Retrieves the rate limiter every query of this object must pass through.
+	 * @return The rate limiter of this object, or the shared eutils bucket if none has been set.
+	 * @see RateLimiter#eutils(boolean)
+	 */
+	public RateLimiter getRateLimiter(){
+		return rateLimiter == null ? RateLimiter.eutils(false) : rateLimiter;
+	}
+
+	/**
+	 * Sets the policy deciding whether failed queries of this object are retried.
+	 * @param policy The policy, or null to use the default policy.
+	 * @see RetryPolicy#setDefault(RetryPolicy)
+	 */
+	public void setRetryPolicy(RetryPolicy policy){
+		retryPolicy = policy;
+	}
+	
+	/**
+	 * Retrieves the policy deciding whether failed queries of this object are retried.
+	 * @return The policy of this object, or the default policy if none has been set.
+	 */
+	public RetryPolicy getRetryPolicy(){
+		return retryPolicy == null ? RetryPolicy.getDefault() : retryPolicy;
+	}
+
+	/**
+	 * Sets the circuit breaker queries of this object pass through.
+	 * @param breaker The breaker, or null to use the breaker shared by all queries to the URL of this object.
+	 */
+	public void setCircuitBreaker(CircuitBreaker breaker){
+		circuitBreaker = breaker;
+	}
+	
+	/**
+	 * Retrieves the circuit breaker queries of this object pass through.
+	 * @return The breaker of this object, or the breaker shared by all queries to the URL of this object if none has been set.
+	 * @see CircuitBreaker#forEndpoint(String)
+	 */
+	public CircuitBreaker getCircuitBreaker(){
+		return circuitBreaker == null ? CircuitBreaker.forEndpoint(url) : circuitBreaker;
+	}
+
+	/**
+	 * Sets the policy under which a query of this object that is slow to be answered is sent again, the first response 
+	 * being used. Duplicates are sent on the executor of this object, and take a permit from its rate limiter. Only set 
+	 * a policy for queries which are safe to send twice, such as eFetch.
+	 * @param policy The policy, or null to not hedge queries (the default).
+	 */
+	public void setHedgingPolicy(HedgingPolicy policy){
+		hedgingPolicy = policy;
+	}
+	
+	/**
+	 * Retrieves the policy under which slow queries of this object are hedged.
+	 * @return The policy, or null if queries are not hedged.
+	 */
+	public HedgingPolicy getHedgingPolicy(){
+		return hedgingPolicy;
+	}
+
+	/**
+	 * Sets the executor shared by all URLConnect objects which have not set their own executor.
+	 * @param e The executor to run asynchronous queries on.
+	 * @see QueryExecutors
+	 */
+	public static void setDefaultExecutor(Executor e){
+		if ( e == null ){
+			throw new IllegalArgumentException("The default executor cannot be null.");
+		}
+		defaultExecutor = e;
+	}
+	
+	/**
+	 * Retrieves the executor shared by all URLConnect objects which have not set their own executor. Unless set, 
+	 * this is created on first use, and runs queries on virtual threads where supported.
+	 * @return The default executor.
+	 * @see QueryExecutors#newDefaultExecutor()
+	 */
+	public static Executor getDefaultExecutor(){
+		Executor e = defaultExecutor;
+		if ( e == null ){
+			synchronized(URLConnect.class){
+				if ( defaultExecutor == null ){
+					defaultExecutor = QueryExecutors.newDefaultExecutor();
+				}
+				e = defaultExecutor;
+			}
+		}
+		return e;
+	}
+	
+	/**
+	 * Sets the executor asynchronous queries of this object run on. 
+	 * @param e The executor, or null to use the default executor.
+	 */
+	public void setExecutor(Executor e){
+		executor = e;
+	}
+	
+	/**
+	 * Retrieves the executor asynchronous queries of this object run on.
+	 * @return The executor of this object, or the default executor if none has been set.
+	 */
+	public Executor getExecutor(){
+		return executor == null ? getDefaultExecutor() : executor;
+	}
 
 	/**
 	*Sets the main URL to retrieve
@@ -174,6 +446,23 @@ public class URLConnect{
 		query_method = b;
 	}
 	
+	/**
+	*Sets the longest URL, including the query string, sent as a GET. When GET is the query method, queries with longer URLs 
+	*- such as an eFetch of thousands of IDs - are sent as a form encoded POST instead.
+	*@param length The length, in characters.
+	*/
+	public void setMaxGetLength(int length){
+		maxGetLength = length;
+	}
+	
+	/**
+	*Retrieves the longest URL, including the query string, sent as a GET.
+	*@return
+	*/
+	public int getMaxGetLength(){
+		return maxGetLength;
+	}
+	
 	/**
 	*Retrieves the HTTP method for query strings. Default behavior is GET.
 	*@return A boolean indicating the type of HTTP method to use<ul><li>true: GET</li><li>false: PUT</li></ul>
@@ -215,7 +504,8 @@ public class URLConnect{
 	}
 	/**
 	*Retrieves the output from the given url parameter. This function is called indirectly through doQuery.  
-	*Calls parseOutput of the input parser to parse the output depending upon implementation.
+	*Calls parseOutput of the input parser to parse the output depending upon implementation. Connecting is retried 
+	*according to the retry policy of this object; once the parser has been given the output, failures are not retried.
 	*@param url The URL to read and return the contents.
 	*@param parser An object that implements the InputStreamParser interface.
 	*@throws IOException if a connection could not be read or established.
@@ -234,18 +524,98 @@ public class URLConnect{
 				this.output.message( url );
 			}
 		}
-		if ( stopProcess ) return;
-		URL	entrez = new URL(url);
-		URLConnection conn = entrez.openConnection();
-		conn.setConnectTimeout(timeOutInSeconds*1000);
+		HttpResponse response = send(url);
+		if ( response == null ) return;
+		Deadline d = deadline;
+		if ( d != null ){
+			response = d.bind(response, url);
+		}
+		boolean read = false;
+		try{
+			if ( stopProcess ) return;
+			parser.parseInput(response.getBody());
+			read = true;
+		}catch(IOException e){
+			//parsers may wrap the exception thrown by the aborted stream
+			if ( d != null && d.isExpired() && !(e instanceof DeadlineExceededException) ){
+				DeadlineExceededException de = new DeadlineExceededException("Deadline exceeded reading " + url);
+				de.initCause(e);
+				throw de;
+			}
+			throw e;
+		}finally{
+			//a connection which failed part way through the body cannot be drained for reuse without waiting out another read timeout
+			if ( read || stopProcess ){
+				response.close();
+			}else{
+				response.abort();
+			}
+		}
+	}
+	
+	/*
+	 * Sends the request through the circuit breaker, which takes a permit from the rate limiter, each time the retry policy allows. 
+	 * Returns null if the process is stopped before a response is received.
+	 */
+	private HttpResponse send(final String url) throws IOException{
+		return getRetryPolicy().execute(url, deadline, new RetryPolicy.Attempt<HttpResponse>(){
+			public HttpResponse run() throws IOException{
+				if ( stopProcess ) return null;
+				logger.info("Connecting to URL " + url);
+				return getCircuitBreaker().send(getHedgedTransport(), createRequest(url), getRateLimiter());
+			}
+		});
+	}
+	
+	/*
+	 * The transport of this object, sending through the hedging policy if one has been set.
+	 */
+	private HttpTransport getHedgedTransport(){
+		final HttpTransport t = getTransport();
+		final HedgingPolicy policy = hedgingPolicy;
+		if ( policy == null ){
+			return t;
+		}
+		return new HttpTransport(){
+			public HttpResponse send(HttpRequest request) throws IOException{
+				return policy.send(t, request, getRateLimiter(), getExecutor());
+			}
+		};
+	}
+	
+	/**
+	*Creates the HTTP request for the given url, using the query method, encoding and timeout of this object. A GET whose 
+	*URL is longer than the maximum GET length is sent as a POST, the query string becoming the body.
+	*@param url The URL to request, including the query string for a GET.
+	*@return A new HttpRequest.
+	*@throws UnsupportedEncodingException If encoding of a POST query could not be established.
+	*@see #setMaxGetLength(int)
+	*/
+	protected HttpRequest createRequest(String url) throws UnsupportedEncodingException{
+		String body = null;
 		if ( !query_method ){
-			conn.setDoOutput(true);
-			OutputStreamWriter out = new OutputStreamWriter(conn.getOutputStream());
-			out.write(getQueryString());
-			out.flush();
+			body = getQueryString();
+		}else if ( url.length() > maxGetLength && url.indexOf('?') != -1 ){
+			//the query string is already encoded, so is posted as it is
+			int index = url.indexOf('?');
+			body = url.substring(index + 1);
+			url = url.substring(0, index);
+			if ( logger.isDebugEnabled() ){
+				logger.debug("Posting query of " + body.length() + " characters to " + url);
+			}
 		}
-		if ( stopProcess ) return;
-		parser.parseInput(conn.getInputStream());
+		HttpRequest request = new HttpRequest(url);
+		request.setConnectTimeout(timeOutInSeconds*1000);
+		request.setReadTimeout(readTimeOutInSeconds*1000);
+		request.setDeadline(deadline);
+		if ( body != null ){
+			//the transport sends the Content-Length of the encoded body
+			request.setMethod(HttpRequest.POST);
+			request.setEncoding(encoding);
+			request.setHeader("Content-Type", "application/x-www-form-urlencoded; charset=" + encoding);
+			request.setBody(body);
+		}
+		return request;
 	}
 		
 	/**
@@ -285,6 +655,35 @@ public class URLConnect{
 	*@see com.algosome.eutils.io.InputStreamParser
 	*/		
 	public void doQuery(InputStreamParser parser)  throws IOException, UnsupportedEncodingException{
+		String request = getRequestURL();
+		if ( stopProcess ) return;
+		retrieveURLOutput(request, parser);
+	}	
+	
+	/**
+	*Performs an HTTP request to NCBI and returns the response without reading it, allowing the caller to pull the output 
+	*from the stream as it arrives. The caller must close the response. The request passes through the rate limiter, 
+	*retry policy, circuit breaker and transport of this object, as for doQuery, and the response is closed if the deadline 
+	*of this object passes before it has been read.
+	*@return The response, whose body has not yet been read.
+	*@throws IOException if the connecetion cannot be established.
+	*@see #doQuery(InputStreamParser)
+	*/
+	public HttpResponse openQuery() throws IOException{
+		final String request = getRequestURL();
+		HttpResponse response = getRetryPolicy().execute(request, deadline, new RetryPolicy.Attempt<HttpResponse>(){
+			public HttpResponse run() throws IOException{
+				logger.info("Connecting to URL " + request);
+				return getCircuitBreaker().send(getHedgedTransport(), createRequest(request), getRateLimiter());
+			}
+		});
+		return deadline == null ? response : deadline.bind(response, request);
+	}
+	
+	/*
+	 * Builds the URL to request: the URL of this object, followed by the query string for a GET.
+	 */
+	private String getRequestURL() throws IOException{
 		if ( url == null ){
 			throw new IOException("Invalid URL to query: there is no URL specified.");
 		}	
@@ -295,7 +694,6 @@ public class URLConnect{
 			request.append("?");
 			request.append(getQueryString());
 		}
-		if ( stopProcess ) return;
 		if ( DEBUG ){
 			if ( this.output != null ){
 				this.output.message("Request URL: " + request.toString());
@@ -303,9 +701,38 @@ public class URLConnect{
 				System.out.println("Request URL: " + request.toString());
 			}
 		}
-		logger.info("Connecting to URL " + request.toString());
-		retrieveURLOutput(request.toString(), parser);
-	}	
+		return request.toString();
+	}
+	
+	/**
+	*Performs doQuery on the executor of this object, returning immediately. The returned future completes once the parser 
+	*has finished with the output, or completes exceptionally with any exception thrown by doQuery. </p><p><b>Note</b>: the 
+	*parameters of this object are shared by the query, so they should not be changed while a query is in progress. Use a separate 
+	*object for each query that should be in flight at the same time.
+	*@param parser An object that implements the InputStreamParser interface.
+	*@return A future which completes when the query has finished.
+	*@see #doQuery(InputStreamParser)
+	*@see #setExecutor(Executor)
+	*/
+	public CompletableFuture<Void> doQueryAsync(final InputStreamParser parser){
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		try{
+			getExecutor().execute(new Runnable(){
+				public void run(){
+					if ( future.isDone() ) return;
+					try{
+						doQuery(parser);
+						future.complete(null);
+					}catch(Throwable t){
+						future.completeExceptionally(t);
+					}
+				}
+			});
+		}catch(RejectedExecutionException e){
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
 	/**
 	 * Sets the stopProcess Flag. A value of true stops this thread from running.
 	 * @param b
@@ -0,0 +1,173 @@
+package com.algosome.eutils.pubmed;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A PubMed article parsed from eFetch XML output. Only the fields requested from the PubmedArticleParser
+ * are set: String fields which were not requested (or not present) are null, and list fields are empty.
+ * @author Greg Cope
+ * @see PubmedArticleParser
+ */
+public class PubmedArticle {
+
+	private long pmid = -1;
+	private String title = null;
+	private String abstractText = null;
+	private String journal = null;
+	private String publicationDate = null;
+	private int publicationYear = -1;
+	private String language = null;
+	private String doi = null;
+	private final List<String> authors = new ArrayList<String>(0);
+	private final List<String> publicationTypes = new ArrayList<String>(0);
+	private final List<String> meshHeadings = new ArrayList<String>(0);
+	private final List<String> keywords = new ArrayList<String>(0);
+
+	/**
+	 * Retrieves the PubMed ID.
+	 * @return The PMID, or -1 if it was not parsed.
+	 */
+	public long getPmid(){
+		return pmid;
+	}
+
+	/**
+	 * Retrieves the title of the article, with any inline markup removed.
+	 * @return
+	 */
+	public String getTitle(){
+		return title;
+	}
+
+	/**
+	 * Retrieves the abstract. Structured abstracts have each section on its own line, prefixed with its label.
+	 * @return
+	 */
+	public String getAbstract(){
+		return abstractText;
+	}
+
+	/**
+	 * Retrieves the title of the journal.
+	 * @return
+	 */
+	public String getJournal(){
+		return journal;
+	}
+
+	/**
+	 * Retrieves the publication date of the journal issue as it appears in the record, for example 2009 Jan 15.
+	 * @return
+	 */
+	public String getPublicationDate(){
+		return publicationDate;
+	}
+
+	/**
+	 * Retrieves the year of the publication date.
+	 * @return The year, or -1 if it is not known.
+	 */
+	public int getPublicationYear(){
+		return publicationYear;
+	}
+
+	/**
+	 * Retrieves the language of the article, for example eng.
+	 * @return
+	 */
+	public String getLanguage(){
+		return language;
+	}
+
+	/**
+	 * Retrieves the DOI of the article.
+	 * @return
+	 */
+	public String getDoi(){
+		return doi;
+	}
+
+	/**
+	 * Retrieves the authors, each as last name followed by fore name, or the name of a collective.
+	 * @return An unmodifiable list.
+	 */
+	public List<String> getAuthors(){
+		return Collections.unmodifiableList(authors);
+	}
+
+	/**
+	 * Retrieves the publication types, for example Journal Article.
+	 * @return An unmodifiable list.
+	 */
+	public List<String> getPublicationTypes(){
+		return Collections.unmodifiableList(publicationTypes);
+	}
+
+	/**
+	 * Retrieves the descriptor names of the MeSH headings.
+	 * @return An unmodifiable list.
+	 */
+	public List<String> getMeshHeadings(){
+		return Collections.unmodifiableList(meshHeadings);
+	}
+
+	/**
+	 * Retrieves the keywords.
+	 * @return An unmodifiable list.
+	 */
+	public List<String> getKeywords(){
+		return Collections.unmodifiableList(keywords);
+	}
+
+	@Override
+	public String toString(){
+		return "PMID " + pmid + (title == null ? "" : ": " + title);
+	}
+
+	void setPmid(long pmid){
+		this.pmid = pmid;
+	}
+
+	void setTitle(String title){
+		this.title = title;
+	}
+
+	void setAbstract(String abstractText){
+		this.abstractText = abstractText;
+	}
+
+	void setJournal(String journal){
+		this.journal = journal;
+	}
+
+	void setPublicationDate(String publicationDate, int year){
+		this.publicationDate = publicationDate;
+		this.publicationYear = year;
+	}
+
+	void setLanguage(String language){
+		this.language = language;
+	}
+
+	void setDoi(String doi){
+		this.doi = doi;
+	}
+
+	void addAuthor(String author){
+		authors.add(author);
+	}
+
+	void addPublicationType(String type){
+		publicationTypes.add(type);
+	}
+
+	void addMeshHeading(String heading){
+		meshHeadings.add(heading);
+	}
+
+	void addKeyword(String keyword){
+		keywords.add(keyword);
+	}
+}
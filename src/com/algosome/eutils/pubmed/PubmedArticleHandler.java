@@ -0,0 +1,15 @@
+package com.algosome.eutils.pubmed;
+
+/**
+ * Receives each article parsed by a PubmedArticleParser, as soon as its closing element has been read.
+ * @author Greg Cope
+ * @see PubmedArticleParser
+ */
+public interface PubmedArticleHandler {
+
+	/**
+	 * Called for each article, in the order they appear in the output.
+	 * @param article The article. Only the fields requested from the parser are set.
+	 */
+	public void article(PubmedArticle article);
+}
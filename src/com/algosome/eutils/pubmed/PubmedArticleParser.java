@@ -0,0 +1,388 @@
+package com.algosome.eutils.pubmed;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.algosome.eutils.io.InputStreamParser;
+
+/**
+ * Streaming (StAX) parser for PubMed eFetch XML output (a PubmedArticleSet). Each article is passed to a
+ * PubmedArticleHandler as soon as it has been read, so only one article is held in memory however large
+ * the output.</p>
+ * <p>The parser extracts only the requested fields. The elements of any other field - and any element
+ * not needed to reach a requested field, such as reference lists and grant lists - are skipped without
+ * their text being read. The DTD referenced by the output is never loaded.</p>
+ * <p>As an InputStreamParser, it can be passed directly to an eFetch of the pubmed database:
+ * <pre>
+ * EntrezFetch fetch = new EntrezFetch(search);
+ * fetch.setRetMode("xml");
+ * fetch.doQuery(new PubmedArticleParser(handler, PubmedField.PMID, PubmedField.TITLE, PubmedField.MESH_HEADINGS));
+ * </pre>
+ * @author Greg Cope
+ * @see PubmedField
+ * @see PubmedArticleHandler
+ */
+public class PubmedArticleParser implements InputStreamParser{
+
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+	static{
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+	}
+
+	/*The fields within MedlineCitation/Article*/
+	private static final Set<PubmedField> ARTICLE_FIELDS = EnumSet.of(PubmedField.TITLE, PubmedField.ABSTRACT,
+			PubmedField.JOURNAL, PubmedField.PUBLICATION_DATE, PubmedField.AUTHORS, PubmedField.LANGUAGE,
+			PubmedField.PUBLICATION_TYPES);
+
+	private final PubmedArticleHandler handler;
+
+	private final Set<PubmedField> fields;
+
+	private final boolean articleNeeded;
+
+	private int articleCount = 0;
+
+	/**
+	 * Constructs a new parser.
+	 * @param handler The handler to pass each article to.
+	 * @param fields The fields to extract. If none are given, all fields are extracted.
+	 */
+	public PubmedArticleParser(PubmedArticleHandler handler, PubmedField... fields){
+		this.handler = handler;
+		if ( fields.length == 0 ){
+			this.fields = EnumSet.allOf(PubmedField.class);
+		}else{
+			this.fields = EnumSet.noneOf(PubmedField.class);
+			for ( PubmedField f : fields ){
+				this.fields.add(f);
+			}
+		}
+		EnumSet<PubmedField> article = EnumSet.copyOf(ARTICLE_FIELDS);
+		article.retainAll(this.fields);
+		articleNeeded = !article.isEmpty();
+	}
+
+	/**
+	 * Retrieves the number of articles passed to the handler by the last call to parseInput.
+	 * @return
+	 */
+	public int getArticleCount(){
+		return articleCount;
+	}
+
+	/**
+	 * Parses the PubMed XML, passing each article to the handler.
+	 * @param is The PubMed XML output.
+	 * @throws IOException if the stream could not be read or is not valid XML.
+	 */
+	public void parseInput(InputStream is) throws IOException{
+		articleCount = 0;
+		XMLStreamReader reader = null;
+		try{
+			reader = FACTORY.createXMLStreamReader(is);
+			while ( reader.hasNext() ){
+				if ( reader.next() != XMLStreamConstants.START_ELEMENT ){
+					continue;
+				}
+				String name = reader.getLocalName();
+				if ( "PubmedArticle".equals(name) ){
+					handler.article(parseArticle(reader));
+					articleCount++;
+				}else if ( !"PubmedArticleSet".equals(name) ){
+					skipElement(reader);//book articles and deleted citations
+				}
+			}
+		}catch(XMLStreamException e){
+			throw new IOException("Unable to parse PubMed output: " + e.getMessage(), e);
+		}catch(NumberFormatException e){
+			throw new IOException("Invalid PMID in PubMed output: " + e.getMessage(), e);
+		}finally{
+			if ( reader != null ){
+				try{reader.close();}catch(XMLStreamException e){}
+			}
+		}
+	}
+
+	/*
+	 * Parses a PubmedArticle element. Positioned on its start element.
+	 */
+	private PubmedArticle parseArticle(XMLStreamReader reader) throws XMLStreamException{
+		PubmedArticle article = new PubmedArticle();
+		String name;
+		while ( (name = nextChild(reader)) != null ){
+			if ( "MedlineCitation".equals(name) ){
+				parseCitation(reader, article);
+			}else if ( "PubmedData".equals(name) && fields.contains(PubmedField.DOI) ){
+				parsePubmedData(reader, article);
+			}else{
+				skipElement(reader);
+			}
+		}
+		return article;
+	}
+
+	/*
+	 * Parses a MedlineCitation element.
+	 */
+	private void parseCitation(XMLStreamReader reader, PubmedArticle article) throws XMLStreamException{
+		String name;
+		while ( (name = nextChild(reader)) != null ){
+			if ( "PMID".equals(name) && fields.contains(PubmedField.PMID) ){
+				article.setPmid(Long.parseLong(readText(reader)));
+			}else if ( "Article".equals(name) && articleNeeded ){
+				parseArticleElement(reader, article);
+			}else if ( "MeshHeadingList".equals(name) && fields.contains(PubmedField.MESH_HEADINGS) ){
+				while ( nextChild(reader) != null ){
+					//MeshHeading
+					while ( (name = nextChild(reader)) != null ){
+						if ( "DescriptorName".equals(name) ){
+							article.addMeshHeading(readText(reader));
+						}else{
+							skipElement(reader);
+						}
+					}
+				}
+			}else if ( "KeywordList".equals(name) && fields.contains(PubmedField.KEYWORDS) ){
+				while ( nextChild(reader) != null ){
+					article.addKeyword(readText(reader));
+				}
+			}else{
+				skipElement(reader);
+			}
+		}
+	}
+
+	/*
+	 * Parses the Article element of a MedlineCitation.
+	 */
+	private void parseArticleElement(XMLStreamReader reader, PubmedArticle article) throws XMLStreamException{
+		String name;
+		while ( (name = nextChild(reader)) != null ){
+			if ( "Journal".equals(name) && (fields.contains(PubmedField.JOURNAL) || fields.contains(PubmedField.PUBLICATION_DATE)) ){
+				parseJournal(reader, article);
+			}else if ( "ArticleTitle".equals(name) && fields.contains(PubmedField.TITLE) ){
+				article.setTitle(readText(reader));
+			}else if ( "Abstract".equals(name) && fields.contains(PubmedField.ABSTRACT) ){
+				article.setAbstract(parseAbstract(reader));
+			}else if ( "AuthorList".equals(name) && fields.contains(PubmedField.AUTHORS) ){
+				while ( nextChild(reader) != null ){
+					String author = parseAuthor(reader);
+					if ( author != null ){
+						article.addAuthor(author);
+					}
+				}
+			}else if ( "Language".equals(name) && fields.contains(PubmedField.LANGUAGE) ){
+				if ( article.getLanguage() == null ){
+					article.setLanguage(readText(reader));
+				}else{
+					skipElement(reader);
+				}
+			}else if ( "PublicationTypeList".equals(name) && fields.contains(PubmedField.PUBLICATION_TYPES) ){
+				while ( nextChild(reader) != null ){
+					article.addPublicationType(readText(reader));
+				}
+			}else{
+				skipElement(reader);
+			}
+		}
+	}
+
+	/*
+	 * Parses the Journal element of an Article.
+	 */
+	private void parseJournal(XMLStreamReader reader, PubmedArticle article) throws XMLStreamException{
+		String name;
+		while ( (name = nextChild(reader)) != null ){
+			if ( "Title".equals(name) && fields.contains(PubmedField.JOURNAL) ){
+				article.setJournal(readText(reader));
+			}else if ( "JournalIssue".equals(name) && fields.contains(PubmedField.PUBLICATION_DATE) ){
+				while ( (name = nextChild(reader)) != null ){
+					if ( "PubDate".equals(name) ){
+						parsePubDate(reader, article);
+					}else{
+						skipElement(reader);
+					}
+				}
+			}else{
+				skipElement(reader);
+			}
+		}
+	}
+
+	/*
+	 * Parses a PubDate, which is either Year, Month, Day and Season elements or a free text MedlineDate.
+	 */
+	private void parsePubDate(XMLStreamReader reader, PubmedArticle article) throws XMLStreamException{
+		StringBuilder date = new StringBuilder();
+		String name;
+		while ( (name = nextChild(reader)) != null ){
+			if ( "Year".equals(name) || "Month".equals(name) || "Day".equals(name) || "Season".equals(name)
+					|| "MedlineDate".equals(name) ){
+				if ( date.length() != 0 ){
+					date.append(' ');
+				}
+				date.append(readText(reader));
+			}else{
+				skipElement(reader);
+			}
+		}
+		int year = -1;
+		if ( date.length() >= 4 ){
+			year = 0;
+			for ( int i = 0; i < 4 && year != -1; i++ ){
+				char c = date.charAt(i);
+				year = c >= '0' && c <= '9' ? year * 10 + (c - '0') : -1;
+			}
+		}
+		article.setPublicationDate(date.toString(), year);
+	}
+
+	/*
+	 * Parses an Abstract, joining its AbstractText sections with newlines.
+	 */
+	private String parseAbstract(XMLStreamReader reader) throws XMLStreamException{
+		StringBuilder text = new StringBuilder();
+		String name;
+		while ( (name = nextChild(reader)) != null ){
+			if ( "AbstractText".equals(name) ){
+				if ( text.length() != 0 ){
+					text.append('\n');
+				}
+				String label = reader.getAttributeValue(null, "Label");
+				if ( label != null ){
+					text.append(label).append(": ");
+				}
+				text.append(readText(reader));
+			}else{
+				skipElement(reader);
+			}
+		}
+		return text.toString();
+	}
+
+	/*
+	 * Parses an Author, returning the last name followed by the fore name (or initials), or the collective name.
+	 */
+	private String parseAuthor(XMLStreamReader reader) throws XMLStreamException{
+		String last = null;
+		String fore = null;
+		String initials = null;
+		String collective = null;
+		String name;
+		while ( (name = nextChild(reader)) != null ){
+			if ( "LastName".equals(name) ){
+				last = readText(reader);
+			}else if ( "ForeName".equals(name) ){
+				fore = readText(reader);
+			}else if ( "Initials".equals(name) ){
+				initials = readText(reader);
+			}else if ( "CollectiveName".equals(name) ){
+				collective = readText(reader);
+			}else{
+				skipElement(reader);
+			}
+		}
+		if ( last == null ){
+			return collective;
+		}
+		if ( fore != null ){
+			return last + " " + fore;
+		}
+		return initials == null ? last : last + " " + initials;
+	}
+
+	/*
+	 * Parses PubmedData for the DOI in its ArticleIdList.
+	 */
+	private void parsePubmedData(XMLStreamReader reader, PubmedArticle article) throws XMLStreamException{
+		String name;
+		while ( (name = nextChild(reader)) != null ){
+			if ( "ArticleIdList".equals(name) ){
+				while ( nextChild(reader) != null ){
+					if ( "doi".equals(reader.getAttributeValue(null, "IdType")) ){
+						article.setDoi(readText(reader));
+					}else{
+						skipElement(reader);
+					}
+				}
+			}else{
+				skipElement(reader);
+			}
+		}
+	}
+
+	/*
+	 * Moves to the next child of the current element. Returns the name of the child, positioned on its start
+	 * element, or null once the end element of the current element has been reached.
+	 */
+	private static String nextChild(XMLStreamReader reader) throws XMLStreamException{
+		while ( reader.hasNext() ){
+			int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT ){
+				return reader.getLocalName();
+			}else if ( event == XMLStreamConstants.END_ELEMENT ){
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Reads the text of the current element, including the text of any inline markup such as &lt;i&gt;,
+	 * and trims it. Positioned on the start element, finishes on the matching end element.
+	 */
+	private static String readText(XMLStreamReader reader) throws XMLStreamException{
+		StringBuilder text = new StringBuilder();
+		int depth = 1;
+		while ( depth > 0 && reader.hasNext() ){
+			int event = reader.next();
+			if ( event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+					|| event == XMLStreamConstants.SPACE ){
+				text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			}else if ( event == XMLStreamConstants.START_ELEMENT ){
+				depth++;
+			}else if ( event == XMLStreamConstants.END_ELEMENT ){
+				depth--;
+			}
+		}
+		return text.toString().trim();
+	}
+
+	/*
+	 * Skips the current element and all of its children without reading their text. Positioned on the
+	 * start element, finishes on the matching end element.
+	 */
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException{
+		int depth = 1;
+		while ( depth > 0 && reader.hasNext() ){
+			int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT ){
+				depth++;
+			}else if ( event == XMLStreamConstants.END_ELEMENT ){
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Empty implementation of the InputStreamParser.
+	 * @param start
+	 */
+	public void parseFrom(int start){}
+
+	/**
+	 * Empty implementation of the InputStreamParser.
+	 * @param end
+	 */
+	public void parseTo(int end){}
+}
@@ -0,0 +1,33 @@
+package com.algosome.eutils.pubmed;
+
+/**
+ * The fields of a PubMed article which a PubmedArticleParser can extract. Passing only the fields
+ * needed to the parser allows the elements of every other field to be skipped.
+ * @author Greg Cope
+ * @see PubmedArticleParser
+ */
+public enum PubmedField {
+
+	/**The PubMed ID (MedlineCitation/PMID)*/
+	PMID,
+	/**The title of the article (Article/ArticleTitle)*/
+	TITLE,
+	/**The abstract of the article, with each AbstractText section on its own line*/
+	ABSTRACT,
+	/**The title of the journal (Journal/Title)*/
+	JOURNAL,
+	/**The publication date of the journal issue (JournalIssue/PubDate)*/
+	PUBLICATION_DATE,
+	/**The authors of the article (AuthorList)*/
+	AUTHORS,
+	/**The language of the article (Article/Language)*/
+	LANGUAGE,
+	/**The publication types of the article (PublicationTypeList)*/
+	PUBLICATION_TYPES,
+	/**The descriptor names of the MeSH headings (MeshHeadingList)*/
+	MESH_HEADINGS,
+	/**The keywords of the article (KeywordList)*/
+	KEYWORDS,
+	/**The DOI of the article (PubmedData/ArticleIdList)*/
+	DOI;
+}
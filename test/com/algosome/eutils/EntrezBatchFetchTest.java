@@ -0,0 +1,87 @@
+package com.algosome.eutils;
+
+import static com.algosome.eutils.net.HttpStubs.check;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.algosome.eutils.net.HttpRequest;
+import com.algosome.eutils.net.HttpResponse;
+import com.algosome.eutils.net.HttpStatusException;
+import com.algosome.eutils.net.HttpStubs.StubResponse;
+import com.algosome.eutils.net.HttpStubs.StubTransport;
+import com.algosome.eutils.net.RateLimiter;
+import com.algosome.eutils.net.RetryPolicy;
+import com.algosome.eutils.net.URLConnect;
+
+/**
+ * Checks a batch eFetch of an eSearch run with usehistory=y fetches its chunks from the history server, and
+ * fetches a chunk again when its connection is reset part way through the body, using a transport that answers
+ * eSearch and eFetch requests without contacting NCBI.
+ * @author Greg Cope
+ */
+public class EntrezBatchFetchTest {
+
+	public static void main(String[] args) throws Exception{
+		final AtomicBoolean resetOnce = new AtomicBoolean(false);
+		RetryPolicy.setDefault(new RetryPolicy(3, 1, 10));
+		StubTransport transport = new StubTransport(){
+			protected HttpResponse answer(HttpRequest request) throws IOException{
+				if ( request.getEndpoint().endsWith("esearch.fcgi") ){
+					return new StubResponse("<eSearchResult><Count>5</Count><RetMax>2</RetMax><RetStart>0</RetStart>"
+							+ "<QueryKey>1</QueryKey><WebEnv>NCID_stub</WebEnv><IdList><Id>11</Id><Id>12</Id></IdList></eSearchResult>");
+				}
+				if ( request.getEndpoint().endsWith("efetch.fcgi") ){
+					return new StubResponse("record", resetOnce.getAndSet(false));
+				}
+				throw new HttpStatusException(404, "Unexpected request " + request);
+			}
+		};
+		URLConnect.setDefaultTransport(transport);
+		List<HttpRequest> requests = transport.getRequests();
+		RateLimiter limiter = new RateLimiter(1000, 100);
+		EntrezSearch search = new EntrezSearch();
+		search.setRateLimiter(limiter);
+		search.setTerm("stub");
+		search.setUseHistory("y");
+		search.doQuery();
+		check(search.getResultCount() == 5, "count " + search.getResultCount());
+
+		EntrezBatchFetch batch = new EntrezBatchFetch(search);
+		batch.setChunkSize(5);
+		final List<String> chunks = Collections.synchronizedList(new ArrayList<String>());
+		batch.doQuery(new BatchFetchListener(){
+			public void chunkFetched(int chunk, int retStart, String output){
+				chunks.add(output);
+			}
+			public void chunkFailed(int chunk, int retStart, IOException e){
+				throw new AssertionError("Chunk " + chunk + " failed: " + e);
+			}
+		});
+		check(chunks.size() == 1, "chunks " + chunks.size());
+		HttpRequest fetch = requests.get(requests.size() - 1);
+		String query = fetch.getURL();
+		check(requests.size() == 2, "requests " + requests.size());
+		check(query.contains("WebEnv=NCID_stub") && query.contains("query_key=1"), "history parameters missing from " + query);
+		check(!query.contains("id="), "IDs sent with history fetch " + query);
+
+		//the connection is reset once while the chunk is being read
+		resetOnce.set(true);
+		requests.clear();
+		chunks.clear();
+		batch.doQuery(new BatchFetchListener(){
+			public void chunkFetched(int chunk, int retStart, String output){
+				chunks.add(output);
+			}
+			public void chunkFailed(int chunk, int retStart, IOException e){
+				throw new AssertionError("Chunk " + chunk + " failed after a reset: " + e);
+			}
+		});
+		check(chunks.size() == 1 && chunks.get(0).trim().equals("record"), "chunks after a reset " + chunks);
+		check(requests.size() == 2, "requests after a reset " + requests.size());
+		System.out.println("EntrezBatchFetchTest passed");
+	}
+}
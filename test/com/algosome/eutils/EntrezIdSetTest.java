@@ -0,0 +1,73 @@
+package com.algosome.eutils;
+
+import static com.algosome.eutils.net.HttpStubs.check;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Checks EntrezIdSet against the collections it replaces: random IDs, with duplicates, ascending or not, must
+ * keep their first occurrences in insertion order, and set operations must match those of a TreeSet.
+ * @author Greg Cope
+ */
+public class EntrezIdSetTest {
+
+	public static void main(String[] args){
+		Random random = new Random(11);
+		for ( int i = 0; i < 2000; i++ ){
+			int count = random.nextInt(200);
+			int range = 1 + random.nextInt(500);
+			boolean ascending = i % 3 == 0;
+			EntrezIdSet.Builder builder = new EntrezIdSet.Builder(4);
+			Set<Long> expected = new LinkedHashSet<Long>();
+			long id = 0;
+			for ( int j = 0; j < count; j++ ){
+				id = ascending ? id + 1 + random.nextInt(3) : random.nextInt(range);
+				builder.add(id);
+				expected.add(Long.valueOf(id));
+			}
+			EntrezIdSet set = builder.build();
+			check(Arrays.equals(set.toArray(), toArray(expected)), "insertion order of " + expected + " is " + set);
+			EntrezIdSet other = EntrezIdSet.parse(EntrezIdSet.of(random.nextInt(range), random.nextInt(range), random.nextInt(range)).toString());
+			TreeSet<Long> sorted = new TreeSet<Long>(expected);
+			TreeSet<Long> union = new TreeSet<Long>(sorted);
+			TreeSet<Long> intersection = new TreeSet<Long>(sorted);
+			TreeSet<Long> difference = new TreeSet<Long>(sorted);
+			for ( int j = 0; j < other.size(); j++ ){
+				union.add(Long.valueOf(other.get(j)));
+			}
+			TreeSet<Long> otherIds = new TreeSet<Long>();
+			for ( int j = 0; j < other.size(); j++ ){
+				otherIds.add(Long.valueOf(other.get(j)));
+			}
+			intersection.retainAll(otherIds);
+			difference.removeAll(otherIds);
+			check(Arrays.equals(set.union(other).toArray(), toArray(union)), "union");
+			check(Arrays.equals(set.intersection(other).toArray(), toArray(intersection)), "intersection");
+			check(Arrays.equals(set.difference(other).toArray(), toArray(difference)), "difference");
+			for ( int j = 0; j < 10; j++ ){
+				long probe = random.nextInt(range + 10);
+				check(set.contains(probe) == expected.contains(Long.valueOf(probe)), "contains " + probe);
+			}
+			if ( set.size() > 2 ){
+				EntrezIdSet sub = set.subSet(1, set.size() - 1);
+				check(Arrays.equals(sub.toArray(), Arrays.copyOfRange(set.toArray(), 1, set.size() - 1)), "subSet");
+				check(sub.contains(set.get(1)) && !sub.contains(set.get(0)), "subSet contains");
+			}
+			check(set.equals(EntrezIdSet.of(toArray(sorted))), "equals");
+		}
+		System.out.println("EntrezIdSetTest passed");
+	}
+
+	private static long[] toArray(Set<Long> ids){
+		long[] array = new long[ids.size()];
+		int i = 0;
+		for ( Long id : ids ){
+			array[i++] = id.longValue();
+		}
+		return array;
+	}
+}
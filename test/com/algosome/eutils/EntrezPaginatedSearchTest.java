@@ -0,0 +1,87 @@
+package com.algosome.eutils;
+
+import static com.algosome.eutils.net.HttpStubs.check;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.algosome.eutils.net.HttpRequest;
+import com.algosome.eutils.net.HttpResponse;
+import com.algosome.eutils.net.HttpStatusException;
+import com.algosome.eutils.net.HttpStubs.StubResponse;
+import com.algosome.eutils.net.HttpStubs.StubTransport;
+import com.algosome.eutils.net.RateLimiter;
+import com.algosome.eutils.net.URLConnect;
+
+/**
+ * Checks a paginated eSearch leaves the eSearch given to it unchanged, reads the pages after the first from
+ * the history server without storing new queries there, and fails if a page is short, using a transport that
+ * answers eSearch requests without contacting NCBI.
+ * @author Greg Cope
+ */
+public class EntrezPaginatedSearchTest {
+
+	private static final Pattern RETSTART = Pattern.compile("retstart=([0-9]+)");
+
+	public static void main(String[] args) throws Exception{
+		final AtomicBoolean expired = new AtomicBoolean(false);
+		StubTransport transport = new StubTransport(){
+			protected HttpResponse answer(HttpRequest request) throws IOException{
+				String query = query(request);
+				if ( !request.getEndpoint().endsWith("esearch.fcgi") ){
+					throw new HttpStatusException(404, "Unexpected request " + request);
+				}
+				Matcher matcher = RETSTART.matcher(query);
+				int start = matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+				StringBuilder ids = new StringBuilder();
+				//once the query has expired from the history server, pages after the first are cut short
+				int end = expired.get() && start > 0 ? start + 1 : Math.min(start + 2, 5);
+				for ( int id = start + 1; id <= end; id++ ){
+					ids.append("<Id>").append(id).append("</Id>");
+				}
+				String history = query.contains("usehistory=y") ? "<QueryKey>1</QueryKey><WebEnv>NCID_stub</WebEnv>" : "";
+				return new StubResponse("<eSearchResult><Count>5</Count><RetMax>2</RetMax><RetStart>" + start + "</RetStart>"
+						+ history + "<IdList>" + ids + "</IdList></eSearchResult>");
+			}
+		};
+		URLConnect.setDefaultTransport(transport);
+		EntrezSearch search = new EntrezSearch();
+		search.setRateLimiter(new RateLimiter(1000, 100));
+		search.setTerm("stub");
+		EntrezPaginatedSearch paginated = new EntrezPaginatedSearch(search);
+		paginated.setPageSize(2);
+		paginated.setConcurrentPages(1);
+		EntrezIdSet ids = paginated.doQuery();
+		check(ids.toString().equals("1,2,3,4,5"), "ids " + ids);
+		check("n".equals(search.getUseHistory()), "usehistory of the eSearch changed to " + search.getUseHistory());
+		check(search.getWebEnv() == null, "eSearch given the WebEnv of its copy");
+		check(search.getIdSet() == null, "eSearch given the IDs of its pages " + search.getIdSet());
+		List<HttpRequest> requests = transport.getRequests();
+		check(requests.size() == 3, "requests " + requests.size());
+		check(query(requests.get(0)).contains("usehistory=y"), "first page without history " + query(requests.get(0)));
+		for ( int i = 1; i < requests.size(); i++ ){
+			String query = query(requests.get(i));
+			check(query.contains("usehistory=n") && query.contains("WebEnv=NCID_stub") && query.contains("term=%231"),
+					"page not read from the history server, or stored there: " + query);
+		}
+
+		expired.set(true);
+		try{
+			paginated.doQuery();
+			throw new AssertionError("short pages merged");
+		}catch(IOException e){
+			check(e.getMessage().contains("returned 1 of 2"), "short page " + e.getMessage());
+		}
+		System.out.println("EntrezPaginatedSearchTest passed");
+	}
+
+	/*
+	 * The parameters of a request, sent in its body if it was posted.
+	 */
+	private static String query(HttpRequest request){
+		return request.getBody() == null ? request.getURL() : request.getBody();
+	}
+}
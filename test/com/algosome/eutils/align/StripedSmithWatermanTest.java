@@ -0,0 +1,88 @@
+package com.algosome.eutils.align;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks StripedSmithWaterman, and both of its kernels, score random and related sequences exactly as SmithWaterman
+ * does, over several matrices and gap costs. The vector kernel is only checked when run with
+ * <code>--add-modules jdk.incubator.vector</code> and src-vector compiled.
+ * @author Greg Cope
+ */
+public class StripedSmithWatermanTest {
+
+	private static final int CASES = 4000;
+
+	public static void main(String[] args){
+		ScoringMatrix[] matrices = {ScoringMatrix.BLOSUM62, ScoringMatrix.NUCLEOTIDE, ScoringMatrix.BLOSUM62.withGapCosts(5, 2),
+				ScoringMatrix.NUCLEOTIDE.withGapCosts(0, 1), ScoringMatrix.nucleotide(1, -2, 2, 0), ScoringMatrix.BLOSUM62.withGapCosts(9, 0)};
+		//includes letters outside the matrices, and lower case
+		String protein = "ACDEFGHIKLMNPQRSTVWYXBZ*acdxJ#";
+		String nucleotide = "ACGTNacgtu";
+		Random random = new Random(7);
+		int[] scalarEnd = new int[2];
+		int[] kernelEnd = new int[2];
+		for ( int i = 0; i < CASES; i++ ){
+			ScoringMatrix matrix = matrices[i % matrices.length];
+			String alphabet = matrix.isNucleotide() ? nucleotide : protein;
+			String query = randomSequence(alphabet, 1 + random.nextInt(i % 3 == 0 ? 5 : 200), random);
+			StringBuilder target = new StringBuilder(random.nextBoolean() ? mutate(query, alphabet, random) : randomSequence(alphabet, 1 + random.nextInt(300), random));
+			if ( i % 50 == 0 ){
+				target.append('\u00e9');
+			}
+			String t = target.toString();
+			Alignment reference = new SmithWaterman(matrix).align(query, t);
+			int expected = reference == null ? 0 : reference.getScore();
+
+			byte[] codes = ScoreKernel.encode(matrix, t, 0, t.length(), false, null);
+			int scalar = new ScalarScoreKernel(matrix, query).score(codes, t.length(), scalarEnd);
+			int kernel = StripedSmithWaterman.createKernel(matrix, query).score(codes, t.length(), kernelEnd);
+			check(scalar == expected, "scalar", matrix, query, t, expected, scalar);
+			check(kernel == expected, "kernel", matrix, query, t, expected, kernel);
+			check(Arrays.equals(scalarEnd, kernelEnd), "end " + Arrays.toString(kernelEnd) + " of", matrix, query, t, expected, kernel);
+
+			Alignment alignment = new StripedSmithWaterman(matrix, query).align(t);
+			int aligned = alignment == null ? 0 : alignment.getScore();
+			check(aligned == expected, "alignment", matrix, query, t, expected, aligned);
+			if ( alignment != null ){
+				check(alignment.getAlignedQuery().replace("-", "").equals(query.substring(alignment.getQueryStart() - 1, alignment.getQueryEnd()))
+						&& alignment.getAlignedTarget().replace("-", "").equals(t.substring(alignment.getTargetStart() - 1, alignment.getTargetEnd())),
+						"alignment coordinates", matrix, query, t, expected, aligned);
+			}
+		}
+		System.out.println("StripedSmithWatermanTest passed " + CASES + " cases, vectorized=" + StripedSmithWaterman.isVectorized());
+	}
+
+	private static String randomSequence(String alphabet, int length, Random random){
+		StringBuilder sb = new StringBuilder(length);
+		for ( int i = 0; i < length; i++ ){
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * A copy of the sequence with substitutions, a deletion and an insertion, behind a short prefix.
+	 */
+	private static String mutate(String sequence, String alphabet, Random random){
+		StringBuilder sb = new StringBuilder(sequence);
+		for ( int i = 0; i < sb.length(); i++ ){
+			if ( random.nextInt(4) == 0 ){
+				sb.setCharAt(i, alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+		}
+		if ( sb.length() > 10 ){
+			sb.delete(3, 3 + random.nextInt(6));
+			sb.insert(sb.length() / 2, "WWWWWWW".substring(0, 1 + random.nextInt(6)));
+		}
+		sb.insert(0, "GATTACA".substring(random.nextInt(7)));
+		return sb.toString();
+	}
+
+	private static void check(boolean condition, String what, ScoringMatrix matrix, String query, String target, int expected, int actual){
+		if ( !condition ){
+			throw new AssertionError(what + " score " + actual + " differs from " + expected + " with " + matrix.getName()
+					+ " gaps " + matrix.getGapOpen() + "/" + matrix.getGapExtend() + " query " + query + " target " + target);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.algosome.eutils.blast;
+
+import static com.algosome.eutils.net.HttpStubs.check;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Checks a GetCommand polling without SearchInfo records only the result, not the status pages before it, and
+ * that the recorded result is read back from the cache as it was retrieved.
+ * @author Greg Cope
+ */
+public class BlastResultCacheTest {
+
+	private static final String KEY = "0123456789abcdef0123456789abcdef";
+
+	public static void main(String[] args) throws Exception{
+		File directory = Files.createTempDirectory("jeutils-cache").toFile();
+		BlastResultCache cache = new BlastResultCache(directory);
+		final StringBuilder parsed = new StringBuilder();
+		BlastParser parser = new BlastParser(){
+			public void parseBlastOutput(String output){
+				parsed.append(output);
+			}
+		};
+		GetCommand get = new GetCommand(parser);
+		get.setSearchInfoPolling(false);
+		get.setFormatType("XML");
+		get.setRecorder(cache.record(KEY));
+		get.processResult(new ByteArrayInputStream("<!--\nQBlastInfoBegin\n\tStatus=WAITING\nQBlastInfoEnd\n-->\n<p>This page will be automatically updated in 12 seconds</p>".getBytes("UTF-8")));
+		check(GetCommand.STATUS_WAITING.equals(get.getStatus()), "status " + get.getStatus());
+		check(!cache.contains(KEY), "status page cached");
+		check(directory.list().length == 0, "files left by a status page: " + directory.list().length);
+
+		String result = "<?xml version=\"1.0\"?>\n<BlastOutput>result</BlastOutput>\n";
+		get.setRecorder(cache.record(KEY));
+		get.processResult(new ByteArrayInputStream(result.getBytes("UTF-8")));
+		check(GetCommand.STATUS_READY.equals(get.getStatus()), "status " + get.getStatus());
+		check(cache.contains(KEY), "result not cached");
+
+		parsed.setLength(0);
+		GetCommand cached = new GetCommand(parser);
+		check(cache.load(KEY, cached), "result not loaded");
+		check(parsed.toString().trim().equals(result.trim()), "cached result differs: " + parsed);
+		cache.clear();
+		directory.delete();
+		System.out.println("BlastResultCacheTest passed");
+	}
+}
@@ -0,0 +1,122 @@
+package com.algosome.eutils.net;
+
+import static com.algosome.eutils.net.HttpStubs.check;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.algosome.eutils.net.HttpStubs.StubResponse;
+
+/**
+ * Checks a circuit breaker does not count time waiting for a connection as slowness, and that only its probe
+ * decides a half open breaker, using transports that do not contact NCBI.
+ * @author Greg Cope
+ */
+public class CircuitBreakerTest {
+
+	public static void main(String[] args) throws Exception{
+		//every request waits 200ms for a connection slot, then is answered at once
+		CircuitBreaker queued = new CircuitBreaker("queued", 4);
+		queued.setMinimumRequests(1);
+		queued.setSlowThreshold(100, 0.5);
+		HttpTransport waiting = new HttpTransport(){
+			public HttpResponse send(HttpRequest request) throws IOException{
+				sleep(200);
+				request.markSent();
+				return new StubResponse();
+			}
+		};
+		for ( int i = 0; i < 2; i++ ){
+			queued.send(waiting, new HttpRequest("http://stub/queued"), null).close();
+		}
+		check(queued.getState() == CircuitBreaker.State.CLOSED, "opened by time waiting for a connection");
+
+		//a request sent while closed completes after the breaker has opened, while the probe is in flight
+		final CircuitBreaker breaker = new CircuitBreaker("stale", 4);
+		breaker.setMinimumRequests(2);
+		breaker.setOpenDuration(50);
+		final CountDownLatch staleLatch = new CountDownLatch(1);
+		final CountDownLatch probeLatch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newCachedThreadPool();
+		Future<HttpResponse> stale = executor.submit(send(breaker, new Blocking(staleLatch, false)));
+		sleep(50);
+		HttpTransport failing = new Blocking(new CountDownLatch(0), true);
+		for ( int i = 0; i < 2; i++ ){
+			try{
+				breaker.send(failing, new HttpRequest("http://stub/failing"), null);
+			}catch(HttpStatusException e){
+			}
+		}
+		check(breaker.getState() == CircuitBreaker.State.OPEN, "not opened by failures");
+		sleep(100);
+		Future<HttpResponse> probe = executor.submit(send(breaker, new Blocking(probeLatch, true)));
+		sleep(50);
+		staleLatch.countDown();
+		stale.get(5, TimeUnit.SECONDS).close();
+		check(breaker.getState() == CircuitBreaker.State.HALF_OPEN, "closed by a stale request: " + breaker.getState());
+		try{
+			breaker.send(failing, new HttpRequest("http://stub/failing"), null);
+			throw new AssertionError("second request let through while probing");
+		}catch(CircuitBreakerOpenException e){
+		}
+		probeLatch.countDown();
+		try{
+			probe.get(5, TimeUnit.SECONDS);
+			throw new AssertionError("probe succeeded");
+		}catch(ExecutionException e){
+		}
+		check(breaker.getState() == CircuitBreaker.State.OPEN, "not reopened by the failed probe: " + breaker.getState());
+		executor.shutdownNow();
+		System.out.println("CircuitBreakerTest passed");
+	}
+
+	private static Callable<HttpResponse> send(final CircuitBreaker breaker, final HttpTransport transport){
+		return new Callable<HttpResponse>(){
+			public HttpResponse call() throws IOException{
+				return breaker.send(transport, new HttpRequest("http://stub/blocking"), null);
+			}
+		};
+	}
+
+	private static void sleep(long millis) throws IOException{
+		try{
+			Thread.sleep(millis);
+		}catch(InterruptedException e){
+			throw new InterruptedIOException();
+		}
+	}
+
+	/**
+	 * Answers once its latch is released, with a 503 if failing.
+	 */
+	private static final class Blocking implements HttpTransport{
+
+		private final CountDownLatch latch;
+		private final boolean failing;
+
+		Blocking(CountDownLatch latch, boolean failing){
+			this.latch = latch;
+			this.failing = failing;
+		}
+
+		public HttpResponse send(HttpRequest request) throws IOException{
+			request.markSent();
+			try{
+				latch.await();
+			}catch(InterruptedException e){
+				throw new InterruptedIOException();
+			}
+			if ( failing ){
+				throw new HttpStatusException(503, "Service Unavailable");
+			}
+			return new StubResponse();
+		}
+	}
+}
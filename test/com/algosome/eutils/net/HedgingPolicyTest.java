@@ -0,0 +1,89 @@
+package com.algosome.eutils.net;
+
+import static com.algosome.eutils.net.HttpStubs.check;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.algosome.eutils.net.HttpStubs.StubResponse;
+import com.algosome.eutils.net.HttpStubs.StubTransport;
+
+/**
+ * Checks hedged requests do not deadlock an executor whose threads are all sending, and that the losing request
+ * is cancelled once the duplicate has responded, using a transport that does not contact NCBI.
+ * @author Greg Cope
+ */
+public class HedgingPolicyTest {
+
+	public static void main(String[] args) throws Exception{
+		final HedgingPolicy policy = new HedgingPolicy(0.5, 10);
+		policy.setMinimumSamples(1);
+		policy.setMinimumDelay(50);
+		final AtomicInteger cancelled = new AtomicInteger();
+		final StubTransport transport = new StubTransport(){
+			protected HttpResponse answer(HttpRequest request) throws IOException{
+				int n = getRequests().size();
+				if ( request.getURL().endsWith("slow") ){
+					sleep(300);
+				}else if ( request.getURL().endsWith("stuck") && n % 2 == 1 ){
+					//the original never responds, until cancelled
+					final CountDownLatch latch = new CountDownLatch(1);
+					if ( !request.setCancelAction(new Runnable(){
+						public void run(){
+							cancelled.incrementAndGet();
+							latch.countDown();
+						}
+					}) ){
+						throw new InterruptedIOException("cancelled");
+					}
+					try{
+						latch.await();
+					}catch(InterruptedException e){
+						throw new InterruptedIOException();
+					}
+					throw new InterruptedIOException("cancelled");
+				}
+				StubResponse response = new StubResponse();
+				response.setHeader("url", request.getURL());
+				return response;
+			}
+		};
+		policy.send(transport, new HttpRequest("http://stub/fast"), null, Executors.newSingleThreadExecutor());
+
+		//the only thread of the executor sends the request, so a duplicate cannot run on it
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		Future<HttpResponse> future = single.submit(new Callable<HttpResponse>(){
+			public HttpResponse call() throws IOException{
+				return policy.send(transport, new HttpRequest("http://stub/slow"), null, single);
+			}
+		});
+		HttpResponse response = future.get(5, TimeUnit.SECONDS);
+		check(response.getHeader("url").endsWith("slow"), "unexpected response " + response.getHeader("url"));
+		single.shutdownNow();
+
+		transport.getRequests().clear();
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		response = policy.send(transport, new HttpRequest("http://stub/stuck"), null, pool);
+		check(transport.getRequests().size() == 2, "requests " + transport.getRequests().size());
+		check(policy.getHedgeWinCount() == 1, "hedge wins " + policy.getHedgeWinCount());
+		check(cancelled.get() == 1, "original not cancelled");
+		pool.shutdownNow();
+		System.out.println("HedgingPolicyTest passed");
+		System.exit(0);
+	}
+
+	private static void sleep(long millis) throws IOException{
+		try{
+			Thread.sleep(millis);
+		}catch(InterruptedException e){
+			throw new InterruptedIOException();
+		}
+	}
+}
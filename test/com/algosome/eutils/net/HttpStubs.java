@@ -0,0 +1,133 @@
+package com.algosome.eutils.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Support shared by the tests: a transport and responses which answer requests without contacting NCBI, and
+ * the check the tests make their assertions with.
+ * @author Greg Cope
+ */
+public final class HttpStubs {
+
+	private HttpStubs(){
+	}
+
+	/**
+	 * Throws an AssertionError with the message if the condition is false.
+	 * @param condition
+	 * @param message
+	 */
+	public static void check(boolean condition, String message){
+		if ( !condition ){
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * A transport recording every request sent through it, and answering them from answer.
+	 */
+	public static abstract class StubTransport implements HttpTransport{
+
+		private final List<HttpRequest> requests = Collections.synchronizedList(new ArrayList<HttpRequest>());
+
+		public HttpResponse send(HttpRequest request) throws IOException{
+			requests.add(request);
+			return answer(request);
+		}
+
+		/**
+		 * Answers a request.
+		 * @param request
+		 * @return The response.
+		 * @throws IOException to fail the request.
+		 */
+		protected abstract HttpResponse answer(HttpRequest request) throws IOException;
+
+		/**
+		 * Retrieves the requests sent so far, in the order they were sent. The list can be cleared.
+		 * @return
+		 */
+		public List<HttpRequest> getRequests(){
+			return requests;
+		}
+	}
+
+	/**
+	 * A complete, successful response with a fixed body.
+	 */
+	public static final class StubResponse implements HttpResponse{
+
+		private final byte[] body;
+		private final boolean reset;
+		private final Map<String, String> headers = new HashMap<String, String>();
+
+		/**
+		 * Constructs an empty response.
+		 */
+		public StubResponse(){
+			this("");
+		}
+
+		/**
+		 * Constructs a response with the body, encoded as UTF-8.
+		 * @param body
+		 */
+		public StubResponse(String body){
+			this(body, false);
+		}
+
+		/**
+		 * Constructs a response with the body, encoded as UTF-8.
+		 * @param body
+		 * @param reset If true, reading past the body fails as though the connection was reset part way through it.
+		 */
+		public StubResponse(String body, boolean reset){
+			this.body = body.getBytes(StandardCharsets.UTF_8);
+			this.reset = reset;
+		}
+
+		/**
+		 * Sets a header of the response.
+		 * @param name
+		 * @param value
+		 */
+		public void setHeader(String name, String value){
+			headers.put(name, value);
+		}
+
+		public int getStatus(){
+			return 200;
+		}
+
+		public String getHeader(String name){
+			return headers.get(name);
+		}
+
+		public InputStream getBody(){
+			if ( !reset ){
+				return new ByteArrayInputStream(body);
+			}
+			return new SequenceInputStream(new ByteArrayInputStream(body), new InputStream(){
+				public int read() throws IOException{
+					throw new SocketException("Connection reset");
+				}
+			});
+		}
+
+		public void close(){
+		}
+
+		public void abort(){
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package com.algosome.eutils.net;
+
+import static com.algosome.eutils.net.HttpStubs.check;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks PooledHttpTransport reuses connections to a local server, counting hits and misses, evicts idle and
+ * closed connections, decodes chunked and error responses, and holds no more connections to a host than its limit.
+ * @author Greg Cope
+ */
+public class PooledHttpTransportTest {
+
+	public static void main(String[] args) throws Exception{
+		final ServerSocket server = new ServerSocket(0);
+		final AtomicInteger accepted = new AtomicInteger();
+		Thread acceptor = new Thread(){
+			public void run(){
+				try{
+					while ( true ){
+						final Socket socket = server.accept();
+						accepted.incrementAndGet();
+						Thread handler = new Thread(){
+							public void run(){
+								serve(socket);
+							}
+						};
+						handler.setDaemon(true);
+						handler.start();
+					}
+				}catch(IOException e){
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+		String base = "http://localhost:" + server.getLocalPort();
+
+		PooledHttpTransport transport = new PooledHttpTransport(2, 1000);
+		for ( int i = 0; i < 3; i++ ){
+			check(get(transport, base + "/fixed").equals("hello"), "fixed body");
+		}
+		check(accepted.get() == 1, "connections opened " + accepted.get());
+		check(transport.getMisses() == 1 && transport.getHits() == 2, "hits and misses " + transport);
+		check(transport.getIdleConnections() == 1, "idle " + transport);
+
+		check(get(transport, base + "/chunked").equals("hello chunked"), "chunked body");
+		try{
+			get(transport, base + "/unavailable");
+			throw new AssertionError("503 not thrown");
+		}catch(HttpStatusException e){
+			check(e.getStatus() == 503 && "1".equals(e.getRetryAfter()), "status " + e.getStatus() + " retry after " + e.getRetryAfter());
+		}
+		check(get(transport, base + "/redirect").equals("hello"), "redirect");
+		HttpRequest post = new HttpRequest(base + "/echo");
+		post.setMethod(HttpRequest.POST);
+		post.setBody("db=pubmed&term=stub");
+		check(read(transport.send(post)).equals("db=pubmed&term=stub"), "posted body");
+		check(accepted.get() == 1 && transport.getHits() == 7, "connection not reused across responses " + transport);
+
+		//a response asking for the connection to be closed does not return it to the pool
+		check(get(transport, base + "/close").equals("bye"), "close body");
+		check(transport.getIdleConnections() == 0, "closed connection pooled " + transport);
+		get(transport, base + "/fixed");
+		check(accepted.get() == 2 && transport.getMisses() == 2, "connection after close " + transport);
+
+		//the server closes a connection it said it would keep alive, which is found closed rather than sent a request
+		check(get(transport, base + "/drop").equals("dropped"), "drop body");
+		Thread.sleep(50);
+		long evictions = transport.getEvictions();
+		check(get(transport, base + "/fixed").equals("hello"), "request after a dropped connection");
+		check(transport.getEvictions() == evictions + 1 && accepted.get() == 3, "dropped connection reused " + transport);
+
+		//idle connections are evicted after the idle timeout
+		Thread.sleep(1100);
+		check(transport.evictIdleConnections() == 1 && transport.getIdleConnections() == 0, "idle connection not evicted " + transport);
+		get(transport, base + "/fixed");
+		check(accepted.get() == 4, "evicted connection reused");
+
+		//a third request waits for one of the two connections to the host
+		HttpResponse first = transport.send(new HttpRequest(base + "/fixed"));
+		HttpResponse second = transport.send(new HttpRequest(base + "/fixed"));
+		HttpRequest third = new HttpRequest(base + "/fixed");
+		third.setConnectTimeout(100);
+		try{
+			transport.send(third);
+			throw new AssertionError("more connections than the per host limit");
+		}catch(SocketTimeoutException e){
+		}
+		first.close();
+		check(read(transport.send(third)).equals("hello"), "request after a connection was released");
+		second.close();
+		check(accepted.get() == 5 && transport.getIdleConnections() == 2, "connections " + accepted.get() + " " + transport);
+
+		String max = System.getProperty("http.maxConnections");
+		System.setProperty("http.maxConnections", "9");
+		check(new PooledHttpTransport().getMaxConnectionsPerHost() == 9, "http.maxConnections not used as the per host limit");
+		if ( max == null ){
+			System.clearProperty("http.maxConnections");
+		}else{
+			System.setProperty("http.maxConnections", max);
+		}
+		server.close();
+		System.out.println("PooledHttpTransportTest passed");
+	}
+
+	private static String get(HttpTransport transport, String url) throws IOException{
+		return read(transport.send(new HttpRequest(url)));
+	}
+
+	private static String read(HttpResponse response) throws IOException{
+		InputStream in = response.getBody();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[64];
+		int read;
+		while ( (read = in.read(buffer)) != -1 ){
+			out.write(buffer, 0, read);
+		}
+		in.close();
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/*
+	 * Answers requests on the socket until the client closes it, or a response closes it.
+	 */
+	private static void serve(Socket socket){
+		try{
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			String line;
+			while ( (line = readLine(in)) != null ){
+				String path = line.split(" ")[1];
+				int length = 0;
+				while ( (line = readLine(in)).length() > 0 ){
+					if ( line.toLowerCase().startsWith("content-length:") ){
+						length = Integer.parseInt(line.substring(15).trim());
+					}
+				}
+				byte[] body = new byte[length];
+				for ( int read = 0; read < length; ){
+					read += in.read(body, read, length - read);
+				}
+				if ( path.equals("/fixed") ){
+					write(out, "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello");
+				}else if ( path.equals("/chunked") ){
+					write(out, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5;ext=1\r\nhello\r\n8\r\n chunked\r\n0\r\n\r\n");
+				}else if ( path.equals("/unavailable") ){
+					write(out, "HTTP/1.1 503 Service Unavailable\r\nRetry-After: 1\r\nContent-Length: 4\r\n\r\nbusy");
+				}else if ( path.equals("/redirect") ){
+					write(out, "HTTP/1.1 302 Found\r\nLocation: /fixed\r\nContent-Length: 0\r\n\r\n");
+				}else if ( path.equals("/echo") ){
+					write(out, "HTTP/1.1 200 OK\r\nContent-Length: " + length + "\r\n\r\n" + new String(body, StandardCharsets.UTF_8));
+				}else if ( path.equals("/close") ){
+					write(out, "HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 3\r\n\r\nbye");
+					break;
+				}else if ( path.equals("/drop") ){
+					write(out, "HTTP/1.1 200 OK\r\nContent-Length: 7\r\n\r\ndropped");
+					break;
+				}else{
+					write(out, "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n");
+				}
+			}
+		}catch(IOException e){
+		}finally{
+			try{
+				socket.close();
+			}catch(IOException e){
+			}
+		}
+	}
+
+	private static void write(OutputStream out, String response) throws IOException{
+		out.write(response.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	private static String readLine(InputStream in) throws IOException{
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ( (c = in.read()) != '\n' ){
+			if ( c == -1 ){
+				return line.length() == 0 ? null : line.toString();
+			}
+			if ( c != '\r' ){
+				line.append((char)c);
+			}
+		}
+		return line.toString();
+	}
+}
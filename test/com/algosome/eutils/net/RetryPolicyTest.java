@@ -0,0 +1,45 @@
+package com.algosome.eutils.net;
+
+import static com.algosome.eutils.net.HttpStubs.check;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks a request which is not idempotent, such as a BLAST put, is only retried when it failed before being sent.
+ * @author Greg Cope
+ */
+public class RetryPolicyTest {
+
+	public static void main(String[] args) throws Exception{
+		check(attempts(new SocketTimeoutException("Read timed out"), true) == 3, "idempotent timeout not retried");
+		check(attempts(new SocketTimeoutException("Read timed out"), false) == 1, "put retried after a timeout");
+		check(attempts(new HttpStatusException(502, "Bad Gateway"), false) == 1, "put retried after a 502");
+		check(attempts(new HttpStatusException(503, "Unavailable"), false) == 1, "put retried after a 503 without Retry-After");
+		check(attempts(new HttpStatusException(503, "Unavailable", "0"), false) == 3, "put not retried after a 503 with Retry-After");
+		check(attempts(new HttpStatusException(429, "Too Many Requests", "0"), false) == 3, "put not retried after a 429 with Retry-After");
+		check(attempts(new ConnectException("Connection refused"), false) == 3, "put not retried after a refused connection");
+		System.out.println("RetryPolicyTest passed");
+	}
+
+	/*
+	 * The number of attempts made at a request failing with the given exception.
+	 */
+	private static int attempts(final IOException failure, boolean idempotent){
+		final AtomicInteger count = new AtomicInteger();
+		RetryPolicy policy = new RetryPolicy(3, 1, 1);
+		try{
+			policy.execute("stub", null, idempotent, new RetryPolicy.Attempt<Object>(){
+				public Object run() throws IOException{
+					count.incrementAndGet();
+					throw failure;
+				}
+			});
+		}catch(IOException e){
+			check(e == failure, "unexpected exception " + e);
+		}
+		return count.get();
+	}
+}